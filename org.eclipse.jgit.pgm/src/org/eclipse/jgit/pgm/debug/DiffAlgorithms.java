@@ -47,6 +47,7 @@
 import static java.lang.Long.valueOf;
 
 import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
 import java.lang.reflect.Field;
@@ -257,19 +258,21 @@ public int compare(Test a, Test b) {
 		outw.format("  N=%10d min lines, %8d max lines\n", valueOf(minN), //$NON-NLS-1$
 				valueOf(maxN));
 
-		outw.format("%-25s %12s ( %12s  %12s )\n", //$NON-NLS-1$
-				"Algorithm", "Time(ns)", "Time(ns) on", "Time(ns) on"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		outw.format("%-25s %12s ( %12s  %12s ) %10s\n", //$NON-NLS-1$
+				"Algorithm", "Time(ns)", "Time(ns) on", "Time(ns) on", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				"GC(ms)"); //$NON-NLS-1$
 		outw.format("%-25s %12s ( %12s  %12s )\n", //$NON-NLS-1$
 				"", "", "N=" + minN, "N=" + maxN); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
 		outw.println("-----------------------------------------------------" //$NON-NLS-1$
-				+ "----------------"); //$NON-NLS-1$
+				+ "---------------------------"); //$NON-NLS-1$
 
 		for (Test test : all) {
-			outw.format("%-25s %12d ( %12d  %12d )", // //$NON-NLS-1$
+			outw.format("%-25s %12d ( %12d  %12d ) %10d", // //$NON-NLS-1$
 					test.algorithm.name, //
 					valueOf(test.runningTimeNanos), //
 					valueOf(test.minN.runningTimeNanos), //
-					valueOf(test.maxN.runningTimeNanos));
+					valueOf(test.maxN.runningTimeNanos), //
+					valueOf(test.gcTimeMillis));
 			outw.println();
 		}
 		outw.println();
@@ -285,10 +288,12 @@ private static boolean isFile(TreeWalk tw, int ithTree) {
 	private static final int minCPUTimerTicks = 10;
 
 	private void testOne(Test test, RawText a, RawText b) {
-		final DiffAlgorithm da = test.algorithm.create();
+		// Servers reuse one instance for all of their diffs.
+		final DiffAlgorithm da = test.instance;
 		int cpuTimeChanges = 0;
 		int cnt = 0;
 
+		final long startGc = gcTimeMillis();
 		final long startTime = mxBean.getCurrentThreadCpuTime();
 		long lastTime = startTime;
 		while (cpuTimeChanges < minCPUTimerTicks) {
@@ -305,6 +310,7 @@ private void testOne(Test test, RawText a, RawText b) {
 		final long runTime = (stopTime - startTime) / cnt;
 
 		test.runningTimeNanos += runTime;
+		test.gcTimeMillis += gcTimeMillis() - startGc;
 
 		if (test.minN == null || a.size() + b.size() < test.minN.n) {
 			test.minN = new Run();
@@ -319,6 +325,14 @@ private void testOne(Test test, RawText a, RawText b) {
 		}
 	}
 
+	private static long gcTimeMillis() {
+		long total = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans())
+			total += Math.max(0, gc.getCollectionTime());
+		return total;
+	}
+
 	private List<Test> init() {
 		List<Test> all = new ArrayList<Test>();
 
@@ -331,6 +345,7 @@ private List<Test> init() {
 					if (included(alg.name, algorithms)) {
 						Test test = new Test();
 						test.algorithm = alg;
+						test.instance = alg.create();
 						all.add(test);
 					}
 				}
@@ -363,8 +378,12 @@ private static abstract class Algorithm {
 	private static class Test {
 		Algorithm algorithm;
 
+		DiffAlgorithm instance;
+
 		long runningTimeNanos;
 
+		long gcTimeMillis;
+
 		Run minN;
 
 		Run maxN;
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.dircache.SparseCheckout;
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SparseCheckoutCommandTest extends RepositoryTestCase {
+	private Git git;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		git = new Git(db);
+		writeTrashFile("a.txt", "a");
+		writeTrashFile("dir1/x.txt", "x");
+		writeTrashFile("dir1/sub/y.txt", "y");
+		writeTrashFile("dir2/z.txt", "z");
+		writeTrashFile("dir2/deep/w.txt", "w");
+		git.add().addFilepattern(".").call();
+		git.commit().setMessage("initial").call();
+	}
+
+	@Test
+	public void testRestrictToDirectory() throws Exception {
+		List<String> notUpToDate = git.sparseCheckout()
+				.addDirectory("dir1/sub").call();
+		assertEquals(Collections.emptyList(), notUpToDate);
+
+		assertTrue(new File(trash, "a.txt").exists());
+		assertTrue(new File(trash, "dir1/x.txt").exists());
+		assertTrue(new File(trash, "dir1/sub/y.txt").exists());
+		assertFalse(new File(trash, "dir2").exists());
+
+		DirCache dc = db.readDirCache();
+		assertEquals(5, dc.getEntryCount());
+		assertFalse(dc.getEntry("dir1/x.txt").isSkipWorkTree());
+		assertTrue(dc.getEntry("dir2/z.txt").isSkipWorkTree());
+		assertTrue(dc.getEntry("dir2/deep/w.txt").isSkipWorkTree());
+		assertTrue(git.status().call().isClean());
+
+		assertEquals("/*\n!/*/\n/dir1/\n!/dir1/*/\n/dir1/sub/\n",
+				read(new File(db.getDirectory(), "info/sparse-checkout")));
+		assertEquals(Collections.singleton("dir1/sub"),
+				SparseCheckout.read(db).getDirectories());
+	}
+
+	@Test
+	public void testWidenRestoresFiles() throws Exception {
+		git.sparseCheckout().addDirectory("dir1").call();
+		assertFalse(new File(trash, "dir2").exists());
+
+		git.sparseCheckout().setDirectories(Arrays.asList("dir1", "dir2/"))
+				.call();
+		assertEquals("z", read(new File(trash, "dir2/z.txt")));
+		assertEquals("w", read(new File(trash, "dir2/deep/w.txt")));
+		assertFalse(db.readDirCache().getEntry("dir2/z.txt").isSkipWorkTree());
+		assertTrue(git.status().call().isClean());
+	}
+
+	@Test
+	public void testModifiedFileIsKept() throws Exception {
+		writeTrashFile("dir2/z.txt", "modified");
+		List<String> notUpToDate = git.sparseCheckout().addDirectory("dir1")
+				.call();
+		assertEquals(Collections.singletonList("dir2/z.txt"), notUpToDate);
+		assertEquals("modified", read(new File(trash, "dir2/z.txt")));
+		assertFalse(new File(trash, "dir2/deep").exists());
+
+		DirCache dc = db.readDirCache();
+		assertFalse(dc.getEntry("dir2/z.txt").isSkipWorkTree());
+		assertTrue(dc.getEntry("dir2/deep/w.txt").isSkipWorkTree());
+	}
+
+	@Test
+	public void testCheckoutKeepsSparseCheckout() throws Exception {
+		git.branchCreate().setName("side").call();
+		git.checkout().setName("side").call();
+		writeTrashFile("dir1/x.txt", "x2");
+		writeTrashFile("dir2/z.txt", "z2");
+		writeTrashFile("dir2/new.txt", "new");
+		git.add().addFilepattern(".").call();
+		git.commit().setMessage("side").call();
+		git.checkout().setName("master").call();
+
+		git.sparseCheckout().addDirectory("dir1").call();
+		git.checkout().setName("side").call();
+
+		assertEquals("x2", read(new File(trash, "dir1/x.txt")));
+		assertFalse(new File(trash, "dir2").exists());
+		DirCache dc = db.readDirCache();
+		assertTrue(dc.getEntry("dir2/z.txt").isSkipWorkTree());
+		assertTrue(dc.getEntry("dir2/new.txt").isSkipWorkTree());
+		assertTrue(git.status().call().isClean());
+
+		git.checkout().setName("master").call();
+		assertEquals("x", read(new File(trash, "dir1/x.txt")));
+		assertFalse(new File(trash, "dir2").exists());
+		assertTrue(db.readDirCache().getEntry("dir2/z.txt").isSkipWorkTree());
+		assertTrue(git.status().call().isClean());
+	}
+
+	@Test
+	public void testAddKeepsSkipWorkTreeEntries() throws Exception {
+		git.sparseCheckout().addDirectory("dir1").call();
+		writeTrashFile("dir1/x.txt", "changed");
+		git.add().setUpdate(true).addFilepattern(".").call();
+
+		DirCache dc = db.readDirCache();
+		assertEquals(5, dc.getEntryCount());
+		assertTrue(dc.getEntry("dir2/z.txt").isSkipWorkTree());
+		assertTrue(git.status().call().getMissing().isEmpty());
+	}
+
+	@Test
+	public void testSparseIndex() throws Exception {
+		StoredConfig config = db.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPARSE, true);
+		config.save();
+		git.sparseCheckout().addDirectory("dir1").call();
+
+		// a.txt, dir1/sub/y.txt, dir1/x.txt and the collapsed dir2/
+		byte[] raw = IO.readFully(db.getIndexFile());
+		assertEquals(4, NB.decodeInt32(raw, 8));
+
+		DirCache dc = db.readDirCache();
+		assertEquals(5, dc.getEntryCount());
+		DirCacheEntry w = dc.getEntry("dir2/deep/w.txt");
+		assertTrue(w.isSkipWorkTree());
+		assertEquals(db.resolve("HEAD:dir2/deep/w.txt"), w.getObjectId());
+		assertTrue(git.status().call().isClean());
+
+		try {
+			DirCache.read(db.getIndexFile(), db.getFS());
+			fail("sparse index expanded without a repository");
+		} catch (CorruptObjectException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSparseIndexWithoutCacheTree() throws Exception {
+		StoredConfig config = db.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPARSE, true);
+		config.save();
+		git.sparseCheckout().addDirectory("dir1").call();
+
+		DirCache dc = db.lockDirCache();
+		try (ObjectInserter ins = db.newObjectInserter()) {
+			dc.writeTree(ins);
+		}
+		assertNotNull(dc.getCacheTree(false));
+		dc.write();
+		assertTrue(dc.commit());
+
+		// The cache tree describes the expanded entries, not the written.
+		byte[] raw = IO.readFully(db.getIndexFile());
+		assertEquals(4, NB.decodeInt32(raw, 8));
+		assertFalse(hasExtension(raw, "TREE"));
+
+		dc = db.readDirCache();
+		try (ObjectInserter ins = db.newObjectInserter()) {
+			assertEquals(db.resolve("HEAD^{tree}"), dc.writeTree(ins));
+		}
+	}
+
+	@Test
+	public void testSparseIndexIgnoresCollapsedCacheTree() throws Exception {
+		StoredConfig config = db.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPARSE, true);
+		config.save();
+		git.sparseCheckout().addDirectory("dir1").call();
+
+		// Add the cache tree C Git writes, dir2/ counts as one entry.
+		byte[] raw = IO.readFully(db.getIndexFile());
+		ByteArrayOutputStream ext = new ByteArrayOutputStream();
+		writeCacheTree(ext, "", 4, 1, db.resolve("HEAD^{tree}"));
+		writeCacheTree(ext, "dir1", 2, 1, db.resolve("HEAD:dir1"));
+		writeCacheTree(ext, "sub", 1, 0, db.resolve("HEAD:dir1/sub"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(raw, 0, raw.length - Constants.OBJECT_ID_LENGTH);
+		out.write(Constants.encodeASCII("TREE"));
+		byte[] size = new byte[4];
+		NB.encodeInt32(size, 0, ext.size());
+		out.write(size);
+		ext.writeTo(out);
+		MessageDigest md = Constants.newMessageDigest();
+		md.update(out.toByteArray());
+		out.write(md.digest());
+		try (FileOutputStream os = new FileOutputStream(db.getIndexFile())) {
+			out.writeTo(os);
+		}
+
+		DirCache dc = db.readDirCache();
+		assertEquals(5, dc.getEntryCount());
+		assertNull(dc.getCacheTree(false));
+		int files = 0;
+		try (TreeWalk tw = new TreeWalk(db)) {
+			tw.addTree(new DirCacheIterator(dc));
+			tw.setRecursive(true);
+			while (tw.next())
+				files++;
+		}
+		assertEquals(5, files);
+	}
+
+	private static void writeCacheTree(ByteArrayOutputStream out, String name,
+			int entries, int subtrees, ObjectId id) throws IOException {
+		out.write(Constants.encode(name));
+		out.write(0);
+		out.write(Constants.encodeASCII(entries + " " + subtrees + "\n"));
+		id.copyRawTo(out);
+	}
+
+	private static boolean hasExtension(byte[] raw, String name) {
+		byte[] sig = Constants.encodeASCII(name);
+		for (int i = 12; i + sig.length <= raw.length; i++) {
+			if (Arrays.equals(sig, Arrays.copyOfRange(raw, i, i + sig.length)))
+				return true;
+		}
+		return false;
+	}
+}
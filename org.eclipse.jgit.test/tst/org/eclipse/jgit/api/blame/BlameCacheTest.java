@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.api.blame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.api.BlameCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.blame.BlameGenerator;
+import org.eclipse.jgit.blame.BlameResult;
+import org.eclipse.jgit.blame.InMemoryBlameCache;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests of {@link BlameGenerator} with a blame cache. */
+public class BlameCacheTest extends RepositoryTestCase {
+	private static class RecordingCache extends InMemoryBlameCache {
+		final List<String> gets = new ArrayList<>();
+
+		int hits;
+
+		RecordingCache() {
+			super(100);
+		}
+
+		@Override
+		public synchronized byte[] get(String key) {
+			gets.add(key);
+			byte[] r = super.get(key);
+			if (r != null)
+				hits++;
+			return r;
+		}
+	}
+
+	private RevCommit c1;
+
+	private RevCommit c2;
+
+	private RevCommit c3;
+
+	private RevCommit c4;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		try (Git git = new Git(db)) {
+			c1 = commit(git, "a", "b", "c", "d");
+			c2 = commit(git, "a", "x", "b", "c", "d");
+			c3 = commit(git, "a", "x", "b", "y", "d", "e");
+			writeTrashFile("other.txt", "other");
+			git.add().addFilepattern("other.txt").call();
+			git.commit().setMessage("other").call();
+			c4 = commit(git, "z", "a", "x", "b", "y", "e");
+		}
+	}
+
+	@Test
+	public void testResultStored() throws Exception {
+		RecordingCache cache = new RecordingCache();
+		blame(c3, cache);
+		assertEquals(1, cache.size());
+		assertEquals(0, cache.hits);
+
+		cache.gets.clear();
+		blame(c3, cache);
+		assertEquals(1, cache.hits);
+		assertEquals(1, cache.gets.size());
+	}
+
+	@Test
+	public void testSameResultFromCachedAncestor() throws Exception {
+		for (RevCommit cached : new RevCommit[] { c1, c2, c3 }) {
+			RecordingCache cache = new RecordingCache();
+			blame(cached, cache);
+			assertSameResult(blame(c4, null), blame(c4, cache));
+			assertEquals(1, cache.hits);
+		}
+	}
+
+	@Test
+	public void testTraversalStopsAtCachedAncestor() throws Exception {
+		RecordingCache cache = new RecordingCache();
+		blame(c2, cache);
+		cache.gets.clear();
+
+		blame(c4, cache);
+		assertEquals(1, cache.hits);
+		assertTrue(containsKeyOf(cache.gets, c2));
+		assertFalse(containsKeyOf(cache.gets, c1));
+	}
+
+	@Test
+	public void testCorruptEntryIgnored() throws Exception {
+		RecordingCache cache = new RecordingCache();
+		blame(c2, cache);
+		for (String k : cache.gets)
+			cache.put(k, new byte[] { 1, 2, 3 });
+		assertSameResult(blame(c4, null), blame(c4, cache));
+	}
+
+	@Test
+	public void testKeyIncludesComparator() throws Exception {
+		RecordingCache cache = new RecordingCache();
+		blame(c3, cache);
+		cache.hits = 0;
+
+		try (BlameGenerator gen = new BlameGenerator(db, "file.txt")) {
+			gen.setBlameCache(cache);
+			gen.setTextComparator(RawTextComparator.WS_IGNORE_ALL);
+			gen.push(null, c3);
+			assertNotNull(gen.computeBlameResult());
+		}
+		assertEquals(0, cache.hits);
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testWorkingTreeBlameNotStored() throws Exception {
+		RecordingCache cache = new RecordingCache();
+		blame(c3, cache);
+		writeTrashFile("file.txt", join("w", "a", "x", "b", "y", "e"));
+
+		BlameResult r = new BlameCommand(db).setFilePath("file.txt")
+				.setBlameCache(cache).call();
+		assertEquals(1, cache.size());
+		assertEquals(null, r.getSourceCommit(0));
+		assertEquals(c1, r.getSourceCommit(1));
+		assertEquals(c2, r.getSourceCommit(2));
+		assertEquals(c3, r.getSourceCommit(4));
+	}
+
+	private RevCommit commit(Git git, String... lines) throws Exception {
+		writeTrashFile("file.txt", join(lines));
+		git.add().addFilepattern("file.txt").call();
+		return git.commit().setMessage("edit").call();
+	}
+
+	private BlameResult blame(RevCommit c, RecordingCache cache)
+			throws Exception {
+		return new BlameCommand(db).setFilePath("file.txt").setStartCommit(c)
+				.setBlameCache(cache).call();
+	}
+
+	private static boolean containsKeyOf(List<String> keys, RevCommit c) {
+		for (String k : keys) {
+			if (k.startsWith(c.name()))
+				return true;
+		}
+		return false;
+	}
+
+	private static void assertSameResult(BlameResult expected,
+			BlameResult actual) {
+		int cnt = expected.getResultContents().size();
+		assertEquals(cnt, actual.getResultContents().size());
+		for (int i = 0; i < cnt; i++) {
+			assertEquals(expected.getSourceCommit(i),
+					actual.getSourceCommit(i));
+			assertEquals(expected.getSourcePath(i), actual.getSourcePath(i));
+			assertEquals(expected.getSourceLine(i), actual.getSourceLine(i));
+			assertEquals(expected.getSourceAuthor(i),
+					actual.getSourceAuthor(i));
+		}
+	}
+
+	private static String join(String... lines) {
+		StringBuilder joined = new StringBuilder();
+		for (String line : lines)
+			joined.append(line).append('\n');
+		return joined.toString();
+	}
+}
@@ -44,10 +44,14 @@
 package org.eclipse.jgit.diff;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
@@ -61,6 +65,7 @@
 import org.eclipse.jgit.patch.FileHeader;
 import org.eclipse.jgit.patch.HunkHeader;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.eclipse.jgit.util.FileUtils;
@@ -101,6 +106,7 @@ public void tearDown() throws Exception {
 		if (df != null) {
 			df.close();
 		}
+		new WindowCacheConfig().install();
 		super.tearDown();
 	}
 
@@ -485,6 +491,150 @@ public void testDiffNullToNull() throws Exception {
 		}
 	}
 
+	@Test
+	public void testScanWithExecutor() throws Exception {
+		TestRepository<Repository>.CommitBuilder ab = testDb.commit();
+		TestRepository<Repository>.CommitBuilder bb = testDb.commit();
+		for (int i = 0; i < 20; i++) {
+			for (int j = 0; j < 5; j++) {
+				String path = "d" + i + "/e" + j + "/f";
+				ab.add(path, "a" + i + j);
+				if (i % 3 == 0)
+					bb.add(path, "b" + i + j);
+				else if (i % 3 == 1)
+					bb.add(path + j, "a" + i + j);
+				else if (j != 0)
+					bb.add(path, "a" + i + j);
+			}
+		}
+		ab.add("a/b", "file to tree");
+		bb.add("a/b/c", "tree from file");
+		ab.add("x/y/z", "deleted tree");
+		bb.add("n/o/p", "added tree");
+		RevCommit a = ab.create();
+		RevCommit b = bb.create();
+
+		List<DiffEntry> expected = df.scan(a, b);
+		assertEquals(7 * 5 + 7 * 10 + 6 + 4, expected.size());
+		List<DiffEntry> reverse = df.scan(b, a);
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			df.setExecutor(executor);
+			assertEquals(toString(expected), toString(df.scan(a, b)));
+			assertEquals(toString(reverse), toString(df.scan(b, a)));
+
+			df.setPathFilter(PathFilter.create("d1"));
+			List<DiffEntry> filtered = df.scan(a, b);
+			assertEquals(10, filtered.size());
+			df.setExecutor(null);
+			assertEquals(toString(df.scan(a, b)), toString(filtered));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static String toString(List<DiffEntry> entries) {
+		StringBuilder b = new StringBuilder();
+		for (DiffEntry e : entries)
+			b.append(e).append(' ').append(e.getOldId().name()).append(' ')
+					.append(e.getNewId().name()).append(' ')
+					.append(e.getOldMode()).append(' ').append(e.getNewMode())
+					.append('\n');
+		return b.toString();
+	}
+
+	@Test
+	public void testStreamLargeFiles() throws Exception {
+		setStreamFileThreshold(100);
+		String base = lines(0, 200);
+		String[][] changes = {
+				{ base, lines(0, 100) + "changed\n" + lines(101, 200) },
+				{ base, "changed\n" + lines(1, 200) },
+				{ base, lines(0, 199) + "changed\n" },
+				{ base, base + "added\n" },
+				{ base, base + "added" },
+				{ base + "end", base + "end\n" },
+				{ base, "added\n" + base },
+				{ base, lines(0, 50) + lines(51, 55) + "changed\n" + lines(56, 200) },
+				{ base, lines(0, 100) + lines(110, 200) } };
+
+		for (String[] change : changes) {
+			DiffEntry ent = DiffEntry.pair(ChangeType.MODIFY,
+					DiffEntry.delete(PATH_A, blob(change[0])),
+					DiffEntry.add(PATH_A, blob(change[1])), 0);
+			String expected = format(ent, false);
+			assertTrue(expected.contains("@@"));
+			assertEquals(expected, format(ent, true));
+		}
+	}
+
+	@Test
+	public void testStreamLargeFiles_EditList() throws Exception {
+		setStreamFileThreshold(100);
+		DiffEntry ent = DiffEntry.pair(ChangeType.MODIFY,
+				DiffEntry.delete(PATH_A, blob(lines(0, 200))),
+				DiffEntry.add(PATH_A,
+						blob(lines(0, 120) + "changed\n" + lines(121, 200))),
+				0);
+		df.setRepository(db);
+		df.setBinaryFileThreshold(200);
+		assertEquals(FileHeader.PatchType.BINARY,
+				df.toFileHeader(ent).getPatchType());
+
+		df.setStreamLargeFiles(true);
+		FileHeader fh = df.toFileHeader(ent);
+		assertEquals(FileHeader.PatchType.UNIFIED, fh.getPatchType());
+		assertEquals(EditList.singleton(new Edit(120, 121, 120, 121)),
+				fh.toEditList());
+	}
+
+	@Test
+	public void testStreamLargeFiles_ChangedRegionTooLarge() throws Exception {
+		setStreamFileThreshold(100);
+		DiffEntry ent = DiffEntry.pair(ChangeType.MODIFY,
+				DiffEntry.delete(PATH_A, blob(lines(0, 200))),
+				DiffEntry.add(PATH_A,
+						blob("changed\n" + lines(1, 199) + "changed\n")),
+				0);
+		assertTrue(format(ent, true).endsWith("Binary files differ\n"));
+
+		ent = DiffEntry.add(PATH_B, blob(lines(0, 200)));
+		assertTrue(format(ent, true).endsWith("Binary files differ\n"));
+
+		ent = DiffEntry.pair(ChangeType.MODIFY,
+				DiffEntry.delete(PATH_A, blob(lines(0, 200))),
+				DiffEntry.add(PATH_A, blob(lines(0, 100) + "\0\n")), 0);
+		assertTrue(format(ent, true).endsWith("Binary files differ\n"));
+	}
+
+	private String format(DiffEntry ent, boolean stream) throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try (DiffFormatter f = new DiffFormatter(os)) {
+			f.setRepository(db);
+			if (stream) {
+				f.setBinaryFileThreshold(200);
+				f.setStreamLargeFiles(true);
+			}
+			f.format(ent);
+			f.flush();
+		}
+		return os.toString("UTF-8");
+	}
+
+	private static void setStreamFileThreshold(int threshold) {
+		WindowCacheConfig cfg = new WindowCacheConfig();
+		cfg.setStreamFileThreshold(threshold);
+		cfg.install();
+	}
+
+	private static String lines(int begin, int end) {
+		StringBuilder b = new StringBuilder();
+		for (int i = begin; i < end; i++)
+			b.append("line ").append(i).append('\n');
+		return b.toString();
+	}
+
 	private static String makeDiffHeader(String pathA, String pathB,
 			ObjectId aId,
 			ObjectId bId) {
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.merge.MergeAlgorithm;
+import org.eclipse.jgit.merge.MergeResult;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EditListCacheTest extends RepositoryTestCase {
+	private TestRepository<Repository> testDb;
+
+	private RecordingCache cache;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		testDb = new TestRepository<Repository>(db);
+		cache = new RecordingCache(100);
+	}
+
+	@Test
+	public void testInMemoryCacheEvictsLeastRecentlyUsed() {
+		InMemoryEditListCache c = new InMemoryEditListCache(3);
+		EditListCache.Key k1 = key(1, 2);
+		EditListCache.Key k2 = key(1, 3);
+		EditListCache.Key k3 = key(1, 4);
+
+		c.put(k1, edits(1));
+		c.put(k2, new EditList());
+		assertEquals(2, c.getEditCount());
+		assertEquals(edits(1), c.get(k1));
+
+		c.put(k3, edits(2));
+		assertEquals(2, c.size());
+		assertEquals(3, c.getEditCount());
+		assertNull(c.get(k2));
+		assertEquals(edits(1), c.get(k1));
+		assertEquals(edits(2), c.get(k3));
+
+		c.put(k2, edits(4));
+		assertNull(c.get(k2));
+		assertEquals(2, c.size());
+	}
+
+	@Test
+	public void testInMemoryCacheCopiesEdits() {
+		InMemoryEditListCache c = new InMemoryEditListCache(10);
+		EditList e = edits(1);
+		c.put(key(1, 2), e);
+		e.get(0).extendA();
+
+		EditList r = c.get(key(1, 2));
+		assertEquals(edits(1), r);
+		r.get(0).extendB();
+		assertEquals(edits(1), c.get(key(1, 2)));
+		assertNotSame(c.get(key(1, 2)), c.get(key(1, 2)));
+	}
+
+	@Test
+	public void testKey() {
+		HistogramDiff h = new HistogramDiff();
+		assertEquals(key(1, 2), new EditListCache.Key(id(1), id(2),
+				new HistogramDiff(), RawTextComparator.DEFAULT));
+		assertEquals(key(1, 2).hashCode(), new EditListCache.Key(id(1),
+				id(2), h, RawTextComparator.DEFAULT).hashCode());
+		assertTrue(!key(1, 2).equals(key(2, 1)));
+		assertTrue(!key(1, 2).equals(new EditListCache.Key(id(1), id(2),
+				MyersDiff.INSTANCE, RawTextComparator.DEFAULT)));
+		assertTrue(!key(1, 2).equals(new EditListCache.Key(id(1), id(2), h,
+				RawTextComparator.WS_IGNORE_ALL)));
+	}
+
+	@Test
+	public void testKeyIncludesAlgorithmSettings() {
+		HistogramDiff shortChains = new HistogramDiff();
+		shortChains.setMaxChainLength(1);
+		assertTrue(!key(1, 2).equals(new EditListCache.Key(id(1), id(2),
+				shortChains, RawTextComparator.DEFAULT)));
+
+		HistogramDiff noFallback = new HistogramDiff();
+		noFallback.setFallbackAlgorithm(null);
+		assertTrue(!key(1, 2).equals(new EditListCache.Key(id(1), id(2),
+				noFallback, RawTextComparator.DEFAULT)));
+
+		// Settings of other algorithms are unknown, only the instance matches.
+		DiffAlgorithm custom = new LowLevelDiffAlgorithm() {
+			@Override
+			public <S extends Sequence> void diffNonCommon(EditList edits,
+					HashedSequenceComparator<S> cmp, HashedSequence<S> a,
+					HashedSequence<S> b, Edit region) {
+				edits.add(region);
+			}
+		};
+		assertEquals(
+				new EditListCache.Key(id(1), id(2), custom,
+						RawTextComparator.DEFAULT),
+				new EditListCache.Key(id(1), id(2), custom,
+						RawTextComparator.DEFAULT));
+		assertTrue(!new EditListCache.Key(id(1), id(2), custom,
+				RawTextComparator.DEFAULT).equals(new EditListCache.Key(id(1),
+						id(2), new HistogramDiff() {
+							// An unknown subclass.
+						}, RawTextComparator.DEFAULT)));
+	}
+
+	@Test
+	public void testWorkingTreeSideKeyedOnContent() throws Exception {
+		writeTrashFile("f", "a\nb\nc\n");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern("f").call();
+		}
+		writeTrashFile("f", "a\nB\nc\n");
+		ObjectId stale = id(7);
+		DiffEntry ent = modify(blob("a\nb\nc\n"), stale);
+
+		try (DiffFormatter f = new DiffFormatter(new ByteArrayOutputStream())) {
+			f.setRepository(db);
+			f.setEditListCache(cache);
+			f.scan(new DirCacheIterator(db.readDirCache()),
+					new FileTreeIterator(db));
+			f.format(ent);
+		}
+		assertEquals(1, cache.puts.size());
+		assertEquals(blob("a\nB\nc\n"), cache.puts.get(0).getNewId());
+	}
+
+	@Test
+	public void testDiffFormatterUsesCache() throws Exception {
+		DiffEntry ent = modify(blob("a\nb\nc\n"), blob("a\nB\nc\n"));
+
+		String expected = format(ent, null);
+		assertEquals(expected, format(ent, cache));
+		assertEquals(1, cache.puts.size());
+		assertEquals(0, cache.hits);
+
+		assertEquals(expected, format(ent, cache));
+		assertEquals(1, cache.puts.size());
+		assertEquals(1, cache.hits);
+
+		EditListCache.Key key = cache.puts.get(0);
+		assertEquals(ent.getOldId().toObjectId(), key.getOldId());
+		assertEquals(ent.getNewId().toObjectId(), key.getNewId());
+		assertEquals(HistogramDiff.class, key.getAlgorithm());
+		assertEquals(RawTextComparator.DEFAULT, key.getComparator());
+	}
+
+	@Test
+	public void testDiffFormatterReturnsCachedEdits() throws Exception {
+		DiffEntry ent = modify(blob("a\nb\nc\n"), blob("a\nB\nc\n"));
+		EditListCache.Key key = new EditListCache.Key(
+				ent.getOldId().toObjectId(), ent.getNewId().toObjectId(),
+				new HistogramDiff(), RawTextComparator.DEFAULT);
+		cache.put(key, EditList.singleton(new Edit(0, 1, 0, 1)));
+
+		try (DiffFormatter f = new DiffFormatter(new ByteArrayOutputStream())) {
+			f.setRepository(db);
+			f.setEditListCache(cache);
+			assertEquals(EditList.singleton(new Edit(0, 1, 0, 1)),
+					f.toFileHeader(ent).toEditList());
+		}
+	}
+
+	@Test
+	public void testMergeAlgorithmUsesCache() throws Exception {
+		RawText base = new RawText("a\nb\nc\n".getBytes("UTF-8"));
+		RawText ours = new RawText("A\nb\nc\n".getBytes("UTF-8"));
+		RawText theirs = new RawText("a\nb\nC\n".getBytes("UTF-8"));
+		MergeAlgorithm m = new MergeAlgorithm();
+		m.setEditListCache(cache);
+
+		MergeResult<RawText> r = m.merge(RawTextComparator.DEFAULT, base,
+				ours, theirs);
+		assertTrue(!r.containsConflicts());
+		assertEquals(0, cache.puts.size());
+
+		m.merge(RawTextComparator.DEFAULT, base, ours, theirs, id(1), id(2),
+				id(3));
+		assertEquals(2, cache.puts.size());
+		assertEquals(0, cache.hits);
+		assertEquals(key(1, 2), cache.puts.get(0));
+		assertEquals(key(1, 3), cache.puts.get(1));
+
+		r = m.merge(RawTextComparator.DEFAULT, base, ours, theirs, id(1),
+				id(2), id(3));
+		assertTrue(!r.containsConflicts());
+		assertEquals(2, cache.hits);
+	}
+
+	private String format(DiffEntry ent, EditListCache c) throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try (DiffFormatter f = new DiffFormatter(os)) {
+			f.setRepository(db);
+			f.setEditListCache(c);
+			f.format(ent);
+			f.flush();
+		}
+		return os.toString("UTF-8");
+	}
+
+	private DiffEntry modify(ObjectId a, ObjectId b) {
+		return DiffEntry.pair(ChangeType.MODIFY, DiffEntry.delete("f", a),
+				DiffEntry.add("f", b), 0);
+	}
+
+	private ObjectId blob(String content) throws Exception {
+		return testDb.blob(content).copy();
+	}
+
+	private static EditListCache.Key key(int a, int b) {
+		return new EditListCache.Key(id(a), id(b), new HistogramDiff(),
+				RawTextComparator.DEFAULT);
+	}
+
+	private static ObjectId id(int n) {
+		return ObjectId.fromString(
+				String.format("%040x", Integer.valueOf(n)));
+	}
+
+	private static EditList edits(int n) {
+		EditList r = new EditList();
+		for (int i = 0; i < n; i++)
+			r.add(new Edit(i * 2, i * 2 + 1));
+		return r;
+	}
+
+	private static class RecordingCache extends InMemoryEditListCache {
+		final List<EditListCache.Key> puts = new ArrayList<>();
+
+		int hits;
+
+		RecordingCache(long maxEdits) {
+			super(maxEdits);
+		}
+
+		@Override
+		public synchronized EditList get(Key key) {
+			EditList r = super.get(key);
+			if (r != null)
+				hits++;
+			return r;
+		}
+
+		@Override
+		public synchronized void put(Key key, EditList edits) {
+			puts.add(key);
+			super.put(key, edits);
+		}
+	}
+}
@@ -142,4 +142,23 @@ public void testFallbackToMyersDiff() {
 		r = hd.diff(cmp, ac, bc);
 		assertEquals(5, r.size());
 	}
+
+	@Test
+	public void testReusedInstance() {
+		HistogramDiff hd = algorithm();
+		RawTextComparator cmp = RawTextComparator.DEFAULT;
+		RawText a1 = t("aRSzbTUcVWXd");
+		RawText b1 = t("aSRzbUTcdXWV");
+		RawText a2 = t("nqnjrnjsnm");
+		RawText b2 = t("AnqnjrnjsnjTnmZ");
+
+		EditList r1 = algorithm().diff(cmp, a1, b1);
+		EditList r2 = algorithm().diff(cmp, a2, b2);
+
+		// Tables left by a larger diff must not leak into a smaller one.
+		assertEquals(r1, hd.diff(cmp, a1, b1));
+		assertEquals(r2, hd.diff(cmp, a2, b2));
+		assertEquals(r1, hd.diff(cmp, a1, b1));
+		assertEquals(r2, hd.diff(cmp, a2, b2));
+	}
 }
@@ -44,19 +44,27 @@
 package org.eclipse.jgit.diff;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.junit.RepositoryTestCase;
 import org.eclipse.jgit.junit.TestRepository;
 import org.eclipse.jgit.lib.AbbreviatedObjectId;
 import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.junit.Before;
 import org.junit.Test;
@@ -621,6 +629,110 @@ public void testRenameLimit() throws Exception {
 		assertSame(d, entries.get(3));
 	}
 
+	@Test
+	public void testRenameLimit_SameFileNamePairedFirst() throws Exception {
+		DiffEntry a = DiffEntry.delete("a/File1", blob("1\n2\n3\n4\n5\n"));
+		DiffEntry b = DiffEntry.add("b/File1", blob("1\n2\n3\n4\n5\n6\n"));
+		DiffEntry c = DiffEntry.delete("a/File2", blob("a\nb\nc\nd\ne\n"));
+		DiffEntry d = DiffEntry.add("b/File2", blob("a\nb\nc\nd\nf\ng\n"));
+		DiffEntry e = DiffEntry.delete("a/Other", blob("foo\n"));
+		DiffEntry f = DiffEntry.add("b/New", blob("bar\n"));
+
+		rd.addAll(Arrays.asList(a, b, c, d, e, f));
+		rd.setRenameLimit(1);
+
+		List<DiffEntry> entries = rd.compute();
+		assertEquals(4, entries.size());
+		assertSame(e, entries.get(0));
+		assertRename(a, b, 83, entries.get(1));
+		assertRename(c, d, 66, entries.get(2));
+		assertSame(f, entries.get(3));
+		assertFalse(rd.isOverRenameLimit());
+	}
+
+	@Test
+	public void testRenameLimit_NoSizesReadIfBasenamesCannotHelp()
+			throws Exception {
+		DiffEntry a = DiffEntry.delete("a/File1", blob("1\n2\n3\n4\n5\n"));
+		DiffEntry b = DiffEntry.add("b/File2", blob("1\n2\n3\n4\n5\n6\n"));
+		DiffEntry c = DiffEntry.delete("a/File3", blob("a\nb\nc\nd\ne\n"));
+		DiffEntry d = DiffEntry.add("b/File4", blob("a\nb\nc\nd\nf\ng\n"));
+
+		rd.addAll(Arrays.asList(a, b, c, d));
+		rd.setRenameLimit(1);
+		final int[] sizesRead = { 0 };
+		try (ObjectReader reader = db.newObjectReader()) {
+			final ContentSource objects = ContentSource.create(reader);
+			ContentSource counting = new ContentSource() {
+				@Override
+				public long size(String path, ObjectId id) throws IOException {
+					sizesRead[0]++;
+					return objects.size(path, id);
+				}
+
+				@Override
+				public ObjectLoader open(String path, ObjectId id)
+						throws IOException {
+					return objects.open(path, id);
+				}
+			};
+			List<DiffEntry> entries = rd.compute(
+					new ContentSource.Pair(counting, counting),
+					NullProgressMonitor.INSTANCE);
+			assertEquals(4, entries.size());
+		}
+		assertTrue(rd.isOverRenameLimit());
+		assertEquals(0, sizesRead[0]);
+	}
+
+	@Test
+	public void testInexactRename_ExecutorAndTiles() throws Exception {
+		List<String> expect = similarityRenames(null, 512);
+		assertEquals(40, expect.size());
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			assertEquals(expect, similarityRenames(executor, 512));
+			assertEquals(expect, similarityRenames(executor, 7));
+			assertEquals(expect, similarityRenames(null, 1));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private List<String> similarityRenames(ExecutorService executor,
+			int tileSize) throws Exception {
+		List<DiffEntry> srcs = new ArrayList<DiffEntry>();
+		List<DiffEntry> dsts = new ArrayList<DiffEntry>();
+		for (int i = 0; i < 40; i++) {
+			StringBuilder content = new StringBuilder();
+			for (int k = 0; k < 10; k++)
+				content.append("line ").append(i).append('-').append(k)
+						.append('\n');
+			srcs.add(DiffEntry.delete("old/D" + i, blob(content.toString())));
+			content.append("added\n");
+			dsts.add(DiffEntry.add("new/N" + (39 - i),
+					blob(content.toString())));
+		}
+
+		try (ObjectReader reader = db.newObjectReader()) {
+			ContentSource cs = ContentSource.create(reader);
+			SimilarityRenameDetector d = new SimilarityRenameDetector(
+					new ContentSource.Pair(cs, cs), srcs, dsts);
+			d.setExecutor(executor);
+			d.setTileSize(tileSize);
+			d.compute(NullProgressMonitor.INSTANCE);
+			assertTrue(d.getLeftOverSources().isEmpty());
+			assertTrue(d.getLeftOverDestinations().isEmpty());
+
+			List<String> r = new ArrayList<String>();
+			for (DiffEntry e : d.getMatches())
+				r.add(e.getOldPath() + " " + e.getNewPath() + " "
+						+ e.getScore());
+			return r;
+		}
+	}
+
 	private ObjectId blob(String content) throws Exception {
 		return testDb.blob(content).copy();
 	}
@@ -49,6 +49,8 @@
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.time.Instant;
+
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.junit.Test;
@@ -183,6 +185,28 @@ public void testCopyMetaDataWithoutStage() {
 		copyMetaDataHelper(true);
 	}
 
+	@Test
+	public void testLastModifiedNanoseconds() {
+		DirCacheEntry e = new DirCacheEntry("a");
+		Instant t = Instant.ofEpochSecond(1500000000L, 123456789);
+		e.setLastModified(t);
+		assertEquals(t, e.getLastModifiedInstant());
+		assertEquals(1500000000123L, e.getLastModified());
+
+		e.setLastModified(1500000000123L);
+		assertEquals(Instant.ofEpochSecond(1500000000L, 123000000),
+				e.getLastModifiedInstant());
+	}
+
+	@Test
+	public void testRacilyCleanAtNanoseconds() {
+		DirCacheEntry e = new DirCacheEntry("a");
+		e.setLastModified(Instant.ofEpochSecond(1500000000L, 123456789));
+		assertTrue(e.mightBeRacilyClean(1500000000, 123456789));
+		assertTrue(e.mightBeRacilyClean(1500000000, 123000000));
+		assertFalse(e.mightBeRacilyClean(1500000000, 123456790));
+	}
+
 	private static void copyMetaDataHelper(final boolean keepStage) {
 		DirCacheEntry e = new DirCacheEntry("some/path", DirCacheEntry.STAGE_2);
 		e.setAssumeValid(false);
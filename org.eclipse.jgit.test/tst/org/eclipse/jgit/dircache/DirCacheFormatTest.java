@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.dircache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+import org.junit.Test;
+
+public class DirCacheFormatTest extends RepositoryTestCase {
+	@Test
+	public void testVersion4() throws Exception {
+		DirCacheEntry[] ents = createEntries(200);
+		writeIndex(ents);
+		long v2Size = indexFile().length();
+
+		setIndexConfig(ConfigConstants.CONFIG_KEY_VERSION, "4");
+		writeIndex(ents);
+		assertEquals(4, NB.decodeInt32(IO.readFully(indexFile()), 4));
+		assertTrue(indexFile().length() < v2Size);
+		assertEntries(ents, db.readDirCache());
+
+		// Without configuration the version read is kept.
+		unsetIndexConfig(ConfigConstants.CONFIG_KEY_VERSION);
+		DirCache dc = db.lockDirCache();
+		dc.write();
+		assertTrue(dc.commit());
+		assertEquals(4, NB.decodeInt32(IO.readFully(indexFile()), 4));
+		assertEntries(ents, db.readDirCache());
+	}
+
+	@Test
+	public void testOffsetTable() throws Exception {
+		DirCacheEntry[] ents = createEntries(100);
+		setIndexConfig(ConfigConstants.CONFIG_KEY_RECORD_OFFSET_TABLE, "true");
+		setIndexConfig(ConfigConstants.CONFIG_KEY_THREADS, "3");
+		writeIndex(ents);
+		assertTrue(hasExtension("IEOT"));
+		assertTrue(hasExtension("EOIE"));
+		assertEntries(ents, db.readDirCache());
+
+		setIndexConfig(ConfigConstants.CONFIG_KEY_THREADS, "false");
+		assertEntries(ents, db.readDirCache());
+	}
+
+	@Test
+	public void testOffsetTableVersion4() throws Exception {
+		DirCacheEntry[] ents = createEntries(100);
+		setIndexConfig(ConfigConstants.CONFIG_KEY_VERSION, "4");
+		setIndexConfig(ConfigConstants.CONFIG_KEY_RECORD_OFFSET_TABLE, "true");
+		setIndexConfig(ConfigConstants.CONFIG_KEY_THREADS, "4");
+		writeIndex(ents);
+		assertTrue(hasExtension("IEOT"));
+		assertEntries(ents, db.readDirCache());
+
+		setIndexConfig(ConfigConstants.CONFIG_KEY_THREADS, "1");
+		assertEntries(ents, db.readDirCache());
+	}
+
+	@Test
+	public void testNoOffsetTableForSmallIndex() throws Exception {
+		setIndexConfig(ConfigConstants.CONFIG_KEY_THREADS, "4");
+		writeIndex(createEntries(100));
+		assertFalse(hasExtension("IEOT"));
+		assertFalse(hasExtension("EOIE"));
+	}
+
+	@Test
+	public void testNoOffsetTableByDefault() throws Exception {
+		DirCacheEntry[] ents = createEntries(25000);
+		writeIndex(ents);
+		assertFalse(hasExtension("IEOT"));
+		assertFalse(hasExtension("EOIE"));
+
+		setIndexConfig(ConfigConstants.CONFIG_KEY_THREADS, "2");
+		writeIndex(ents);
+		assertTrue(hasExtension("IEOT"));
+		assertTrue(hasExtension("EOIE"));
+		assertEntries(ents, db.readDirCache());
+	}
+
+	@Test
+	public void testEndOfIndexEntries() throws Exception {
+		DirCacheEntry[] ents = createEntries(100);
+		setIndexConfig(ConfigConstants.CONFIG_KEY_RECORD_END_OF_INDEX_ENTRIES,
+				"true");
+		writeIndex(ents);
+		assertFalse(hasExtension("IEOT"));
+		assertTrue(hasExtension("EOIE"));
+		assertEntries(ents, db.readDirCache());
+
+		setIndexConfig(ConfigConstants.CONFIG_KEY_RECORD_END_OF_INDEX_ENTRIES,
+				"false");
+		setIndexConfig(ConfigConstants.CONFIG_KEY_RECORD_OFFSET_TABLE, "true");
+		setIndexConfig(ConfigConstants.CONFIG_KEY_THREADS, "3");
+		writeIndex(ents);
+		assertTrue(hasExtension("IEOT"));
+		assertFalse(hasExtension("EOIE"));
+		assertEntries(ents, db.readDirCache());
+	}
+
+	private File indexFile() {
+		return new File(db.getDirectory(), "index");
+	}
+
+	private boolean hasExtension(String name) throws Exception {
+		String raw = new String(IO.readFully(indexFile()), "ISO-8859-1");
+		return raw.contains(name);
+	}
+
+	private void setIndexConfig(String key, String value) throws Exception {
+		FileBasedConfig cfg = db.getConfig();
+		cfg.setString(ConfigConstants.CONFIG_INDEX_SECTION, null, key, value);
+		cfg.save();
+	}
+
+	private void unsetIndexConfig(String key) throws Exception {
+		FileBasedConfig cfg = db.getConfig();
+		cfg.unset(ConfigConstants.CONFIG_INDEX_SECTION, null, key);
+		cfg.save();
+	}
+
+	private static DirCacheEntry[] createEntries(int cnt) {
+		DirCacheEntry[] ents = new DirCacheEntry[cnt];
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			for (int i = 0; i < cnt; i++) {
+				String path = String.format("dir%d/sub/file%03d", i % 7, i);
+				ents[i] = new DirCacheEntry(path);
+				ents[i].setFileMode(FileMode.REGULAR_FILE);
+				ents[i].setObjectId(fmt.idFor(Constants.OBJ_BLOB,
+						Constants.encode(path)));
+				ents[i].setLength(i);
+			}
+		}
+		return ents;
+	}
+
+	private void writeIndex(DirCacheEntry[] ents) throws Exception {
+		DirCache dc = db.lockDirCache();
+		DirCacheBuilder b = dc.builder();
+		for (DirCacheEntry e : ents)
+			b.add(e);
+		b.finish();
+		dc.write();
+		assertTrue(dc.commit());
+	}
+
+	private static void assertEntries(DirCacheEntry[] expected, DirCache dc) {
+		assertEquals(expected.length, dc.getEntryCount());
+		for (DirCacheEntry exp : expected) {
+			DirCacheEntry act = dc.getEntry(exp.getPathString());
+			assertArrayEquals(exp.getRawPath(), act.getRawPath());
+			assertEquals(exp.getObjectId(), act.getObjectId());
+			assertEquals(exp.getLength(), act.getLength());
+			assertEquals(FileMode.REGULAR_FILE, act.getFileMode());
+		}
+		for (int i = 1; i < dc.getEntryCount(); i++)
+			assertTrue(DirCache.ENT_CMP.compare(dc.getEntry(i - 1),
+					dc.getEntry(i)) < 0);
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.dircache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileFilter;
+
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.junit.Test;
+
+public class SplitIndexTest extends RepositoryTestCase {
+	@Test
+	public void testWriteOnlyChangedEntries() throws Exception {
+		enableSplitIndex(50);
+		writeIndex(createEntries(10));
+		assertEquals(1, listSharedIndexes().length);
+		File shared = listSharedIndexes()[0];
+
+		DirCache dc = db.lockDirCache();
+		dc.getEntry("a/5").setObjectId(blob("changed"));
+		DirCacheEditor ed = dc.editor();
+		ed.add(new DirCacheEditor.DeletePath("a/7"));
+		ed.add(new DirCacheEditor.PathEdit("b") {
+			@Override
+			public void apply(DirCacheEntry ent) {
+				ent.setFileMode(FileMode.REGULAR_FILE);
+				ent.setObjectId(blob("b"));
+			}
+		});
+		ed.commit();
+
+		assertEquals(1, listSharedIndexes().length);
+		assertTrue(shared.exists());
+		assertTrue(new File(db.getDirectory(), "index").length() < shared
+				.length());
+
+		dc = db.readDirCache();
+		assertEquals(10, dc.getEntryCount());
+		assertEquals(blob("changed"), dc.getEntry("a/5").getObjectId());
+		assertEquals(blob("b"), dc.getEntry("b").getObjectId());
+		assertEquals(null, dc.getEntry("a/7"));
+		assertEquals(blob("a/3"), dc.getEntry("a/3").getObjectId());
+		for (int i = 1; i < dc.getEntryCount(); i++)
+			assertTrue(DirCache.ENT_CMP.compare(dc.getEntry(i - 1),
+					dc.getEntry(i)) < 0);
+	}
+
+	@Test
+	public void testRewriteSharedIndexPastThreshold() throws Exception {
+		enableSplitIndex(20);
+		writeIndex(createEntries(10));
+		File shared = listSharedIndexes()[0];
+
+		DirCache dc = db.lockDirCache();
+		for (int i = 0; i < 5; i++)
+			dc.getEntry("a/" + i).setObjectId(blob("changed" + i));
+		dc.write();
+		assertTrue(dc.commit());
+
+		assertEquals(2, listSharedIndexes().length);
+		assertTrue(shared.exists());
+
+		dc = db.readDirCache();
+		assertEquals(10, dc.getEntryCount());
+		for (int i = 0; i < 5; i++)
+			assertEquals(blob("changed" + i),
+					dc.getEntry("a/" + i).getObjectId());
+	}
+
+	@Test
+	public void testDisableSplitIndex() throws Exception {
+		enableSplitIndex(20);
+		writeIndex(createEntries(3));
+
+		FileBasedConfig cfg = db.getConfig();
+		cfg.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPLIT_INDEX, false);
+		cfg.save();
+		DirCache dc = db.lockDirCache();
+		dc.write();
+		assertTrue(dc.commit());
+
+		// Without the shared index the index must still be complete.
+		for (File f : listSharedIndexes())
+			assertTrue(f.delete());
+		dc = db.readDirCache();
+		assertEquals(3, dc.getEntryCount());
+		assertEquals(blob("a/1"), dc.getEntry("a/1").getObjectId());
+	}
+
+	@Test
+	public void testUnchangedEntriesStayShared() throws Exception {
+		enableSplitIndex(0);
+		writeIndex(createEntries(4));
+
+		// Recreating identical entries must not count as a change.
+		DirCache dc = db.lockDirCache();
+		DirCacheBuilder b = dc.builder();
+		for (int i = 0; i < dc.getEntryCount(); i++)
+			b.add(new DirCacheEntry(dc.getEntry(i)));
+		b.finish();
+		dc.write();
+		assertTrue(dc.commit());
+		assertEquals(1, listSharedIndexes().length);
+		assertFalse(db.readDirCache().getEntry("a/2").isUpdateInBase());
+	}
+
+	private void enableSplitIndex(int maxPercentChange) throws Exception {
+		FileBasedConfig cfg = db.getConfig();
+		cfg.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPLIT_INDEX, true);
+		cfg.setInt(ConfigConstants.CONFIG_SPLIT_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_MAX_PERCENT_CHANGE,
+				maxPercentChange);
+		cfg.save();
+	}
+
+	private DirCacheEntry[] createEntries(int cnt) throws Exception {
+		DirCacheEntry[] ents = new DirCacheEntry[cnt];
+		for (int i = 0; i < cnt; i++) {
+			ents[i] = new DirCacheEntry("a/" + i);
+			ents[i].setFileMode(FileMode.REGULAR_FILE);
+			ents[i].setObjectId(blob("a/" + i));
+			ents[i].setLength(i);
+			ents[i].setLastModified(1000L * i);
+		}
+		return ents;
+	}
+
+	private void writeIndex(DirCacheEntry[] ents) throws Exception {
+		DirCache dc = db.lockDirCache();
+		DirCacheBuilder b = dc.builder();
+		for (DirCacheEntry e : ents)
+			b.add(e);
+		b.finish();
+		dc.write();
+		assertTrue(dc.commit());
+	}
+
+	private ObjectId blob(String content) {
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			return fmt.idFor(Constants.OBJ_BLOB,
+					Constants.encode(content));
+		}
+	}
+
+	private File[] listSharedIndexes() {
+		return db.getDirectory().listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File f) {
+				return f.getName().startsWith("sharedindex.");
+			}
+		});
+	}
+}
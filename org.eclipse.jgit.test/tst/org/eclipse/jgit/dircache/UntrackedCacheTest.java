@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.dircache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+import org.junit.Test;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+
+public class UntrackedCacheTest extends RepositoryTestCase {
+	@Test
+	public void testParseAndWrite() throws Exception {
+		File a = writeTrashFile("a/t", "t").getParentFile();
+		byte[] raw = untr(new File[] { trash, a },
+				new String[][] { { "top" }, { "u.txt" } });
+		UntrackedCache uc = UntrackedCache.parse(raw);
+
+		assertTrue(uc.getIdent().startsWith("Location "));
+		assertEquals(Constants.DOT_GIT_IGNORE, uc.getExcludePerDir());
+		assertEquals(ObjectId.zeroId(), uc.getInfoExcludeId());
+		UntrackedCache.Directory root = uc.getRoot();
+		assertTrue(root.isValid());
+		assertEquals(Collections.singletonList("top"), root.getUntracked());
+		UntrackedCache.Directory d = root.getDirectory("a");
+		assertNotNull(d);
+		assertTrue(d.isUntracked("u.txt"));
+		assertEquals(FS.DETECTED.lastModified(a), d.getLastModified());
+		assertNull(root.getDirectory("b"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		uc.write(out);
+		assertArrayEquals(raw, out.toByteArray());
+	}
+
+	@Test
+	public void testInvalidateOnWrite() throws Exception {
+		writeTrashFile("a/t", "t");
+		writeTrashFile("a/u.txt", "u");
+		File a = new File(trash, "a");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern("a/t").call();
+		}
+		DirCache dc = db.lockDirCache();
+		dc.setUntrackedCache(UntrackedCache.parse(untr(new File[] { trash,
+				a }, new String[][] { {}, { "u.txt" } })));
+		dc.write();
+		assertTrue(dc.commit());
+
+		UntrackedCache uc = db.readDirCache().getUntrackedCache();
+		assertTrue(uc.getRoot().getDirectory("a").isValid());
+
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern("a/u.txt").call();
+		}
+		uc = db.readDirCache().getUntrackedCache();
+		assertNotNull(uc);
+		assertFalse(uc.getRoot().isValid());
+		assertFalse(uc.getRoot().getDirectory("a").isValid());
+		assertTrue(uc.getRoot().getDirectory("a").getUntracked().isEmpty());
+	}
+
+	@Test
+	public void testStatusReusesCache() throws Exception {
+		writeTrashFile(".gitignore", "*.o\n");
+		writeTrashFile("a/t", "t");
+		writeTrashFile("a/u.txt", "u");
+		writeTrashFile("a/v.txt", "v");
+		writeTrashFile("a/w.o", "w");
+		File a = new File(trash, "a");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern(".gitignore").addFilepattern("a/t")
+					.call();
+		}
+
+		// The cache claims a/v.txt was ignored; it is trusted while the
+		// directory is unchanged.
+		DirCache dc = db.lockDirCache();
+		dc.setUntrackedCache(UntrackedCache.parse(untr(new File[] { trash,
+				a }, new String[][] { {}, { "u.txt" } })));
+		dc.write();
+		assertTrue(dc.commit());
+		try (Git git = new Git(db)) {
+			Status status = git.status().call();
+			assertEquals(Collections.singleton("a/u.txt"),
+					status.getUntracked());
+			assertTrue(status.getIgnoredNotInIndex().contains("a/v.txt"));
+
+			FS.DETECTED.setLastModified(a,
+					FS.DETECTED.lastModified(a) - 5000);
+			status = git.status().call();
+			assertEquals(
+					new HashSet<>(Arrays.asList("a/u.txt", "a/v.txt")),
+					status.getUntracked());
+		}
+	}
+
+	@Test
+	public void testStatusIgnoresDisabledCache() throws Exception {
+		writeTrashFile("a/t", "t");
+		writeTrashFile("a/v.txt", "v");
+		File a = new File(trash, "a");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern("a/t").call();
+		}
+		DirCache dc = db.lockDirCache();
+		dc.setUntrackedCache(UntrackedCache.parse(untr(new File[] { trash,
+				a }, new String[][] { {}, {} })));
+		dc.write();
+		assertTrue(dc.commit());
+
+		db.getConfig().setBoolean("core", null, "untrackedCache", false);
+		try (Git git = new Git(db)) {
+			assertEquals(Collections.singleton("a/v.txt"),
+					git.status().call().getUntracked());
+		}
+	}
+
+	@Test
+	public void testStatusRecordsCache() throws Exception {
+		writeTrashFile(".gitignore", "*.o\n");
+		writeTrashFile("a/t", "t");
+		writeTrashFile("a/u.txt", "u");
+		writeTrashFile("a/w.o", "w");
+		writeTrashFile("b/x", "x");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern(".gitignore").addFilepattern("a/t")
+					.call();
+		}
+		backdate(trash, new File(trash, "a"), new File(trash, "b"),
+				db.getIndexFile());
+		db.getConfig().setBoolean("core", null, "untrackedCache", true);
+		try (Git git = new Git(db)) {
+			git.status().call();
+		}
+
+		UntrackedCache uc = db.readDirCache().getUntrackedCache();
+		assertNotNull(uc);
+		assertTrue(uc.isComplete());
+		assertTrue(uc.isValidFor(db));
+		UntrackedCache.Directory root = uc.getRoot();
+		assertTrue(root.isValid());
+		assertTrue(root.getUntracked().isEmpty());
+		assertNotNull(root.getExcludeId());
+		UntrackedCache.Directory a = root.getDirectory("a");
+		assertTrue(a.isValid());
+		assertEquals(Collections.singletonList("u.txt"), a.getUntracked());
+		UntrackedCache.Directory b = root.getDirectory("b");
+		assertTrue(b.isValid());
+		assertEquals(Collections.singletonList("x"), b.getUntracked());
+	}
+
+	@Test
+	public void testStatusSkipsUnchangedDirectories() throws Exception {
+		writeTrashFile(".gitignore", "*.o\n");
+		writeTrashFile("a/t", "t");
+		writeTrashFile("a/u.txt", "u");
+		writeTrashFile("a/w.o", "w");
+		writeTrashFile("b/x", "x");
+		File a = new File(trash, "a");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern(".gitignore").addFilepattern("a/t")
+					.call();
+		}
+		backdate(trash, a, new File(trash, "b"), db.getIndexFile());
+		db.getConfig().setBoolean("core", null, "untrackedCache", true);
+		try (Git git = new Git(db)) {
+			git.status().call();
+			Object index = fileKey(db.getIndexFile());
+
+			FileTreeIterator it = new FileTreeIterator(db);
+			Status status = git.status().setWorkingTreeIt(it)
+					.setListIgnored(false).call();
+			assertEquals(new HashSet<>(Arrays.asList("a/u.txt", "b/x")),
+					status.getUntracked());
+			assertTrue(status.getIgnoredNotInIndex().isEmpty());
+			assertEquals(1, it.getDirectoryReadCount());
+			// Nothing was recorded, the index is not written again.
+			assertEquals(index, fileKey(db.getIndexFile()));
+
+			writeTrashFile("a/v.txt", "v");
+			backdate(db.getIndexFile());
+			it = new FileTreeIterator(db);
+			status = git.status().setWorkingTreeIt(it).setListIgnored(false)
+					.call();
+			assertEquals(
+					new HashSet<>(
+							Arrays.asList("a/u.txt", "a/v.txt", "b/x")),
+					status.getUntracked());
+			assertEquals(2, it.getDirectoryReadCount());
+		}
+		UntrackedCache.Directory d = db.readDirCache().getUntrackedCache()
+				.getRoot().getDirectory("a");
+		assertTrue(d.isUntracked("v.txt"));
+	}
+
+	@Test
+	public void testIgnoreChangeInvalidatesSubdirectories() throws Exception {
+		writeTrashFile(".gitignore", "*.o\n");
+		writeTrashFile("a/b/t", "t");
+		writeTrashFile("a/b/x", "x");
+		File a = new File(trash, "a");
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern(".gitignore").addFilepattern("a/b/t")
+					.call();
+		}
+		backdate(trash, a, new File(a, "b"), db.getIndexFile());
+		db.getConfig().setBoolean("core", null, "untrackedCache", true);
+		try (Git git = new Git(db)) {
+			assertEquals(Collections.singleton("a/b/x"),
+					git.status().call().getUntracked());
+
+			writeTrashFile(".gitignore", "*.o\nx\n");
+			backdate(db.getIndexFile());
+			FileTreeIterator it = new FileTreeIterator(db);
+			Status status = git.status().setWorkingTreeIt(it)
+					.setListIgnored(false).call();
+			assertTrue(status.getUntracked().isEmpty());
+			assertEquals(3, it.getDirectoryReadCount());
+		}
+	}
+
+	private static Object fileKey(File f) throws IOException {
+		return Files.readAttributes(f.toPath(), BasicFileAttributes.class)
+				.fileKey();
+	}
+
+	/**
+	 * Make files old enough for their modification times to be trusted, the
+	 * index is not updated if it may have been modified since it was read.
+	 */
+	private static void backdate(File... files) {
+		long old = System.currentTimeMillis() - 60 * 1000;
+		for (File f : files)
+			assertTrue(f.setLastModified(old));
+	}
+
+	/**
+	 * Build an UNTR extension in the format written by C Git for a chain of
+	 * directories, each the only subdirectory of the previous one.
+	 */
+	private byte[] untr(File[] dirs, String[][] untracked) throws IOException {
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		byte[] ident = Constants.encode("Location " + trash.getAbsolutePath()
+				+ ", system test\0");
+		b.write(ident.length);
+		b.write(ident);
+		b.write(new byte[2 * 36 + 4]);
+		b.write(new byte[2 * Constants.OBJECT_ID_LENGTH]);
+		b.write(Constants.encode(".gitignore\0"));
+		b.write(dirs.length);
+		for (int i = 0; i < dirs.length; i++) {
+			b.write(untracked[i].length);
+			b.write(i + 1 < dirs.length ? 1 : 0);
+			b.write(Constants.encode(i == 0 ? "" : dirs[i].getName()));
+			b.write(0);
+			for (String n : untracked[i]) {
+				b.write(Constants.encode(n));
+				b.write(0);
+			}
+		}
+
+		EWAHCompressedBitmap valid = new EWAHCompressedBitmap();
+		EWAHCompressedBitmap excludeValid = new EWAHCompressedBitmap();
+		ByteArrayOutputStream stats = new ByteArrayOutputStream();
+		ByteArrayOutputStream excludes = new ByteArrayOutputStream();
+		for (int i = 0; i < dirs.length; i++) {
+			valid.set(i);
+			long ms = FS.DETECTED.lastModified(dirs[i]);
+			byte[] stat = new byte[36];
+			NB.encodeInt32(stat, 8, (int) (ms / 1000));
+			NB.encodeInt32(stat, 12, (int) (ms % 1000) * 1000000);
+			stats.write(stat);
+
+			File f = new File(dirs[i], Constants.DOT_GIT_IGNORE);
+			if (f.exists()) {
+				excludeValid.set(i);
+				new ObjectInserter.Formatter()
+						.idFor(Constants.OBJ_BLOB, IO.readFully(f))
+						.copyRawTo(excludes);
+			}
+		}
+		DataOutputStream out = new DataOutputStream(b);
+		valid.serialize(out);
+		new EWAHCompressedBitmap().serialize(out);
+		excludeValid.serialize(out);
+		out.flush();
+		stats.writeTo(b);
+		excludes.writeTo(b);
+		b.write(0);
+		return b.toByteArray();
+	}
+}
@@ -0,0 +1,169 @@
+package org.eclipse.jgit.internal.storage.dfs;
+
+import static org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource.COMPACT;
+import static org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource.GC;
+import static org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource.INSERT;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.PACK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsCompactionScheduler.Compaction;
+import org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DfsCompactionSchedulerTest {
+	private TestRepository<InMemoryRepository> git;
+	private InMemoryRepository repo;
+	private DfsObjDatabase odb;
+	private DfsCompactionScheduler scheduler;
+
+	@Before
+	public void setUp() throws IOException {
+		DfsRepositoryDescription desc = new DfsRepositoryDescription("test");
+		git = new TestRepository<>(new InMemoryRepository(desc));
+		repo = git.getRepository();
+		odb = repo.getObjectDatabase();
+		scheduler = new DfsCompactionScheduler(null).setMaxPacksPerTier(3);
+	}
+
+	@Test
+	public void testTierBySize() {
+		scheduler.setTierBaseSize(100).setTierFactor(10);
+		DfsPackDescription d = new DfsPackDescription(repo.getDescription(),
+				"pack-1.pack");
+		assertEquals(0, scheduler.getTier(d.setFileSize(PACK, 99)));
+		assertEquals(1, scheduler.getTier(d.setFileSize(PACK, 100)));
+		assertEquals(1, scheduler.getTier(d.setFileSize(PACK, 999)));
+		assertEquals(2, scheduler.getTier(d.setFileSize(PACK, 1000)));
+		assertEquals(3, scheduler.getTier(d.setCompactionTier(3)));
+		assertTrue(scheduler.getTier(d.setFileSize(PACK, Long.MAX_VALUE)) > 3);
+	}
+
+	@Test
+	public void testNothingToCompact() throws Exception {
+		commit(2);
+		assertNull(scheduler.plan(repo));
+		assertTrue(scheduler.compactAll(repo, null).isEmpty());
+		assertEquals(2, countPacks(INSERT));
+	}
+
+	@Test
+	public void testCompactTier0() throws Exception {
+		RevCommit tip = commit(4);
+
+		Compaction c = scheduler.compact(repo, null);
+		assertNotNull(c);
+		assertEquals(0, c.getTier());
+		assertEquals(4, c.getSourcePacks().size());
+		assertEquals(1, c.getNewPacks().size());
+		assertEquals(1, c.getNewPacks().get(0).getCompactionTier());
+
+		assertEquals(1, odb.getPacks().length);
+		DfsPackFile pack = odb.getPacks()[0];
+		assertEquals(COMPACT, pack.getPackDescription().getPackSource());
+		assertEquals(1, scheduler.getTier(pack.getPackDescription()));
+		assertTrue(odb.has(tip));
+	}
+
+	@Test
+	public void testCompactedPacksMoveUpTiers() throws Exception {
+		commit(3);
+		assertEquals(1, scheduler.compactAll(repo, null).size());
+		commit(3);
+		assertEquals(1, scheduler.compactAll(repo, null).size());
+		assertEquals(2, countPacks(COMPACT));
+
+		// The third tier 1 pack triggers a tier 1 compaction.
+		RevCommit tip = commit(3);
+		List<Compaction> done = scheduler.compactAll(repo, null);
+		assertEquals(2, done.size());
+		assertEquals(0, done.get(0).getTier());
+		assertEquals(1, done.get(1).getTier());
+		assertEquals(1, odb.getPacks().length);
+		assertEquals(2, odb.getPacks()[0].getPackDescription()
+				.getCompactionTier());
+		assertTrue(odb.has(tip));
+	}
+
+	@Test
+	public void testGarbageCollectedPacksAreIgnored() throws Exception {
+		commit(3);
+		DfsGarbageCollector gc = new DfsGarbageCollector(repo);
+		gc.setGarbageTtl(0, TimeUnit.MILLISECONDS);
+		assertTrue(gc.pack(null));
+		odb.clearCache();
+		commit(2);
+
+		assertNull(scheduler.plan(repo));
+		assertEquals(1, countPacks(GC));
+	}
+
+	@Test
+	public void testPacksCompactedAfterPlanning() throws Exception {
+		RevCommit tip = commit(3);
+		scheduler.setMaxPacksPerTier(3);
+		assertEquals(3, odb.getPacks().length);
+
+		// Another task compacts the tier; the cached pack list still shows
+		// the packs it removed.
+		DfsPackCompactor other = new DfsPackCompactor(repo);
+		other.autoAdd();
+		other.compact(null);
+
+		assertNull(scheduler.compact(repo, null));
+		assertEquals(1, odb.getPacks().length);
+		assertTrue(odb.has(tip));
+	}
+
+	@Test
+	public void testSchedule() throws Exception {
+		RevCommit tip = commit(3);
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			scheduler = new DfsCompactionScheduler(pool).setMaxPacksPerTier(3);
+			Future<List<Compaction>> f = scheduler.schedule(repo);
+			assertNotNull(f);
+			assertEquals(1, f.get().size());
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(1, countPacks(COMPACT));
+		assertTrue(odb.has(tip));
+	}
+
+	private RevCommit commit(int n) throws Exception {
+		RevCommit c = null;
+		for (int i = 0; i < n; i++) {
+			// Each commit is written into its own INSERT pack.
+			TestRepository<InMemoryRepository>.CommitBuilder b = git.commit()
+					.message("commit " + i);
+			if (c != null)
+				b.parent(c);
+			c = b.create();
+		}
+		git.update("master", c);
+		return c;
+	}
+
+	private int countPacks(PackSource source) throws IOException {
+		int cnt = 0;
+		for (DfsPackFile pack : odb.getPacks()) {
+			if (pack.getPackDescription().getPackSource() == source) {
+				cnt++;
+			}
+		}
+		return cnt;
+	}
+}
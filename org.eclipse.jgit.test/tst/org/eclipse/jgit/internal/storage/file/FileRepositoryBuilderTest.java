@@ -115,6 +115,22 @@ public void unknownRepositoryFormatVersion() throws Exception {
 		}
 	}
 
+	@Test
+	public void openDoesNotWriteToRepository() throws Exception {
+		File dir = createTempDirectory("readonly.git");
+		FileUtils.mkdir(new File(dir, "objects"));
+		FileUtils.mkdir(new File(dir, "refs"));
+		write(new File(dir, Constants.HEAD), "ref: refs/heads/master\n");
+		long old = System.currentTimeMillis() - 60 * 1000;
+		assertTrue(dir.setLastModified(old));
+		old = dir.lastModified();
+
+		try (FileRepository repo = new FileRepository(dir)) {
+			assertEquals(dir, repo.getDirectory());
+		}
+		assertEquals(old, dir.lastModified());
+	}
+
 	@Test
 	public void absoluteGitDirRef() throws Exception {
 		Repository repo1 = createWorkRepository();
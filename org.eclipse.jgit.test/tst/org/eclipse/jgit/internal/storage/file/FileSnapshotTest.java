@@ -42,14 +42,22 @@
  */
 package org.eclipse.jgit.internal.storage.file;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.jgit.junit.JGitTestUtil;
+import org.eclipse.jgit.util.FS;
 import org.eclipse.jgit.util.FileUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -127,6 +135,64 @@ public void testNewFileNoWait() throws Exception {
 		assertTrue(save.isModified(f1));
 	}
 
+	/**
+	 * A modification within the same millisecond is detected if the file
+	 * system records nanoseconds.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testModifiedWithinMillisecond() throws Exception {
+		File f1 = createFile("nanos");
+		Instant t = Instant.ofEpochSecond(1500000000L, 123456000);
+		FS.DETECTED.setLastModified(f1, t);
+		assumeTrue(t.equals(FS.DETECTED.lastModifiedInstant(f1)));
+		FileSnapshot save = FileSnapshot.save(f1);
+		assertFalse(save.isModified(f1));
+
+		FS.DETECTED.setLastModified(f1, t.plusNanos(1000));
+		assertTrue(save.isModified(f1));
+		assertFalse(save.equals(FileSnapshot.save(f1)));
+	}
+
+	/**
+	 * A file read after the timestamp resolution of its file store is not
+	 * racily clean.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testNotRacyAfterTimestampResolution() throws Exception {
+		File f1 = createFile("resolution");
+		Duration resolution = FS.getFsTimestampResolution(trash.toPath());
+		assertTrue(resolution.compareTo(Duration.ZERO) > 0);
+		assumeTrue(resolution.toMillis() < 500);
+		Thread.sleep(resolution.toMillis() + 10);
+		FileSnapshot save = FileSnapshot.save(f1);
+		assertFalse(save.isModified(f1));
+	}
+
+	/**
+	 * The racy check of a file never writes probe files next to it.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testRacyCheckDoesNotWriteToDirectory() throws Exception {
+		File dir = new File(trash, "config");
+		File f = new File(dir, "file");
+		FileUtils.mkdirs(dir);
+		JGitTestUtil.write(f, "a");
+		Instant dirModified = Instant.now().minusSeconds(3600);
+		FS.DETECTED.setLastModified(dir, dirModified);
+		dirModified = FS.DETECTED.lastModifiedInstant(dir);
+
+		FileSnapshot save = FileSnapshot.save(f);
+		save.isModified(f);
+		assertEquals(dirModified, FS.DETECTED.lastModifiedInstant(dir));
+		assertArrayEquals(new String[] { "file" }, dir.list());
+	}
+
 	private File createFile(String string) throws IOException {
 		trash.mkdirs();
 		File f = File.createTempFile(string, "tdat", trash);
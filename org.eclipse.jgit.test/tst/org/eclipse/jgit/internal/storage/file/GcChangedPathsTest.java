@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.junit.TestRepository.BranchBuilder;
+import org.eclipse.jgit.junit.TestRepository.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GcChangedPathsTest extends GcTestCase {
+	private RevCommit c1;
+
+	private RevCommit c2;
+
+	private RevCommit c3;
+
+	private RevCommit c4;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		gc.setWriteChangedPaths(true);
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		c1 = bb.commit().add("a", "a").add("d/e/f", "f").add("d/g", "g")
+				.create();
+		c2 = bb.commit().add("a", "a2").create();
+		c3 = bb.commit().add("d/e/f", "f2").create();
+		c4 = bb.commit().rm("d/g").add("b", "b").create();
+	}
+
+	@Test
+	public void testMurmur3() {
+		assertEquals(0, murmur3(""));
+		assertEquals(0x627b0c2c, murmur3("Hello world!"));
+		assertEquals(0x2e4ff723,
+				murmur3("The quick brown fox jumps over the lazy dog"));
+	}
+
+	@Test
+	public void testNoFiltersWithoutConfig() throws Exception {
+		gc.setWriteChangedPaths(false);
+		gc.gc();
+		assertNull(repo.getObjectDatabase().getChangedPathFilters());
+		try (ObjectReader reader = repo.newObjectReader()) {
+			assertNull(reader.getChangedPathIndex());
+		}
+	}
+
+	@Test
+	public void testFiltersContainChangedPaths() throws Exception {
+		gc.gc();
+		ChangedPathFilters f = repo.getObjectDatabase()
+				.getChangedPathFilters();
+		assertNotNull(f);
+		assertEquals(4, f.size());
+
+		assertTrue(mayHaveChanged(f, c1, "a", "d", "d/e", "d/e/f", "d/g"));
+		assertTrue(mayHaveChanged(f, c2, "a"));
+		assertFalse(mayHaveChanged(f, c2, "d/e/f"));
+		assertTrue(mayHaveChanged(f, c3, "d", "d/e", "d/e/f"));
+		assertFalse(mayHaveChanged(f, c3, "a"));
+		assertFalse(mayHaveChanged(f, c3, "d/g"));
+		assertTrue(mayHaveChanged(f, c4, "b", "d", "d/g"));
+		assertFalse(mayHaveChanged(f, c4, "d/e"));
+
+		// A path below a changed file was not changed itself.
+		assertFalse(mayHaveChanged(f, c2, "a/x"));
+
+		RevCommit other = tr.commit().add("x", "x").create();
+		assertTrue(f.mayHaveChanged(other,
+				Collections.singleton(Constants.encode("a"))));
+	}
+
+	@Test
+	public void testTooManyChangedPaths() throws Exception {
+		CommitBuilder cb = tr.branch("refs/heads/master").commit();
+		for (int i = 0; i <= ChangedPathFilters.MAX_CHANGED_PATHS; i++)
+			cb.add("f" + i, "" + i);
+		RevCommit big = cb.create();
+		gc.gc();
+
+		ChangedPathFilters f = repo.getObjectDatabase()
+				.getChangedPathFilters();
+		assertTrue(mayHaveChanged(f, big, "not/changed"));
+		assertEquals(1, f.getFilter(big).length);
+	}
+
+	@Test
+	public void testFiltersReusedByNextGc() throws Exception {
+		gc.gc();
+		RevCommit c5 = tr.branch("refs/heads/master").commit()
+				.add("d/e/f", "f3").create();
+		gc.gc();
+
+		ChangedPathFilters f = repo.getObjectDatabase()
+				.getChangedPathFilters();
+		assertEquals(5, f.size());
+		assertTrue(mayHaveChanged(f, c5, "d/e/f"));
+		assertFalse(mayHaveChanged(f, c5, "a"));
+	}
+
+	@Test
+	public void testPathLimitedWalkSameWithFilters() throws Exception {
+		List<List<RevCommit>> before = new ArrayList<>();
+		for (String p : new String[] { "a", "b", "d", "d/e/f", "d/g", "x" })
+			before.add(log(p));
+		assertEquals(Arrays.asList(c3, c1), log("d/e/f"));
+
+		gc.gc();
+		assertNotNull(repo.getObjectDatabase().getChangedPathFilters());
+		int i = 0;
+		for (String p : new String[] { "a", "b", "d", "d/e/f", "d/g", "x" })
+			assertEquals(p, before.get(i++), log(p));
+	}
+
+	@Test
+	public void testPathLimitedWalkConsultsFilters() throws Exception {
+		gc.gc();
+		assertEquals(Arrays.asList(c3, c1), log("d/e/f"));
+
+		// Replace the filter of c3 with one claiming it changed nothing.
+		ChangedPathFilters old = repo.getObjectDatabase()
+				.getChangedPathFilters();
+		List<ChangedPathFilters.Filter> filters = new ArrayList<>();
+		for (RevCommit c : new RevCommit[] { c1, c2, c3, c4 }) {
+			byte[] bits = c == c3
+					? ChangedPathFilters.newFilter(
+							Collections.<byte[]> emptySet())
+					: old.getFilter(c);
+			filters.add(new ChangedPathFilters.Filter(c, bits));
+		}
+		Collections.sort(filters);
+		fsTick();
+		ChangedPathFilters.write(
+				repo.getObjectDatabase().getChangedPathsFile(), filters);
+
+		assertEquals(Arrays.asList(c1), log("d/e/f"));
+	}
+
+	private List<RevCommit> log(String path) throws Exception {
+		List<RevCommit> r = new ArrayList<>();
+		try (RevWalk rw = new RevWalk(repo)) {
+			rw.markStart(rw.parseCommit(repo.resolve(Constants.HEAD)));
+			rw.setTreeFilter(AndTreeFilter.create(
+					PathFilterGroup.createFromStrings(path),
+					TreeFilter.ANY_DIFF));
+			for (RevCommit c : rw)
+				r.add(c);
+		}
+		return r;
+	}
+
+	private static boolean mayHaveChanged(ChangedPathFilters f, RevCommit c,
+			String... paths) {
+		for (String p : paths) {
+			if (!f.mayHaveChanged(c,
+					Collections.singleton(Constants.encode(p))))
+				return false;
+		}
+		return true;
+	}
+
+	private static int murmur3(String s) {
+		byte[] b = Constants.encode(s);
+		return ChangedPathFilters.murmur3(0, b, b.length);
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Date;
+
+import org.eclipse.jgit.junit.TestRepository.BranchBuilder;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GcCruftPackTest extends GcTestCase {
+	private long now;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		now = System.currentTimeMillis() / 1000 * 1000;
+		gc.setCruftPacks(true);
+		gc.setPackExpireAgeMillis(0);
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		bb.commit().add("A", "A").create();
+	}
+
+	@Test
+	public void unreachableNonExpiredObject_packedWithMtime()
+			throws Exception {
+		RevBlob a = looseBlob("a", now - 100000);
+		gc.setExpire(new Date(now - 200000));
+		gc.gc();
+
+		stats = gc.getStatistics();
+		assertEquals(0, stats.numberOfLooseObjects);
+		assertEquals(2, stats.numberOfPackFiles);
+		assertTrue(repo.hasObject(a));
+		assertEquals(now - 100000, cruftMtime(a));
+	}
+
+	@Test
+	public void unreachableExpiredObject_notPacked() throws Exception {
+		RevBlob a = looseBlob("a", now - 100000);
+		gc.setExpire(new Date(now - 50000));
+		gc.gc();
+
+		stats = gc.getStatistics();
+		assertEquals(0, stats.numberOfLooseObjects);
+		assertEquals(1, stats.numberOfPackFiles);
+		assertFalse(repo.hasObject(a));
+		assertNull(cruftPack());
+	}
+
+	@Test
+	public void cruftPackRewrite_dropsExpiredObjects() throws Exception {
+		RevBlob a = looseBlob("a", now - 100000);
+		RevBlob b = looseBlob("b", now - 10000);
+		gc.setExpire(new Date(now - 200000));
+		gc.gc();
+		assertEquals(now - 100000, cruftMtime(a));
+		assertEquals(now - 10000, cruftMtime(b));
+
+		fsTick();
+		gc.setExpire(new Date(now - 50000));
+		gc.gc();
+
+		stats = gc.getStatistics();
+		assertEquals(0, stats.numberOfLooseObjects);
+		assertEquals(2, stats.numberOfPackFiles);
+		assertFalse(repo.hasObject(a));
+		assertTrue(repo.hasObject(b));
+		assertEquals(now - 10000, cruftMtime(b));
+	}
+
+	@Test
+	public void cruftObjectReferencedAgain_movedToReachablePack()
+			throws Exception {
+		RevBlob a = looseBlob("a", now - 100000);
+		gc.setExpire(new Date(now - 200000));
+		gc.gc();
+		assertNotNull(cruftPack());
+
+		fsTick();
+		tr.branch("refs/heads/other").commit().add("a", a).create();
+		gc.gc();
+
+		stats = gc.getStatistics();
+		assertEquals(0, stats.numberOfLooseObjects);
+		assertEquals(1, stats.numberOfPackFiles);
+		assertTrue(repo.hasObject(a));
+		assertNull(cruftPack());
+	}
+
+	private RevBlob looseBlob(String content, long mtime) throws Exception {
+		RevBlob blob = tr.blob(content);
+		File f = repo.getObjectDatabase().fileFor(blob);
+		assertTrue(f.setLastModified(mtime));
+		return blob;
+	}
+
+	private PackFile cruftPack() {
+		for (PackFile p : repo.getObjectDatabase().getPacks())
+			if (mtimesFile(p).exists())
+				return p;
+		return null;
+	}
+
+	private long cruftMtime(AnyObjectId id) throws Exception {
+		PackFile p = cruftPack();
+		assertNotNull(p);
+		PackMtimes mtimes = PackMtimes.open(mtimesFile(p), p.getIndex());
+		int nth = 0;
+		for (PackIndex.MutableEntry e : p) {
+			if (id.equals(e.toObjectId()))
+				return mtimes.getMtime(nth);
+			nth++;
+		}
+		throw new AssertionError(id.name() + " is not in the cruft pack");
+	}
+
+	private static File mtimesFile(PackFile p) {
+		String name = p.getPackFile().getName();
+		return new File(p.getPackFile().getParentFile(),
+				name.substring(0, name.lastIndexOf('.')) + ".mtimes");
+	}
+}
@@ -45,6 +45,7 @@
 
 import static org.eclipse.jgit.internal.storage.pack.PackWriter.NONE;
 import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -292,6 +293,30 @@ public void testWritePack1NoObjectReuse() throws IOException {
 		writeVerifyPack1();
 	}
 
+	/**
+	 * Test writing pack without object reuse, compressing objects on several
+	 * threads. The output must be identical to the single threaded writer.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testWritePack1NoObjectReuseParallelDeflate() throws Exception {
+		config.setReuseDeltas(false);
+		config.setReuseObjects(false);
+		ByteArrayOutputStream serial = new ByteArrayOutputStream();
+		try (PackWriter pw = new PackWriter(config, db.newObjectReader())) {
+			NullProgressMonitor m = NullProgressMonitor.INSTANCE;
+			pw.preparePack(m, Collections.singleton(ObjectId
+					.fromString("82c6b885ff600be425b4ea96dee75dca255b69e7")),
+					NONE);
+			pw.writePack(m, m, serial);
+		}
+
+		config.setDeflateThreads(4);
+		writeVerifyPack1();
+		assertArrayEquals(serial.toByteArray(), os.toByteArray());
+	}
+
 	/**
 	 * Create pack basing on both interesting and uninteresting objects, then
 	 * precisely verify content. No delta reuse here.
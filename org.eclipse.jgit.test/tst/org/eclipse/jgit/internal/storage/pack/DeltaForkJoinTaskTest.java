@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.pack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import org.eclipse.jgit.internal.storage.file.GcTestCase;
+import org.eclipse.jgit.junit.TestRepository.BranchBuilder;
+import org.eclipse.jgit.junit.TestRepository.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ThreadSafeProgressMonitor;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.eclipse.jgit.storage.pack.PackStatistics;
+import org.eclipse.jgit.util.io.NullOutputStream;
+import org.junit.Test;
+
+public class DeltaForkJoinTaskTest extends GcTestCase {
+	private static final int PATHS = 32;
+
+	private static final int VERSIONS = 4;
+
+	@Test
+	public void testWorkStealingSearchFindsDeltas() throws Exception {
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		RevCommit tip = null;
+		for (int v = 0; v < VERSIONS; v++) {
+			CommitBuilder cb = bb.commit().message("v" + v);
+			for (int p = 0; p < PATHS; p++)
+				cb.add("f" + p, content(p, v));
+			tip = cb.create();
+		}
+
+		PackConfig config = new PackConfig(repo);
+		config.setDeltaCompress(true);
+		config.setThreads(1);
+		PackStatistics single = pack(config, tip);
+
+		config.setThreads(4);
+		config.setDeltaSearchWorkStealing(true);
+		PackStatistics stealing = pack(config, tip);
+		assertEquals(VERSIONS * (PATHS + 2), stealing.getTotalObjects());
+		assertTrue("blob deltas", stealing.getTotalDeltas() > 0);
+		assertEquals(single.getTotalDeltas(), stealing.getTotalDeltas());
+		assertNotNull(stealing.getDeltaSearchThreadTimes());
+	}
+
+	@Test
+	public void testSearchIsSplitOnPathBoundaries() throws Exception {
+		ObjectToPack[] list = new ObjectToPack[PATHS * VERSIONS];
+		for (int p = 0; p < PATHS; p++) {
+			for (int v = 0; v < VERSIONS; v++) {
+				RevBlob blob = tr.blob(content(p, v));
+				ObjectToPack otp = new ObjectToPack(blob,
+						Constants.OBJ_BLOB);
+				otp.setPathHash(p);
+				otp.setWeight(4096);
+				list[p * VERSIONS + v] = otp;
+			}
+		}
+
+		PackConfig config = new PackConfig(repo);
+		ThreadSafeProgressMonitor pm = new ThreadSafeProgressMonitor(
+				NullProgressMonitor.INSTANCE);
+		ForkJoinPool pool = new ForkJoinPool(1);
+		try (ObjectReader reader = repo.newObjectReader()) {
+			// All paths weigh the same, halving the 32 paths until a range
+			// is no heavier than an eighth of the total leaves 8 ranges.
+			DeltaForkJoinTask.Search search = new DeltaForkJoinTask.Search(
+					config, reader, pm, list, list.length, 1, 0);
+			try {
+				pool.invoke(new DeltaForkJoinTask(search, 0, list.length));
+				assertEquals(8, search.getRangeCount());
+			} finally {
+				search.close();
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		// No path was cut, each still finds deltas for all but one version.
+		int deltas = 0;
+		for (ObjectToPack otp : list)
+			if (otp.isDeltaRepresentation())
+				deltas++;
+		assertEquals(PATHS * (VERSIONS - 1), deltas);
+	}
+
+	private PackStatistics pack(PackConfig config, RevCommit tip)
+			throws Exception {
+		try (ObjectReader reader = repo.newObjectReader();
+				PackWriter pw = new PackWriter(config, reader)) {
+			NullProgressMonitor m = NullProgressMonitor.INSTANCE;
+			pw.preparePack(m, Collections.<ObjectId> singleton(tip),
+					PackWriter.NONE);
+			pw.writePack(m, m, NullOutputStream.INSTANCE);
+			return pw.getStatistics();
+		}
+	}
+
+	private static String content(int path, int version) {
+		StringBuilder b = new StringBuilder();
+		for (int line = 0; line < 200; line++)
+			b.append("path ").append(path).append(" line ").append(line)
+					.append('\n');
+		b.append("version ").append(version).append('\n');
+		return b.toString();
+	}
+}
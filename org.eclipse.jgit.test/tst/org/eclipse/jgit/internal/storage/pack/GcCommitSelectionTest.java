@@ -44,6 +44,7 @@
 package org.eclipse.jgit.internal.storage.pack;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -58,9 +59,11 @@
 import org.eclipse.jgit.internal.storage.pack.PackWriterBitmapPreparer.BitmapCommit;
 import org.eclipse.jgit.junit.TestRepository.BranchBuilder;
 import org.eclipse.jgit.junit.TestRepository.CommitBuilder;
+import org.eclipse.jgit.lib.BitmapIndex;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.storage.pack.PackConfig;
 import org.junit.Test;
@@ -207,6 +210,66 @@ public void testBitmapsForExcessiveBranches() throws Exception {
 				gc.getStatistics().numberOfBitmaps);
 	}
 
+	@Test
+	public void testBitmapsForExcessiveBranchesTipsOnly() throws Exception {
+		int oneDayInSeconds = 60 * 60 * 24;
+
+		// All of branch A is committed on day1
+		BranchBuilder bbA = tr.branch("refs/heads/A");
+		RevCommit tipA = null;
+		for (int i = 0; i < 1001; i++) {
+			String msg = "A" + i;
+			tipA = bbA.commit().message(msg).add(msg, msg).create();
+		}
+		// All of in branch B is committed on day91
+		tr.tick(oneDayInSeconds * 90);
+		BranchBuilder bbB = tr.branch("refs/heads/B");
+		for (int i = 0; i < 1001; i++) {
+			String msg = "B" + i;
+			bbB.commit().message(msg).add(msg, msg).create();
+		}
+		// Create 100 other branches with a single commit
+		for (int i = 0; i < 100; i++) {
+			BranchBuilder bb = tr.branch("refs/heads/N" + i);
+			String msg = "singlecommit" + i;
+			bb.commit().message(msg).add(msg, msg).create();
+		}
+		// now is day92
+		tr.tick(oneDayInSeconds);
+
+		// The inactive branch A only gets a bitmap at its tip.
+		final int commitsForTipOnlyBranch = 1;
+		final int commitsForFullBranch = 100 + (901 / 200);
+		final int commitsForShallowBranches = 100;
+
+		PackConfig packConfig = new PackConfig(repo);
+		packConfig.setBitmapInactiveBranchTipsOnly(true);
+		gc.setPackConfig(packConfig);
+		gc.setPackExpireAgeMillis(0); // immediately delete old packs
+		gc.setExpireAgeMillis(0);
+		gc.gc();
+		assertEquals(
+				commitsForTipOnlyBranch + commitsForFullBranch
+						+ commitsForShallowBranches,
+				gc.getStatistics().numberOfBitmaps);
+		try (ObjectReader reader = repo.newObjectReader()) {
+			assertNotNull(reader.getBitmapIndex().getBitmap(tipA));
+		}
+
+		// A second repack carries the tip bitmap of A over.
+		gc.gc();
+		assertEquals(
+				commitsForTipOnlyBranch + commitsForFullBranch
+						+ commitsForShallowBranches,
+				gc.getStatistics().numberOfBitmaps);
+		try (ObjectReader reader = repo.newObjectReader()) {
+			// Each commit of A adds a new tree and blob.
+			BitmapIndex index = reader.getBitmapIndex();
+			assertEquals(3 * 1001, index.newBitmapBuilder()
+					.or(index.getBitmap(tipA)).cardinality());
+		}
+	}
+
 	@Test
 	public void testSelectionOrderingWithChains() throws Exception {
 		/*-
@@ -50,10 +50,20 @@
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jgit.api.CheckoutCommand;
 import org.eclipse.jgit.api.CheckoutResult;
@@ -237,6 +247,114 @@ public void testInitialCheckout() throws Exception {
 		}
 	}
 
+	@Test
+	public void testParallelCheckout() throws Exception {
+		StoredConfig cfg = db.getConfig();
+		cfg.setInt(ConfigConstants.CONFIG_CHECKOUT_SECTION, null,
+				ConfigConstants.CONFIG_KEY_WORKERS, 4);
+		cfg.setInt(ConfigConstants.CONFIG_CHECKOUT_SECTION, null,
+				ConfigConstants.CONFIG_KEY_THRESHOLD_FOR_PARALLELISM, 1);
+		cfg.save();
+
+		try (Git git = new Git(db)) {
+			TestRepository<Repository> db_t = new TestRepository<Repository>(db);
+			BranchBuilder master = db_t.branch("master");
+			TestRepository<Repository>.CommitBuilder c = master.commit();
+			for (int i = 0; i < 60; i++)
+				c.add("d" + (i % 6) + "/sub/f" + i, "content" + i);
+			c.add("top", "top").message("m0").create();
+
+			git.checkout().setName("master").call();
+			for (int i = 0; i < 60; i++)
+				assertEquals("content" + i,
+						read("d" + (i % 6) + "/sub/f" + i));
+			assertEquals("top", read("top"));
+			assertEquals(61, db.readDirCache().getEntryCount());
+			assertTrue(git.status().call().isClean());
+		}
+	}
+
+	@Test
+	public void testParallelCheckoutWaitsForTasksWhenInterrupted()
+			throws Exception {
+		StoredConfig cfg = db.getConfig();
+		cfg.setInt(ConfigConstants.CONFIG_CHECKOUT_SECTION, null,
+				ConfigConstants.CONFIG_KEY_THRESHOLD_FOR_PARALLELISM, 1);
+		cfg.save();
+		TestRepository<Repository> db_t = new TestRepository<Repository>(db);
+		TestRepository<Repository>.CommitBuilder c = db_t.branch("master")
+				.commit();
+		for (int i = 0; i < 20; i++)
+			c.add("d" + i + "/f", "content" + i);
+		final RevCommit commit = db_t.getRevWalk()
+				.parseCommit(c.message("m0").create());
+
+		// Tasks are running, but only write once the checkout was interrupted.
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(2, 2, 0,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()) {
+			@Override
+			protected <T> RunnableFuture<T> newTaskFor(
+					final Callable<T> task) {
+				return new FutureTask<>(new Callable<T>() {
+					@Override
+					public T call() throws Exception {
+						started.countDown();
+						for (;;) {
+							try {
+								release.await();
+								return task.call();
+							} catch (InterruptedException e) {
+								// Keep the task blocked until released.
+							}
+						}
+					}
+				});
+			}
+		};
+		final AtomicInteger writtenAtReturn = new AtomicInteger(-1);
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+		Thread checkout = new Thread() {
+			@Override
+			public void run() {
+				try {
+					DirCacheCheckout dco = new DirCacheCheckout(db,
+							db.lockDirCache(), commit.getTree());
+					dco.setExecutor(pool);
+					dco.checkout();
+				} catch (Exception e) {
+					failure.set(e);
+				} finally {
+					writtenAtReturn.set(countFiles(20));
+				}
+			}
+		};
+		try {
+			checkout.start();
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+			checkout.interrupt();
+			Thread.sleep(200);
+			release.countDown();
+			checkout.join(10000);
+			assertFalse(checkout.isAlive());
+		} finally {
+			release.countDown();
+			pool.shutdown();
+		}
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+		assertTrue(failure.get() instanceof InterruptedIOException);
+		assertEquals(writtenAtReturn.get(), countFiles(20));
+	}
+
+	private int countFiles(int dirs) {
+		int n = 0;
+		for (int i = 0; i < dirs; i++)
+			if (new File(trash, "d" + i + "/f").exists())
+				n++;
+		return n;
+	}
+
 	private DirCacheCheckout resetHard(RevCommit commit)
 			throws NoWorkTreeException,
 			CorruptObjectException, IOException {
@@ -56,7 +56,10 @@
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.MergeResult;
@@ -73,7 +76,9 @@
 import org.eclipse.jgit.merge.MergeStrategy;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.util.FileChangeMonitor;
 import org.eclipse.jgit.util.IO;
 import org.junit.Test;
 
@@ -515,6 +520,186 @@ public void testUntrackedNotIgnoredFolders() throws Exception {
 		}
 	}
 
+	@Test
+	public void testFileChangeMonitor() throws Exception {
+		ScriptedMonitor monitor = new ScriptedMonitor();
+		try (Git git = new Git(db)) {
+			writeTrashFile("a", "a");
+			writeTrashFile("b", "b");
+			git.add().addFilepattern(".").call();
+			git.commit().setMessage("initial").call();
+		}
+
+		// Without a token every file is examined, the clean ones are stored.
+		// The index is only updated if it cannot have changed since it was
+		// read, make it old enough for its modification time to be trusted.
+		backdateIndex();
+		IndexDiff diff = new IndexDiff(db, Constants.HEAD,
+				new FileTreeIterator(db));
+		diff.setFileChangeMonitor(monitor);
+		assertFalse(diff.diff());
+		DirCache dc = db.readDirCache();
+		assertEquals("1", dc.getFileMonitorToken());
+
+		// A change the monitor does not report is not seen.
+		File b = writeTrashFile("b", "x");
+		assertTrue(b.setLastModified(b.lastModified() - 10000));
+		monitor.changed = Collections.emptySet();
+		diff = new IndexDiff(db, Constants.HEAD, new FileTreeIterator(db));
+		diff.setFileChangeMonitor(monitor);
+		assertFalse(diff.diff());
+		// Nothing changed, the index keeps the still valid first token.
+		assertEquals("1", db.readDirCache().getFileMonitorToken());
+
+		monitor.changed = Collections.singleton("b");
+		backdateIndex();
+		diff = new IndexDiff(db, Constants.HEAD, new FileTreeIterator(db));
+		diff.setFileChangeMonitor(monitor);
+		assertTrue(diff.diff());
+		assertEquals(Collections.singleton("b"), diff.getModified());
+		assertEquals("3", db.readDirCache().getFileMonitorToken());
+
+		// Modified entries stay dirty even if no longer reported.
+		monitor.changed = Collections.emptySet();
+		diff = new IndexDiff(db, Constants.HEAD, new FileTreeIterator(db));
+		diff.setFileChangeMonitor(monitor);
+		assertTrue(diff.diff());
+		assertEquals(Collections.singleton("b"), diff.getModified());
+		assertEquals("3", db.readDirCache().getFileMonitorToken());
+	}
+
+	private void backdateIndex() {
+		File index = db.getIndexFile();
+		assertTrue(index.setLastModified(index.lastModified() - 10000));
+	}
+
+	private static class ScriptedMonitor implements FileChangeMonitor {
+		int tokens;
+
+		Set<String> changed;
+
+		@Override
+		public Changes getChanges(String token) {
+			return new Changes(String.valueOf(++tokens),
+					token != null ? changed : null);
+		}
+
+		@Override
+		public void close() {
+			// Nothing to release.
+		}
+	}
+
+	@Test
+	public void testParallelDiff() throws Exception {
+		try (Git git = new Git(db)) {
+			writeTrashFile("readme", "");
+			writeTrashFile("removed", "");
+			writeTrashFile("src/com/A.java", "");
+			writeTrashFile("src/com/B.java", "");
+			writeTrashFile("src/org/C.java", "");
+			writeTrashFile("doc/index.html", "");
+			writeTrashFile(".gitignore", "/target\n*.class");
+			git.add().addFilepattern(".").call();
+			git.commit().setMessage("initial").call();
+
+			writeTrashFile("readme", "modified");
+			deleteTrashFile("src/com/B.java");
+			git.rm().addFilepattern("removed").call();
+			writeTrashFile("src/org/D.java", "");
+			git.add().addFilepattern("src/org/D.java").call();
+			writeTrashFile("src/org/C.java", "changed");
+			git.add().addFilepattern("src/org/C.java").call();
+			writeTrashFile("src/org/C.class", "");
+			writeTrashFile("src/tst/A.java", "");
+			writeTrashFile("target/com/A.class", "");
+			writeTrashFile("untracked/a", "");
+			writeTrashFile("new", "");
+
+			IndexDiff expected = new IndexDiff(db, Constants.HEAD,
+					new FileTreeIterator(db));
+			expected.diff();
+
+			ExecutorService executor = Executors.newFixedThreadPool(3);
+			try {
+				IndexDiff diff = new IndexDiff(db, Constants.HEAD,
+						new FileTreeIterator(db));
+				diff.setExecutor(executor);
+				assertTrue(diff.diff());
+
+				assertEquals(expected.getAdded(), diff.getAdded());
+				assertEquals(expected.getChanged(), diff.getChanged());
+				assertEquals(expected.getRemoved(), diff.getRemoved());
+				assertEquals(expected.getMissing(), diff.getMissing());
+				assertEquals(expected.getModified(), diff.getModified());
+				assertEquals(expected.getUntracked(), diff.getUntracked());
+				assertEquals(expected.getConflicting(), diff.getConflicting());
+				assertEquals(expected.getIgnoredNotInIndex(),
+						diff.getIgnoredNotInIndex());
+				assertEquals(expected.getUntrackedFolders(),
+						diff.getUntrackedFolders());
+				assertEquals(
+						expected.getPathsWithIndexMode(FileMode.REGULAR_FILE),
+						diff.getPathsWithIndexMode(FileMode.REGULAR_FILE));
+
+				assertEquals(new HashSet<String>(Arrays.asList("src/org/D.java")),
+						diff.getAdded());
+				assertEquals(new HashSet<String>(Arrays.asList("src/com/B.java")),
+						diff.getMissing());
+				assertEquals(new HashSet<String>(Arrays.asList("src/tst",
+						"untracked")), diff.getUntrackedFolders());
+				assertEquals(new HashSet<String>(Arrays.asList("target",
+						"src/org/C.class")), diff.getIgnoredNotInIndex());
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void testParallelKeepsCustomWorkingTreeIterator() throws Exception {
+		try (Git git = new Git(db)) {
+			writeTrashFile("a", "a");
+			writeTrashFile("dir/b", "b");
+			git.add().addFilepattern(".").call();
+			git.commit().setMessage("initial").call();
+
+			ExecutorService executor = Executors.newFixedThreadPool(2);
+			try {
+				IndexDiff diff = new IndexDiff(db, Constants.HEAD,
+						new AlwaysModifiedIterator(db));
+				diff.setExecutor(executor);
+				assertTrue(diff.diff());
+				assertEquals(new HashSet<String>(Arrays.asList("a", "dir/b")),
+						diff.getModified());
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+
+	private static class AlwaysModifiedIterator extends FileTreeIterator {
+		AlwaysModifiedIterator(Repository repo) {
+			super(repo);
+		}
+
+		AlwaysModifiedIterator(AlwaysModifiedIterator p, File root) {
+			super(p, root, p.fs);
+		}
+
+		@Override
+		public AbstractTreeIterator createSubtreeIterator(ObjectReader reader) {
+			return new AlwaysModifiedIterator(this,
+					((FileEntry) current()).getFile());
+		}
+
+		@Override
+		public boolean isModified(DirCacheEntry entry, boolean forceContentCheck,
+				ObjectReader reader) {
+			return true;
+		}
+	}
+
 	@Test
 	public void testAssumeUnchanged() throws Exception {
 		try (Git git = new Git(db)) {
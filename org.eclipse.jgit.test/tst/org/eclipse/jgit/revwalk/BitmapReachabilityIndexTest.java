@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.revwalk;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.junit.Test;
+
+public class BitmapReachabilityIndexTest extends RevWalkTestCase {
+	@Test
+	public void testNoBitmaps() throws Exception {
+		commit();
+		try (ObjectReader reader = db.newObjectReader()) {
+			assertNull(BitmapReachabilityIndex.create(reader));
+		}
+	}
+
+	@Test
+	public void testReachability() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		RevCommit c = commit(b);
+		RevCommit d = commit(b);
+		branch("master", c);
+		branch("side", d);
+		tag("v1", b);
+		new GC(db).gc();
+
+		// e is not covered by the bitmaps of the pack.
+		RevCommit e = commit(c);
+		branch("master", e);
+		Ref master = db.exactRef("refs/heads/master");
+		Ref side = db.exactRef("refs/heads/side");
+		Ref v1 = db.exactRef("refs/tags/v1");
+		List<Ref> refs = asList(master, side, v1);
+
+		try (ObjectReader reader = db.newObjectReader();
+				BitmapReachabilityIndex index = BitmapReachabilityIndex
+						.create(reader)) {
+			assertNotNull(index);
+			assertTrue(index.isReachable(b, e));
+			assertTrue(index.isReachable(e, e));
+			assertFalse(index.isReachable(d, e));
+			assertFalse(index.isReachable(c, d));
+
+			assertEquals(refs, index.findRefsContaining(b, refs));
+			assertEquals(asList(master), index.findRefsContaining(c, refs));
+			assertEquals(asList(side), index.findRefsContaining(d, refs));
+
+			assertEquals(2, index.count(e, b));
+			assertEquals(1, index.count(d, c));
+			assertEquals(0, index.count(a, e));
+		}
+	}
+
+	@Test
+	public void testSmallCache() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		RevCommit c = commit(a);
+		branch("b", b);
+		branch("c", c);
+		new GC(db).gc();
+
+		try (ObjectReader reader = db.newObjectReader();
+				BitmapReachabilityIndex index = BitmapReachabilityIndex
+						.create(reader)) {
+			index.setCacheSize(1);
+			for (int i = 0; i < 2; i++) {
+				assertTrue(index.isReachable(a, b));
+				assertTrue(index.isReachable(a, c));
+				assertFalse(index.isReachable(b, c));
+				assertFalse(index.isReachable(c, b));
+			}
+		}
+	}
+
+	@Test
+	public void testDescribeUsesSameDepths() throws Exception {
+		// More tagged branches than describe follows with its walk.
+		RevCommit base = commit();
+		RevCommit tip = base;
+		for (int i = 0; i < 12; i++) {
+			RevCommit side = base;
+			for (int j = 0; j < 1 + (i * 7) % 5; j++)
+				side = commit(side);
+			tag("t" + i, side);
+			tip = commit(tip, side);
+		}
+		tip = commit(commit(tip));
+		branch("master", tip);
+
+		String expected = Git.wrap(db).describe().setTarget(tip).call();
+		assertNotNull(expected);
+		new GC(db).gc();
+		try (ObjectReader reader = db.newObjectReader()) {
+			assertNotNull(BitmapReachabilityIndex.create(reader));
+		}
+		assertEquals(expected,
+				Git.wrap(db).describe().setTarget(tip).call());
+	}
+
+	private void branch(String name, RevCommit dst) throws Exception {
+		RefUpdate u = db.updateRef("refs/heads/" + name);
+		u.setNewObjectId(dst);
+		u.forceUpdate();
+	}
+
+	private void tag(String name, RevCommit dst) throws Exception {
+		Git.wrap(db).tag().setName(name).setObjectId(dst).call();
+	}
+}
@@ -653,6 +653,27 @@ public void testCustomFileModeStrategyFromParentIterator() throws Exception {
 		}
 	}
 
+	@Test
+	public void testAttributesReadOncePerEntry() throws Exception {
+		FileTreeIterator fti = new FileTreeIterator(db);
+		try (TreeWalk tw = new TreeWalk(db)) {
+			tw.addTree(fti);
+			tw.setRecursive(true);
+			int files = 0;
+			while (tw.next()) {
+				WorkingTreeIterator f = tw.getTree(0, WorkingTreeIterator.class);
+				f.getEntryLength();
+				f.getEntryLastModifiedInstant();
+				f.getEntryObjectId();
+				files++;
+			}
+			assertEquals(paths.length, files);
+		}
+		// The work tree and "a", every entry including ".git" read once.
+		assertEquals(2, fti.getDirectoryReadCount());
+		assertEquals(paths.length + 2, fti.getAttributeReadCount());
+	}
+
 
 	private static void assertEntry(String sha1string, String path, TreeWalk tw)
 			throws MissingObjectException, IncorrectObjectTypeException,
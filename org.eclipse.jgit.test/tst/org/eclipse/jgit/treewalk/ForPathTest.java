@@ -45,6 +45,7 @@
 package org.eclipse.jgit.treewalk;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheBuilder;
@@ -66,10 +67,53 @@ public class ForPathTest extends RepositoryTestCase {
 
 	@Test
 	public void testFindObjects() throws Exception {
+		findObjects(null);
+	}
+
+	@Test
+	public void testFindObjectsWithTreeTableCache() throws Exception {
+		TreeTableCache cache = new TreeTableCache();
+		findObjects(cache);
+		assertTrue(0 < cache.getHitCount());
+		// The root and "a"; the walks parse the directory holding each path.
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testTreeTableCacheWithSeveralTrees() throws Exception {
+		ObjectId t1, t2;
+		DirCacheEntry aSlashB = createEntry("a/b", REGULAR_FILE);
+		try (ObjectInserter oi = db.newObjectInserter()) {
+			DirCache dc = DirCache.newInCore();
+			DirCacheBuilder b = dc.builder();
+			b.add(aSlashB);
+			b.finish();
+			t1 = dc.writeTree(oi);
+
+			dc = DirCache.newInCore();
+			b = dc.builder();
+			b.add(createEntry("c/d", REGULAR_FILE));
+			b.finish();
+			t2 = dc.writeTree(oi);
+		}
+
+		try (ObjectReader or = db.newObjectReader()) {
+			or.setTreeTableCache(new TreeTableCache());
+			TreeWalk tw = TreeWalk.forPath(or, "a/b", t2, t1);
+			assertEquals("a/b", tw.getPathString());
+			assertEquals(FileMode.MISSING, tw.getFileMode(0));
+			assertEquals(aSlashB.getObjectId(), tw.getObjectId(1));
+			assertEquals(null, TreeWalk.forPath(or, "a/b", t2));
+			assertEquals(null, TreeWalk.forPath(or, "a/c", t1, t2));
+		}
+	}
+
+	private void findObjects(TreeTableCache cache) throws Exception {
 		final DirCache tree0 = DirCache.newInCore();
 		final DirCacheBuilder b0 = tree0.builder();
 		try (ObjectReader or = db.newObjectReader();
 				ObjectInserter oi = db.newObjectInserter()) {
+			or.setTreeTableCache(cache);
 
 			DirCacheEntry aDotB = createEntry("a.b", EXECUTABLE_FILE);
 			b0.add(aDotB);
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.treewalk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatCacheTest extends RepositoryTestCase {
+	private static final long PAST = 1500000000000L;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		StoredConfig config = db.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_STAT_CACHE, true);
+		config.save();
+	}
+
+	@Test
+	public void testIdIsCachedAndPersisted() throws Exception {
+		File f = writeTrashFile("a", "content");
+		assertTrue(f.setLastModified(PAST));
+
+		FileTreeIterator fti = new FileTreeIterator(db);
+		assertEquals("a", fti.getEntryPathString());
+		assertNull(fti.getCachedEntryObjectId());
+		assertEquals(blobId("content"), fti.getEntryObjectId());
+		assertEquals(1, fti.getStatCache().size());
+		fti.getStatCache().write();
+
+		StatCache cache = StatCache.read(db);
+		assertEquals(1, cache.size());
+
+		// Same size, mtime and inode: the file is not read again.
+		write(f, "CONTENT");
+		assertTrue(f.setLastModified(PAST));
+		fti = new FileTreeIterator(db);
+		fti.setStatCache(cache);
+		assertEquals(blobId("content"), fti.getCachedEntryObjectId());
+		assertEquals(blobId("content"), fti.getEntryObjectId());
+	}
+
+	@Test
+	public void testModifiedFileIsRehashed() throws Exception {
+		File f = writeTrashFile("a", "content");
+		assertTrue(f.setLastModified(PAST));
+		FileTreeIterator fti = new FileTreeIterator(db);
+		assertEquals(blobId("content"), fti.getEntryObjectId());
+		StatCache cache = fti.getStatCache();
+
+		assertTrue(f.setLastModified(PAST + 1000));
+		write(f, "CONTENT");
+		assertTrue(f.setLastModified(PAST + 1000));
+		fti = new FileTreeIterator(db);
+		fti.setStatCache(cache);
+		assertNull(fti.getCachedEntryObjectId());
+		assertEquals(blobId("CONTENT"), fti.getEntryObjectId());
+		assertEquals(blobId("CONTENT"), fti.getCachedEntryObjectId());
+	}
+
+	@Test
+	public void testFilterChangeInvalidates() throws Exception {
+		File f = writeTrashFile("a", "line\r\n");
+		assertTrue(f.setLastModified(PAST));
+		FileTreeIterator fti = new FileTreeIterator(db);
+		assertEquals(blobId("line\r\n"), fti.getEntryObjectId());
+		StatCache cache = fti.getStatCache();
+
+		db.getConfig().setString(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_AUTOCRLF, "true");
+		fti = new FileTreeIterator(db);
+		fti.setStatCache(cache);
+		assertNull(fti.getCachedEntryObjectId());
+		assertEquals(blobId("line\n"), fti.getEntryObjectId());
+	}
+
+	@Test
+	public void testRacyFileIsNotCached() throws Exception {
+		writeTrashFile("a", "content");
+		FileTreeIterator fti = new FileTreeIterator(db);
+		assertEquals(blobId("content"), fti.getEntryObjectId());
+		assertEquals(0, fti.getStatCache().size());
+	}
+
+	@Test
+	public void testDisabledByDefault() throws Exception {
+		StoredConfig config = db.getConfig();
+		config.unset(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_STAT_CACHE);
+		config.save();
+		FileTreeIterator fti = new FileTreeIterator(db);
+		assertNull(fti.getStatCache());
+	}
+
+	@Test
+	public void testAddRecordsIds() throws Exception {
+		File f = writeTrashFile("a", "content");
+		assertTrue(f.setLastModified(PAST));
+		try (Git git = new Git(db)) {
+			git.add().addFilepattern("a").call();
+		}
+		StatCache cache = StatCache.read(db);
+		assertEquals(1, cache.size());
+		FileTreeIterator fti = new FileTreeIterator(db);
+		fti.setStatCache(cache);
+		ObjectId id = fti.getCachedEntryObjectId();
+		assertNotNull(id);
+		assertEquals(blobId("content"), id);
+		assertEquals(id, db.readDirCache().getEntry("a").getObjectId());
+	}
+
+	private static ObjectId blobId(String content) {
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			return fmt.idFor(Constants.OBJ_BLOB, Constants.encode(content));
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.treewalk;
+
+import static org.eclipse.jgit.lib.Constants.encode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.MutableObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TreeTableCacheTest extends RepositoryTestCase {
+	private static final int FILE = FileMode.REGULAR_FILE.getBits();
+
+	private static final int TREE = FileMode.TREE.getBits();
+
+	private TestRepository<Repository> testDb;
+
+	private ObjectReader reader;
+
+	private MutableObjectId id;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		testDb = new TestRepository<>(db);
+		reader = db.newObjectReader();
+		id = new MutableObjectId();
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		reader.close();
+		super.tearDown();
+	}
+
+	@Test
+	public void testFindPath() throws Exception {
+		RevBlob a = testDb.blob("a");
+		RevBlob b = testDb.blob("b");
+		RevBlob c = testDb.blob("c");
+		RevTree tree = testDb.tree(testDb.file("a-b", a),
+				testDb.file("a/b/c", c), testDb.file("a0", b),
+				testDb.file("b", b));
+		TreeTableCache cache = new TreeTableCache();
+
+		assertEquals(FILE, find(cache, tree, "a-b"));
+		assertEquals(a, id);
+		assertEquals(FILE, find(cache, tree, "a0"));
+		assertEquals(b, id);
+		assertEquals(FILE, find(cache, tree, "b"));
+		assertEquals(b, id);
+		assertEquals(FILE, find(cache, tree, "a/b/c"));
+		assertEquals(c, id);
+		assertEquals(TREE, find(cache, tree, "a/b"));
+		assertEquals(TREE, find(cache, tree, "a"));
+
+		assertEquals(FileMode.TYPE_MISSING, find(cache, tree, "a/c"));
+		assertEquals(FileMode.TYPE_MISSING, find(cache, tree, "a-b/c"));
+		assertEquals(FileMode.TYPE_MISSING, find(cache, tree, "a/b/c/d"));
+		assertEquals(FileMode.TYPE_MISSING, find(cache, tree, "0"));
+		assertEquals(FileMode.TYPE_MISSING, find(cache, tree, "c"));
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		RevBlob a = testDb.blob("a");
+		RevTree tree = testDb.tree(testDb.file("d/e/f", a));
+		TreeTableCache cache = new TreeTableCache();
+		assertEquals(0, cache.getHitRatio(), 0);
+
+		assertEquals(FILE, find(cache, tree, "d/e/f"));
+		assertEquals(3, cache.size());
+		assertEquals(0, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+		assertTrue(0 < cache.getByteCount());
+
+		assertEquals(FILE, find(cache, tree, "d/e/f"));
+		assertEquals(3, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+		assertEquals(0.5, cache.getHitRatio(), 0);
+	}
+
+	@Test
+	public void testSizeIsBounded() throws Exception {
+		RevBlob a = testDb.blob("a");
+		RevTree t1 = testDb.tree(testDb.file("a", a));
+		RevTree t2 = testDb.tree(testDb.file("b", a));
+		TreeTableCache one = new TreeTableCache(200);
+		assertEquals(FILE, find(one, t1, "a"));
+		long treeSize = one.getByteCount();
+
+		TreeTableCache cache = new TreeTableCache(treeSize);
+		assertEquals(FILE, find(cache, t1, "a"));
+		assertEquals(FILE, find(cache, t2, "b"));
+		assertEquals(1, cache.size());
+		assertEquals(FILE, find(cache, t1, "a"));
+		assertEquals(0, cache.getHitCount());
+
+		TreeTableCache none = new TreeTableCache(treeSize - 1);
+		assertEquals(FILE, find(none, t1, "a"));
+		assertEquals(0, none.size());
+	}
+
+	@Test
+	public void testTreeEntryCacheUsesReaderTables() throws Exception {
+		RevBlob a = testDb.blob("a");
+		RevTree tree = testDb.tree(testDb.file("d/e", a));
+		TreeTableCache tables = new TreeTableCache();
+		reader.setTreeTableCache(tables);
+
+		TreeEntryCache entries = new TreeEntryCache();
+		assertEquals(FILE, entries.findEntry(reader, tree, encode("d/e"), id));
+		assertEquals(a, id);
+		assertEquals(2, tables.size());
+	}
+
+	private int find(TreeTableCache cache, RevTree tree, String path)
+			throws Exception {
+		return cache.findPath(reader, tree, encode(path), id);
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.util.FileChangeMonitor.Changes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WatchServiceFileChangeMonitorTest extends RepositoryTestCase {
+	private WatchServiceFileChangeMonitor monitor;
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		writeTrashFile("a", "a");
+		writeTrashFile("dir/b", "b");
+		monitor = new WatchServiceFileChangeMonitor(trash, db.getDirectory());
+	}
+
+	@After
+	@Override
+	public void tearDown() throws Exception {
+		monitor.close();
+		super.tearDown();
+	}
+
+	@Test
+	public void testUnknownToken() throws Exception {
+		assertFalse(monitor.getChanges(null).isComplete());
+		assertFalse(monitor.getChanges("other:1").isComplete());
+
+		WatchServiceFileChangeMonitor other = new WatchServiceFileChangeMonitor(
+				trash, db.getDirectory());
+		try {
+			String token = other.getChanges(null).getToken();
+			assertFalse(monitor.getChanges(token).isComplete());
+		} finally {
+			other.close();
+		}
+	}
+
+	@Test
+	public void testReportsChanges() throws Exception {
+		Changes c = monitor.getChanges(null);
+		c = monitor.getChanges(c.getToken());
+		assertTrue(c.isComplete());
+		assertTrue(c.getPaths().isEmpty());
+
+		writeTrashFile("dir/b", "changed");
+		c = monitor.getChanges(c.getToken());
+		assertTrue(c.isComplete());
+		assertTrue(c.isChanged("dir/b"));
+		assertFalse(c.isChanged("a"));
+
+		c = monitor.getChanges(c.getToken());
+		assertTrue(c.getPaths().isEmpty());
+	}
+
+	@Test
+	public void testNewDirectory() throws Exception {
+		String token = monitor.getChanges(null).getToken();
+		writeTrashFile("new/sub/c", "c");
+		Changes c = monitor.getChanges(token);
+		assertTrue(c.isChanged("new/sub/c"));
+
+		writeTrashFile("new/sub/d", "d");
+		c = monitor.getChanges(c.getToken());
+		assertTrue(c.getPaths().contains("new/sub/d"));
+		assertFalse(c.isChanged("new/sub/c"));
+	}
+
+	@Test
+	public void testJournalLimit() throws Exception {
+		monitor.setJournalLimit(2);
+		String first = monitor.getChanges(null).getToken();
+		writeTrashFile("a", "changed");
+		String second = monitor.getChanges(first).getToken();
+		writeTrashFile("dir/c", "c");
+		writeTrashFile("dir/d", "d");
+
+		// The change of "a" was dropped, the first token is no longer valid.
+		Changes c = monitor.getChanges(first);
+		assertFalse(c.isComplete());
+		c = monitor.getChanges(second);
+		assertTrue(c.isComplete());
+		assertTrue(c.isChanged("dir/c"));
+		assertTrue(c.isChanged("dir/d"));
+		assertFalse(c.isChanged("a"));
+	}
+
+	@Test
+	public void testRepositoryChangesNotReported() throws Exception {
+		String token = monitor.getChanges(null).getToken();
+		db.getConfig().setString("core", null, "x", "y");
+		db.getConfig().save();
+		Changes c = monitor.getChanges(token);
+		assertTrue(c.isComplete());
+		assertTrue(c.getPaths().isEmpty());
+	}
+}
@@ -69,9 +69,11 @@
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.eclipse.jgit.treewalk.NameConflictTreeWalk;
+import org.eclipse.jgit.treewalk.StatCache;
 import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
 import org.eclipse.jgit.treewalk.WorkingTreeIterator;
 import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.util.FileChangeMonitor;
 
 /**
  * A class used to execute a {@code Add} command. It has setters for all
@@ -90,6 +92,8 @@ public class AddCommand extends GitCommand<DirCache> {
 
 	private boolean update = false;
 
+	private FileChangeMonitor fileChangeMonitor;
+
 	/**
 	 *
 	 * @param repo
@@ -146,6 +150,8 @@ public DirCache call() throws GitAPIException, NoFilepatternException {
 				NameConflictTreeWalk tw = new NameConflictTreeWalk(repo)) {
 			tw.setOperationType(OperationType.CHECKIN_OP);
 			dc = repo.lockDirCache();
+			if (fileChangeMonitor != null)
+				dc.applyFileMonitor(fileChangeMonitor);
 
 			DirCacheBuilder builder = dc.builder();
 			tw.addTree(new DirCacheBuildIterator(builder));
@@ -187,8 +193,9 @@ public DirCache call() throws GitAPIException, NoFilepatternException {
 				}
 
 				if (f == null) { // working tree file does not exist
-					if (entry != null
-							&& (!update || GITLINK == entry.getFileMode())) {
+					if (entry != null && (!update
+							|| GITLINK == entry.getFileMode()
+							|| entry.isSkipWorkTree())) {
 						builder.add(entry);
 					}
 					continue;
@@ -202,6 +209,20 @@ public DirCache call() throws GitAPIException, NoFilepatternException {
 					continue;
 				}
 
+				if (entry != null && entry.isSkipWorkTree()) {
+					// The path is outside of the sparse checkout, a file
+					// found there is not the content of the entry.
+					builder.add(entry);
+					continue;
+				}
+
+				if (entry != null && entry.isFileMonitorValid()) {
+					// The file did not change since it was last found to
+					// match the index entry, there is nothing to add.
+					builder.add(entry);
+					continue;
+				}
+
 				if ((f.getEntryRawMode() == TYPE_TREE
 						&& f.getIndexFileMode(c) != FileMode.GITLINK) ||
 						(f.getEntryRawMode() == TYPE_GITLINK
@@ -222,17 +243,24 @@ public DirCache call() throws GitAPIException, NoFilepatternException {
 
 				if (GITLINK != mode) {
 					entry.setLength(f.getEntryLength());
-					entry.setLastModified(f.getEntryLastModified());
-					long len = f.getEntryContentLength();
-					// We read and filter the content multiple times.
-					// f.getEntryContentLength() reads and filters the input and
-					// inserter.insert(...) does it again. That's because an
-					// ObjectInserter needs to know the length before it starts
-					// inserting. TODO: Fix this by using Buffers.
-					try (InputStream in = f.openEntryStream()) {
-						ObjectId id = inserter.insert(OBJ_BLOB, len, in);
-						entry.setObjectId(id);
+					entry.setLastModified(f.getEntryLastModifiedInstant());
+					ObjectId id = f.getCachedEntryObjectId();
+					if (id == null || !tw.getObjectReader().has(id)) {
+						long len = f.getEntryContentLength();
+						// We read and filter the content multiple times.
+						// f.getEntryContentLength() reads and filters the
+						// input and inserter.insert(...) does it again. That's
+						// because an ObjectInserter needs to know the length
+						// before it starts inserting. TODO: Fix this by using
+						// Buffers.
+						try (InputStream in = f.openEntryStream()) {
+							id = inserter.insert(OBJ_BLOB, len, in);
+						}
+						f.setCachedEntryObjectId(id);
 					}
+					entry.setObjectId(id);
+					if (fileChangeMonitor != null)
+						entry.setFileMonitorValid(true);
 				} else {
 					entry.setLength(0);
 					entry.setLastModified(0);
@@ -243,6 +271,9 @@ public DirCache call() throws GitAPIException, NoFilepatternException {
 			}
 			inserter.flush();
 			builder.commit();
+			StatCache statCache = workingTreeIterator.getStatCache();
+			if (statCache != null)
+				statCache.write();
 			setCallable(false);
 		} catch (IOException e) {
 			Throwable cause = e.getCause();
@@ -277,6 +308,21 @@ public AddCommand setUpdate(boolean update) {
 		return this;
 	}
 
+	/**
+	 * Set the monitor reporting changes to the working tree. Files that did
+	 * not change since they were last found to match the index are not read
+	 * again, and the new token of the monitor is stored in the index.
+	 *
+	 * @param monitor
+	 *            monitor of the working tree of this repository
+	 * @return {@code this}
+	 * @since 4.7
+	 */
+	public AddCommand setFileChangeMonitor(FileChangeMonitor monitor) {
+		this.fileChangeMonitor = monitor;
+		return this;
+	}
+
 	/**
 	 * @return is the parameter update is set
 	 */
@@ -82,6 +82,7 @@
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.util.FileChangeMonitor;
 
 /**
  * Checkout a branch to the working tree.
@@ -175,6 +176,8 @@ private Stage(int number) {
 
 	private boolean checkoutAllPaths;
 
+	private FileChangeMonitor fileChangeMonitor;
+
 	/**
 	 * @param repo
 	 */
@@ -264,6 +267,8 @@ public Ref call() throws GitAPIException, RefAlreadyExistsException,
 			DirCacheCheckout dco;
 			DirCache dc = repo.lockDirCache();
 			try {
+				if (fileChangeMonitor != null)
+					dc.applyFileMonitor(fileChangeMonitor);
 				dco = new DirCacheCheckout(repo, headTree, dc,
 						newCommit.getTree());
 				dco.setFailOnConflict(true);
@@ -418,6 +423,14 @@ public CheckoutCommand setAllPaths(boolean all) {
 	protected CheckoutCommand checkoutPaths() throws IOException,
 			RefNotFoundException {
 		DirCache dc = repo.lockDirCache();
+		if (fileChangeMonitor != null) {
+			try {
+				dc.applyFileMonitor(fileChangeMonitor);
+			} catch (IOException e) {
+				dc.unlock();
+				throw e;
+			}
+		}
 		try (RevWalk revWalk = new RevWalk(repo);
 				TreeWalk treeWalk = new TreeWalk(repo,
 						revWalk.getObjectReader())) {
@@ -467,7 +480,8 @@ public void apply(DirCacheEntry ent) {
 									ent);
 							throw new JGitInternalException(e.getMessage(), e);
 						}
-					} else {
+					} else if (!ent.isFileMonitorValid()
+							&& !ent.isSkipWorkTree()) {
 						checkoutPath(ent, r, new CheckoutMetadata(eolStreamType,
 								filterCommand));
 					}
@@ -492,8 +506,13 @@ private void checkoutPathsFromCommit(TreeWalk treeWalk, DirCache dc,
 					.getFilterCommand(Constants.ATTR_FILTER_TYPE_SMUDGE);
 			editor.add(new PathEdit(treeWalk.getPathString()) {
 				public void apply(DirCacheEntry ent) {
+					if (ent.isFileMonitorValid() && mode == ent.getFileMode()
+							&& blobId.equals(ent.getObjectId()))
+						return; // the working tree file is up to date
 					ent.setObjectId(blobId);
 					ent.setFileMode(mode);
+					if (ent.isSkipWorkTree())
+						return; // outside of the sparse checkout
 					checkoutPath(ent, r,
 							new CheckoutMetadata(eolStreamType, filterCommand));
 				}
@@ -710,6 +729,23 @@ public CheckoutCommand setStage(Stage stage) {
 		return this;
 	}
 
+	/**
+	 * Set the monitor reporting changes to the working tree. Files that did
+	 * not change since they were last found to match the index are neither
+	 * examined for local modifications nor written again when checking out
+	 * paths that already match them.
+	 *
+	 * @param monitor
+	 *            monitor of the working tree of this repository
+	 * @return this
+	 * @since 4.7
+	 */
+	public CheckoutCommand setFileChangeMonitor(FileChangeMonitor monitor) {
+		checkCallable();
+		this.fileChangeMonitor = monitor;
+		return this;
+	}
+
 	/**
 	 * @return the result, never <code>null</code>
 	 */
@@ -63,6 +63,7 @@
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.BitmapReachabilityIndex;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevFlag;
 import org.eclipse.jgit.revwalk.RevFlagSet;
@@ -70,6 +71,10 @@
 
 /**
  * Given a commit, show the most recent tag that is reachable from a commit.
+ * <p>
+ * If the repository has pack bitmaps, they are used to count the commits
+ * between the commit and each candidate tag, instead of walking the remaining
+ * history.
  *
  * @since 3.2
  */
@@ -205,6 +210,7 @@ public String call() throws GitAPIException {
 			 * Tracks the depth of each tag as we find them.
 			 */
 			class Candidate {
+				final RevCommit commit;
 				final Ref tag;
 				final RevFlag flag;
 
@@ -215,6 +221,7 @@ class Candidate {
 				int depth;
 
 				Candidate(RevCommit commit, Ref tag) {
+					this.commit = commit;
 					this.tag = tag;
 					this.flag = w.newFlag(tag.getName());
 					// we'll mark all the nodes reachable from this tag accordingly
@@ -287,15 +294,29 @@ String describe(ObjectId tip) throws IOException {
 
 			// at this point we aren't adding any more tags to our search,
 			// but we still need to count all the depths correctly.
-			while ((c = w.next()) != null) {
-				if (c.hasAll(allFlags)) {
-					// no point in visiting further from here, so cut the search here
-					for (RevCommit p : c.getParents())
-						p.add(RevFlag.SEEN);
-				} else {
-					for (Candidate cd : candidates) {
-						if (!cd.reaches(c))
-							cd.depth++;
+			BitmapReachabilityIndex bitmaps = c != null
+					? BitmapReachabilityIndex.create(w.getObjectReader())
+					: null;
+			if (bitmaps != null) {
+				// the bitmaps count the commits not reachable from each tag
+				// without walking the rest of the history.
+				try {
+					for (Candidate cd : candidates)
+						cd.depth = bitmaps.count(target, cd.commit);
+				} finally {
+					bitmaps.close();
+				}
+			} else {
+				while ((c = w.next()) != null) {
+					if (c.hasAll(allFlags)) {
+						// no point in visiting further from here, so cut the search here
+						for (RevCommit p : c.getParents())
+							p.add(RevFlag.SEEN);
+					} else {
+						for (Candidate cd : candidates) {
+							if (!cd.reaches(c))
+								cd.depth++;
+						}
 					}
 				}
 			}
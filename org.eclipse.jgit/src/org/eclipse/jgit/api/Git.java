@@ -425,6 +425,20 @@ public CheckoutCommand checkout() {
 		return new CheckoutCommand(repo);
 	}
 
+	/**
+	 * Returns a command object to execute a {@code sparse-checkout} command
+	 *
+	 * @see <a href="https://git-scm.com/docs/git-sparse-checkout" >Git
+	 *      documentation about sparse-checkout</a>
+	 * @return a {@link SparseCheckoutCommand} used to collect all optional
+	 *         parameters and to finally execute the {@code sparse-checkout}
+	 *         command
+	 * @since 4.7
+	 */
+	public SparseCheckoutCommand sparseCheckout() {
+		return new SparseCheckoutCommand(repo);
+	}
+
 	/**
 	 * Returns a command object to execute a {@code reset} command
 	 *
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.dircache.DirCacheCheckout.CheckoutMetadata;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.dircache.SparseCheckout;
+import org.eclipse.jgit.errors.IndexWriteException;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.util.FileUtils;
+
+/**
+ * Restrict the working tree to a set of directories, like
+ * {@code git sparse-checkout set} in cone mode.
+ * <p>
+ * The directories are written as the cone mode patterns of the repository and
+ * the sparse checkout is enabled. Files at the top level and in the given
+ * directories are checked out, all other files are removed from the working
+ * tree and their index entries are marked skip-worktree. Modified files are
+ * never removed, they are reported instead.
+ *
+ * @see SparseCheckout
+ * @see <a href="https://git-scm.com/docs/git-sparse-checkout" >Git
+ *      documentation about sparse-checkout</a>
+ * @since 4.7
+ */
+public class SparseCheckoutCommand extends GitCommand<List<String>> {
+	private final Set<String> directories = new LinkedHashSet<>();
+
+	/**
+	 * @param repo
+	 */
+	protected SparseCheckoutCommand(Repository repo) {
+		super(repo);
+	}
+
+	/**
+	 * Add a directory to check out with all of its content.
+	 *
+	 * @param directory
+	 *            path of the directory, with {@code /} as separator.
+	 * @return {@code this}
+	 */
+	public SparseCheckoutCommand addDirectory(String directory) {
+		checkCallable();
+		directories.add(directory);
+		return this;
+	}
+
+	/**
+	 * Set the directories to check out with all of their content.
+	 *
+	 * @param directories
+	 *            paths of the directories, with {@code /} as separator.
+	 * @return {@code this}
+	 */
+	public SparseCheckoutCommand setDirectories(Collection<String> directories) {
+		checkCallable();
+		this.directories.clear();
+		this.directories.addAll(directories);
+		return this;
+	}
+
+	/**
+	 * Executes the {@code sparse-checkout} command with all the options and
+	 * parameters collected by the setter methods of this class.
+	 *
+	 * @return paths outside of the sparse checkout that were left in the
+	 *         working tree because they are modified.
+	 * @throws GitAPIException
+	 */
+	@Override
+	public List<String> call() throws GitAPIException {
+		checkCallable();
+		SparseCheckout sparse = new SparseCheckout(directories);
+		try {
+			sparse.write(repo);
+			StoredConfig config = repo.getConfig();
+			config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+					ConfigConstants.CONFIG_KEY_SPARSE_CHECKOUT, true);
+			config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+					ConfigConstants.CONFIG_KEY_SPARSE_CHECKOUT_CONE, true);
+			config.save();
+
+			List<String> notUpToDate = apply(sparse);
+			setCallable(false);
+			return notUpToDate;
+		} catch (IOException e) {
+			throw new JGitInternalException(e.getMessage(), e);
+		}
+	}
+
+	private List<String> apply(SparseCheckout sparse) throws IOException {
+		List<String> notUpToDate = new ArrayList<>();
+		File workTree = repo.getWorkTree();
+		DirCache dc = repo.lockDirCache();
+		try (ObjectReader reader = repo.newObjectReader();
+				TreeWalk tw = new TreeWalk(repo, reader)) {
+			tw.setOperationType(OperationType.CHECKOUT_OP);
+			tw.setRecursive(true);
+			int dciPos = tw.addTree(new DirCacheIterator(dc));
+			FileTreeIterator fti = new FileTreeIterator(repo);
+			fti.setDirCacheIterator(tw, dciPos);
+			tw.addTree(fti);
+
+			while (tw.next()) {
+				DirCacheIterator c = tw.getTree(0, DirCacheIterator.class);
+				DirCacheEntry entry = c != null ? c.getDirCacheEntry() : null;
+				if (entry == null || entry.getStage() != DirCacheEntry.STAGE_0
+						|| entry.getFileMode() == FileMode.GITLINK)
+					continue;
+				WorkingTreeIterator f = tw.getTree(1,
+						WorkingTreeIterator.class);
+				String path = tw.getPathString();
+				if (sparse.includes(path)) {
+					if (!entry.isSkipWorkTree())
+						continue;
+					if (f == null)
+						DirCacheCheckout.checkoutEntry(repo, entry, reader,
+								false, new CheckoutMetadata(
+										tw.getEolStreamType(),
+										tw.getFilterCommand(
+												Constants.ATTR_FILTER_TYPE_SMUDGE)));
+					entry.setSkipWorkTree(false);
+				} else if (!entry.isSkipWorkTree()) {
+					if (f != null) {
+						if (f.isModified(entry, true, reader)) {
+							notUpToDate.add(path);
+							continue;
+						}
+						File file = new File(workTree, path);
+						FileUtils.delete(file);
+						removeEmptyParents(workTree, file);
+					}
+					entry.setSkipWorkTree(true);
+				}
+			}
+
+			dc.write();
+			if (!dc.commit())
+				throw new IndexWriteException();
+		} finally {
+			dc.unlock();
+		}
+		return notUpToDate;
+	}
+
+	private static void removeEmptyParents(File workTree, File file) {
+		File parent = file.getParentFile();
+		while (parent != null && !parent.equals(workTree) && parent.delete())
+			parent = parent.getParentFile();
+	}
+}
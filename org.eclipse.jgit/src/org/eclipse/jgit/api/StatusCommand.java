@@ -45,6 +45,7 @@
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.JGitInternalException;
@@ -57,6 +58,7 @@
 import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.eclipse.jgit.treewalk.WorkingTreeIterator;
 import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.util.FileChangeMonitor;
 
 /**
  * A class used to execute a {@code Status} command. It has setters for all
@@ -75,6 +77,12 @@ public class StatusCommand extends GitCommand<Status> {
 
 	private IgnoreSubmoduleMode ignoreSubmoduleMode = null;
 
+	private ExecutorService executor;
+
+	private FileChangeMonitor fileChangeMonitor;
+
+	private boolean listIgnored = true;
+
 	/**
 	 * @param repo
 	 */
@@ -144,6 +152,11 @@ public Status call() throws GitAPIException, NoWorkTreeException {
 				diff.setIgnoreSubmoduleMode(ignoreSubmoduleMode);
 			if (paths != null)
 				diff.setFilter(PathFilterGroup.createFromStrings(paths));
+			if (executor != null)
+				diff.setExecutor(executor);
+			if (fileChangeMonitor != null)
+				diff.setFileChangeMonitor(fileChangeMonitor);
+			diff.setListIgnored(listIgnored);
 			if (progressMonitor == null)
 				diff.diff();
 			else
@@ -180,4 +193,54 @@ public StatusCommand setProgressMonitor(ProgressMonitor progressMonitor) {
 		this.progressMonitor = progressMonitor;
 		return this;
 	}
+
+	/**
+	 * Set the executor used to scan the working tree in parallel. Each top
+	 * level directory of the working tree is compared on its own task, using
+	 * a standard {@link FileTreeIterator}. If not set, the whole working
+	 * tree is scanned on the calling thread.
+	 *
+	 * @param executor
+	 *            executor to scan the working tree on
+	 * @return {@code this}
+	 * @see IndexDiff#setExecutor(ExecutorService)
+	 * @since 4.7
+	 */
+	public StatusCommand setExecutor(ExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Set the monitor reporting changes to the working tree. Only files the
+	 * monitor reports as changed since the last update of the index are
+	 * examined for modifications.
+	 *
+	 * @param monitor
+	 *            monitor of the working tree of this repository
+	 * @return {@code this}
+	 * @see IndexDiff#setFileChangeMonitor(FileChangeMonitor)
+	 * @since 4.7
+	 */
+	public StatusCommand setFileChangeMonitor(FileChangeMonitor monitor) {
+		this.fileChangeMonitor = monitor;
+		return this;
+	}
+
+	/**
+	 * Set whether ignored files and folders that are not in the index are
+	 * looked for. Without them, directories that did not change since the
+	 * untracked cache of the index recorded them are not listed again.
+	 *
+	 * @param list
+	 *            false to leave {@link Status#getIgnoredNotInIndex()} empty.
+	 *            The default is true.
+	 * @return {@code this}
+	 * @see IndexDiff#setListIgnored(boolean)
+	 * @since 4.7
+	 */
+	public StatusCommand setListIgnored(boolean list) {
+		this.listIgnored = list;
+		return this;
+	}
 }
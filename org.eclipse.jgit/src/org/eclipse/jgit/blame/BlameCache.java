@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.blame;
+
+import java.io.IOException;
+
+/**
+ * Storage for the blame of files at commits.
+ * <p>
+ * A {@link BlameGenerator} configured with a cache stores the result of every
+ * blame it completes for a commit, and stops its history traversal at any
+ * commit whose blame of the path being followed is found in the cache, taking
+ * the remaining lines from the cached result instead. Blaming a file at a
+ * descendant of an already blamed commit therefore only walks and diffs the
+ * commits in between.
+ * <p>
+ * Keys are built by the generator and name the commit, the path and every
+ * setting the result depends on, such as the diff algorithm and the text
+ * comparator. Values are an opaque serialized form of the result. Both may be
+ * stored in any external storage; implementations must be safe for use by
+ * several generators at the same time if they are shared.
+ *
+ * @since 4.7
+ */
+public interface BlameCache {
+	/**
+	 * Get a previously stored blame.
+	 *
+	 * @param key
+	 *            key of the blame.
+	 * @return the stored blame, or null if it is not in the cache.
+	 * @throws IOException
+	 *             the cache cannot be read.
+	 */
+	byte[] get(String key) throws IOException;
+
+	/**
+	 * Store a blame.
+	 *
+	 * @param key
+	 *            key of the blame.
+	 * @param blame
+	 *            serialized blame.
+	 * @throws IOException
+	 *             the cache cannot be written.
+	 */
+	void put(String key, byte[] blame) throws IOException;
+}
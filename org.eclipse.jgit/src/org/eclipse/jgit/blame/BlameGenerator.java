@@ -64,6 +64,7 @@
 import org.eclipse.jgit.diff.RenameDetector;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.MutableObjectId;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
@@ -73,6 +74,7 @@
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevFlag;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeEntryCache;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
@@ -112,6 +114,10 @@
  * the lines that do not appear in the ancestor, if any. The loop repeats using
  * the ancestor, until there are no more lines to acquire information on, or the
  * file's creation point is discovered in history.
+ * <p>
+ * If a {@link BlameCache} is configured the loop also stops at any ancestor
+ * whose blame is in the cache, assigning the lines the ancestor is responsible
+ * for to the sources recorded for them in the cached result.
  */
 public class BlameGenerator implements AutoCloseable {
 	private final Repository repository;
@@ -130,12 +136,19 @@ public class BlameGenerator implements AutoCloseable {
 
 	private TreeWalk treeWalk;
 
+	private TreeEntryCache treeEntries = new TreeEntryCache();
+
 	private DiffAlgorithm diffAlgorithm = new HistogramDiff();
 
 	private RawTextComparator textComparator = RawTextComparator.DEFAULT;
 
 	private RenameDetector renameDetector;
 
+	private BlameCache blameCache;
+
+	/** Commit the result is read from, if it can be cached. */
+	private RevCommit cacheableCommit;
+
 	/** Potential candidates, sorted by commit time descending. */
 	private Candidate queue;
 
@@ -247,6 +260,42 @@ public RenameDetector getRenameDetector() {
 		return renameDetector;
 	}
 
+	/**
+	 * Cache used to find the file in the trees of the commits scanned.
+	 * <p>
+	 * Consecutive commits usually share most of the subtrees leading to the
+	 * file, so each tree only needs to be parsed once. By default every
+	 * generator has its own cache, a cache may be shared to also reuse the
+	 * lookups of other generators working on the same repository.
+	 *
+	 * @param cache
+	 *            the cache to use; must not be null.
+	 * @return {@code this}
+	 * @since 4.7
+	 */
+	public BlameGenerator setTreeEntryCache(TreeEntryCache cache) {
+		treeEntries = cache;
+		return this;
+	}
+
+	/**
+	 * Cache to consult and update with the blame of files at commits.
+	 * <p>
+	 * The traversal stops at any commit whose blame is found in the cache.
+	 * {@link #computeBlameResult()} stores its result in the cache if the
+	 * blamed file was read from a commit, rather than from a pushed blob or the
+	 * working tree, and the blame was not reversed.
+	 *
+	 * @param cache
+	 *            the cache, or null to not use a cache.
+	 * @return {@code this}
+	 * @since 4.7
+	 */
+	public BlameGenerator setBlameCache(BlameCache cache) {
+		blameCache = cache;
+		return this;
+	}
+
 	/**
 	 * Push a candidate blob onto the generator's traversal stack.
 	 * <p>
@@ -337,6 +386,7 @@ public BlameGenerator push(String description, AnyObjectId id)
 		c.regionList = new Region(0, 0, c.sourceText.size());
 		remaining = c.sourceText.size();
 		push(c);
+		cacheableCommit = queue == c && c.queueNext == null ? commit : null;
 		return this;
 	}
 
@@ -421,6 +471,7 @@ public BlameGenerator reverse(AnyObjectId start,
 		c.regionList = new Region(0, 0, c.sourceText.size());
 		remaining = c.sourceText.size();
 		push(c);
+		cacheableCommit = null;
 		return this;
 	}
 
@@ -445,9 +496,13 @@ public RevFlag newFlag(String name) {
 	 */
 	public BlameResult computeBlameResult() throws IOException {
 		try {
+			RevCommit commit = cacheableCommit;
 			BlameResult r = BlameResult.create(this);
-			if (r != null)
+			if (r != null) {
 				r.computeAll();
+				if (blameCache != null && commit != null)
+					putCachedBlame(commit, r);
+			}
 			return r;
 		} finally {
 			close();
@@ -491,6 +546,16 @@ public boolean next() throws IOException {
 			if (n == null)
 				return done();
 
+			if (blameCache != null && n.sourceCommit != null
+					&& !(n instanceof ReverseCandidate)) {
+				CachedBlame cached = getCachedBlame(n);
+				if (cached != null) {
+					if (cachedResult(n, cached))
+						return true;
+					continue;
+				}
+			}
+
 			int pCnt = n.getParentCount();
 			if (pCnt == 1) {
 				if (processOne(n))
@@ -524,6 +589,120 @@ private boolean result(Candidate n) throws IOException {
 		return true;
 	}
 
+	/**
+	 * Assign the regions of a candidate to the sources of a cached blame.
+	 * <p>
+	 * One candidate is created per distinct source, carrying the regions taken
+	 * from that source, and the candidates are chained for output like the
+	 * results of a reverse blame of a merge.
+	 */
+	private boolean cachedResult(Candidate n, CachedBlame cached)
+			throws IOException {
+		Candidate[] bySource = new Candidate[cached.getSourceCount()];
+		Region[] tails = new Region[bySource.length];
+		Candidate head = null;
+		Candidate tail = null;
+
+		for (Region r = n.regionList; r != null; r = r.next) {
+			int end = r.sourceStart + r.length;
+			for (int line = r.sourceStart; line < end;) {
+				int src = cached.getSource(line);
+				int srcLine = cached.getSourceLine(line);
+				int len = 1;
+				while (line + len < end
+						&& cached.getSource(line + len) == src
+						&& cached.getSourceLine(line + len) == srcLine + len)
+					len++;
+
+				Region region = new Region(
+						r.resultStart + (line - r.sourceStart), srcLine, len);
+				Candidate c = bySource[src];
+				if (c == null) {
+					c = new Candidate(
+							revPool.lookupCommit(cached.getCommit(src)),
+							PathFilter.create(cached.getPath(src)));
+					c.regionList = region;
+					bySource[src] = c;
+					if (tail != null)
+						tail.queueNext = c;
+					else
+						head = c;
+					tail = c;
+				} else
+					tails[src].next = region;
+				tails[src] = region;
+				line += len;
+			}
+		}
+		n.regionList = null;
+
+		if (head != null)
+			return result(head);
+		return false;
+	}
+
+	private CachedBlame getCachedBlame(Candidate n) throws IOException {
+		byte[] data = blameCache.get(cacheKey(n.sourceCommit,
+				n.sourcePath.getPath()));
+		if (data == null)
+			return null;
+
+		CachedBlame cached;
+		try {
+			cached = CachedBlame.decode(data);
+		} catch (IOException e) {
+			// Not a usable entry, compute the blame instead.
+			return null;
+		}
+		for (Region r = n.regionList; r != null; r = r.next) {
+			if (cached.size() < r.sourceStart + r.length)
+				return null;
+		}
+		return cached;
+	}
+
+	private void putCachedBlame(RevCommit commit, BlameResult r)
+			throws IOException {
+		byte[] data = CachedBlame.encode(r);
+		if (data != null)
+			blameCache.put(cacheKey(commit, r.getResultPath()), data);
+	}
+
+	/**
+	 * Build the cache key of the blame of a path at a commit.
+	 * <p>
+	 * The key is the commit id, the diff algorithm, the text comparator, the
+	 * rename detection setting and the path, separated by spaces.
+	 */
+	private String cacheKey(AnyObjectId commit, String path) {
+		StringBuilder k = new StringBuilder();
+		k.append(commit.name());
+		k.append(' ').append(diffAlgorithm.getClass().getName());
+		k.append(' ').append(comparatorName(textComparator));
+		k.append(' ');
+		if (renameDetector != null)
+			k.append("rename=").append(renameDetector.getRenameScore()); //$NON-NLS-1$
+		else
+			k.append("norename"); //$NON-NLS-1$
+		k.append(' ').append(path);
+		return k.toString();
+	}
+
+	@SuppressWarnings("nls")
+	private static String comparatorName(RawTextComparator cmp) {
+		if (cmp == RawTextComparator.DEFAULT)
+			return "default";
+		if (cmp == RawTextComparator.WS_IGNORE_ALL)
+			return "ws-ignore-all";
+		if (cmp == RawTextComparator.WS_IGNORE_LEADING)
+			return "ws-ignore-leading";
+		if (cmp == RawTextComparator.WS_IGNORE_TRAILING)
+			return "ws-ignore-trailing";
+		if (cmp == RawTextComparator.WS_IGNORE_CHANGE)
+			return "ws-ignore-change";
+		return cmp.getClass().getName();
+	}
+
 	private boolean reverseResult(Candidate parent, Candidate source)
 			throws IOException {
 		// On a reverse blame present the application the parent
@@ -544,6 +723,7 @@ private Candidate pop() {
 	}
 
 	private void push(BlobCandidate toInsert) {
+		cacheableCommit = null;
 		Candidate c = queue;
 		if (c != null) {
 			c.remove(SEEN); // will be pushed by toInsert
@@ -950,13 +1130,9 @@ public void close() {
 	}
 
 	private boolean find(RevCommit commit, PathFilter path) throws IOException {
-		treeWalk.setFilter(path);
-		treeWalk.reset(commit.getTree());
-		if (treeWalk.next() && isFile(treeWalk.getRawMode(0))) {
-			treeWalk.getObjectId(idBuf, 0);
-			return true;
-		}
-		return false;
+		int mode = treeEntries.findEntry(reader, commit.getTree(),
+				Constants.encode(path.getPath()), idBuf);
+		return isFile(mode);
 	}
 
 	private static final boolean isFile(int rawMode) {
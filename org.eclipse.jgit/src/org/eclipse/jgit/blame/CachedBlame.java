@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.blame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+/**
+ * Serialized form of a completed {@link BlameResult}, as kept in a
+ * {@link BlameCache}.
+ * <p>
+ * The data starts with a version number, the number of lines and a table of
+ * the distinct sources, each a commit id and a path. For each line the index
+ * of its source and its line number in the source follow.
+ */
+final class CachedBlame {
+	private static final int VERSION = 1;
+
+	/**
+	 * Serialize a result.
+	 *
+	 * @param r
+	 *            the result, which must be complete.
+	 * @return the serialized result, or null if a line has no source commit.
+	 */
+	static byte[] encode(BlameResult r) {
+		int cnt = r.getResultContents().size();
+		Map<String, Integer> index = new HashMap<>();
+		List<RevCommit> commits = new ArrayList<>();
+		List<String> paths = new ArrayList<>();
+		int[] sources = new int[cnt];
+		for (int i = 0; i < cnt; i++) {
+			RevCommit c = r.getSourceCommit(i);
+			if (!r.hasSourceData(i) || c == null)
+				return null;
+			String path = r.getSourcePath(i);
+			String k = c.name() + path;
+			Integer idx = index.get(k);
+			if (idx == null) {
+				idx = Integer.valueOf(commits.size());
+				index.put(k, idx);
+				commits.add(c);
+				paths.add(path);
+			}
+			sources[i] = idx.intValue();
+		}
+
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(buf)) {
+			byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+			out.writeInt(VERSION);
+			out.writeInt(cnt);
+			out.writeInt(commits.size());
+			for (int i = 0; i < commits.size(); i++) {
+				commits.get(i).copyRawTo(id, 0);
+				out.write(id);
+				out.writeUTF(paths.get(i));
+			}
+			for (int i = 0; i < cnt; i++) {
+				out.writeInt(sources[i]);
+				out.writeInt(r.getSourceLine(i));
+			}
+		} catch (IOException e) {
+			// Not possible when writing to a byte array.
+			throw new IllegalStateException(e);
+		}
+		return buf.toByteArray();
+	}
+
+	/**
+	 * Parse a serialized result.
+	 *
+	 * @param data
+	 *            data written by {@link #encode(BlameResult)}.
+	 * @return the result.
+	 * @throws IOException
+	 *             the data is not a valid serialized result.
+	 */
+	static CachedBlame decode(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(data));
+		if (in.readInt() != VERSION)
+			throw new IOException();
+		int cnt = in.readInt();
+		int srcCnt = in.readInt();
+		if (cnt < 0 || srcCnt < 0 || srcCnt > cnt)
+			throw new IOException();
+
+		ObjectId[] commits = new ObjectId[srcCnt];
+		String[] paths = new String[srcCnt];
+		byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+		for (int i = 0; i < srcCnt; i++) {
+			in.readFully(id);
+			commits[i] = ObjectId.fromRaw(id);
+			paths[i] = in.readUTF();
+		}
+
+		int[] sources = new int[cnt];
+		int[] lines = new int[cnt];
+		for (int i = 0; i < cnt; i++) {
+			sources[i] = in.readInt();
+			lines[i] = in.readInt();
+			if (sources[i] < 0 || srcCnt <= sources[i] || lines[i] < 0)
+				throw new IOException();
+		}
+		return new CachedBlame(commits, paths, sources, lines);
+	}
+
+	private final ObjectId[] commits;
+
+	private final String[] paths;
+
+	private final int[] sources;
+
+	private final int[] lines;
+
+	private CachedBlame(ObjectId[] commits, String[] paths, int[] sources,
+			int[] lines) {
+		this.commits = commits;
+		this.paths = paths;
+		this.sources = sources;
+		this.lines = lines;
+	}
+
+	/** @return number of lines of the blamed file. */
+	int size() {
+		return sources.length;
+	}
+
+	/** @return number of distinct sources. */
+	int getSourceCount() {
+		return commits.length;
+	}
+
+	/**
+	 * @param line
+	 *            line of the blamed file, 0 based.
+	 * @return index of the source of the line.
+	 */
+	int getSource(int line) {
+		return sources[line];
+	}
+
+	/**
+	 * @param line
+	 *            line of the blamed file, 0 based.
+	 * @return line number in the source, 0 based.
+	 */
+	int getSourceLine(int line) {
+		return lines[line];
+	}
+
+	/**
+	 * @param source
+	 *            index of a source.
+	 * @return commit of the source.
+	 */
+	ObjectId getCommit(int source) {
+		return commits[source];
+	}
+
+	/**
+	 * @param source
+	 *            index of a source.
+	 * @return path of the source.
+	 */
+	String getPath(int source) {
+		return paths[source];
+	}
+}
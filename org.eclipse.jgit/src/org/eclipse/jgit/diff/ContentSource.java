@@ -123,6 +123,14 @@ public static ContentSource create(WorkingTreeIterator iterator) {
 	public abstract ObjectLoader open(String path, ObjectId id)
 			throws IOException;
 
+	/**
+	 * @return the reader this source obtains blobs from, or null if it reads
+	 *         content from somewhere else.
+	 */
+	ObjectReader getObjectReader() {
+		return null;
+	}
+
 	private static class ObjectReaderSource extends ContentSource {
 		private final ObjectReader reader;
 
@@ -143,6 +151,11 @@ public long size(String path, ObjectId id) throws IOException {
 		public ObjectLoader open(String path, ObjectId id) throws IOException {
 			return reader.open(id, Constants.OBJ_BLOB);
 		}
+
+		@Override
+		ObjectReader getObjectReader() {
+			return reader;
+		}
 	}
 
 	private static class WorkingTreeSource extends ContentSource {
@@ -223,6 +236,9 @@ public static final class Pair {
 
 		private final ContentSource newSource;
 
+		/** Readers created by {@link #newPair()}, closed by {@link #close()}. */
+		private ObjectReader[] ownedReaders;
+
 		/**
 		 * Construct a pair of sources.
 		 *
@@ -282,5 +298,41 @@ public ObjectLoader open(DiffEntry.Side side, DiffEntry ent)
 				throw new IllegalArgumentException();
 			}
 		}
+
+		/**
+		 * Create a pair reading the same content through new readers, so it
+		 * can be used by another thread at the same time as this pair.
+		 *
+		 * @return the new pair, which must be released with {@link #close()};
+		 *         or null if a side does not read from an ObjectReader.
+		 */
+		Pair newPair() {
+			ObjectReader oldReader = oldSource.getObjectReader();
+			ObjectReader newReader = newSource.getObjectReader();
+			if (oldReader == null || newReader == null)
+				return null;
+
+			Pair p;
+			ObjectReader o = oldReader.newReader();
+			if (oldReader == newReader) {
+				ContentSource cs = create(o);
+				p = new Pair(cs, cs);
+				p.ownedReaders = new ObjectReader[] { o };
+			} else {
+				ObjectReader n = newReader.newReader();
+				p = new Pair(create(o), create(n));
+				p.ownedReaders = new ObjectReader[] { o, n };
+			}
+			return p;
+		}
+
+		/** Release the readers of a pair created by {@link #newPair()}. */
+		void close() {
+			if (ownedReaders != null) {
+				for (ObjectReader r : ownedReaders)
+					r.close();
+				ownedReaders = null;
+			}
+		}
 	}
 }
@@ -85,6 +85,19 @@ public static DiffAlgorithm getAlgorithm(SupportedAlgorithm alg) {
 		}
 	}
 
+	/**
+	 * Identify the edits this algorithm computes, for {@link EditListCache}.
+	 * <p>
+	 * Algorithms whose settings are not known are only equal to themselves,
+	 * so edits they computed are never returned for another instance.
+	 *
+	 * @return an object equal to the one of every algorithm computing the
+	 *         same edits as this one.
+	 */
+	Object cacheKey() {
+		return this;
+	}
+
 	/**
 	 * Compare two sequences and identify a list of edits between them.
 	 *
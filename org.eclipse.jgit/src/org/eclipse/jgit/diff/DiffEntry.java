@@ -182,46 +182,65 @@ public static List<DiffEntry> scan(TreeWalk walk, boolean includeTrees,
 		List<DiffEntry> r = new ArrayList<DiffEntry>();
 		MutableObjectId idBuf = new MutableObjectId();
 		while (walk.next()) {
-			DiffEntry entry = new DiffEntry();
+			scanEntry(walk, idBuf, treeFilterMarker, r);
+			if (includeTrees && walk.isSubtree())
+				walk.enterSubtree();
+		}
+		return r;
+	}
 
-			walk.getObjectId(idBuf, 0);
-			entry.oldId = AbbreviatedObjectId.fromObjectId(idBuf);
+	/**
+	 * Convert the current entry of a TreeWalk into DiffEntry headers.
+	 *
+	 * @param walk
+	 *            the TreeWalk positioned on the entry.
+	 * @param idBuf
+	 *            buffer for object ids.
+	 * @param treeFilterMarker
+	 *            marker of the entries, or null.
+	 * @param r
+	 *            list to add the headers to, if the entry differs.
+	 * @throws IOException
+	 *             the repository cannot be accessed.
+	 */
+	static void scanEntry(TreeWalk walk, MutableObjectId idBuf,
+			TreeFilterMarker treeFilterMarker, List<? super DiffEntry> r)
+			throws IOException {
+		DiffEntry entry = new DiffEntry();
 
-			walk.getObjectId(idBuf, 1);
-			entry.newId = AbbreviatedObjectId.fromObjectId(idBuf);
+		walk.getObjectId(idBuf, 0);
+		entry.oldId = AbbreviatedObjectId.fromObjectId(idBuf);
 
-			entry.oldMode = walk.getFileMode(0);
-			entry.newMode = walk.getFileMode(1);
-			entry.newPath = entry.oldPath = walk.getPathString();
+		walk.getObjectId(idBuf, 1);
+		entry.newId = AbbreviatedObjectId.fromObjectId(idBuf);
 
-			if (treeFilterMarker != null)
-				entry.treeFilterMarks = treeFilterMarker.getMarks(walk);
+		entry.oldMode = walk.getFileMode(0);
+		entry.newMode = walk.getFileMode(1);
+		entry.newPath = entry.oldPath = walk.getPathString();
 
-			if (entry.oldMode == FileMode.MISSING) {
-				entry.oldPath = DiffEntry.DEV_NULL;
-				entry.changeType = ChangeType.ADD;
-				r.add(entry);
+		if (treeFilterMarker != null)
+			entry.treeFilterMarks = treeFilterMarker.getMarks(walk);
 
-			} else if (entry.newMode == FileMode.MISSING) {
-				entry.newPath = DiffEntry.DEV_NULL;
-				entry.changeType = ChangeType.DELETE;
-				r.add(entry);
+		if (entry.oldMode == FileMode.MISSING) {
+			entry.oldPath = DiffEntry.DEV_NULL;
+			entry.changeType = ChangeType.ADD;
+			r.add(entry);
 
-			} else if (!entry.oldId.equals(entry.newId)) {
-				entry.changeType = ChangeType.MODIFY;
-				if (RenameDetector.sameType(entry.oldMode, entry.newMode))
-					r.add(entry);
-				else
-					r.addAll(breakModify(entry));
-			} else if (entry.oldMode != entry.newMode) {
-				entry.changeType = ChangeType.MODIFY;
-				r.add(entry);
-			}
+		} else if (entry.newMode == FileMode.MISSING) {
+			entry.newPath = DiffEntry.DEV_NULL;
+			entry.changeType = ChangeType.DELETE;
+			r.add(entry);
 
-			if (includeTrees && walk.isSubtree())
-				walk.enterSubtree();
+		} else if (!entry.oldId.equals(entry.newId)) {
+			entry.changeType = ChangeType.MODIFY;
+			if (RenameDetector.sameType(entry.oldMode, entry.newMode))
+				r.add(entry);
+			else
+				r.addAll(breakModify(entry));
+		} else if (entry.oldMode != entry.newMode) {
+			entry.changeType = ChangeType.MODIFY;
+			r.add(entry);
 		}
-		return r;
 	}
 
 	static DiffEntry add(String path, AnyObjectId id) {
@@ -61,6 +61,7 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.eclipse.jgit.diff.DiffAlgorithm.SupportedAlgorithm;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
@@ -78,6 +79,7 @@
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.ProgressMonitor;
@@ -116,6 +118,9 @@ public class DiffFormatter implements AutoCloseable {
 	/** Magic return indicating the content is binary. */
 	private static final byte[] BINARY = new byte[] {};
 
+	/** Magic return indicating the content is over the binary threshold. */
+	private static final byte[] LARGE = new byte[] {};
+
 	private final OutputStream out;
 
 	private ObjectReader reader;
@@ -134,6 +139,12 @@ public class DiffFormatter implements AutoCloseable {
 
 	private int binaryFileThreshold = DEFAULT_BINARY_FILE_THRESHOLD;
 
+	private boolean streamLargeFiles;
+
+	private EditListCache editListCache;
+
+	private ExecutorService executor;
+
 	private String oldPrefix = "a/"; //$NON-NLS-1$
 
 	private String newPrefix = "b/"; //$NON-NLS-1$
@@ -146,6 +157,12 @@ public class DiffFormatter implements AutoCloseable {
 
 	private ContentSource.Pair source;
 
+	/** Whether the old side of {@link #source} reads the working tree. */
+	private boolean oldFromWorkTree;
+
+	/** Whether the new side of {@link #source} reads the working tree. */
+	private boolean newFromWorkTree;
+
 	/**
 	 * Create a new formatter with a default level of context.
 	 *
@@ -198,6 +215,8 @@ private void setReader(ObjectReader reader, Config cfg, boolean closeReader) {
 
 		ContentSource cs = ContentSource.create(reader);
 		source = new ContentSource.Pair(cs, cs);
+		oldFromWorkTree = false;
+		newFromWorkTree = false;
 
 		if (diffCfg.isNoPrefix()) {
 			setOldPrefix(""); //$NON-NLS-1$
@@ -281,6 +300,56 @@ public void setBinaryFileThreshold(int threshold) {
 		this.binaryFileThreshold = threshold;
 	}
 
+	/**
+	 * Set whether text files over the binary file threshold are diffed.
+	 * <p>
+	 * If enabled, files larger than the threshold are streamed to find the
+	 * lines they have in common at their start and end. Only the lines between
+	 * and their context are loaded, and only if these fit within the binary
+	 * file threshold in both files. Otherwise the files are reported as
+	 * binary, as they are when disabled. Default is disabled.
+	 *
+	 * @param stream
+	 *            true to diff large files by streaming them.
+	 * @since 4.7
+	 */
+	public void setStreamLargeFiles(boolean stream) {
+		this.streamLargeFiles = stream;
+	}
+
+	/**
+	 * Set the cache of edits between blobs.
+	 * <p>
+	 * Edits between two blobs are looked up in the cache before diffing them,
+	 * and stored in it after. Content read from a working tree is not cached
+	 * if its object id is not known.
+	 *
+	 * @param cache
+	 *            the cache, or null to always diff.
+	 * @since 4.7
+	 */
+	public void setEditListCache(EditListCache cache) {
+		this.editListCache = cache;
+	}
+
+	/**
+	 * Set the executor used to compare trees.
+	 * <p>
+	 * If set, {@link #scan(RevTree, RevTree)} and
+	 * {@link #scan(AnyObjectId, AnyObjectId)} compare subtrees whose ids differ
+	 * concurrently on this executor, each task reading through its own
+	 * {@link ObjectReader}. The differences are returned in the same order as
+	 * without an executor. Scans following a path with a {@link FollowFilter}
+	 * always run on the calling thread.
+	 *
+	 * @param executor
+	 *            the executor, or null to compare on the calling thread.
+	 * @since 4.7
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
 	/**
 	 * Set the prefix applied in front of old file paths.
 	 *
@@ -459,6 +528,20 @@ public List<DiffEntry> scan(AnyObjectId a, AnyObjectId b)
 	public List<DiffEntry> scan(RevTree a, RevTree b) throws IOException {
 		assertHaveReader();
 
+		if (executor != null && !(pathFilter instanceof FollowFilter)) {
+			ContentSource cs = ContentSource.create(reader);
+			source = new ContentSource.Pair(cs, cs);
+			oldFromWorkTree = false;
+			newFromWorkTree = false;
+
+			List<DiffEntry> files = new ParallelTreeDiff(reader,
+					AndTreeFilter.create(pathFilter, TreeFilter.ANY_DIFF),
+					executor).scan(a, b);
+			if (renameDetector != null)
+				files = detectRenames(files);
+			return files;
+		}
+
 		AbstractTreeIterator aIterator = makeIteratorFromTreeOrNull(a);
 		AbstractTreeIterator bIterator = makeIteratorFromTreeOrNull(b);
 		return scan(aIterator, bIterator);
@@ -509,6 +592,8 @@ public List<DiffEntry> scan(AbstractTreeIterator a, AbstractTreeIterator b)
 		}
 
 		source = new ContentSource.Pair(source(a), source(b));
+		oldFromWorkTree = a instanceof WorkingTreeIterator;
+		newFromWorkTree = b instanceof WorkingTreeIterator;
 
 		List<DiffEntry> files = DiffEntry.scan(walk);
 		if (pathFilter instanceof FollowFilter && isAdd(files)) {
@@ -968,17 +1053,28 @@ private FormatResult createFormatResult(DiffEntry ent) throws IOException,
 				bRaw = open(NEW, ent);
 			}
 
-			if (aRaw == BINARY || bRaw == BINARY //
-					|| RawText.isBinary(aRaw) || RawText.isBinary(bRaw)) {
+			LargeTextTrimmer large = null;
+			if (streamLargeFiles && (aRaw == LARGE || bRaw == LARGE)
+					&& aRaw != BINARY && bRaw != BINARY)
+				large = trimLargeFiles(ent, aRaw, bRaw);
+
+			if (large == null && (aRaw == BINARY || bRaw == BINARY //
+					|| aRaw == LARGE || bRaw == LARGE //
+					|| RawText.isBinary(aRaw) || RawText.isBinary(bRaw))) {
 				formatOldNewPaths(buf, ent);
 				buf.write(encodeASCII("Binary files differ\n")); //$NON-NLS-1$
 				editList = new EditList();
 				type = PatchType.BINARY;
 
 			} else {
-				res.a = new RawText(aRaw);
-				res.b = new RawText(bRaw);
-				editList = diff(res.a, res.b);
+				if (large != null) {
+					res.a = large.getA();
+					res.b = large.getB();
+				} else {
+					res.a = new RawText(aRaw);
+					res.b = new RawText(bRaw);
+				}
+				editList = diff(ent, large, aRaw, bRaw, res.a, res.b);
 				type = PatchType.UNIFIED;
 
 				switch (ent.getChangeType()) {
@@ -999,8 +1095,73 @@ private FormatResult createFormatResult(DiffEntry ent) throws IOException,
 		return res;
 	}
 
-	private EditList diff(RawText a, RawText b) {
-		return diffAlgorithm.diff(comparator, a, b);
+	private EditList diff(DiffEntry ent, LargeTextTrimmer large, byte[] aRaw,
+			byte[] bRaw, RawText a, RawText b) {
+		EditListCache.Key key = null;
+		if (editListCache != null) {
+			ObjectId oldId = cacheId(ent, OLD, aRaw, oldFromWorkTree);
+			ObjectId newId = cacheId(ent, NEW, bRaw, newFromWorkTree);
+			if (oldId != null && newId != null) {
+				key = new EditListCache.Key(oldId, newId, diffAlgorithm,
+						comparator);
+				EditList edits = editListCache.get(key);
+				if (edits != null)
+					return edits;
+			}
+		}
+
+		EditList edits;
+		if (large != null)
+			edits = large.diff(diffAlgorithm, comparator);
+		else
+			edits = diffAlgorithm.diff(comparator, a, b);
+		if (key != null)
+			editListCache.put(key, edits);
+		return edits;
+	}
+
+	/**
+	 * Identify the content diffed on one side for the edit list cache.
+	 *
+	 * @return id of the content; null if the edits cannot be cached.
+	 */
+	private static ObjectId cacheId(DiffEntry ent, DiffEntry.Side side,
+			byte[] raw, boolean fromWorkTree) {
+		if (!fromWorkTree)
+			return isCacheable(ent, side) ? ent.getId(side).toObjectId() : null;
+
+		// The id of a working tree entry may be taken from the index or a
+		// stat cache instead of the file. Key on the clean filtered bytes
+		// actually diffed.
+		if (ent.getMode(side) == GITLINK || raw == LARGE || raw == BINARY)
+			return null;
+		return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, raw);
+	}
+
+	private static boolean isCacheable(DiffEntry ent, DiffEntry.Side side) {
+		// A zero id names no content only if the file is missing.
+		FileMode mode = ent.getMode(side);
+		if (mode == GITLINK)
+			return false;
+		AbbreviatedObjectId id = ent.getId(side);
+		if (!id.isComplete())
+			return false;
+		return mode == FileMode.MISSING
+				|| !id.toObjectId().equals(ObjectId.zeroId());
+	}
+
+	private LargeTextTrimmer trimLargeFiles(DiffEntry ent, byte[] aRaw,
+			byte[] bRaw) throws IOException {
+		LargeTextTrimmer t = new LargeTextTrimmer(loader(OLD, ent, aRaw),
+				loader(NEW, ent, bRaw), context, binaryFileThreshold);
+		return t.trim() ? t : null;
+	}
+
+	private ObjectLoader loader(DiffEntry.Side side, DiffEntry ent, byte[] raw)
+			throws IOException {
+		if (raw == LARGE)
+			return source.open(side, ent);
+		return new ObjectLoader.SmallObject(Constants.OBJ_BLOB, raw);
 	}
 
 	private void assertHaveReader() {
@@ -1041,10 +1202,10 @@ private byte[] open(DiffEntry.Side side, DiffEntry entry)
 			return ldr.getBytes(binaryFileThreshold);
 
 		} catch (LargeObjectException.ExceedsLimit overLimit) {
-			return BINARY;
+			return LARGE;
 
 		} catch (LargeObjectException.ExceedsByteArrayLimit overLimit) {
-			return BINARY;
+			return LARGE;
 
 		} catch (LargeObjectException.OutOfMemory tooBig) {
 			return BINARY;
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.diff;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Storage for the edits computed between two blobs.
+ * <p>
+ * The edits between two blobs only depend on their content, the diff algorithm
+ * and the comparator for their elements. A {@link DiffFormatter} or
+ * {@link org.eclipse.jgit.merge.MergeAlgorithm} configured with a cache looks
+ * up the edits of every pair of blobs it diffs, and only runs the diff
+ * algorithm on a miss. Servers showing the same changes to many users can so
+ * diff each pair once.
+ * <p>
+ * Implementations must be safe for use by several threads if they are shared.
+ *
+ * @since 4.7
+ */
+public interface EditListCache {
+	/**
+	 * Get previously stored edits.
+	 *
+	 * @param key
+	 *            the blobs and settings the edits were computed with.
+	 * @return the edits, or null if they are not in the cache. The caller may
+	 *         modify the returned list.
+	 */
+	EditList get(Key key);
+
+	/**
+	 * Store edits.
+	 *
+	 * @param key
+	 *            the blobs and settings the edits were computed with.
+	 * @param edits
+	 *            the edits. The caller may modify the list after this method
+	 *            returns.
+	 */
+	void put(Key key, EditList edits);
+
+	/** Identifies the edits between two blobs. */
+	final class Key {
+		private final ObjectId oldId;
+
+		private final ObjectId newId;
+
+		private final Class<?> algorithm;
+
+		private final Object algorithmKey;
+
+		private final SequenceComparator<?> comparator;
+
+		/**
+		 * Create a key.
+		 *
+		 * @param oldId
+		 *            blob of the old (A) side.
+		 * @param newId
+		 *            blob of the new (B) side.
+		 * @param algorithm
+		 *            the algorithm computing the edits. Instances of the same
+		 *            class with the same settings are considered to compute
+		 *            the same edits; algorithms with unknown settings only
+		 *            match themselves.
+		 * @param comparator
+		 *            the comparator for the elements of the blobs.
+		 */
+		public Key(AnyObjectId oldId, AnyObjectId newId,
+				DiffAlgorithm algorithm, SequenceComparator<?> comparator) {
+			this.oldId = oldId.copy();
+			this.newId = newId.copy();
+			this.algorithm = algorithm.getClass();
+			this.algorithmKey = algorithm.cacheKey();
+			this.comparator = comparator;
+		}
+
+		/** @return blob of the old (A) side. */
+		public ObjectId getOldId() {
+			return oldId;
+		}
+
+		/** @return blob of the new (B) side. */
+		public ObjectId getNewId() {
+			return newId;
+		}
+
+		/** @return class of the algorithm computing the edits. */
+		public Class<?> getAlgorithm() {
+			return algorithm;
+		}
+
+		/** @return the comparator for the elements of the blobs. */
+		public SequenceComparator<?> getComparator() {
+			return comparator;
+		}
+
+		@Override
+		public int hashCode() {
+			return oldId.hashCode() * 31 + newId.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return oldId.equals(k.oldId) && newId.equals(k.newId)
+					&& algorithmKey.equals(k.algorithmKey)
+					&& comparator == k.comparator;
+		}
+
+		@SuppressWarnings("nls")
+		@Override
+		public String toString() {
+			return "Key[" + oldId.name() + ".." + newId.name() + " "
+					+ algorithm.getSimpleName() + "]";
+		}
+	}
+}
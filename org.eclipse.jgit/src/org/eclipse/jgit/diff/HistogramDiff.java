@@ -44,7 +44,11 @@
 package org.eclipse.jgit.diff;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jgit.diff.HistogramDiffIndex.Tables;
 
 /**
  * An extended form of Bram Cohen's patience diff algorithm.
@@ -91,6 +95,12 @@
  * <p>
  * This implementation has an internal limitation that prevents it from handling
  * sequences with more than 268,435,456 (2^28) elements.
+ * <p>
+ * The hash tables built for a diff are kept by the instance and reused by its
+ * next diff, unless they are very large. Applications computing many diffs
+ * should reuse one instance to avoid allocating them again. An instance may
+ * be used by several threads; a diff that starts while another one is running
+ * allocates its own tables.
  */
 public class HistogramDiff extends LowLevelDiffAlgorithm {
 	/** Algorithm to use when there are too many element occurrences. */
@@ -105,6 +115,9 @@ public class HistogramDiff extends LowLevelDiffAlgorithm {
 	 */
 	int maxChainLength = 64;
 
+	/** Tables of the last completed diff, available to the next one. */
+	private final AtomicReference<Tables> idleTables = new AtomicReference<>();
+
 	/**
 	 * Set the algorithm used when there are too many element occurrences.
 	 *
@@ -130,27 +143,80 @@ public void setMaxChainLength(int maxLen) {
 		maxChainLength = maxLen;
 	}
 
+	@Override
+	Object cacheKey() {
+		return Arrays.asList(getClass(), Integer.valueOf(maxChainLength),
+				fallback != null ? fallback.cacheKey() : null);
+	}
+
+	@Override
+	public <S extends Sequence> EditList diffNonCommon(
+			SequenceComparator<? super S> cmp, S a, S b) {
+		Tables t = acquireTables();
+		try {
+			t.hashesA = hash(cmp, a, t.hashesA);
+			t.hashesB = hash(cmp, b, t.hashesB);
+			HashedSequence<S> ha = new HashedSequence<S>(a, t.hashesA);
+			HashedSequence<S> hb = new HashedSequence<S>(b, t.hashesB);
+
+			EditList res = new EditList();
+			Edit region = new Edit(0, a.size(), 0, b.size());
+			new State<S>(res, new HashedSequenceComparator<S>(cmp), ha, hb, t)
+					.diffRegion(region);
+			return res;
+		} finally {
+			releaseTables(t);
+		}
+	}
+
 	public <S extends Sequence> void diffNonCommon(EditList edits,
 			HashedSequenceComparator<S> cmp, HashedSequence<S> a,
 			HashedSequence<S> b, Edit region) {
-		new State<S>(edits, cmp, a, b).diffRegion(region);
+		Tables t = acquireTables();
+		try {
+			new State<S>(edits, cmp, a, b, t).diffRegion(region);
+		} finally {
+			releaseTables(t);
+		}
+	}
+
+	private Tables acquireTables() {
+		Tables t = idleTables.getAndSet(null);
+		return t != null ? t : new Tables();
+	}
+
+	private void releaseTables(Tables t) {
+		if (t.isRetainable())
+			idleTables.set(t);
+	}
+
+	private static <S extends Sequence> int[] hash(
+			SequenceComparator<? super S> cmp, S s, int[] buf) {
+		final int end = s.size();
+		final int[] hashes = buf.length < end ? new int[end] : buf;
+		for (int ptr = 0; ptr < end; ptr++)
+			hashes[ptr] = cmp.hash(s, ptr);
+		return hashes;
 	}
 
 	private class State<S extends Sequence> {
 		private final HashedSequenceComparator<S> cmp;
 		private final HashedSequence<S> a;
 		private final HashedSequence<S> b;
+		private final HistogramDiffIndex<S> index;
 		private final List<Edit> queue = new ArrayList<Edit>();
 
 		/** Result edits we have determined that must be made to convert a to b. */
 		final EditList edits;
 
 		State(EditList edits, HashedSequenceComparator<S> cmp,
-				HashedSequence<S> a, HashedSequence<S> b) {
+				HashedSequence<S> a, HashedSequence<S> b, Tables tables) {
 			this.cmp = cmp;
 			this.a = a;
 			this.b = b;
 			this.edits = edits;
+			this.index = new HistogramDiffIndex<S>(maxChainLength, cmp, a, b,
+					tables);
 		}
 
 		void diffRegion(Edit r) {
@@ -160,8 +226,7 @@ void diffRegion(Edit r) {
 		}
 
 		private void diffReplace(Edit r) {
-			Edit lcs = new HistogramDiffIndex<S>(maxChainLength, cmp, a, b, r)
-					.findLongestCommonSequence();
+			Edit lcs = index.findLongestCommonSequence(r);
 			if (lcs != null) {
 				// If we were given an edit, we can prove a result here.
 				//
@@ -43,6 +43,8 @@
 
 package org.eclipse.jgit.diff;
 
+import java.util.Arrays;
+
 import org.eclipse.jgit.internal.JGitText;
 
 /**
@@ -53,6 +55,10 @@
  * elements have been inserted from sequence A, each element of sequence B is
  * probed in the hash table and the longest common subsequence with the lowest
  * occurrence count in A is used as the result.
+ * <p>
+ * An index is reused for all regions of one diff, and takes its arrays from
+ * {@link Tables} that may be reused by later diffs, so searching a region does
+ * not allocate memory once the tables have grown to the region's size.
  *
  * @param <S>
  *            type of the base sequence.
@@ -78,13 +84,15 @@
 
 	private final HashedSequence<S> b;
 
-	private final Edit region;
+	private final Tables tables;
+
+	private Edit region;
 
 	/** Keyed by {@link #hash(HashedSequence, int)} for {@link #recs} index. */
-	private final int[] table;
+	private int[] table;
 
 	/** Number of low bits to discard from a key to index {@link #table}. */
-	private final int keyShift;
+	private int keyShift;
 
 	/**
 	 * Describes a unique element in sequence A.
@@ -117,7 +125,7 @@
 	 * This allows a chain to terminate with {@code 0}, as {@code 0} would never
 	 * be a valid next element.
 	 *
-	 * The array is sized to be {@code region.getLengthA()} and element indexes
+	 * The array holds at least {@code region.getLengthA()} elements and indexes
 	 * are converted to array indexes by subtracting {@link #ptrShift}, which is
 	 * just a cached version of {@code region.beginA}.
 	 */
@@ -145,29 +153,35 @@
 	private boolean hasCommon;
 
 	HistogramDiffIndex(int maxChainLength, HashedSequenceComparator<S> cmp,
-			HashedSequence<S> a, HashedSequence<S> b, Edit r) {
+			HashedSequence<S> a, HashedSequence<S> b, Tables tables) {
 		this.maxChainLength = maxChainLength;
 		this.cmp = cmp;
 		this.a = a;
 		this.b = b;
-		this.region = r;
+		this.tables = tables;
+	}
 
-		if (region.endA >= MAX_PTR)
+	private void reset(Edit r) {
+		if (r.endA >= MAX_PTR)
 			throw new IllegalArgumentException(
 					JGitText.get().sequenceTooLargeForDiffAlgorithm);
 
+		region = r;
 		final int sz = r.getLengthA();
 		final int tableBits = tableBits(sz);
-		table = new int[1 << tableBits];
+		table = tables.table(1 << tableBits);
 		keyShift = 32 - tableBits;
 		ptrShift = r.beginA;
 
-		recs = new long[Math.max(4, sz >>> 3)];
-		next = new int[sz];
-		recIdx = new int[sz];
+		recs = tables.recs(Math.max(4, sz >>> 3));
+		next = tables.next(sz);
+		recIdx = tables.recIdx(sz);
+		recCnt = 0;
+		hasCommon = false;
 	}
 
-	Edit findLongestCommonSequence() {
+	Edit findLongestCommonSequence(Edit r) {
+		reset(r);
 		if (!scanA())
 			return null;
 
@@ -221,6 +235,7 @@ private boolean scanA() {
 				long[] n = new long[sz];
 				System.arraycopy(recs, 0, n, 0, recs.length);
 				recs = n;
+				tables.recs = n;
 			}
 
 			recs[rIdx] = recCreate(table[tIdx], ptr, 1);
@@ -336,4 +351,63 @@ private static int tableBits(final int sz) {
 			bits++;
 		return bits;
 	}
+
+	/**
+	 * Arrays shared by the indexes of consecutive diffs.
+	 * <p>
+	 * Arrays are only replaced when a region needs larger ones. Tables must not
+	 * be used by two diffs at the same time.
+	 */
+	static final class Tables {
+		/** Largest region whose arrays are kept for later diffs. */
+		private static final int MAX_RETAINED = 1 << 16;
+
+		private int[] table = new int[0];
+
+		private long[] recs = new long[0];
+
+		private int[] next = new int[0];
+
+		private int[] recIdx = new int[0];
+
+		int[] hashesA = new int[0];
+
+		int[] hashesB = new int[0];
+
+		/** @return true if the arrays are small enough to keep. */
+		boolean isRetainable() {
+			return next.length <= MAX_RETAINED
+					&& hashesA.length <= MAX_RETAINED
+					&& hashesB.length <= MAX_RETAINED;
+		}
+
+		int[] table(int sz) {
+			if (table.length < sz)
+				table = new int[sz];
+			else
+				Arrays.fill(table, 0, sz, 0);
+			return table;
+		}
+
+		long[] recs(int sz) {
+			if (recs.length < sz)
+				recs = new long[sz];
+			return recs;
+		}
+
+		int[] next(int sz) {
+			// Chains end with 0, so the array must be cleared.
+			if (next.length < sz)
+				next = new int[sz];
+			else
+				Arrays.fill(next, 0, sz, 0);
+			return next;
+		}
+
+		int[] recIdx(int sz) {
+			if (recIdx.length < sz)
+				recIdx = new int[sz];
+			return recIdx;
+		}
+	}
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.diff;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * An {@link EditListCache} keeping the most recently used edits in memory.
+ * <p>
+ * The size of the cache is bounded by the total number of edits it holds, so
+ * a few diffs of heavily changed files cannot push out many small ones without
+ * also bounding the memory they use. An empty list counts as one edit.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @since 4.7
+ */
+public class InMemoryEditListCache implements EditListCache {
+	private final long maxEdits;
+
+	private final LinkedHashMap<Key, Edit[]> lists;
+
+	private long edits;
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param maxEdits
+	 *            number of edits to keep. The least recently used lists are
+	 *            dropped when this is exceeded.
+	 */
+	public InMemoryEditListCache(long maxEdits) {
+		this.maxEdits = maxEdits;
+		this.lists = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	@Override
+	public synchronized EditList get(Key key) {
+		Edit[] e = lists.get(key);
+		return e != null ? copy(e) : null;
+	}
+
+	@Override
+	public synchronized void put(Key key, EditList list) {
+		if (maxEdits < weight(list.size()))
+			return;
+
+		Edit[] e = new Edit[list.size()];
+		for (int i = 0; i < e.length; i++)
+			e[i] = copy(list.get(i));
+		Edit[] old = lists.put(key, e);
+		if (old != null)
+			edits -= weight(old.length);
+		edits += weight(e.length);
+
+		Iterator<Edit[]> itr = lists.values().iterator();
+		while (maxEdits < edits) {
+			edits -= weight(itr.next().length);
+			itr.remove();
+		}
+	}
+
+	/** @return number of edit lists in the cache. */
+	public synchronized int size() {
+		return lists.size();
+	}
+
+	/** @return number of edits in the cache, counting empty lists as one. */
+	public synchronized long getEditCount() {
+		return edits;
+	}
+
+	private static long weight(int size) {
+		return Math.max(1, size);
+	}
+
+	private static EditList copy(Edit[] list) {
+		EditList r = new EditList(list.length);
+		for (Edit e : list)
+			r.add(copy(e));
+		return r;
+	}
+
+	private static Edit copy(Edit e) {
+		return new Edit(e.beginA, e.endA, e.beginB, e.endB);
+	}
+}
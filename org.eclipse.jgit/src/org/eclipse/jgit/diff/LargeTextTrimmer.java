@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.diff;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.util.IO;
+
+/**
+ * Loads only the changed region of two large text files.
+ * <p>
+ * Both files are streamed to find the lines they have in common at their start
+ * and at their end, without holding more than a buffer of either file. Only
+ * the lines between, plus a number of context lines on either side, are then
+ * loaded and diffed. The common lines are the same bytes in both files, so the
+ * region to load is usually small even for very large generated files.
+ */
+final class LargeTextTrimmer {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final ObjectLoader a;
+
+	private final ObjectLoader b;
+
+	private final int context;
+
+	private final int limit;
+
+	/** Offset just after the last LF of the common prefix. */
+	private long prefix;
+
+	/** Number of lines in the common prefix. */
+	private long prefixLines;
+
+	/** Offset of the first line to load, in both files. */
+	private long windowStart;
+
+	/** Line number of the first line to load, in both files. */
+	private long windowLine;
+
+	/** Offset of the common suffix in each file. */
+	private long suffixA;
+
+	private long suffixB;
+
+	/** Length of the context lines loaded from the common suffix. */
+	private long suffixContext;
+
+	private long linesA;
+
+	private long linesB;
+
+	private RawText windowA;
+
+	private RawText windowB;
+
+	/**
+	 * @param a
+	 *            the old content.
+	 * @param b
+	 *            the new content.
+	 * @param context
+	 *            number of unchanged lines to load around the changes.
+	 * @param limit
+	 *            maximum number of bytes to load from each file.
+	 */
+	LargeTextTrimmer(ObjectLoader a, ObjectLoader b, int context, int limit) {
+		this.a = a;
+		this.b = b;
+		this.context = Math.max(0, context);
+		this.limit = limit;
+	}
+
+	/**
+	 * Find and load the changed region.
+	 *
+	 * @return true if the region was loaded; false if either file is binary,
+	 *         or the changed region is larger than the limit.
+	 * @throws IOException
+	 *             the content could not be read.
+	 */
+	boolean trim() throws IOException {
+		if (isBinary(a) || isBinary(b))
+			return false;
+
+		findPrefix();
+		findSuffix();
+		if (Integer.MAX_VALUE < linesA || Integer.MAX_VALUE < linesB)
+			return false;
+
+		long endA = suffixA + suffixContext;
+		long endB = suffixB + suffixContext;
+		if (limit < endA - windowStart || limit < endB - windowStart)
+			return false;
+
+		windowA = load(a, endA);
+		windowB = load(b, endB);
+		return true;
+	}
+
+	/** @return the loaded lines of the old content. */
+	RawText getA() {
+		return new TrimmedRawText(windowA, (int) windowLine, (int) linesA,
+				suffixA + suffixContext == a.getSize());
+	}
+
+	/** @return the loaded lines of the new content. */
+	RawText getB() {
+		return new TrimmedRawText(windowB, (int) windowLine, (int) linesB,
+				suffixB + suffixContext == b.getSize());
+	}
+
+	/**
+	 * Diff the loaded lines.
+	 *
+	 * @param alg
+	 *            the algorithm to diff with.
+	 * @param cmp
+	 *            the comparator for lines.
+	 * @return edits between the files, indexed by lines of the whole files.
+	 */
+	EditList diff(DiffAlgorithm alg, RawTextComparator cmp) {
+		EditList edits = alg.diff(cmp, windowA, windowB);
+		int shift = (int) windowLine;
+		for (Edit e : edits) {
+			e.beginA += shift;
+			e.endA += shift;
+			e.beginB += shift;
+			e.endB += shift;
+		}
+		return edits;
+	}
+
+	private static boolean isBinary(ObjectLoader ldr) throws IOException {
+		try (InputStream in = ldr.openStream()) {
+			return RawText.isBinary(in);
+		}
+	}
+
+	private void findPrefix() throws IOException {
+		// Start of the last lines, for the context before the first change.
+		long[] starts = new long[context + 1];
+		long lines = 0;
+
+		try (Input ia = new Input(a); Input ib = new Input(b)) {
+			for (long pos = 1;; pos++) {
+				int c = ia.read();
+				if (c < 0 || c != ib.read())
+					break;
+				if (c == '\n')
+					starts[(int) (++lines % starts.length)] = pos;
+			}
+		}
+
+		prefix = starts[(int) (lines % starts.length)];
+		prefixLines = lines;
+		windowLine = Math.max(0, lines - context);
+		windowStart = starts[(int) (windowLine % starts.length)];
+	}
+
+	private void findSuffix() throws IOException {
+		long ra = a.getSize() - prefix;
+		long rb = b.getSize() - prefix;
+		long n = Math.min(ra, rb);
+
+		try (Input ia = new Input(a); Input ib = new Input(b)) {
+			// Align the ends of both files, so equal offsets of the two
+			// streams are at the same distance from the end.
+			ia.skip(prefix + ra - n);
+			ib.skip(prefix + rb - n);
+			boolean atLineStart = ia.last == '\n' && ib.last == '\n';
+
+			// Find the last run of equal bytes, and the LFs at its start.
+			long run = 0;
+			long[] runLines = new long[context + 1];
+			int runLineCnt = 0;
+			for (long i = 0; i < n; i++) {
+				int c = ia.read();
+				if (c != ib.read()) {
+					run = i + 1;
+					runLineCnt = 0;
+				} else if (c == '\n' && runLineCnt < runLines.length)
+					runLines[runLineCnt++] = i + 1;
+			}
+
+			// The suffix must start a line in both files.
+			long start;
+			int contextEnd;
+			if (run == 0 && atLineStart) {
+				start = 0;
+				contextEnd = context - 1;
+			} else if (runLineCnt > 0) {
+				start = runLines[0];
+				contextEnd = context;
+			} else {
+				start = n;
+				contextEnd = -1;
+			}
+
+			long end;
+			if (contextEnd < 0)
+				end = start;
+			else if (contextEnd < runLineCnt)
+				end = runLines[contextEnd];
+			else
+				end = n;
+
+			suffixA = prefix + ra - n + start;
+			suffixB = prefix + rb - n + start;
+			suffixContext = end - start;
+			linesA = prefixLines + ia.lines + (ia.last != '\n' ? 1 : 0);
+			linesB = prefixLines + ib.lines + (ib.last != '\n' ? 1 : 0);
+		}
+	}
+
+	private RawText load(ObjectLoader ldr, long end) throws IOException {
+		byte[] buf = new byte[(int) (end - windowStart)];
+		try (InputStream in = ldr.openStream()) {
+			IO.skipFully(in, windowStart);
+			IO.readFully(in, buf, 0, buf.length);
+		}
+		return new RawText(buf);
+	}
+
+	/** Buffered stream of a file, counting LFs after the common prefix. */
+	private final class Input implements AutoCloseable {
+		private final InputStream in;
+
+		private final byte[] buf = new byte[BUFFER_SIZE];
+
+		private int ptr;
+
+		private int cnt;
+
+		private long pos;
+
+		/** Last byte read, LF at the start of a file. */
+		int last = '\n';
+
+		/** Number of LFs read after {@link LargeTextTrimmer#prefix}. */
+		long lines;
+
+		Input(ObjectLoader ldr) throws IOException {
+			in = ldr.openStream();
+		}
+
+		int read() throws IOException {
+			if (ptr == cnt) {
+				cnt = in.read(buf, 0, buf.length);
+				ptr = 0;
+				if (cnt <= 0) {
+					cnt = 0;
+					return -1;
+				}
+			}
+			int c = buf[ptr++] & 0xff;
+			if (c == '\n' && prefix <= pos)
+				lines++;
+			pos++;
+			last = c;
+			return c;
+		}
+
+		void skip(long n) throws IOException {
+			for (; n > 0; n--)
+				read();
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
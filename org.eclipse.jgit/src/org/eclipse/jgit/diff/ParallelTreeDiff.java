@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.diff;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.MutableObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Compares two trees, scanning differing subtrees concurrently.
+ * <p>
+ * Each differing subtree is scanned by its own task, running a non-recursive
+ * {@link TreeWalk} over {@link CanonicalTreeParser}s set to the path of the
+ * subtree. Tasks never wait for other tasks; the subtrees they find are
+ * submitted as new tasks, and the calling thread collects all results in the
+ * order of a recursive walk over both trees.
+ * <p>
+ * Every thread of the executor reads through its own {@link ObjectReader},
+ * created from the reader given to the constructor.
+ */
+final class ParallelTreeDiff {
+	private final ObjectReader templateReader;
+
+	private final TreeFilter filter;
+
+	private final ExecutorService executor;
+
+	private final ConcurrentMap<Thread, ObjectReader> readers;
+
+	/** Number of tasks submitted and not yet completed. */
+	private int pending;
+
+	/** Set if the scan failed, to end the remaining tasks early. */
+	private volatile boolean failed;
+
+	/**
+	 * @param reader
+	 *            template for the readers of the tasks.
+	 * @param filter
+	 *            filter of the paths to compare. It is cloned for each task.
+	 * @param executor
+	 *            executor to run the tasks on.
+	 */
+	ParallelTreeDiff(ObjectReader reader, TreeFilter filter,
+			ExecutorService executor) {
+		this.templateReader = reader;
+		this.filter = filter;
+		this.executor = executor;
+		this.readers = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Compare two trees.
+	 *
+	 * @param a
+	 *            the old tree, or null for an empty tree.
+	 * @param b
+	 *            the new tree, or null for an empty tree.
+	 * @return the differences, as returned by {@link DiffEntry#scan(TreeWalk)}
+	 *         for a recursive walk over both trees.
+	 * @throws IOException
+	 *             trees cannot be read.
+	 */
+	List<DiffEntry> scan(AnyObjectId a, AnyObjectId b) throws IOException {
+		boolean ok = false;
+		try {
+			List<DiffEntry> r = new ArrayList<>();
+			collect(submit(new byte[0], copy(a), copy(b)), r);
+			ok = true;
+			return r;
+		} finally {
+			if (!ok)
+				failed = true;
+			awaitTasks();
+			for (ObjectReader or : readers.values())
+				or.close();
+		}
+	}
+
+	private void collect(Future<List<Object>> task, List<DiffEntry> r)
+			throws IOException {
+		for (Object o : get(task)) {
+			if (o instanceof DiffEntry)
+				r.add((DiffEntry) o);
+			else
+				collect(((Subtree) o).task, r);
+		}
+	}
+
+	private Future<List<Object>> submit(final byte[] path, final ObjectId a,
+			final ObjectId b) {
+		synchronized (this) {
+			pending++;
+		}
+		try {
+			return executor.submit(new Callable<List<Object>>() {
+				@Override
+				public List<Object> call() throws IOException {
+					try {
+						if (failed)
+							return Collections.emptyList();
+						return scanTree(path, a, b);
+					} finally {
+						taskDone();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			taskDone();
+			throw e;
+		}
+	}
+
+	private List<Object> scanTree(byte[] path, ObjectId a, ObjectId b)
+			throws IOException {
+		ObjectReader reader = reader();
+		List<Object> r = new ArrayList<>();
+		MutableObjectId idBuf = new MutableObjectId();
+		try (TreeWalk walk = new TreeWalk(reader)) {
+			walk.addTree(iterator(path, a, reader));
+			walk.addTree(iterator(path, b, reader));
+			walk.setFilter(filter.clone());
+			while (!failed && walk.next()) {
+				if (walk.isSubtree())
+					r.add(new Subtree(submit(walk.getRawPath(),
+							treeId(walk, 0), treeId(walk, 1))));
+				else
+					DiffEntry.scanEntry(walk, idBuf, null, r);
+			}
+		}
+		return r;
+	}
+
+	private static ObjectId treeId(TreeWalk walk, int nth) {
+		if (walk.getFileMode(nth) != FileMode.TREE)
+			return null;
+		return walk.getObjectId(nth);
+	}
+
+	private static AbstractTreeIterator iterator(byte[] path, ObjectId id,
+			ObjectReader reader) throws IOException {
+		if (id != null)
+			return new CanonicalTreeParser(path, reader, id);
+		if (path.length == 0)
+			return new EmptyTreeIterator();
+		byte[] p = Arrays.copyOf(path, path.length + 1);
+		p[path.length] = '/';
+		return new EmptyTreeIterator(null, p, p.length);
+	}
+
+	private ObjectReader reader() {
+		Thread self = Thread.currentThread();
+		ObjectReader r = readers.get(self);
+		if (r == null) {
+			r = templateReader.newReader();
+			readers.put(self, r);
+		}
+		return r;
+	}
+
+	private synchronized void taskDone() {
+		if (--pending == 0)
+			notifyAll();
+	}
+
+	private synchronized void awaitTasks() {
+		boolean interrupted = false;
+		while (pending > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				// Readers must not be closed while tasks still use them.
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private static List<Object> get(Future<List<Object>> task)
+			throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Error)
+				throw (Error) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			throw new IOException(cause.getMessage(), cause);
+		}
+	}
+
+	private static ObjectId copy(AnyObjectId id) {
+		return id != null ? id.copy() : null;
+	}
+
+	/** Placeholder for the differences found in a subtree. */
+	private static final class Subtree {
+		final Future<List<Object>> task;
+
+		Subtree(Future<List<Object>> task) {
+			this.task = task;
+		}
+	}
+}
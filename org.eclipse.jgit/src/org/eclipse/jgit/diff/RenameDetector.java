@@ -54,6 +54,8 @@
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.diff.SimilarityIndex.TableFullException;
@@ -69,6 +71,12 @@
 public class RenameDetector {
 	private static final int EXACT_RENAME_SCORE = 100;
 
+	/**
+	 * Smallest number of file pairs compared by content to spread over the
+	 * common pool, if no executor was set.
+	 */
+	private static final long PARALLEL_PAIRS = 4096;
+
 	private static final Comparator<DiffEntry> DIFF_COMPARATOR = new Comparator<DiffEntry>() {
 		public int compare(DiffEntry a, DiffEntry b) {
 			int cmp = nameOf(a).compareTo(nameOf(b));
@@ -129,6 +137,9 @@ private int sortOf(ChangeType changeType) {
 	/** Set if the number of adds or deletes was over the limit. */
 	private boolean overRenameLimit;
 
+	/** Executor to compare file contents on, null to pick a default. */
+	private ExecutorService executor;
+
 	/**
 	 * Create a new rename detector for the given repository
 	 *
@@ -217,6 +228,9 @@ public int getRenameLimit() {
 	 * each side, then perform that many file compares to determine similarity.
 	 * If 1000 files are added, and 1000 files are deleted, a 1000*1000 matrix
 	 * must be allocated, and 1,000,000 file compares may need to be performed.
+	 * <p>
+	 * Deleted and added files that are the only ones with their file name are
+	 * compared first, and are not counted against the limit if they match.
 	 *
 	 * @param limit
 	 *            new file limit.
@@ -225,11 +239,35 @@ public void setRenameLimit(int limit) {
 		renameLimit = limit;
 	}
 
+	/**
+	 * Set the executor used to compare file contents.
+	 * <p>
+	 * Inexact rename detection hashes and scores files on this executor when
+	 * the content is read from an {@link ObjectReader}. If not set, large
+	 * detections run on {@link ForkJoinPool#commonPool()}, smaller ones on the
+	 * calling thread.
+	 *
+	 * @param executor
+	 *            the executor to use.
+	 * @since 4.7
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
 	/**
 	 * Check if the detector is over the rename limit.
 	 * <p>
 	 * This method can be invoked either before or after {@code getEntries} has
-	 * been used to perform rename detection.
+	 * been used to perform rename detection, with a different meaning.
+	 * <p>
+	 * Before the detection it only compares the number of file additions or
+	 * removals with the rename limit. The detection first pairs files moved
+	 * under the same file name and applies the limit to the remaining files
+	 * only, so it may still compare contents although this returned true.
+	 * <p>
+	 * After the detection it reports whether expensive computation was
+	 * actually skipped, which is the answer to act on.
 	 *
 	 * @return true if the detector has more file additions or removals than the
 	 *         rename limit is currently set to. In such configurations the
@@ -482,20 +520,28 @@ private int calculateModifyScore(ContentSource.Pair reader, DiffEntry d)
 	private void findContentRenames(ContentSource.Pair reader,
 			ProgressMonitor pm)
 			throws IOException {
-		int cnt = Math.max(added.size(), deleted.size());
-		if (getRenameLimit() == 0 || cnt <= getRenameLimit()) {
-			SimilarityRenameDetector d;
-
-			d = new SimilarityRenameDetector(reader, deleted, added);
-			d.setRenameScore(getRenameScore());
-			d.compute(pm);
-			overRenameLimit |= d.isTableOverflow();
-			deleted = d.getLeftOverSources();
-			added = d.getLeftOverDestinations();
-			entries.addAll(d.getMatches());
-		} else {
-			overRenameLimit = true;
-		}
+		// The detector pairs files with the same name before applying the
+		// rename limit, so a large move of files across directories is
+		// still detected.
+		SimilarityRenameDetector d;
+
+		d = new SimilarityRenameDetector(reader, deleted, added);
+		d.setRenameScore(getRenameScore());
+		d.setRenameLimit(getRenameLimit());
+		d.setExecutor(getExecutor());
+		d.compute(pm);
+		overRenameLimit |= d.isTableOverflow() || d.isOverRenameLimit();
+		deleted = d.getLeftOverSources();
+		added = d.getLeftOverDestinations();
+		entries.addAll(d.getMatches());
+	}
+
+	private ExecutorService getExecutor() {
+		if (executor != null)
+			return executor;
+		if ((long) added.size() * deleted.size() >= PARALLEL_PAIRS)
+			return ForkJoinPool.commonPool();
+		return null;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -47,10 +47,17 @@
 import static org.eclipse.jgit.diff.DiffEntry.Side.OLD;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.diff.SimilarityIndex.TableFullException;
@@ -58,6 +65,7 @@
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.util.LongList;
 
 class SimilarityRenameDetector {
 	/**
@@ -74,6 +82,14 @@ class SimilarityRenameDetector {
 
 	private static final int SCORE_SHIFT = 2 * BITS_PER_INDEX;
 
+	/**
+	 * Number of files on each side of a tile of the score matrix.
+	 * <p>
+	 * The matrix is scored one tile at a time, so at most this many
+	 * destination and source indexes are held in memory at once.
+	 */
+	static final int DEFAULT_TILE_SIZE = 512;
+
 	private ContentSource.Pair reader;
 
 	/**
@@ -95,7 +111,7 @@ class SimilarityRenameDetector {
 	private List<DiffEntry> dsts;
 
 	/**
-	 * Matrix of all examined file pairs, and their scores.
+	 * Examined file pairs scoring at least {@link #renameScore}.
 	 * <p>
 	 * The upper 8 bits of each long stores the score, but the score is bounded
 	 * to be in the range (0, 128] so that the highest bit is never set, and all
@@ -107,16 +123,48 @@ class SimilarityRenameDetector {
 	 * lower list indices later in the matrix, giving precedence to files whose
 	 * names sort earlier in the tree.
 	 */
-	private long[] matrix;
+	private LongList matrix;
 
 	/** Score a pair must exceed to be considered a rename. */
 	private int renameScore = 60;
 
+	/** Limit on the files left after basename matching, 0 for no limit. */
+	private int renameLimit;
+
+	private int tileSize = DEFAULT_TILE_SIZE;
+
+	/** Runs the work on several threads, null to use the calling thread. */
+	private ExecutorService executor;
+
 	/** Set if any {@link SimilarityIndex.TableFullException} occurs. */
-	private boolean tableOverflow;
+	private volatile boolean tableOverflow;
+
+	/** Set if the files left after basename matching exceed the limit. */
+	private boolean overRenameLimit;
 
 	private List<DiffEntry> out;
 
+	/** Size of each source plus one, or 0 if the source is not a file. */
+	private long[] srcSizes;
+
+	/** Size of each destination plus one, or 0 if it is not a file. */
+	private long[] dstSizes;
+
+	/** Sources sharing a unique file name with {@link #candidateDsts}. */
+	private int[] candidateSrcs;
+
+	/** Destinations sharing a unique file name with {@link #candidateSrcs}. */
+	private int[] candidateDsts;
+
+	/** Sources not considered for the matrix. */
+	private boolean[] srcDone;
+
+	/** Destinations not considered for the matrix. */
+	private boolean[] dstDone;
+
+	/** Sizes of all sources still considered, sorted. */
+	private long[] sortedSrcSizes;
+
 	SimilarityRenameDetector(ContentSource.Pair reader, List<DiffEntry> srcs,
 			List<DiffEntry> dsts) {
 		this.reader = reader;
@@ -128,21 +176,57 @@ void setRenameScore(int score) {
 		renameScore = score;
 	}
 
+	void setRenameLimit(int limit) {
+		renameLimit = limit;
+	}
+
+	void setTileSize(int size) {
+		tileSize = size;
+	}
+
+	/**
+	 * Set the executor to hash and score files on.
+	 * <p>
+	 * Work is only spread over the executor if the content source reads from
+	 * an ObjectReader, as each task needs its own reader.
+	 *
+	 * @param executor
+	 *            the executor, or null to run on the calling thread.
+	 */
+	void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
 	void compute(ProgressMonitor pm) throws IOException {
 		if (pm == null)
 			pm = NullProgressMonitor.INSTANCE;
 
+		long work = 2L * srcs.size() * dsts.size();
 		pm.beginTask(JGitText.get().renamesFindingByContent, //
-				2 * srcs.size() * dsts.size());
+				(int) Math.min(work, Integer.MAX_VALUE));
 
-		int mNext = buildMatrix(pm);
-		out = new ArrayList<DiffEntry>(Math.min(mNext, dsts.size()));
+		out = new ArrayList<DiffEntry>();
+		int mNext = 0;
+		int cnt = Math.max(srcs.size(), dsts.size());
+		int candidates = findBasenameCandidates();
+		if (renameLimit != 0 && cnt - candidates > renameLimit) {
+			// Even pairing every file name leaves too many files, skip
+			// the work like without basename matching.
+			overRenameLimit = true;
+		} else {
+			computeSizes();
+			cnt -= findBasenameMatches(candidates);
+			if (renameLimit == 0 || cnt <= renameLimit)
+				mNext = buildMatrix(pm);
+			else
+				overRenameLimit = true;
+		}
 
 		// Match rename pairs on a first come, first serve basis until
 		// we have looked at everything that is above our minimum score.
 		//
 		for (--mNext; mNext >= 0; mNext--) {
-			long ent = matrix[mNext];
+			long ent = matrix.get(mNext);
 			int sIdx = srcFile(ent);
 			int dIdx = dstFile(ent);
 			DiffEntry s = srcs.get(sIdx);
@@ -191,6 +275,10 @@ boolean isTableOverflow() {
 		return tableOverflow;
 	}
 
+	boolean isOverRenameLimit() {
+		return overRenameLimit;
+	}
+
 	private static List<DiffEntry> compactSrcList(List<DiffEntry> in) {
 		ArrayList<DiffEntry> r = new ArrayList<DiffEntry>(in.size());
 		for (DiffEntry e : in) {
@@ -209,114 +297,397 @@ private static List<DiffEntry> compactDstList(List<DiffEntry> in) {
 		return r;
 	}
 
-	private int buildMatrix(ProgressMonitor pm) throws IOException {
-		// Allocate for the worst-case scenario where every pair has a
-		// score that we need to consider. We might not need that many.
-		//
-		matrix = new long[srcs.size() * dsts.size()];
+	private void computeSizes() throws IOException {
+		srcSizes = new long[srcs.size()];
+		dstSizes = new long[dsts.size()];
+
+		run(srcs.size(), new Task<Void>() {
+			@Override
+			Void run(ContentSource.Pair r, int begin, int end)
+					throws IOException {
+				for (int i = begin; i < end; i++) {
+					if (!srcDone[i])
+						srcSizes[i] = r.size(OLD, srcs.get(i)) + 1;
+				}
+				return null;
+			}
+		});
+		run(dsts.size(), new Task<Void>() {
+			@Override
+			Void run(ContentSource.Pair r, int begin, int end)
+					throws IOException {
+				for (int i = begin; i < end; i++) {
+					if (!dstDone[i])
+						dstSizes[i] = r.size(NEW, dsts.get(i)) + 1;
+				}
+				return null;
+			}
+		});
+	}
 
-		long[] srcSizes = new long[srcs.size()];
-		long[] dstSizes = new long[dsts.size()];
-		BitSet dstTooLarge = null;
+	/**
+	 * Find the sources and destinations with a file name used by exactly one
+	 * source and one destination.
+	 * <p>
+	 * Only looks at the paths and modes, so the rename limit can be checked
+	 * before any content is read.
+	 *
+	 * @return number of candidate pairs stored in {@link #candidateSrcs} and
+	 *         {@link #candidateDsts}.
+	 */
+	private int findBasenameCandidates() {
+		srcDone = new boolean[srcs.size()];
+		dstDone = new boolean[dsts.size()];
+		for (int i = 0; i < srcDone.length; i++)
+			srcDone[i] = !isFile(srcs.get(i).oldMode);
+		for (int i = 0; i < dstDone.length; i++)
+			dstDone[i] = !isFile(dsts.get(i).newMode);
+
+		Map<String, Integer> srcNames = uniqueBasenames(srcs, srcDone, OLD);
+		Map<String, Integer> dstNames = uniqueBasenames(dsts, dstDone, NEW);
+
+		int n = 0;
+		candidateSrcs = new int[Math.min(srcNames.size(), dstNames.size())];
+		candidateDsts = new int[candidateSrcs.length];
+		for (Map.Entry<String, Integer> e : srcNames.entrySet()) {
+			Integer d = dstNames.get(e.getKey());
+			if (d == null)
+				continue;
+			int sIdx = e.getValue().intValue();
+			int dIdx = d.intValue();
+			if (sIdx < 0 || dIdx < 0)
+				continue;
+			if (srcs.get(sIdx).changeType != ChangeType.DELETE)
+				continue; // may still be the source of several copies
+			if (!RenameDetector.sameType(srcs.get(sIdx).oldMode,
+					dsts.get(dIdx).newMode))
+				continue;
+			candidateSrcs[n] = sIdx;
+			candidateDsts[n] = dIdx;
+			n++;
+		}
+		return n;
+	}
 
-		// Consider each pair of files, if the score is above the minimum
-		// threshold we need record that scoring in the matrix so we can
-		// later find the best matches.
-		//
-		int mNext = 0;
-		SRC: for (int srcIdx = 0; srcIdx < srcs.size(); srcIdx++) {
-			DiffEntry srcEnt = srcs.get(srcIdx);
-			if (!isFile(srcEnt.oldMode)) {
-				pm.update(dsts.size());
+	/**
+	 * Pair sources and destinations with the same file name.
+	 * <p>
+	 * Files moved to another directory are the bulk of large renames. If a file
+	 * name is used by exactly one source and one destination, the two are
+	 * compared on their own and paired if they score high enough, removing
+	 * both from the quadratic matrix.
+	 *
+	 * @param candidates
+	 *            number of pairs found by {@link #findBasenameCandidates()}.
+	 * @return number of pairs found.
+	 */
+	private int findBasenameMatches(int candidates) throws IOException {
+		int n = 0;
+		final int[] ps = new int[candidates];
+		final int[] pd = new int[candidates];
+		for (int i = 0; i < candidates; i++) {
+			int sIdx = candidateSrcs[i];
+			int dIdx = candidateDsts[i];
+			if (!sizesMatch(srcSizes[sIdx], dstSizes[dIdx]))
 				continue;
+			ps[n] = sIdx;
+			pd[n] = dIdx;
+			n++;
+		}
+		if (n == 0)
+			return 0;
+
+		final int[] scores = new int[n];
+		run(n, new Task<Void>() {
+			@Override
+			Void run(ContentSource.Pair r, int begin, int end)
+					throws IOException {
+				for (int i = begin; i < end; i++) {
+					DiffEntry srcEnt = srcs.get(ps[i]);
+					DiffEntry dstEnt = dsts.get(pd[i]);
+					try {
+						scores[i] = score(srcEnt, hash(r, OLD, srcEnt), dstEnt,
+								hash(r, NEW, dstEnt));
+					} catch (TableFullException tableFull) {
+						// Leave the pair to the matrix, which reports it.
+						scores[i] = -1;
+					}
+				}
+				return null;
 			}
+		});
 
-			SimilarityIndex s = null;
-
-			for (int dstIdx = 0; dstIdx < dsts.size(); dstIdx++) {
-				DiffEntry dstEnt = dsts.get(dstIdx);
-
-				if (!isFile(dstEnt.newMode)) {
-					pm.update(1);
-					continue;
-				}
+		int matched = 0;
+		for (int i = 0; i < n; i++) {
+			if (scores[i] < renameScore)
+				continue;
+			DiffEntry s = srcs.get(ps[i]);
+			s.changeType = ChangeType.RENAME;
+			out.add(DiffEntry.pair(ChangeType.RENAME, s, dsts.get(pd[i]),
+					scores[i]));
+			dsts.set(pd[i], null);
+			srcDone[ps[i]] = true;
+			dstDone[pd[i]] = true;
+			matched++;
+		}
+		return matched;
+	}
 
-				if (!RenameDetector.sameType(srcEnt.oldMode, dstEnt.newMode)) {
-					pm.update(1);
-					continue;
-				}
+	private static Map<String, Integer> uniqueBasenames(List<DiffEntry> list,
+			boolean[] done, DiffEntry.Side side) {
+		Integer duplicate = Integer.valueOf(-1);
+		Map<String, Integer> names = new HashMap<>();
+		for (int i = 0; i < list.size(); i++) {
+			if (done[i])
+				continue;
+			String path = list.get(i).getPath(side);
+			String name = path.substring(path.lastIndexOf('/') + 1);
+			if (names.containsKey(name))
+				names.put(name, duplicate);
+			else
+				names.put(name, Integer.valueOf(i));
+		}
+		return names;
+	}
 
-				if (dstTooLarge != null && dstTooLarge.get(dstIdx)) {
-					pm.update(1);
-					continue;
-				}
+	private int buildMatrix(ProgressMonitor pm) throws IOException {
+		matrix = new LongList();
 
-				long srcSize = srcSizes[srcIdx];
-				if (srcSize == 0) {
-					srcSize = size(OLD, srcEnt) + 1;
-					srcSizes[srcIdx] = srcSize;
-				}
+		int live = 0;
+		sortedSrcSizes = new long[srcs.size()];
+		for (int i = 0; i < srcs.size(); i++) {
+			if (!srcDone[i])
+				sortedSrcSizes[live++] = srcSizes[i];
+		}
+		sortedSrcSizes = Arrays.copyOf(sortedSrcSizes, live);
+		Arrays.sort(sortedSrcSizes);
 
-				long dstSize = dstSizes[dstIdx];
-				if (dstSize == 0) {
-					dstSize = size(NEW, dstEnt) + 1;
-					dstSizes[dstIdx] = dstSize;
+		// Consider each pair of files, if the score is above the minimum
+		// threshold we need record that scoring in the matrix so we can
+		// later find the best matches. Pairs are scored a tile at a time,
+		// each tile using the same destination indexes for many sources.
+		//
+		int srcCnt = srcs.size();
+		int dstCnt = dsts.size();
+		SimilarityIndex[] dstIndexes = null;
+		int dstIndexesBegin = -1;
+		for (int s0 = 0; s0 < srcCnt; s0 += tileSize) {
+			int s1 = Math.min(srcCnt, s0 + tileSize);
+			SimilarityIndex[] srcIndexes = new SimilarityIndex[s1 - s0];
+			for (int d0 = 0; d0 < dstCnt; d0 += tileSize) {
+				int d1 = Math.min(dstCnt, d0 + tileSize);
+				if (dstIndexesBegin != d0) {
+					dstIndexes = null; // allow collection before rehashing
+					dstIndexes = hashDestinations(d0, d1);
+					dstIndexesBegin = d0;
 				}
+				scoreTile(s0, s1, srcIndexes, d0, d1, dstIndexes);
+				pm.update((s1 - s0) * (d1 - d0));
+			}
+		}
 
-				long max = Math.max(srcSize, dstSize);
-				long min = Math.min(srcSize, dstSize);
-				if (min * 100 / max < renameScore) {
-					// Cannot possibly match, as the file sizes are so different
-					pm.update(1);
-					continue;
-				}
+		// Sort everything we populated, which might be the entire matrix,
+		// or just a smaller slice if we had some bad low scoring pairs.
+		//
+		matrix.sort();
+		return matrix.size();
+	}
 
-				if (s == null) {
+	private SimilarityIndex[] hashDestinations(final int d0, int d1)
+			throws IOException {
+		final SimilarityIndex[] indexes = new SimilarityIndex[d1 - d0];
+		run(d1 - d0, new Task<Void>() {
+			@Override
+			Void run(ContentSource.Pair r, int begin, int end)
+					throws IOException {
+				for (int i = begin; i < end; i++) {
+					int dIdx = d0 + i;
+					if (dstDone[dIdx] || !hasSourceOfSimilarSize(dIdx))
+						continue;
 					try {
-						s = hash(OLD, srcEnt);
+						indexes[i] = hash(r, NEW, dsts.get(dIdx));
 					} catch (TableFullException tableFull) {
+						dstDone[dIdx] = true;
 						tableOverflow = true;
-						continue SRC;
 					}
 				}
+				return null;
+			}
+		});
+		return indexes;
+	}
+
+	private boolean hasSourceOfSimilarSize(int dIdx) {
+		long dstSize = dstSizes[dIdx];
+		long[] sizes = sortedSrcSizes;
+		int i = Arrays.binarySearch(sizes, dstSize * renameScore / 100);
+		if (i < 0)
+			i = -(i + 1);
+		for (; i < sizes.length; i++) {
+			if (sizesMatch(sizes[i], dstSize))
+				return true;
+			if (sizes[i] > dstSize)
+				return false;
+		}
+		return false;
+	}
 
-				SimilarityIndex d;
-				try {
-					d = hash(NEW, dstEnt);
-				} catch (TableFullException tableFull) {
-					if (dstTooLarge == null)
-						dstTooLarge = new BitSet(dsts.size());
-					dstTooLarge.set(dstIdx);
-					tableOverflow = true;
-					pm.update(1);
-					continue;
+	private void scoreTile(final int s0, int s1,
+			final SimilarityIndex[] srcIndexes, final int d0, final int d1,
+			final SimilarityIndex[] dstIndexes) throws IOException {
+		List<LongList> found = run(s1 - s0, new Task<LongList>() {
+			@Override
+			LongList run(ContentSource.Pair r, int begin, int end)
+					throws IOException {
+				LongList scores = new LongList();
+				SRC: for (int i = begin; i < end; i++) {
+					int sIdx = s0 + i;
+					if (srcDone[sIdx])
+						continue;
+					DiffEntry srcEnt = srcs.get(sIdx);
+					SimilarityIndex s = srcIndexes[i];
+
+					for (int dIdx = d0; dIdx < d1; dIdx++) {
+						SimilarityIndex d = dstIndexes[dIdx - d0];
+						if (d == null)
+							continue;
+
+						DiffEntry dstEnt = dsts.get(dIdx);
+						if (!RenameDetector.sameType(srcEnt.oldMode,
+								dstEnt.newMode))
+							continue;
+
+						// Cannot possibly match, as the file sizes are so
+						// different.
+						if (!sizesMatch(srcSizes[sIdx], dstSizes[dIdx]))
+							continue;
+
+						if (s == null) {
+							try {
+								s = hash(r, OLD, srcEnt);
+							} catch (TableFullException tableFull) {
+								srcDone[sIdx] = true;
+								tableOverflow = true;
+								continue SRC;
+							}
+							srcIndexes[i] = s;
+						}
+
+						int score = score(srcEnt, s, dstEnt, d);
+						if (score >= renameScore)
+							scores.add(encode(score, sIdx, dIdx));
+					}
 				}
+				return scores;
+			}
+		});
+		for (LongList scores : found) {
+			for (int i = 0; i < scores.size(); i++)
+				matrix.add(scores.get(i));
+		}
+	}
+
+	private boolean sizesMatch(long srcSize, long dstSize) {
+		long max = Math.max(srcSize, dstSize);
+		long min = Math.min(srcSize, dstSize);
+		return min * 100 / max >= renameScore;
+	}
+
+	private static int score(DiffEntry srcEnt, SimilarityIndex s,
+			DiffEntry dstEnt, SimilarityIndex d) {
+		int contentScore = s.score(d, 10000);
 
-				int contentScore = s.score(d, 10000);
+		// nameScore returns a value between 0 and 100, but we want it
+		// to be in the same range as the content score. This allows it
+		// to be dropped into the pretty formula for the final score.
+		int nameScore = nameScore(srcEnt.oldPath, dstEnt.newPath) * 100;
 
-				// nameScore returns a value between 0 and 100, but we want it
-				// to be in the same range as the content score. This allows it
-				// to be dropped into the pretty formula for the final score.
-				int nameScore = nameScore(srcEnt.oldPath, dstEnt.newPath) * 100;
+		return (contentScore * 99 + nameScore * 1) / 10000;
+	}
 
-				int score = (contentScore * 99 + nameScore * 1) / 10000;
+	/** Work on a range of indexes, given the content source to use. */
+	private static abstract class Task<T> {
+		abstract T run(ContentSource.Pair r, int begin, int end)
+				throws IOException;
+	}
 
-				if (score < renameScore) {
-					pm.update(1);
-					continue;
+	/**
+	 * Run a task over the indexes {@code [0, cnt)}.
+	 * <p>
+	 * With an executor the range is split into slices run concurrently, each
+	 * slice reading content through its own readers.
+	 *
+	 * @return the results of each slice, in index order.
+	 */
+	private <T> List<T> run(int cnt, final Task<T> task) throws IOException {
+		int slices = 1;
+		if (executor instanceof ForkJoinPool)
+			slices = ((ForkJoinPool) executor).getParallelism() * 2;
+		else if (executor != null)
+			slices = Runtime.getRuntime().availableProcessors() * 2;
+		slices = Math.min(cnt, slices);
+
+		List<ContentSource.Pair> pairs = new ArrayList<>(slices);
+		try {
+			if (slices > 1) {
+				for (int i = 0; i < slices; i++) {
+					ContentSource.Pair p = reader.newPair();
+					if (p == null)
+						break;
+					pairs.add(p);
 				}
+			}
+			if (pairs.size() < slices || slices <= 1) {
+				List<T> r = new ArrayList<>(1);
+				r.add(task.run(reader, 0, cnt));
+				return r;
+			}
 
-				matrix[mNext++] = encode(score, srcIdx, dstIdx);
-				pm.update(1);
+			List<Future<T>> futures = new ArrayList<>(slices);
+			for (int i = 0; i < slices; i++) {
+				final ContentSource.Pair p = pairs.get(i);
+				final int begin = (int) ((long) cnt * i / slices);
+				final int end = (int) ((long) cnt * (i + 1) / slices);
+				futures.add(executor.submit(new Callable<T>() {
+					@Override
+					public T call() throws IOException {
+						return task.run(p, begin, end);
+					}
+				}));
 			}
+			return getAll(futures);
+		} finally {
+			for (ContentSource.Pair p : pairs)
+				p.close();
 		}
+	}
 
-		// Sort everything in the range we populated, which might be the
-		// entire matrix, or just a smaller slice if we had some bad low
-		// scoring pairs.
-		//
-		Arrays.sort(matrix, 0, mNext);
-		return mNext;
+	private static <T> List<T> getAll(List<Future<T>> futures)
+			throws IOException {
+		// Wait for all tasks, no reader may be in use after returning.
+		List<T> r = new ArrayList<>(futures.size());
+		Throwable failure = null;
+		for (Future<T> f : futures) {
+			try {
+				r.add(f.get());
+			} catch (ExecutionException e) {
+				if (failure == null)
+					failure = e.getCause();
+			} catch (InterruptedException e) {
+				for (Future<T> c : futures)
+					c.cancel(true);
+				throw new InterruptedIOException();
+			}
+		}
+		if (failure instanceof Error)
+			throw (Error) failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure != null)
+			throw new IOException(failure.getMessage(), failure);
+		return r;
 	}
 
 	static int nameScore(String a, String b) {
@@ -366,16 +737,13 @@ static int nameScore(String a, String b) {
 		return (((dirScoreLtr + dirScoreRtl) * 25) + (fileScore * 50)) / 100;
 	}
 
-	private SimilarityIndex hash(DiffEntry.Side side, DiffEntry ent)
+	private static SimilarityIndex hash(ContentSource.Pair r,
+			DiffEntry.Side side, DiffEntry ent)
 			throws IOException, TableFullException {
-		SimilarityIndex r = new SimilarityIndex();
-		r.hash(reader.open(side, ent));
-		r.sort();
-		return r;
-	}
-
-	private long size(DiffEntry.Side side, DiffEntry ent) throws IOException {
-		return reader.size(side, ent);
+		SimilarityIndex idx = new SimilarityIndex();
+		idx.hash(r.open(side, ent));
+		idx.sort();
+		return idx;
 	}
 
 	private static int score(long value) {
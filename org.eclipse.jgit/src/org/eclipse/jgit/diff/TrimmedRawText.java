@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.diff;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The lines of a file surrounding its changes, indexed as the whole file.
+ * <p>
+ * Only the loaded lines {@code [firstLine, firstLine + window.size())} may be
+ * accessed. {@link #size()} is the number of lines of the whole file, so the
+ * text can be formatted with edits computed on the whole file.
+ */
+class TrimmedRawText extends RawText {
+	private final int firstLine;
+
+	private final int lineCount;
+
+	private final boolean atEnd;
+
+	/**
+	 * @param window
+	 *            the loaded lines.
+	 * @param firstLine
+	 *            line number of the first line of {@code window} in the file.
+	 * @param lineCount
+	 *            number of lines in the whole file.
+	 * @param atEnd
+	 *            true if {@code window} ends at the end of the file.
+	 */
+	TrimmedRawText(RawText window, int firstLine, int lineCount,
+			boolean atEnd) {
+		super(window.content, window.lines);
+		this.firstLine = firstLine;
+		this.lineCount = lineCount;
+		this.atEnd = atEnd;
+	}
+
+	@Override
+	public int size() {
+		return lineCount;
+	}
+
+	@Override
+	public void writeLine(OutputStream out, int i) throws IOException {
+		super.writeLine(out, i - firstLine);
+	}
+
+	@Override
+	public boolean isMissingNewlineAtEnd() {
+		// A window not holding the end of the file cannot tell, and an empty
+		// window at the end starts after the LF of the previous line.
+		return atEnd && content.length > 0 && super.isMissingNewlineAtEnd();
+	}
+
+	@Override
+	public String getString(int begin, int end, boolean dropLF) {
+		if (begin == end)
+			return ""; //$NON-NLS-1$
+		return super.getString(begin - firstLine, end - firstLine, dropLF);
+	}
+
+	@Override
+	public String getLineDelimiter() {
+		if (lines.size() - 2 == 0)
+			return null;
+		return super.getLineDelimiter();
+	}
+}
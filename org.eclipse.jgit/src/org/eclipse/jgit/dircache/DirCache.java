@@ -47,21 +47,35 @@
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.file.StandardCopyOption;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.text.MessageFormat;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.IndexReadException;
@@ -73,6 +87,8 @@
 import org.eclipse.jgit.internal.storage.file.FileSnapshot;
 import org.eclipse.jgit.internal.storage.file.LockFile;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
@@ -83,11 +99,18 @@
 import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
 import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
 import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.FileChangeMonitor;
+import org.eclipse.jgit.util.FileUtils;
 import org.eclipse.jgit.util.IO;
 import org.eclipse.jgit.util.MutableInteger;
 import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.RawParseUtils;
+import org.eclipse.jgit.util.StringUtils;
 import org.eclipse.jgit.util.TemporaryBuffer;
 
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
+
 /**
  * Support for the Git dircache (aka index file).
  * <p>
@@ -100,16 +123,55 @@
  * index file first, and the working directory is updated as a post-merge step.
  * Conflicts are stored in the index file to allow tool (and human) based
  * resolutions to be easily performed.
+ * <p>
+ * A sparse index file, written when {@code index.sparse} is set, stores a
+ * single entry for each directory outside of the sparse checkout cone. In
+ * memory the index is always expanded to one entry per file, so every user
+ * of the index sees the same entries either way. This makes a sparse index
+ * slower to read than a full one: every collapsed directory is expanded by
+ * reading its trees from the object database, and writing computes the tree
+ * of every directory outside the cone again. A sparse index only saves
+ * space on disk and time for C Git, which keeps it collapsed.
  */
 public class DirCache {
 	private static final byte[] SIG_DIRC = { 'D', 'I', 'R', 'C' };
 
 	private static final int EXT_TREE = 0x54524545 /* 'TREE' */;
 
+	private static final int EXT_UNTR = 0x554e5452 /* 'UNTR' */;
+
+	private static final int EXT_FSMN = 0x46534d4e /* 'FSMN' */;
+
+	private static final int EXT_LINK = 0x6c696e6b /* 'link' */;
+
+	private static final int EXT_IEOT = 0x49454f54 /* 'IEOT' */;
+
+	private static final int EXT_EOIE = 0x454f4945 /* 'EOIE' */;
+
+	private static final int EXT_SDIR = 0x73646972 /* 'sdir' */;
+
+	private static final int IEOT_VERSION = 1;
+
+	/** Size of the end of index entries extension: offset and hash. */
+	private static final int EOIE_SIZE = 4 + Constants.OBJECT_ID_LENGTH;
+
+	/** Entries per block of the offset table, unless configured. */
+	private static final int IEOT_BLOCK_ENTRIES = 10000;
+
+	private static final String SHARED_INDEX_PREFIX = "sharedindex."; //$NON-NLS-1$
+
+	/** Default for {@code splitIndex.maxPercentChange}, as in C Git. */
+	private static final int DEFAULT_MAX_PERCENT_CHANGE = 20;
+
+	/** Unused shared index files older than this are deleted. */
+	private static final long SHARED_INDEX_EXPIRE = 14 * 24 * 60 * 60 * 1000L;
+
 	private static final DirCacheEntry[] NO_ENTRIES = {};
 
 	private static final byte[] NO_CHECKSUM = {};
 
+	private static final byte[] NO_PATH = {};
+
 	static final Comparator<DirCacheEntry> ENT_CMP = new Comparator<DirCacheEntry>() {
 		public int compare(final DirCacheEntry o1, final DirCacheEntry o2) {
 			final int cr = cmp(o1, o2);
@@ -189,8 +251,10 @@ public static DirCache read(ObjectReader reader, AnyObjectId treeId)
 	 */
 	public static DirCache read(final Repository repository)
 			throws CorruptObjectException, IOException {
-		final DirCache c = read(repository.getIndexFile(), repository.getFS());
+		final DirCache c = new DirCache(repository.getIndexFile(),
+				repository.getFS());
 		c.repository = repository;
+		c.read();
 		return c;
 	}
 
@@ -245,9 +309,13 @@ public static DirCache read(final File indexLocation, final FS fs)
 	 */
 	public static DirCache lock(final File indexLocation, final FS fs)
 			throws CorruptObjectException, IOException {
-		final DirCache c = new DirCache(indexLocation, fs);
+		return lock(new DirCache(indexLocation, fs));
+	}
+
+	private static DirCache lock(final DirCache c)
+			throws CorruptObjectException, IOException {
 		if (!c.lock())
-			throw new LockFailedException(indexLocation);
+			throw new LockFailedException(c.liveFile);
 
 		try {
 			c.read();
@@ -290,9 +358,11 @@ public static DirCache lock(final File indexLocation, final FS fs)
 	public static DirCache lock(final Repository repository,
 			final IndexChangedListener indexChangedListener)
 			throws CorruptObjectException, IOException {
-		DirCache c = lock(repository.getIndexFile(), repository.getFS(),
-				indexChangedListener);
+		DirCache c = new DirCache(repository.getIndexFile(),
+				repository.getFS());
 		c.repository = repository;
+		lock(c);
+		c.registerIndexChangedListener(indexChangedListener);
 		return c;
 	}
 
@@ -341,6 +411,45 @@ public static DirCache lock(final File indexLocation, final FS fs,
 	/** Cache tree for this index; null if the cache tree is not available. */
 	private DirCacheTree tree;
 
+	/** Untracked cache for this index; null if it is not available. */
+	private UntrackedCache untrackedCache;
+
+	/**
+	 * Entries the {@link #untrackedCache} was last known to be consistent
+	 * with; paths added or removed since then invalidate their directories.
+	 */
+	private DirCacheEntry[] untrackedCacheEntries;
+
+	/** Number of valid positions in {@link #untrackedCacheEntries}. */
+	private int untrackedCacheEntryCnt;
+
+	/** Token of the file change monitor; null if there is none. */
+	private String fileMonitorToken;
+
+	/**
+	 * Entries that were not known to be clean when {@link #fileMonitorToken}
+	 * was stored; null if they were not read from the index file.
+	 */
+	private EWAHCompressedBitmap fileMonitorDirty;
+
+	/** Entries {@link #fileMonitorDirty} was read for. */
+	private DirCacheEntry[] fileMonitorEntries;
+
+	/** Whether {@link #applyFileMonitor(FileChangeMonitor)} was called. */
+	private boolean fileMonitorApplied;
+
+	/** Whether the applied token invalidated the stored state. */
+	private boolean fileMonitorUpdated;
+
+	/** Version of the index file format read, 0 if not read. */
+	private int version;
+
+	/** Checksum naming the shared index this index is split from. */
+	private ObjectId sharedIndexId;
+
+	/** Entries of the shared index, in the order they are stored in it. */
+	private DirCacheEntry[] sharedEntries;
+
 	/** Our active lock (if we hold it); null if we don't have it locked. */
 	private LockFile myLock;
 
@@ -470,35 +579,60 @@ public void clear() {
 		sortedEntries = NO_ENTRIES;
 		entryCnt = 0;
 		tree = null;
+		untrackedCache = null;
+		untrackedCacheEntries = null;
+		fileMonitorToken = null;
+		fileMonitorDirty = null;
+		fileMonitorEntries = null;
+		fileMonitorApplied = false;
+		fileMonitorUpdated = false;
+		sharedIndexId = null;
+		sharedEntries = null;
 		readIndexChecksum = NO_CHECKSUM;
 	}
 
 	private void readFrom(final InputStream inStream) throws IOException,
 			CorruptObjectException {
-		final BufferedInputStream in = new BufferedInputStream(inStream);
-		final MessageDigest md = Constants.newMessageDigest();
+		// The whole file is needed in memory to verify its checksum before
+		// trusting the offset table, which allows parsing in parallel.
+		final ByteBuffer bb = IO.readWholeStream(inStream,
+				(int) Math.min(liveFile.length(), Integer.MAX_VALUE));
+		final byte[] buf = bb.array();
+		final int len = bb.limit();
 
 		// Read the index header and verify we understand it.
 		//
-		final byte[] hdr = new byte[20];
-		IO.readFully(in, hdr, 0, 12);
-		md.update(hdr, 0, 12);
-		if (!is_DIRC(hdr))
+		if (len < 12)
+			throw new EOFException(JGitText.get().shortReadOfBlock);
+		if (!is_DIRC(buf))
 			throw new CorruptObjectException(JGitText.get().notADIRCFile);
-		final int ver = NB.decodeInt32(hdr, 4);
+		final int ver = NB.decodeInt32(buf, 4);
 		boolean extended = false;
-		if (ver == 3)
+		if (ver == 3 || ver == 4)
 			extended = true;
 		else if (ver != 2)
 			throw new CorruptObjectException(MessageFormat.format(
 					JGitText.get().unknownDIRCVersion, Integer.valueOf(ver)));
-		entryCnt = NB.decodeInt32(hdr, 8);
+		entryCnt = NB.decodeInt32(buf, 8);
 		if (entryCnt < 0)
 			throw new CorruptObjectException(JGitText.get().DIRCHasTooManyEntries);
+		version = ver;
+
+		if (len < 12 + Constants.OBJECT_ID_LENGTH)
+			throw new EOFException(JGitText.get().shortReadOfBlock);
+		final int end = len - Constants.OBJECT_ID_LENGTH;
+		final MessageDigest md = Constants.newMessageDigest();
+		md.update(buf, 0, end);
+		readIndexChecksum = md.digest();
+		if (!Arrays.equals(readIndexChecksum,
+				Arrays.copyOfRange(buf, end, len))) {
+			throw new CorruptObjectException(JGitText.get().DIRCChecksumMismatch);
+		}
 
 		snapshot = FileSnapshot.save(liveFile);
-		int smudge_s = (int) (snapshot.lastModified() / 1000);
-		int smudge_ns = ((int) (snapshot.lastModified() % 1000)) * 1000000;
+		Instant smudge = snapshot.lastModifiedInstant();
+		int smudge_s = (int) smudge.getEpochSecond();
+		int smudge_ns = smudge.getNano();
 
 		// Load the individual file entries.
 		//
@@ -506,79 +640,423 @@ else if (ver != 2)
 		final byte[] infos = new byte[infoLength * entryCnt];
 		sortedEntries = new DirCacheEntry[entryCnt];
 
-		final MutableInteger infoAt = new MutableInteger();
-		for (int i = 0; i < entryCnt; i++)
-			sortedEntries[i] = new DirCacheEntry(infos, infoAt, in, md, smudge_s, smudge_ns);
+		final int extensionsAt = findEndOfIndexEntries(buf, end);
+		final int[] offsets = extensionsAt > 0
+				? readOffsetTable(buf, extensionsAt, end)
+				: null;
+		final int threads = offsets != null ? getIndexThreads() : 1;
+		int stripped;
+		int p;
+		if (threads > 1) {
+			stripped = readEntriesInParallel(buf, end, infos, infoLength,
+					offsets, threads, smudge_s, smudge_ns);
+			p = extensionsAt;
+		} else {
+			final MutableInteger ptr = new MutableInteger();
+			ptr.value = 12;
+			stripped = readEntries(buf, end, infos, infoLength, ptr, 0,
+					entryCnt, smudge_s, smudge_ns);
+			p = ptr.value;
+		}
+		byte[] link = null;
+		boolean sparse = false;
 
 		// After the file entries are index extensions, and then a footer.
 		//
-		for (;;) {
-			in.mark(21);
-			IO.readFully(in, hdr, 0, 20);
-			if (in.read() < 0) {
-				// No extensions present; the file ended where we expected.
-				//
-				break;
+		while (p < end) {
+			if (end - p < 8)
+				throw new EOFException(JGitText.get().shortReadOfBlock);
+			final byte[] hdr = Arrays.copyOfRange(buf, p, p + 8);
+			final long sz = NB.decodeUInt32(hdr, 4);
+			p += 8;
+			if (end - p < sz) {
+				throw new EOFException(MessageFormat.format(
+						JGitText.get().shortReadOfOptionalDIRCExtensionExpectedAnotherBytes,
+						formatExtensionName(hdr), Long.valueOf(sz)));
 			}
+			final int extEnd = p + (int) sz;
 
-			in.reset();
-			md.update(hdr, 0, 8);
-			IO.skipFully(in, 8);
-
-			long sz = NB.decodeUInt32(hdr, 4);
 			switch (NB.decodeInt32(hdr, 0)) {
 			case EXT_TREE: {
-				if (Integer.MAX_VALUE < sz) {
-					throw new CorruptObjectException(MessageFormat.format(
-							JGitText.get().DIRCExtensionIsTooLargeAt,
-							formatExtensionName(hdr), Long.valueOf(sz)));
+				tree = new DirCacheTree(Arrays.copyOfRange(buf, p, extEnd),
+						new MutableInteger(), null);
+				break;
+			}
+			case EXT_UNTR: {
+				try {
+					untrackedCache = UntrackedCache.parse(
+							Arrays.copyOfRange(buf, p, extEnd));
+					untrackedCacheEntries = sortedEntries;
+					untrackedCacheEntryCnt = entryCnt;
+				} catch (CorruptObjectException e) {
+					// The cache is only an optimization, like C Git
+					// drop it instead of refusing to read the index.
+					untrackedCache = null;
 				}
-				final byte[] raw = new byte[(int) sz];
-				IO.readFully(in, raw, 0, raw.length);
-				md.update(raw, 0, raw.length);
-				tree = new DirCacheTree(raw, new MutableInteger(), null);
+				break;
+			}
+			case EXT_FSMN: {
+				readFileMonitor(Arrays.copyOfRange(buf, p, extEnd));
+				break;
+			}
+			case EXT_LINK: {
+				link = Arrays.copyOfRange(buf, p, extEnd);
+				break;
+			}
+			case EXT_SDIR: {
+				sparse = true;
 				break;
 			}
 			default:
 				if (hdr[0] >= 'A' && hdr[0] <= 'Z') {
 					// The extension is optional and is here only as
 					// a performance optimization. Since we do not
-					// understand it, we can safely skip past it, after
-					// we include its data in our checksum.
-					//
-					skipOptionalExtension(in, md, hdr, sz);
-				} else {
-					// The extension is not an optimization and is
-					// _required_ to understand this index format.
-					// Since we did not trap it above we must abort.
+					// understand it, we can safely skip past it.
+					// Its data is already included in the checksum.
 					//
-					throw new CorruptObjectException(MessageFormat.format(JGitText.get().DIRCExtensionNotSupportedByThisVersion
-							, formatExtensionName(hdr)));
+					break;
 				}
+				// The extension is not an optimization and is
+				// _required_ to understand this index format.
+				// Since we did not trap it above we must abort.
+				//
+				throw new CorruptObjectException(MessageFormat.format(JGitText.get().DIRCExtensionNotSupportedByThisVersion
+						, formatExtensionName(hdr)));
 			}
+			p = extEnd;
 		}
 
-		readIndexChecksum = md.digest();
-		if (!Arrays.equals(readIndexChecksum, hdr)) {
-			throw new CorruptObjectException(JGitText.get().DIRCChecksumMismatch);
+		if (link != null)
+			readSharedIndex(link, stripped);
+		else if (stripped > 0)
+			throw new CorruptObjectException(
+					JGitText.get().DIRCCorruptSplitIndex);
+		if (sparse)
+			expandSparseDirectories();
+	}
+
+	/**
+	 * Replace the directory entries of a sparse index by the files of their
+	 * trees, all marked skip-worktree.
+	 * <p>
+	 * Only the index file is sparse, in memory all files have their own
+	 * entry so that every user of the index keeps working unchanged.
+	 */
+	private void expandSparseDirectories() throws IOException {
+		if (repository == null)
+			throw new CorruptObjectException(
+					JGitText.get().DIRCSparseIndexWithoutRepository);
+		final List<DirCacheEntry> all = new ArrayList<>(entryCnt);
+		final EWAHCompressedBitmap dirty = fileMonitorDirty != null
+				&& fileMonitorEntries == sortedEntries
+						? new EWAHCompressedBitmap()
+						: null;
+		try (ObjectReader reader = repository.newObjectReader();
+				TreeWalk tw = new TreeWalk(reader)) {
+			tw.setRecursive(true);
+			for (int i = 0; i < entryCnt; i++) {
+				final DirCacheEntry e = sortedEntries[i];
+				if (!e.isSparseDirectory()) {
+					if (dirty != null && fileMonitorDirty.get(i))
+						dirty.set(all.size());
+					all.add(e);
+					continue;
+				}
+				tw.reset(e.getObjectId());
+				while (tw.next()) {
+					final byte[] name = tw.getRawPath();
+					final byte[] path = new byte[e.path.length + name.length];
+					System.arraycopy(e.path, 0, path, 0, e.path.length);
+					System.arraycopy(name, 0, path, e.path.length,
+							name.length);
+					final DirCacheEntry f = new DirCacheEntry(path);
+					f.setFileMode(tw.getFileMode(0));
+					f.setObjectId(tw.getObjectId(0));
+					f.setSkipWorkTree(true);
+					all.add(f);
+				}
+			}
 		}
+
+		final DirCacheEntry[] expanded = all
+				.toArray(new DirCacheEntry[all.size()]);
+		if (untrackedCacheEntries == sortedEntries) {
+			untrackedCacheEntries = expanded;
+			untrackedCacheEntryCnt = expanded.length;
+		}
+		if (dirty != null) {
+			fileMonitorDirty = dirty;
+			fileMonitorEntries = expanded;
+		}
+		sortedEntries = expanded;
+		entryCnt = expanded.length;
+
+		// The spans of the cache tree count each sparse directory as one
+		// entry, they do not match the expanded entries.
+		tree = null;
+	}
+
+	/**
+	 * Parse a range of consecutive entries.
+	 *
+	 * @return number of entries read without a path.
+	 */
+	private int readEntries(byte[] buf, int end, byte[] infos,
+			int infoLength, MutableInteger ptr, int first, int cnt,
+			int smudge_s, int smudge_ns) throws IOException {
+		final boolean prefixCompressed = version == 4;
+		byte[] previousPath = null;
+		int stripped = 0;
+		for (int i = first; i < first + cnt; i++) {
+			final DirCacheEntry e = new DirCacheEntry(infos, i * infoLength,
+					buf, ptr, end, prefixCompressed, previousPath, smudge_s,
+					smudge_ns);
+			if (e.path.length == 0)
+				stripped++;
+			sortedEntries[i] = e;
+			previousPath = e.path;
+		}
+		return stripped;
 	}
 
-	private void skipOptionalExtension(final InputStream in,
-			final MessageDigest md, final byte[] hdr, long sz)
+	/**
+	 * Parse the blocks of the index entry offset table on several threads.
+	 *
+	 * @return number of entries read without a path.
+	 */
+	private int readEntriesInParallel(final byte[] buf, final int end,
+			final byte[] infos, final int infoLength, final int[] offsets,
+			int threads, final int smudge_s, final int smudge_ns)
 			throws IOException {
-		final byte[] b = new byte[4096];
-		while (0 < sz) {
-			int n = in.read(b, 0, (int) Math.min(b.length, sz));
-			if (n < 0) {
-				throw new EOFException(
-						MessageFormat.format(
-								JGitText.get().shortReadOfOptionalDIRCExtensionExpectedAnotherBytes,
-								formatExtensionName(hdr), Long.valueOf(sz)));
+		final int blocks = offsets.length / 2;
+		final int[] firstEntry = new int[blocks + 1];
+		for (int b = 0; b < blocks; b++)
+			firstEntry[b + 1] = firstEntry[b] + offsets[2 * b + 1];
+
+		final int tasks = Math.min(threads, blocks);
+		final List<Callable<Integer>> work = new ArrayList<>(tasks);
+		for (int t = 0; t < tasks; t++) {
+			final int firstBlock = t * blocks / tasks;
+			final int lastBlock = (t + 1) * blocks / tasks;
+			work.add(new Callable<Integer>() {
+				@Override
+				public Integer call() throws IOException {
+					int stripped = 0;
+					for (int b = firstBlock; b < lastBlock; b++) {
+						final MutableInteger ptr = new MutableInteger();
+						ptr.value = offsets[2 * b];
+						final int blockEnd = b + 1 < blocks
+								? offsets[2 * b + 2]
+								: end;
+						stripped += readEntries(buf, blockEnd, infos,
+								infoLength, ptr, firstEntry[b],
+								offsets[2 * b + 1], smudge_s, smudge_ns);
+					}
+					return Integer.valueOf(stripped);
+				}
+			});
+		}
+
+		// Like C Git run the blocks on threads of their own, the common
+		// pool may be busy with unrelated work of the application.
+		final ExecutorService pool = Executors.newFixedThreadPool(tasks);
+		int stripped = 0;
+		try {
+			for (Future<Integer> f : pool.invokeAll(work))
+				stripped += f.get().intValue();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Error)
+				throw (Error) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			throw new IOException(cause.getMessage(), cause);
+		} finally {
+			pool.shutdown();
+		}
+		return stripped;
+	}
+
+	/**
+	 * Locate the extensions through the end of index entries extension.
+	 *
+	 * @return offset of the first extension, or -1 if the index has no valid
+	 *         {@code EOIE} extension.
+	 */
+	private static int findEndOfIndexEntries(byte[] buf, int end) {
+		final int eoie = end - 8 - EOIE_SIZE;
+		if (eoie < 12 || NB.decodeInt32(buf, eoie) != EXT_EOIE
+				|| NB.decodeInt32(buf, eoie + 4) != EOIE_SIZE)
+			return -1;
+		final long offset = NB.decodeUInt32(buf, eoie + 8);
+		if (offset < 12 || eoie < offset)
+			return -1;
+
+		// The hash covers the type and size of every other extension.
+		final MessageDigest md = Constants.newMessageDigest();
+		int p = (int) offset;
+		while (p < eoie) {
+			if (eoie - p < 8)
+				return -1;
+			md.update(buf, p, 8);
+			final long sz = NB.decodeUInt32(buf, p + 4);
+			if (eoie - p - 8 < sz)
+				return -1;
+			p += 8 + (int) sz;
+		}
+		final byte[] hash = md.digest();
+		for (int i = 0; i < hash.length; i++) {
+			if (hash[i] != buf[eoie + 12 + i])
+				return -1;
+		}
+		return (int) offset;
+	}
+
+	/**
+	 * Read the index entry offset table, if present and usable.
+	 *
+	 * @return pairs of offset and entry count for each block, or null.
+	 */
+	private int[] readOffsetTable(byte[] buf, int p, int end) {
+		while (end - p >= 8) {
+			final int type = NB.decodeInt32(buf, p);
+			final long sz = NB.decodeUInt32(buf, p + 4);
+			p += 8;
+			if (end - p < sz)
+				return null;
+			if (type == EXT_IEOT) {
+				if (sz < 4 || (sz - 4) % 8 != 0
+						|| NB.decodeInt32(buf, p) != IEOT_VERSION)
+					return null;
+				final int[] offsets = new int[(int) (sz - 4) / 4];
+				long total = 0;
+				long last = 0;
+				for (int i = 0; i < offsets.length; i += 2) {
+					final long off = NB.decodeUInt32(buf, p + 4 + 4 * i);
+					final long cnt = NB.decodeUInt32(buf, p + 8 + 4 * i);
+					if (off < 12 || off <= last || end < off)
+						return null;
+					offsets[i] = (int) off;
+					offsets[i + 1] = (int) cnt;
+					last = off;
+					total += cnt;
+				}
+				return total == entryCnt && offsets.length >= 4 ? offsets
+						: null;
 			}
-			md.update(b, 0, n);
-			sz -= n;
+			p += (int) sz;
 		}
+		return null;
+	}
+
+	/**
+	 * Merge the shared index named by a {@code link} extension.
+	 * <p>
+	 * The entries read so far are the entries replacing shared entries, in
+	 * the order of the replace bitmap, followed by entries added on top of
+	 * the shared index.
+	 *
+	 * @param raw
+	 *            content of the {@code link} extension.
+	 * @param stripped
+	 *            number of entries read without a path.
+	 * @throws IOException
+	 *             the shared index cannot be read or does not match.
+	 */
+	private void readSharedIndex(byte[] raw, int stripped) throws IOException {
+		if (raw.length < Constants.OBJECT_ID_LENGTH)
+			throw new CorruptObjectException(
+					JGitText.get().DIRCCorruptSplitIndex);
+		ObjectId id = ObjectId.fromRaw(raw, 0);
+		EWAHCompressedBitmap delete = new EWAHCompressedBitmap();
+		EWAHCompressedBitmap replace = new EWAHCompressedBitmap();
+		if (raw.length > Constants.OBJECT_ID_LENGTH) {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+					raw, Constants.OBJECT_ID_LENGTH,
+					raw.length - Constants.OBJECT_ID_LENGTH));
+			delete.deserialize(in);
+			replace.deserialize(in);
+		}
+		if (ObjectId.zeroId().equals(id)) {
+			// C Git may keep the extension without any shared index.
+			if (stripped > 0)
+				throw new CorruptObjectException(
+						JGitText.get().DIRCCorruptSplitIndex);
+			return;
+		}
+
+		File sharedFile = new File(liveFile.getParentFile(),
+				SHARED_INDEX_PREFIX + id.name());
+		DirCache base = new DirCache(sharedFile, null);
+		try (FileInputStream in = new FileInputStream(sharedFile)) {
+			base.readFrom(in);
+		} catch (FileNotFoundException e) {
+			throw new IndexReadException(MessageFormat.format(
+					JGitText.get().DIRCSharedIndexNotFound,
+					sharedFile.getAbsolutePath()), e);
+		}
+		if (base.sharedIndexId != null
+				|| !id.equals(ObjectId.fromRaw(base.readIndexChecksum)))
+			throw new CorruptObjectException(
+					JGitText.get().DIRCCorruptSplitIndex);
+
+		final DirCacheEntry[] split = sortedEntries;
+		final DirCacheEntry[] shared = base.sortedEntries;
+		final int sharedCnt = base.entryCnt;
+		final DirCacheEntry[] merged = new DirCacheEntry[sharedCnt + entryCnt];
+		final IntIterator replaceItr = replace.intIterator();
+		final IntIterator deleteItr = delete.intIterator();
+		int nextReplace = replaceItr.hasNext() ? replaceItr.next() : -1;
+		int nextDelete = deleteItr.hasNext() ? deleteItr.next() : -1;
+		int r = 0;
+		int n = 0;
+		for (int i = 0; i < sharedCnt; i++) {
+			DirCacheEntry e = shared[i];
+			if (i == nextReplace) {
+				if (r == entryCnt || i == nextDelete)
+					throw new CorruptObjectException(
+							JGitText.get().DIRCCorruptSplitIndex);
+				DirCacheEntry rep = split[r++];
+				if (rep.path.length == 0)
+					rep = new DirCacheEntry(e.path, rep);
+				else if (!Arrays.equals(rep.path, e.path))
+					throw new CorruptObjectException(
+							JGitText.get().DIRCCorruptSplitIndex);
+				e = rep;
+				nextReplace = replaceItr.hasNext() ? replaceItr.next() : -1;
+			}
+			if (i == nextDelete) {
+				nextDelete = deleteItr.hasNext() ? deleteItr.next() : -1;
+				continue;
+			}
+			merged[n++] = e;
+		}
+		if (nextReplace >= 0 || nextDelete >= 0)
+			throw new CorruptObjectException(
+					JGitText.get().DIRCCorruptSplitIndex);
+		for (int i = r; i < entryCnt; i++) {
+			if (split[i].path.length == 0)
+				throw new CorruptObjectException(
+						JGitText.get().DIRCCorruptSplitIndex);
+			merged[n++] = split[i];
+		}
+		if (r < entryCnt)
+			Arrays.sort(merged, 0, n, ENT_CMP);
+
+		if (untrackedCacheEntries == split) {
+			untrackedCacheEntries = merged;
+			untrackedCacheEntryCnt = n;
+		}
+		if (fileMonitorEntries == split)
+			fileMonitorEntries = merged;
+		sortedEntries = merged;
+		entryCnt = n;
+		sharedIndexId = id;
+		sharedEntries = Arrays.copyOf(shared, sharedCnt);
 	}
 
 	private static String formatExtensionName(final byte[] hdr)
@@ -611,6 +1089,10 @@ public boolean lock() throws IOException {
 		if (tmp.lock()) {
 			tmp.setNeedStatInformation(true);
 			myLock = tmp;
+			// The index is about to be written, the racy checks of its
+			// snapshots benefit from knowing the timestamp resolution.
+			FS.probeFsTimestampResolution(
+					liveFile.getAbsoluteFile().getParentFile().toPath());
 			return true;
 		}
 		return false;
@@ -653,20 +1135,7 @@ void writeTo(File dir, final OutputStream os) throws IOException {
 		final MessageDigest foot = Constants.newMessageDigest();
 		final DigestOutputStream dos = new DigestOutputStream(os, foot);
 
-		boolean extended = false;
-		for (int i = 0; i < entryCnt; i++)
-			extended |= sortedEntries[i].isExtended();
-
-		// Write the header.
-		//
 		final byte[] tmp = new byte[128];
-		System.arraycopy(SIG_DIRC, 0, tmp, 0, SIG_DIRC.length);
-		NB.encodeInt32(tmp, 4, extended ? 3 : 2);
-		NB.encodeInt32(tmp, 8, entryCnt);
-		dos.write(tmp, 0, 12);
-
-		// Write the individual file entries.
-
 		final int smudge_s;
 		final int smudge_ns;
 		if (myLock != null) {
@@ -676,8 +1145,9 @@ void writeTo(File dir, final OutputStream os) throws IOException {
 			// so we use the current timestamp as a approximation.
 			myLock.createCommitSnapshot();
 			snapshot = myLock.getCommitSnapshot();
-			smudge_s = (int) (snapshot.lastModified() / 1000);
-			smudge_ns = ((int) (snapshot.lastModified() % 1000)) * 1000000;
+			Instant smudge = snapshot.lastModifiedInstant();
+			smudge_s = (int) smudge.getEpochSecond();
+			smudge_ns = smudge.getNano();
 		} else {
 			// Used in unit tests only
 			smudge_ns = 0;
@@ -695,28 +1165,502 @@ void writeTo(File dir, final OutputStream os) throws IOException {
 			final DirCacheEntry e = sortedEntries[i];
 			if (e.mightBeRacilyClean(smudge_s, smudge_ns))
 				e.smudgeRacilyClean();
-			e.write(dos);
 		}
 
-		if (writeTree) {
+		final int blocks = getOffsetTableBlocks();
+		final ByteArrayOutputStream ieot = blocks > 1
+				? new ByteArrayOutputStream()
+				: null;
+		final MessageDigest eoie = isEndOfIndexEntriesRecorded(ieot != null)
+				? Constants.newMessageDigest()
+				: null;
+
+		DirCacheEntry[] written = sortedEntries;
+		int writtenCnt = entryCnt;
+		final long entriesEnd;
+		final byte[] link;
+		if (isSplitIndexEnabled()) {
+			final List<DirCacheEntry> split = new ArrayList<>();
+			final List<DirCacheEntry> added = new ArrayList<>();
+			link = prepareSplitIndex(dir, split, added);
+			final int replaced = split.size();
+			split.addAll(added);
+			entriesEnd = writeEntries(dos, tmp,
+					split.toArray(new DirCacheEntry[split.size()]),
+					split.size(), replaced, blocks, ieot);
+		} else {
+			DirCacheEntry[] sparse = collapseSparseDirectories();
+			if (sparse != null) {
+				written = sparse;
+				writtenCnt = sparse.length;
+			}
+			entriesEnd = writeEntries(dos, tmp, written, writtenCnt, 0,
+					blocks, ieot);
+			link = null;
+			sharedIndexId = null;
+			sharedEntries = null;
+		}
+
+		if (ieot != null && ieot.size() > 0) {
+			writeExtensionHeader(dos, tmp, EXT_IEOT, ieot.size(), eoie);
+			ieot.writeTo(dos);
+		}
+
+		if (link != null) {
+			writeExtensionHeader(dos, tmp, EXT_LINK, link.length, eoie);
+			dos.write(link);
+		}
+
+		// The cache tree spans the expanded entries. C Git rebuilds the tree
+		// of a sparse index if it is missing, so leave it out rather than
+		// describe entries that are not written.
+		if (writeTree && written == sortedEntries) {
 			TemporaryBuffer bb = new TemporaryBuffer.LocalFile(dir, 5 << 20);
 			try {
 				tree.write(tmp, bb);
 				bb.close();
 
-				NB.encodeInt32(tmp, 0, EXT_TREE);
-				NB.encodeInt32(tmp, 4, (int) bb.length());
-				dos.write(tmp, 0, 8);
+				writeExtensionHeader(dos, tmp, EXT_TREE, bb.length(), eoie);
 				bb.writeTo(dos, null);
 			} finally {
 				bb.destroy();
 			}
 		}
+
+		if (untrackedCache != null) {
+			invalidateUntrackedCache();
+			ByteArrayOutputStream bb = new ByteArrayOutputStream();
+			untrackedCache.write(bb);
+			writeExtensionHeader(dos, tmp, EXT_UNTR, bb.size(), eoie);
+			bb.writeTo(dos);
+		}
+
+		if (fileMonitorToken != null) {
+			ByteArrayOutputStream bb = new ByteArrayOutputStream();
+			writeFileMonitor(bb, written, writtenCnt);
+			writeExtensionHeader(dos, tmp, EXT_FSMN, bb.size(), eoie);
+			bb.writeTo(dos);
+		}
+
+		if (written != sortedEntries)
+			writeExtensionHeader(dos, tmp, EXT_SDIR, 0, eoie);
+
+		if (eoie != null) {
+			// The end of index entries extension must be the last one.
+			NB.encodeInt32(tmp, 0, EXT_EOIE);
+			NB.encodeInt32(tmp, 4, EOIE_SIZE);
+			NB.encodeInt32(tmp, 8, (int) entriesEnd);
+			dos.write(tmp, 0, 12);
+			dos.write(eoie.digest());
+		}
 		writeIndexChecksum = foot.digest();
 		os.write(writeIndexChecksum);
 		os.close();
 	}
 
+	/**
+	 * Write the header and the entries of an index file.
+	 *
+	 * @param os
+	 *            stream to write to.
+	 * @param tmp
+	 *            scratch buffer of at least 12 bytes.
+	 * @param entries
+	 *            entries to write.
+	 * @param cnt
+	 *            number of entries to write.
+	 * @param stripped
+	 *            number of leading entries to write without a path.
+	 * @param blocks
+	 *            number of blocks to record in {@code ieot}.
+	 * @param ieot
+	 *            receives the content of the index entry offset table, or
+	 *            null to not record one. Left empty if the table cannot be
+	 *            used.
+	 * @return offset of the end of the entries.
+	 * @throws IOException
+	 *             the stream cannot be written.
+	 */
+	private long writeEntries(OutputStream os, byte[] tmp,
+			DirCacheEntry[] entries, int cnt, int stripped, int blocks,
+			ByteArrayOutputStream ieot) throws IOException {
+		boolean extended = false;
+		for (int i = 0; i < cnt; i++)
+			extended |= entries[i].isExtended();
+		final int ver = getWriteVersion(extended);
+
+		// Write the header.
+		//
+		System.arraycopy(SIG_DIRC, 0, tmp, 0, SIG_DIRC.length);
+		NB.encodeInt32(tmp, 4, ver);
+		NB.encodeInt32(tmp, 8, cnt);
+		os.write(tmp, 0, 12);
+
+		// Write the individual file entries. Each block of the offset
+		// table starts with a path not compressed against the previous
+		// entry, so that it can be parsed on its own.
+		//
+		final int perBlock = ieot != null && blocks > 1 && cnt > 0
+				? (cnt + blocks - 1) / blocks
+				: 0;
+		final byte[] table = new byte[8];
+		if (perBlock > 0) {
+			NB.encodeInt32(table, 0, IEOT_VERSION);
+			ieot.write(table, 0, 4);
+		}
+		byte[] previousPath = ver == 4 ? NO_PATH : null;
+		long offset = 12;
+		for (int i = 0; i < cnt; i++) {
+			final boolean newBlock = perBlock > 0 && i % perBlock == 0;
+			if (newBlock) {
+				NB.encodeInt32(table, 0, (int) offset);
+				NB.encodeInt32(table, 4, Math.min(perBlock, cnt - i));
+				ieot.write(table, 0, 8);
+			}
+			final boolean strip = i < stripped;
+			offset += entries[i].write(os, strip, previousPath, newBlock);
+			if (previousPath != null)
+				previousPath = strip ? NO_PATH : entries[i].path;
+		}
+		if (perBlock > 0 && 0xffffffffL < offset)
+			ieot.reset();
+		return offset;
+	}
+
+	private static void writeExtensionHeader(OutputStream os, byte[] tmp,
+			int type, long size, MessageDigest eoie) throws IOException {
+		NB.encodeInt32(tmp, 0, type);
+		NB.encodeInt32(tmp, 4, (int) size);
+		os.write(tmp, 0, 8);
+		if (eoie != null)
+			eoie.update(tmp, 0, 8);
+	}
+
+	private int getWriteVersion(boolean extended) {
+		int ver = version;
+		if (repository != null)
+			ver = repository.getConfig().getInt(
+					ConfigConstants.CONFIG_INDEX_SECTION,
+					ConfigConstants.CONFIG_KEY_VERSION, ver);
+		if (ver == 4)
+			return 4;
+		return extended ? 3 : 2;
+	}
+
+	/**
+	 * @return number of threads to use for reading the index, following C
+	 *         Git's {@code index.threads}.
+	 */
+	private int getIndexThreads() {
+		final int cpus = Runtime.getRuntime().availableProcessors();
+		if (repository == null)
+			return cpus;
+		final String v = repository.getConfig().getString(
+				ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_THREADS);
+		if (v == null || "auto".equalsIgnoreCase(v)) //$NON-NLS-1$
+			return cpus;
+		final Boolean enabled = StringUtils.toBooleanOrNull(v);
+		if (enabled != null)
+			return enabled.booleanValue() ? cpus : 1;
+		try {
+			final int n = Integer.parseInt(v);
+			return n > 0 ? n : cpus;
+		} catch (NumberFormatException e) {
+			return cpus;
+		}
+	}
+
+	/**
+	 * @return number of blocks to record in the index entry offset table, 0
+	 *         or 1 to not write the table.
+	 */
+	private int getOffsetTableBlocks() {
+		if (repository == null)
+			return 0;
+		// Like C Git only record the table if asked to, either directly or
+		// by configuring the number of threads reading the index. Git
+		// before 2.20 warns about the EOIE extension locating it.
+		Config cfg = repository.getConfig();
+		int blocks;
+		if (cfg.getString(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_RECORD_OFFSET_TABLE) != null) {
+			if (!cfg.getBoolean(ConfigConstants.CONFIG_INDEX_SECTION,
+					ConfigConstants.CONFIG_KEY_RECORD_OFFSET_TABLE, false))
+				return 0;
+			blocks = entryCnt;
+		} else if (cfg.getString(ConfigConstants.CONFIG_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_THREADS) != null)
+			blocks = entryCnt / IEOT_BLOCK_ENTRIES;
+		else
+			return 0;
+		return Math.min(blocks, getIndexThreads());
+	}
+
+	/**
+	 * @param offsetTable
+	 *            whether the index entry offset table is written, which can
+	 *            only be found through the end of index entries extension.
+	 * @return whether to write the end of index entries extension, following
+	 *         C Git's {@code index.recordEndOfIndexEntries}.
+	 */
+	private boolean isEndOfIndexEntriesRecorded(boolean offsetTable) {
+		if (repository == null)
+			return offsetTable;
+		return repository.getConfig().getBoolean(
+				ConfigConstants.CONFIG_INDEX_SECTION,
+				ConfigConstants.CONFIG_KEY_RECORD_END_OF_INDEX_ENTRIES,
+				offsetTable);
+	}
+
+	private boolean isSplitIndexEnabled() {
+		if (repository != null) {
+			Config cfg = repository.getConfig();
+			if (cfg.getString(ConfigConstants.CONFIG_CORE_SECTION, null,
+					ConfigConstants.CONFIG_KEY_SPLIT_INDEX) != null)
+				return cfg.getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+						ConfigConstants.CONFIG_KEY_SPLIT_INDEX, false);
+		}
+		// Without configuration keep the format the index was read in.
+		return sharedIndexId != null;
+	}
+
+	/**
+	 * Replace directories outside of the sparse checkout by a single entry
+	 * for their tree, as C Git does in a sparse index.
+	 * <p>
+	 * A directory is collapsed if all its entries are merged and marked
+	 * skip-worktree, and its tree is in the repository to expand it again.
+	 *
+	 * @return entries to write; null to write all entries.
+	 * @throws IOException
+	 *             the sparse checkout or the repository cannot be read.
+	 */
+	private DirCacheEntry[] collapseSparseDirectories() throws IOException {
+		if (repository == null || entryCnt == 0
+				|| !repository.getConfig().getBoolean(
+						ConfigConstants.CONFIG_INDEX_SECTION,
+						ConfigConstants.CONFIG_KEY_SPARSE, false))
+			return null;
+		SparseCheckout sparse = SparseCheckout.read(repository);
+		if (sparse == null)
+			return null;
+
+		// A private cache tree, the tree ids are only computed and not
+		// inserted, they must not end up in the cache tree of the index.
+		DirCacheTree root = new DirCacheTree();
+		root.validate(sortedEntries, entryCnt, 0, 0);
+		List<DirCacheEntry> out = new ArrayList<>(entryCnt);
+		try (ObjectReader reader = repository.newObjectReader();
+				ObjectInserter ids = new TreeIdFormatter()) {
+			collapse(root, 0, 0, sparse, reader, ids, out);
+		}
+		if (out.size() == entryCnt)
+			return null;
+		return out.toArray(new DirCacheEntry[out.size()]);
+	}
+
+	private void collapse(DirCacheTree t, int cIdx, int pathOffset,
+			SparseCheckout sparse, ObjectReader reader, ObjectInserter ids,
+			List<DirCacheEntry> out) throws IOException {
+		final int endIdx = cIdx + t.getEntrySpan();
+		int childIdx = 0;
+		int entryIdx = cIdx;
+		while (entryIdx < endIdx) {
+			final DirCacheEntry e = sortedEntries[entryIdx];
+			if (childIdx < t.getChildCount()) {
+				final DirCacheTree st = t.getChild(childIdx);
+				if (st.contains(e.path, pathOffset, e.path.length)) {
+					final int stOffset = pathOffset + st.nameLength() + 1;
+					final DirCacheEntry d = collapseDirectory(st, entryIdx,
+							stOffset, sparse, reader, ids);
+					if (d != null)
+						out.add(d);
+					else
+						collapse(st, entryIdx, stOffset, sparse, reader, ids,
+								out);
+					entryIdx += st.getEntrySpan();
+					childIdx++;
+					continue;
+				}
+			}
+			out.add(e);
+			entryIdx++;
+		}
+	}
+
+	private DirCacheEntry collapseDirectory(DirCacheTree st, int cIdx,
+			int pathOffset, SparseCheckout sparse, ObjectReader reader,
+			ObjectInserter ids) throws IOException {
+		final byte[] path = sortedEntries[cIdx].path;
+		if (sparse.includesDirectory(
+				RawParseUtils.decode(path, 0, pathOffset - 1)))
+			return null;
+		final int endIdx = cIdx + st.getEntrySpan();
+		for (int i = cIdx; i < endIdx; i++) {
+			final DirCacheEntry e = sortedEntries[i];
+			if (!e.isSkipWorkTree() || e.getStage() != 0)
+				return null;
+		}
+		final ObjectId id = st.writeTree(sortedEntries, cIdx, pathOffset, ids);
+		if (!reader.has(id, Constants.OBJ_TREE))
+			return null;
+		return DirCacheEntry.newSparseDirectory(
+				Arrays.copyOf(path, pathOffset), id);
+	}
+
+	/** Computes the ids of trees without inserting them. */
+	private static class TreeIdFormatter extends ObjectInserter.Formatter {
+		@Override
+		public ObjectId insert(int type, byte[] data, int off, int len) {
+			return idFor(type, data, off, len);
+		}
+	}
+
+	private int getMaxPercentChange() {
+		if (repository == null)
+			return DEFAULT_MAX_PERCENT_CHANGE;
+		int max = repository.getConfig().getInt(
+				ConfigConstants.CONFIG_SPLIT_INDEX_SECTION,
+				ConfigConstants.CONFIG_KEY_MAX_PERCENT_CHANGE,
+				DEFAULT_MAX_PERCENT_CHANGE);
+		if (max < 0 || 100 < max)
+			return DEFAULT_MAX_PERCENT_CHANGE;
+		return max;
+	}
+
+	/**
+	 * Compute the entries of a split index against the shared index.
+	 * <p>
+	 * If there is no shared index yet, or too many entries would not be
+	 * shared, a new shared index holding all entries is written first and the
+	 * split index is left empty.
+	 *
+	 * @param dir
+	 *            directory holding the shared index files.
+	 * @param replaced
+	 *            receives the entries replacing entries of the shared index.
+	 * @param added
+	 *            receives the entries not present in the shared index.
+	 * @return content of the {@code link} extension.
+	 * @throws IOException
+	 *             a new shared index could not be written.
+	 */
+	private byte[] prepareSplitIndex(File dir, List<DirCacheEntry> replaced,
+			List<DirCacheEntry> added) throws IOException {
+		EWAHCompressedBitmap delete = new EWAHCompressedBitmap();
+		EWAHCompressedBitmap replace = new EWAHCompressedBitmap();
+		if (sharedEntries != null) {
+			final DirCacheEntry[] shared = sharedEntries;
+			int i = 0;
+			int j = 0;
+			while (i < entryCnt || j < shared.length) {
+				int c;
+				if (i == entryCnt)
+					c = 1;
+				else if (j == shared.length)
+					c = -1;
+				else
+					c = ENT_CMP.compare(sortedEntries[i], shared[j]);
+
+				if (c < 0) {
+					added.add(sortedEntries[i++]);
+				} else if (c > 0) {
+					delete.set(j++);
+				} else {
+					final DirCacheEntry e = sortedEntries[i++];
+					final DirCacheEntry s = shared[j];
+					if (s.isUpdateInBase() || (e != s && !e.isSameInfo(s))) {
+						replace.set(j);
+						replaced.add(e);
+					}
+					j++;
+				}
+			}
+
+			// Like C Git compare the entries not taken from the shared
+			// index against the size of the whole index.
+			final long notShared = replaced.size() + added.size();
+			if (notShared * 100 <= (long) entryCnt * getMaxPercentChange())
+				return encodeLink(sharedIndexId, delete, replace);
+
+			replaced.clear();
+			added.clear();
+			delete = new EWAHCompressedBitmap();
+			replace = new EWAHCompressedBitmap();
+		}
+
+		final ObjectId oldId = sharedIndexId;
+		sharedIndexId = writeSharedIndex(dir);
+		sharedEntries = Arrays.copyOf(sortedEntries, entryCnt);
+		for (int i = 0; i < entryCnt; i++)
+			sortedEntries[i].clearUpdateInBase();
+		expireSharedIndexes(dir, oldId);
+		return encodeLink(sharedIndexId, delete, replace);
+	}
+
+	private ObjectId writeSharedIndex(File dir) throws IOException {
+		final File tmpFile = File.createTempFile("sharedindex_", null, dir); //$NON-NLS-1$
+		try {
+			final MessageDigest md = Constants.newMessageDigest();
+			final ObjectId id;
+			try (OutputStream o = new BufferedOutputStream(
+					new FileOutputStream(tmpFile))) {
+				writeEntries(new DigestOutputStream(o, md), new byte[12],
+						sortedEntries, entryCnt, 0, 0, null);
+				final byte[] checksum = md.digest();
+				o.write(checksum);
+				id = ObjectId.fromRaw(checksum);
+			}
+			final File dst = new File(dir, SHARED_INDEX_PREFIX + id.name());
+			if (!dst.exists())
+				FileUtils.rename(tmpFile, dst,
+						StandardCopyOption.ATOMIC_MOVE);
+			return id;
+		} finally {
+			FileUtils.delete(tmpFile, FileUtils.SKIP_MISSING);
+		}
+	}
+
+	/**
+	 * Delete shared index files no longer used by this index.
+	 * <p>
+	 * Files are kept for a while, other processes may still be reading an
+	 * older version of the index split from them.
+	 *
+	 * @param dir
+	 *            directory holding the shared index files.
+	 * @param oldId
+	 *            shared index used by the index file being replaced, kept in
+	 *            case the new index is not committed. May be null.
+	 */
+	private void expireSharedIndexes(File dir, ObjectId oldId) {
+		final File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		final long expire = System.currentTimeMillis() - SHARED_INDEX_EXPIRE;
+		for (File f : files) {
+			final String name = f.getName();
+			if (!name.startsWith(SHARED_INDEX_PREFIX)
+					|| name.endsWith(sharedIndexId.name())
+					|| (oldId != null && name.endsWith(oldId.name())))
+				continue;
+			if (f.lastModified() < expire)
+				f.delete();
+		}
+	}
+
+	private static byte[] encodeLink(ObjectId id, EWAHCompressedBitmap delete,
+			EWAHCompressedBitmap replace) throws IOException {
+		final ByteArrayOutputStream bb = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bb);
+		id.copyRawTo(out);
+		delete.serialize(out);
+		replace.serialize(out);
+		out.flush();
+		return bb.toByteArray();
+	}
+
 	/**
 	 * Commit this change and release the lock.
 	 * <p>
@@ -944,6 +1888,193 @@ public DirCacheTree getCacheTree(final boolean build) {
 		return tree;
 	}
 
+	/**
+	 * Obtain the untracked cache read from the index file.
+	 * <p>
+	 * Directories whose set of index entries changed are invalidated before
+	 * the cache is written back by {@link #write()}.
+	 *
+	 * @return the untracked cache; null if the index has none.
+	 * @since 4.7
+	 */
+	public UntrackedCache getUntrackedCache() {
+		return untrackedCache;
+	}
+
+	/**
+	 * Replace the untracked cache written with this index.
+	 *
+	 * @param cache
+	 *            the new untracked cache, matching the current entries of
+	 *            this index; null to remove the cache from the index.
+	 * @since 4.7
+	 */
+	public void setUntrackedCache(UntrackedCache cache) {
+		untrackedCache = cache;
+		untrackedCacheEntries = sortedEntries;
+		untrackedCacheEntryCnt = entryCnt;
+	}
+
+	/**
+	 * @return token of the file change monitor stored in the index; null if
+	 *         the index has none.
+	 * @since 4.7
+	 */
+	public String getFileMonitorToken() {
+		return fileMonitorToken;
+	}
+
+	/**
+	 * Query a file change monitor for the paths changed since the index was
+	 * last updated with it.
+	 * <p>
+	 * Entries that were clean when the stored token was issued and whose path
+	 * was not reported as changed are marked
+	 * {@link DirCacheEntry#isFileMonitorValid() valid}, all other entries have
+	 * to be examined. The new token is stored with the index on the next
+	 * {@link #write()}; callers should mark entries they verified as clean in
+	 * the meantime.
+	 *
+	 * @param monitor
+	 *            the monitor of the working tree of this index.
+	 * @return the changes reported by the monitor.
+	 * @throws IOException
+	 *             the monitor cannot be queried.
+	 * @since 4.7
+	 */
+	public FileChangeMonitor.Changes applyFileMonitor(
+			FileChangeMonitor monitor) throws IOException {
+		FileChangeMonitor.Changes changes = monitor
+				.getChanges(fileMonitorToken);
+		boolean stored = fileMonitorDirty != null
+				&& fileMonitorEntries == sortedEntries;
+		boolean known = changes.isComplete() && stored;
+		boolean updated = !known;
+		for (int i = 0; i < entryCnt; i++) {
+			DirCacheEntry e = sortedEntries[i];
+			boolean clean = stored && !fileMonitorDirty.get(i);
+			boolean valid = known && clean
+					&& !changes.isChanged(e.getPathString());
+			updated |= valid != clean;
+			e.setFileMonitorValid(valid);
+		}
+		fileMonitorToken = changes.getToken();
+		fileMonitorApplied = true;
+		fileMonitorUpdated = updated;
+		return changes;
+	}
+
+	/**
+	 * Whether the file monitor state has to be written to the index file.
+	 * <p>
+	 * This is the case if {@link #applyFileMonitor(FileChangeMonitor)} found
+	 * the stored token unusable or reported changes to entries, or if the
+	 * {@link DirCacheEntry#isFileMonitorValid()} flag of any entry differs
+	 * from the index file. Otherwise the stored token still describes the
+	 * entries and writing the index only replaces it by an equivalent one.
+	 *
+	 * @return true if the index should be written to keep the state of the
+	 *         file monitor; false if the monitor was not applied or nothing
+	 *         changed.
+	 * @since 4.7
+	 */
+	public boolean isFileMonitorUpdated() {
+		if (!fileMonitorApplied)
+			return false;
+		if (fileMonitorUpdated || fileMonitorDirty == null
+				|| fileMonitorEntries != sortedEntries)
+			return true;
+		for (int i = 0; i < entryCnt; i++) {
+			if (sortedEntries[i].isFileMonitorValid() == fileMonitorDirty
+					.get(i))
+				return true;
+		}
+		return false;
+	}
+
+	private void readFileMonitor(byte[] raw) throws IOException {
+		int version = NB.decodeInt32(raw, 0);
+		int ptr = 4;
+		String token;
+		if (version == 1) {
+			// Version 1 stores the time in nanoseconds as the token.
+			token = Long.toString(NB.decodeInt64(raw, ptr));
+			ptr += 8;
+		} else if (version == 2) {
+			int end = ptr;
+			while (raw[end] != 0)
+				end++;
+			token = RawParseUtils.decode(raw, ptr, end);
+			ptr = end + 1;
+		} else {
+			// Unknown versions are only an optimization we cannot use.
+			return;
+		}
+		int len = NB.decodeInt32(raw, ptr);
+		ptr += 4;
+		EWAHCompressedBitmap dirty = new EWAHCompressedBitmap();
+		dirty.deserialize(new DataInputStream(
+				new ByteArrayInputStream(raw, ptr, len)));
+		fileMonitorToken = token;
+		fileMonitorDirty = dirty;
+		fileMonitorEntries = sortedEntries;
+	}
+
+	private void writeFileMonitor(ByteArrayOutputStream out,
+			DirCacheEntry[] entries, int cnt) throws IOException {
+		EWAHCompressedBitmap dirty = new EWAHCompressedBitmap();
+		for (int i = 0; i < cnt; i++) {
+			if (!entries[i].isFileMonitorValid()
+					&& !entries[i].isSparseDirectory())
+				dirty.set(i);
+		}
+		ByteArrayOutputStream bitmap = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(bitmap);
+		dirty.serialize(dos);
+		dos.flush();
+
+		byte[] tmp = new byte[4];
+		NB.encodeInt32(tmp, 0, 2);
+		out.write(tmp);
+		out.write(Constants.encode(fileMonitorToken));
+		out.write(0);
+		NB.encodeInt32(tmp, 0, bitmap.size());
+		out.write(tmp);
+		bitmap.writeTo(out);
+	}
+
+	/**
+	 * Invalidate the untracked cache for every path that was added to or
+	 * removed from the index since the cache was last brought up to date.
+	 */
+	private void invalidateUntrackedCache() {
+		DirCacheEntry[] old = untrackedCacheEntries;
+		int oldCnt = untrackedCacheEntryCnt;
+		if (old != sortedEntries || oldCnt != entryCnt) {
+			int o = 0, n = 0;
+			while (o < oldCnt || n < entryCnt) {
+				int c;
+				if (o == oldCnt)
+					c = 1;
+				else if (n == entryCnt)
+					c = -1;
+				else
+					c = cmp(old[o], sortedEntries[n]);
+				if (c < 0)
+					untrackedCache.invalidate(old[o++].getPathString());
+				else if (c > 0)
+					untrackedCache.invalidate(
+							sortedEntries[n++].getPathString());
+				else {
+					o++;
+					n++;
+				}
+			}
+		}
+		untrackedCacheEntries = sortedEntries;
+		untrackedCacheEntryCnt = entryCnt;
+	}
+
 	/**
 	 * Write all index trees to the object store, returning the root tree.
 	 *
@@ -1017,8 +2148,10 @@ private void updateSmudgedEntries() throws IOException {
 					continue;
 				DirCacheEntry entry = iIter.getDirCacheEntry();
 				if (entry.isSmudged() && iIter.idEqual(fIter)) {
+					boolean valid = entry.isFileMonitorValid();
 					entry.setLength(fIter.getEntryLength());
-					entry.setLastModified(fIter.getEntryLastModified());
+					entry.setLastModified(fIter.getEntryLastModifiedInstant());
+					entry.setFileMonitorValid(valid);
 				}
 			}
 		}
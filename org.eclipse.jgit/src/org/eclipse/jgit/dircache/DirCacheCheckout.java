@@ -45,6 +45,7 @@
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
@@ -52,6 +53,13 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.jgit.api.errors.FilterFailedException;
 import org.eclipse.jgit.attributes.FilterCommand;
@@ -62,6 +70,7 @@
 import org.eclipse.jgit.errors.IndexWriteException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.CoreConfig.AutoCRLF;
 import org.eclipse.jgit.lib.CoreConfig.EolStreamType;
@@ -99,6 +108,9 @@ public class DirCacheCheckout {
 
 	private static final int MAX_EXCEPTION_TEXT_SIZE = 10 * 1024;
 
+	/** Default for {@code checkout.thresholdForParallelism}, as in C Git. */
+	private static final int DEFAULT_PARALLEL_THRESHOLD = 100;
+
 	/**
 	 * Metadata used in checkout process
 	 *
@@ -151,6 +163,10 @@ public CheckoutMetadata(EolStreamType eolStreamType,
 
 	private boolean emptyDirCache;
 
+	private ExecutorService executor;
+
+	private SparseCheckout sparseCheckout;
+
 	/**
 	 * @return a list of updated paths and smudgeFilterCommands
 	 */
@@ -281,6 +297,7 @@ public void preScanTwoTrees() throws CorruptObjectException, IOException {
 		removed.clear();
 		updated.clear();
 		conflicts.clear();
+		sparseCheckout = SparseCheckout.read(repo);
 		walk = new NameConflictTreeWalk(repo);
 		builder = dc.builder();
 
@@ -322,6 +339,7 @@ public void prescanOneTree()
 		removed.clear();
 		updated.clear();
 		conflicts.clear();
+		sparseCheckout = SparseCheckout.read(repo);
 
 		builder = dc.builder();
 
@@ -352,6 +370,8 @@ public void prescanOneTree()
 	 */
 	void processEntry(CanonicalTreeParser m, DirCacheBuildIterator i,
 			WorkingTreeIterator f) throws IOException {
+		if (i != null && isSkipWorkTree(i.getDirCacheEntry()))
+			f = null;
 		if (m != null) {
 			checkValidPath(m);
 			// There is an entry in the merge commit. Means: we want to update
@@ -392,7 +412,7 @@ void processEntry(CanonicalTreeParser m, DirCacheBuildIterator i,
 					// file if not set, as we are sure to be in sync here.
 					DirCacheEntry entry = i.getDirCacheEntry();
 					if (entry.getLastModified() == 0)
-						entry.setLastModified(f.getEntryLastModified());
+						entry.setLastModified(f.getEntryLastModifiedInstant());
 					keep(entry);
 				}
 			} else
@@ -497,12 +517,23 @@ private boolean doCheckout() throws CorruptObjectException, IOException,
 			if (file != null)
 				removeEmptyParents(file);
 
+			List<DirCacheEntry> entries = new ArrayList<>(updated.size());
+			List<CheckoutMetadata> metadata = new ArrayList<>(updated.size());
 			for (Map.Entry<String, CheckoutMetadata> e : updated.entrySet()) {
 				String path = e.getKey();
-				CheckoutMetadata meta = e.getValue();
 				DirCacheEntry entry = dc.getEntry(path);
-				if (!FileMode.GITLINK.equals(entry.getRawMode()))
-					checkoutEntry(repo, entry, objectReader, false, meta);
+				if (!FileMode.GITLINK.equals(entry.getRawMode())) {
+					entries.add(entry);
+					metadata.add(e.getValue());
+				}
+			}
+			int workers = getCheckoutWorkers();
+			if (workers > 1 && entries.size() >= getParallelThreshold())
+				checkoutInParallel(objectReader, entries, metadata, workers);
+			else {
+				for (int i = 0; i < entries.size(); i++)
+					checkoutEntry(repo, entries.get(i), objectReader, false,
+							metadata.get(i));
 			}
 
 			// commit the index builder - a new index is persisted
@@ -565,6 +596,10 @@ private boolean equalIdAndMode(ObjectId id1, FileMode mode1, ObjectId id2,
 	void processEntry(CanonicalTreeParser h, CanonicalTreeParser m,
 			DirCacheBuildIterator i, WorkingTreeIterator f) throws IOException {
 		DirCacheEntry dce = i != null ? i.getDirCacheEntry() : null;
+		if (isSkipWorkTree(dce))
+			// The file is not expected in the working tree, take the
+			// index entry for its content.
+			f = null;
 
 		String name = walk.getPathString();
 
@@ -1078,16 +1113,162 @@ private void remove(String path) {
 	private void update(String path, ObjectId mId, FileMode mode)
 			throws IOException {
 		if (!FileMode.TREE.equals(mode)) {
-			updated.put(path, new CheckoutMetadata(walk.getEolStreamType(),
-					walk.getFilterCommand(Constants.ATTR_FILTER_TYPE_SMUDGE)));
-
 			DirCacheEntry entry = new DirCacheEntry(path, DirCacheEntry.STAGE_0);
 			entry.setObjectId(mId);
 			entry.setFileMode(mode);
 			builder.add(entry);
+
+			if (sparseCheckout != null && !sparseCheckout.includes(path)) {
+				// Outside of the sparse checkout only the index is updated.
+				// A file checked out before is no longer wanted.
+				entry.setSkipWorkTree(true);
+				DirCacheEntry current = dc.getEntry(path);
+				if (current != null && !current.isSkipWorkTree())
+					removed.add(path);
+				return;
+			}
+			updated.put(path, new CheckoutMetadata(walk.getEolStreamType(),
+					walk.getFilterCommand(Constants.ATTR_FILTER_TYPE_SMUDGE)));
 		}
 	}
 
+	private static boolean isSkipWorkTree(DirCacheEntry e) {
+		return e != null && e.isSkipWorkTree();
+	}
+
+	private int getCheckoutWorkers() {
+		int cpus = Runtime.getRuntime().availableProcessors();
+		if (executor != null)
+			// The caller asked for its executor, use it on a single CPU too.
+			return Math.max(2, cpus);
+		int workers = repo.getConfig().getInt(
+				ConfigConstants.CONFIG_CHECKOUT_SECTION,
+				ConfigConstants.CONFIG_KEY_WORKERS, 1);
+		return workers < 1 ? cpus : workers;
+	}
+
+	private int getParallelThreshold() {
+		return repo.getConfig().getInt(ConfigConstants.CONFIG_CHECKOUT_SECTION,
+				ConfigConstants.CONFIG_KEY_THRESHOLD_FOR_PARALLELISM,
+				DEFAULT_PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Write files on several threads.
+	 * <p>
+	 * Files are grouped by directory, so that a directory is created once
+	 * and its files are written by the same worker. Each worker uses its own
+	 * {@link ObjectReader}.
+	 */
+	private void checkoutInParallel(ObjectReader objectReader,
+			List<DirCacheEntry> entries, List<CheckoutMetadata> metadata,
+			int workers) throws IOException {
+		Map<String, List<Integer>> byDirectory = new HashMap<>();
+		for (int i = 0; i < entries.size(); i++) {
+			String path = entries.get(i).getPathString();
+			int slash = path.lastIndexOf('/');
+			String dir = slash < 0 ? "" : path.substring(0, slash); //$NON-NLS-1$
+			List<Integer> files = byDirectory.get(dir);
+			if (files == null) {
+				files = new ArrayList<>();
+				byDirectory.put(dir, files);
+			}
+			files.add(Integer.valueOf(i));
+		}
+
+		// Several batches per worker balance directories of unequal size.
+		int batchSize = Math.max(1, entries.size() / (workers * 4));
+		List<List<Integer>> batches = new ArrayList<>();
+		List<Integer> batch = new ArrayList<>();
+		for (List<Integer> files : byDirectory.values()) {
+			batch.addAll(files);
+			if (batch.size() >= batchSize) {
+				batches.add(batch);
+				batch = new ArrayList<>();
+			}
+		}
+		if (!batch.isEmpty())
+			batches.add(batch);
+
+		ExecutorService pool = executor;
+		if (pool == null)
+			pool = Executors.newFixedThreadPool(workers);
+		AtomicBoolean aborted = new AtomicBoolean();
+		try {
+			List<Future<Void>> futures = new ArrayList<>(batches.size());
+			for (List<Integer> b : batches)
+				futures.add(pool.submit(newCheckoutTask(objectReader, entries,
+						metadata, b, aborted)));
+
+			// Wait for all tasks, no file may be written after returning.
+			Throwable failure = null;
+			for (Future<Void> f : futures) {
+				try {
+					f.get();
+				} catch (ExecutionException e) {
+					if (failure == null)
+						failure = e.getCause();
+				} catch (InterruptedException e) {
+					// A cancelled future no longer tells when its task ends,
+					// let the tasks stop after their current file instead.
+					aborted.set(true);
+					awaitUninterruptibly(futures);
+					throw new InterruptedIOException();
+				}
+			}
+			if (failure instanceof Error)
+				throw (Error) failure;
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException) failure;
+			if (failure instanceof IOException)
+				throw (IOException) failure;
+			if (failure != null)
+				throw new IOException(failure.getMessage(), failure);
+		} finally {
+			if (pool != executor)
+				pool.shutdown();
+		}
+	}
+
+	private Callable<Void> newCheckoutTask(final ObjectReader objectReader,
+			final List<DirCacheEntry> entries,
+			final List<CheckoutMetadata> metadata, final List<Integer> batch,
+			final AtomicBoolean aborted) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				try (ObjectReader reader = objectReader.newReader()) {
+					for (Integer i : batch) {
+						if (aborted.get())
+							break;
+						checkoutEntry(repo, entries.get(i.intValue()), reader,
+								false, metadata.get(i.intValue()));
+					}
+				}
+				return null;
+			}
+		};
+	}
+
+	/** Wait for all tasks to end, regardless of their outcome. */
+	private static void awaitUninterruptibly(List<Future<Void>> futures) {
+		boolean interrupted = false;
+		for (Future<Void> f : futures) {
+			for (;;) {
+				try {
+					f.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException | CancellationException e) {
+					break;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
 	/**
 	 * If <code>true</code>, will scan first to see if it's possible to check
 	 * out, otherwise throw {@link CheckoutConflictException}. If
@@ -1099,6 +1280,22 @@ public void setFailOnConflict(boolean failOnConflict) {
 		this.failOnConflict = failOnConflict;
 	}
 
+	/**
+	 * Set the executor used to write the checked out files in parallel.
+	 * <p>
+	 * Without an executor files are written in parallel only if
+	 * {@code checkout.workers} is configured, using a pool of that size which
+	 * only lives for the checkout. Deletions and conflict handling always run
+	 * on the calling thread before any file is written.
+	 *
+	 * @param executor
+	 *            executor to write files on, or null.
+	 * @since 4.7
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
 	/**
 	 * This method implements how to handle conflicts when
 	 * {@link #failOnConflict} is false
@@ -1295,7 +1492,7 @@ public static void checkoutEntry(Repository repo, DirCacheEntry entry,
 			}
 			fs.createSymLink(f, target);
 			entry.setLength(bytes.length);
-			entry.setLastModified(fs.lastModified(f));
+			entry.setLastModified(fs.lastModifiedInstant(f));
 			return;
 		}
 
@@ -1359,7 +1556,7 @@ public static void checkoutEntry(Repository repo, DirCacheEntry entry,
 				FileUtils.delete(tmpFile);
 			}
 		}
-		entry.setLastModified(fs.lastModified(f));
+		entry.setLastModified(fs.lastModifiedInstant(f));
 	}
 
 	// Run an external filter command
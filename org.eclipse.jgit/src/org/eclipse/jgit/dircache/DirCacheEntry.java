@@ -46,14 +46,12 @@
 
 package org.eclipse.jgit.dircache;
 
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.security.MessageDigest;
 import java.text.MessageFormat;
+import java.time.Instant;
 import java.util.Arrays;
 
 import org.eclipse.jgit.errors.CorruptObjectException;
@@ -62,7 +60,6 @@
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.util.IO;
 import org.eclipse.jgit.util.MutableInteger;
 import org.eclipse.jgit.util.NB;
 import org.eclipse.jgit.util.SystemReader;
@@ -120,6 +117,8 @@ public class DirCacheEntry {
 	private static final int SKIP_WORKTREE = 0x40000000;
 	private static final int EXTENDED_FLAGS = (INTENT_TO_ADD | SKIP_WORKTREE);
 
+	private static final byte[] NO_PATH = {};
+
 	private static final int INFO_LEN = 62;
 	private static final int INFO_LEN_EXTENDED = 64;
 
@@ -129,11 +128,20 @@ public class DirCacheEntry {
 	/** In-core flag signaling that the entry should be considered as modified. */
 	private static final int UPDATE_NEEDED = 0x1;
 
-	/** (Possibly shared) header information storage. */
-	private final byte[] info;
+	/** In-core flag signaling the file monitor saw no change since verified. */
+	private static final int FILE_MONITOR_VALID = 0x2;
+
+	/** In-core flag signaling the entry differs from the shared index. */
+	private static final int UPDATE_IN_BASE = 0x4;
+
+	/**
+	 * (Possibly shared) header information storage. Replaced by a private
+	 * buffer when extended flags are set on an entry read without them.
+	 */
+	private byte[] info;
 
 	/** First location within {@link #info} where our header starts. */
-	private final int infoOffset;
+	private int infoOffset;
 
 	/** Our encoded path name, from the root of the repository. */
 	final byte[] path;
@@ -141,79 +149,163 @@ public class DirCacheEntry {
 	/** Flags which are never stored to disk. */
 	private byte inCoreFlags;
 
-	DirCacheEntry(final byte[] sharedInfo, final MutableInteger infoAt,
-			final InputStream in, final MessageDigest md, final int smudge_s,
-			final int smudge_ns) throws IOException {
+	/**
+	 * Parse an entry of an index file held in memory.
+	 *
+	 * @param sharedInfo
+	 *            buffer holding the info of many entries.
+	 * @param infoAt
+	 *            position of this entry within {@code sharedInfo}.
+	 * @param buf
+	 *            content of the index file.
+	 * @param ptr
+	 *            position of the entry within {@code buf}, updated to the
+	 *            position of the next entry.
+	 * @param end
+	 *            end of the entry data within {@code buf}.
+	 * @param prefixCompressed
+	 *            true if the index uses version 4 path prefix compression.
+	 * @param previousPath
+	 *            path of the previous entry if prefix compressed, or null at
+	 *            the start of a block of entries.
+	 * @param smudge_s
+	 *            seconds component of the index's last modified time.
+	 * @param smudge_ns
+	 *            nanoseconds component of the index's last modified time.
+	 * @throws IOException
+	 *             the entry is truncated or invalid.
+	 */
+	DirCacheEntry(final byte[] sharedInfo, final int infoAt, final byte[] buf,
+			final MutableInteger ptr, final int end,
+			final boolean prefixCompressed, final byte[] previousPath,
+			final int smudge_s, final int smudge_ns) throws IOException {
 		info = sharedInfo;
-		infoOffset = infoAt.value;
+		infoOffset = infoAt;
 
-		IO.readFully(in, info, infoOffset, INFO_LEN);
+		int p = ptr.value;
+		if (end - p < INFO_LEN)
+			throw new EOFException(JGitText.get().shortReadOfBlock);
+		System.arraycopy(buf, p, info, infoOffset, INFO_LEN);
 
 		final int len;
 		if (isExtended()) {
 			len = INFO_LEN_EXTENDED;
-			IO.readFully(in, info, infoOffset + INFO_LEN, INFO_LEN_EXTENDED - INFO_LEN);
+			if (end - p < INFO_LEN_EXTENDED)
+				throw new EOFException(JGitText.get().shortReadOfBlock);
+			System.arraycopy(buf, p + INFO_LEN, info, infoOffset + INFO_LEN,
+					INFO_LEN_EXTENDED - INFO_LEN);
 
 			if ((getExtendedFlags() & ~EXTENDED_FLAGS) != 0)
 				throw new IOException(MessageFormat.format(JGitText.get()
 						.DIRCUnrecognizedExtendedFlags, String.valueOf(getExtendedFlags())));
 		} else
 			len = INFO_LEN;
-
-		infoAt.value += len;
-		md.update(info, infoOffset, len);
-
-		int pathLen = NB.decodeUInt16(info, infoOffset + P_FLAGS) & NAME_MASK;
-		int skipped = 0;
-		if (pathLen < NAME_MASK) {
-			path = new byte[pathLen];
-			IO.readFully(in, path, 0, pathLen);
-			md.update(path, 0, pathLen);
-		} else {
-			final ByteArrayOutputStream tmp = new ByteArrayOutputStream();
-			{
-				final byte[] buf = new byte[NAME_MASK];
-				IO.readFully(in, buf, 0, NAME_MASK);
-				tmp.write(buf);
-			}
-			for (;;) {
-				final int c = in.read();
-				if (c < 0)
+		p += len;
+
+		if (prefixCompressed) {
+			// Version 4 stores how many bytes to remove from the end of
+			// the previous path, and the NUL terminated suffix to append.
+			// At the start of a block the previous path is not known and
+			// the writer made sure nothing of it is kept.
+			if (p == end)
+				throw new EOFException(JGitText.get().shortReadOfBlock);
+			int c = buf[p++] & 0xff;
+			long strip = c & 0x7f;
+			while ((c & 0x80) != 0) {
+				if (p == end)
 					throw new EOFException(JGitText.get().shortReadOfBlock);
-				if (c == 0)
+				if (Integer.MAX_VALUE < strip)
 					break;
-				tmp.write(c);
+				c = buf[p++] & 0xff;
+				strip = ((strip + 1) << 7) | (c & 0x7f);
 			}
-			path = tmp.toByteArray();
-			pathLen = path.length;
-			skipped = 1; // we already skipped 1 '\0' above to break the loop.
-			md.update(path, 0, pathLen);
-			md.update((byte) 0);
+			int keep = 0;
+			if (previousPath != null) {
+				if (previousPath.length < strip)
+					throw new CorruptObjectException(
+							JGitText.get().DIRCInvalidPathPrefix);
+				keep = previousPath.length - (int) strip;
+			}
+			final int nul = findNul(buf, p, end);
+			path = new byte[keep + nul - p];
+			if (keep > 0)
+				System.arraycopy(previousPath, 0, path, 0, keep);
+			System.arraycopy(buf, p, path, keep, nul - p);
+			p = nul + 1;
+		} else {
+			final int pathLen = NB.decodeUInt16(info, infoOffset + P_FLAGS)
+					& NAME_MASK;
+			if (pathLen < NAME_MASK) {
+				if (end - p < pathLen)
+					throw new EOFException(JGitText.get().shortReadOfBlock);
+				path = Arrays.copyOfRange(buf, p, p + pathLen);
+			} else
+				path = Arrays.copyOfRange(buf, p, findNul(buf, p + NAME_MASK, end));
+			p += path.length;
+
+			// Index records are padded out to the next 8 byte alignment
+			// for historical reasons related to how C Git read the files.
+			//
+			final int actLen = len + path.length;
+			final int expLen = (actLen + 8) & ~7;
+			p += expLen - actLen;
+			if (end < p)
+				throw new EOFException(JGitText.get().shortReadOfBlock);
 		}
+		ptr.value = p;
 
+		// A split index omits the path of entries replacing an entry
+		// of the shared index, DirCache verifies where they are used.
+		// A sparse index names collapsed directories with a trailing '/'.
 		try {
-			checkPath(path);
+			if (isSparseDirectory())
+				checkPath(Arrays.copyOf(path, path.length - 1));
+			else if (path.length > 0)
+				checkPath(path);
 		} catch (InvalidPathException e) {
-			CorruptObjectException p =
+			CorruptObjectException cpe =
 				new CorruptObjectException(e.getMessage());
 			if (e.getCause() != null)
-				p.initCause(e.getCause());
-			throw p;
+				cpe.initCause(e.getCause());
+			throw cpe;
 		}
 
-		// Index records are padded out to the next 8 byte alignment
-		// for historical reasons related to how C Git read the files.
-		//
-		final int actLen = len + pathLen;
-		final int expLen = (actLen + 8) & ~7;
-		final int padLen = expLen - actLen - skipped;
-		if (padLen > 0) {
-			IO.skipFully(in, padLen);
-			md.update(nullpad, 0, padLen);
+		if (mightBeRacilyClean(smudge_s, smudge_ns)) {
+			smudgeRacilyClean();
+			// The file still holds the unsmudged data, a split index
+			// based on it has no reason to rewrite this entry.
+			inCoreFlags &= ~UPDATE_IN_BASE;
 		}
+	}
 
-		if (mightBeRacilyClean(smudge_s, smudge_ns))
-			smudgeRacilyClean();
+	private static int findNul(byte[] buf, int p, int end)
+			throws EOFException {
+		for (; p < end; p++) {
+			if (buf[p] == 0)
+				return p;
+		}
+		throw new EOFException(JGitText.get().shortReadOfBlock);
+	}
+
+	/**
+	 * Attach a path to an entry read from a split index without one.
+	 * <p>
+	 * C Git strips the path of entries replacing an entry of the shared index,
+	 * as the path is implied by the replaced entry.
+	 *
+	 * @param path
+	 *            path of the replaced entry of the shared index.
+	 * @param src
+	 *            the entry read without a path. Its info buffer is reused.
+	 */
+	DirCacheEntry(byte[] path, DirCacheEntry src) {
+		info = src.info;
+		infoOffset = src.infoOffset;
+		this.path = path;
+
+		int flags = NB.decodeUInt16(info, infoOffset + P_FLAGS) & ~NAME_MASK;
+		flags |= Math.min(path.length, NAME_MASK);
+		NB.encodeInt16(info, infoOffset + P_FLAGS, flags);
 	}
 
 	/**
@@ -306,24 +398,117 @@ public DirCacheEntry(byte[] path, final int stage) {
 	 */
 	public DirCacheEntry(DirCacheEntry src) {
 		path = src.path;
-		info = new byte[INFO_LEN];
+		final int len = src.isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
+		info = new byte[len];
 		infoOffset = 0;
-		System.arraycopy(src.info, src.infoOffset, info, 0, INFO_LEN);
+		System.arraycopy(src.info, src.infoOffset, info, 0, len);
+	}
+
+	/**
+	 * Create the entry of a sparse index standing for a whole directory.
+	 *
+	 * @param path
+	 *            path of the directory, including the trailing '/'.
+	 * @param treeId
+	 *            the tree of the directory.
+	 */
+	private DirCacheEntry(byte[] path, AnyObjectId treeId) {
+		info = new byte[INFO_LEN_EXTENDED];
+		infoOffset = 0;
+		this.path = path;
+
+		NB.encodeInt16(info, P_FLAGS,
+				(EXTENDED << 8) | Math.min(path.length, NAME_MASK));
+		NB.encodeInt16(info, P_FLAGS2, SKIP_WORKTREE >>> 16);
+		NB.encodeInt32(info, P_MODE, FileMode.TREE.getBits());
+		treeId.copyRawTo(info, P_OBJECTID);
+	}
+
+	/**
+	 * Create the entry of a sparse index standing for a whole directory
+	 * outside of the sparse checkout.
+	 *
+	 * @param path
+	 *            path of the directory, including the trailing '/'.
+	 * @param treeId
+	 *            the tree of the directory.
+	 * @return the entry, marked skip-worktree.
+	 */
+	static DirCacheEntry newSparseDirectory(byte[] path, AnyObjectId treeId) {
+		return new DirCacheEntry(path, treeId);
 	}
 
 	void write(final OutputStream os) throws IOException {
+		write(os, false, null, false);
+	}
+
+	/**
+	 * Write this entry in any of the index formats.
+	 *
+	 * @param os
+	 *            stream to write the entry to.
+	 * @param stripPath
+	 *            true to omit the path, as done in a split index for entries
+	 *            replacing an entry of the shared index.
+	 * @param previousPath
+	 *            path written by the previous entry to compress the path
+	 *            against as in index version 4, or null to write the padded
+	 *            format of versions 2 and 3.
+	 * @param newBlock
+	 *            true if the entry starts a block of the index entry offset
+	 *            table and must not share a prefix with the previous entry.
+	 * @return number of bytes written.
+	 * @throws IOException
+	 *             the stream cannot be written.
+	 */
+	int write(final OutputStream os, boolean stripPath, byte[] previousPath,
+			boolean newBlock) throws IOException {
 		final int len = isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
-		final int pathLen = path.length;
-		os.write(info, infoOffset, len);
-		os.write(path, 0, pathLen);
+		final byte[] name = stripPath ? NO_PATH : path;
+		if (stripPath) {
+			final byte[] tmp = new byte[len];
+			System.arraycopy(info, infoOffset, tmp, 0, len);
+			NB.encodeInt16(tmp, P_FLAGS,
+					NB.decodeUInt16(tmp, P_FLAGS) & ~NAME_MASK);
+			os.write(tmp, 0, len);
+		} else
+			os.write(info, infoOffset, len);
+
+		if (previousPath != null) {
+			int common = 0;
+			if (!newBlock) {
+				final int max = Math.min(previousPath.length, name.length);
+				while (common < max && name[common] == previousPath[common])
+					common++;
+			}
+			final int n = writeVarint(os, previousPath.length - common);
+			os.write(name, common, name.length - common);
+			os.write(0);
+			return len + n + name.length - common + 1;
+		}
+
+		os.write(name, 0, name.length);
 
 		// Index records are padded out to the next 8 byte alignment
 		// for historical reasons related to how C Git read the files.
 		//
-		final int actLen = len + pathLen;
+		final int actLen = len + name.length;
 		final int expLen = (actLen + 8) & ~7;
 		if (actLen != expLen)
 			os.write(nullpad, 0, expLen - actLen);
+		return expLen;
+	}
+
+	/** Encode a variable length integer the way C Git's varint.c does. */
+	private static int writeVarint(OutputStream os, int value)
+			throws IOException {
+		final byte[] b = new byte[5];
+		int pos = b.length - 1;
+		b[pos] = (byte) (value & 0x7f);
+		while ((value >>>= 7) != 0)
+			b[--pos] = (byte) (0x80 | (--value & 0x7f));
+		os.write(b, pos, b.length - pos);
+		return b.length - pos;
 	}
 
 	/**
@@ -373,6 +558,7 @@ public final void smudgeRacilyClean() {
 		// racily clean
 		final int base = infoOffset + P_SIZE;
 		Arrays.fill(info, base, base + 4, (byte) 0);
+		inCoreFlags |= UPDATE_IN_BASE;
 	}
 
 	/**
@@ -423,6 +609,7 @@ public void setAssumeValid(final boolean assume) {
 			info[infoOffset + P_FLAGS] |= ASSUME_VALID;
 		else
 			info[infoOffset + P_FLAGS] &= ~ASSUME_VALID;
+		inCoreFlags |= UPDATE_IN_BASE;
 	}
 
 	/**
@@ -444,6 +631,35 @@ public void setUpdateNeeded(boolean updateNeeded) {
 			inCoreFlags &= ~UPDATE_NEEDED;
 	}
 
+	/**
+	 * Whether the working tree file is known to match this entry.
+	 * <p>
+	 * The flag is set once the file was found clean and is kept for as long as
+	 * the {@link org.eclipse.jgit.util.FileChangeMonitor} of the index does
+	 * not report a change to the path. Updating the entry clears it.
+	 *
+	 * @return true if the working tree file does not need to be examined.
+	 * @since 4.7
+	 */
+	public boolean isFileMonitorValid() {
+		return (inCoreFlags & FILE_MONITOR_VALID) != 0;
+	}
+
+	/**
+	 * Set whether the working tree file is known to match this entry.
+	 *
+	 * @param valid
+	 *            true if the file was verified to be clean after the token of
+	 *            the index file monitor was obtained.
+	 * @since 4.7
+	 */
+	public void setFileMonitorValid(boolean valid) {
+		if (valid)
+			inCoreFlags |= FILE_MONITOR_VALID;
+		else
+			inCoreFlags &= ~FILE_MONITOR_VALID;
+	}
+
 	/**
 	 * Get the stage of this entry.
 	 * <p>
@@ -464,6 +680,36 @@ public boolean isSkipWorkTree() {
 		return (getExtendedFlags() & SKIP_WORKTREE) != 0;
 	}
 
+	/**
+	 * Set whether this entry should be skipped from the working tree.
+	 * <p>
+	 * Entries outside of a sparse checkout are marked skip-worktree. Their
+	 * files are not expected in the working tree, so a missing file is not
+	 * a deletion.
+	 *
+	 * @param skip
+	 *            true to skip the entry from the working tree.
+	 * @since 4.7
+	 */
+	public void setSkipWorkTree(boolean skip) {
+		int flags = getExtendedFlags();
+		if (skip)
+			flags |= SKIP_WORKTREE;
+		else
+			flags &= ~SKIP_WORKTREE;
+		setExtendedFlags(flags);
+		inCoreFlags |= UPDATE_IN_BASE;
+	}
+
+	/**
+	 * @return true if this entry of a sparse index stands for a whole
+	 *         directory outside of the sparse checkout.
+	 */
+	boolean isSparseDirectory() {
+		return getRawMode() == FileMode.TYPE_TREE && path.length > 0
+				&& path[path.length - 1] == '/';
+	}
+
 	/**
 	 * Returns whether this entry is intent to be added to the Index.
 	 *
@@ -520,10 +766,13 @@ public void setFileMode(final FileMode mode) {
 					JGitText.get().invalidModeForPath, mode, getPathString()));
 		}
 		NB.encodeInt32(info, infoOffset + P_MODE, mode.getBits());
+		inCoreFlags &= ~FILE_MONITOR_VALID;
+		inCoreFlags |= UPDATE_IN_BASE;
 	}
 
 	void setFileMode(int mode) {
 		NB.encodeInt32(info, infoOffset + P_MODE, mode);
+		inCoreFlags |= UPDATE_IN_BASE;
 	}
 
 	/**
@@ -544,6 +793,7 @@ public long getCreationTime() {
 	 */
 	public void setCreationTime(final long when) {
 		encodeTS(P_CTIME, when);
+		inCoreFlags |= UPDATE_IN_BASE;
 	}
 
 	/**
@@ -568,6 +818,41 @@ public long getLastModified() {
 	 */
 	public void setLastModified(final long when) {
 		encodeTS(P_MTIME, when);
+		inCoreFlags &= ~FILE_MONITOR_VALID;
+		inCoreFlags |= UPDATE_IN_BASE;
+	}
+
+	/**
+	 * Get the cached last modification date of this file, at the nanosecond
+	 * precision of the index.
+	 *
+	 * @return last modification time of this file.
+	 * @since 4.7
+	 */
+	public Instant getLastModifiedInstant() {
+		final int base = infoOffset + P_MTIME;
+		return Instant.ofEpochSecond(NB.decodeInt32(info, base),
+				NB.decodeInt32(info, base + 4));
+	}
+
+	/**
+	 * Set the cached last modification date of this file, at the nanosecond
+	 * precision of the index.
+	 * <p>
+	 * Recording the time as precisely as the file system does allows entries
+	 * updated shortly before the index is written to not be considered racily
+	 * clean.
+	 *
+	 * @param when
+	 *            new cached modification date of the file.
+	 * @since 4.7
+	 */
+	public void setLastModified(final Instant when) {
+		final int base = infoOffset + P_MTIME;
+		NB.encodeInt32(info, base, (int) when.getEpochSecond());
+		NB.encodeInt32(info, base + 4, when.getNano());
+		inCoreFlags &= ~FILE_MONITOR_VALID;
+		inCoreFlags |= UPDATE_IN_BASE;
 	}
 
 	/**
@@ -600,6 +885,8 @@ public int getLength() {
 	 */
 	public void setLength(final int sz) {
 		NB.encodeInt32(info, infoOffset + P_SIZE, sz);
+		inCoreFlags &= ~FILE_MONITOR_VALID;
+		inCoreFlags |= UPDATE_IN_BASE;
 	}
 
 	/**
@@ -633,6 +920,8 @@ public ObjectId getObjectId() {
 	 */
 	public void setObjectId(final AnyObjectId id) {
 		id.copyRawTo(idBuffer(), idOffset());
+		inCoreFlags &= ~FILE_MONITOR_VALID;
+		inCoreFlags |= UPDATE_IN_BASE;
 	}
 
 	/**
@@ -647,6 +936,8 @@ public void setObjectId(final AnyObjectId id) {
 	public void setObjectIdFromRaw(final byte[] bs, final int p) {
 		final int n = Constants.OBJECT_ID_LENGTH;
 		System.arraycopy(bs, p, idBuffer(), idOffset(), n);
+		inCoreFlags &= ~FILE_MONITOR_VALID;
+		inCoreFlags |= UPDATE_IN_BASE;
 	}
 
 	/**
@@ -713,7 +1004,15 @@ public void copyMetaData(final DirCacheEntry src) {
 	void copyMetaData(final DirCacheEntry src, boolean keepStage) {
 		int origflags = NB.decodeUInt16(info, infoOffset + P_FLAGS);
 		int newflags = NB.decodeUInt16(src.info, src.infoOffset + P_FLAGS);
-		System.arraycopy(src.info, src.infoOffset, info, infoOffset, INFO_LEN);
+		if (src.isExtended()) {
+			ensureExtendedInfo();
+			System.arraycopy(src.info, src.infoOffset, info, infoOffset,
+					INFO_LEN_EXTENDED);
+		} else
+			System.arraycopy(src.info, src.infoOffset, info, infoOffset,
+					INFO_LEN);
+		inCoreFlags &= ~FILE_MONITOR_VALID;
+		inCoreFlags |= UPDATE_IN_BASE;
 		final int pLen = origflags & NAME_MASK;
 		final int SHIFTED_STAGE_MASK = 0x3 << 12;
 		final int pStageShifted;
@@ -725,6 +1024,37 @@ void copyMetaData(final DirCacheEntry src, boolean keepStage) {
 				| (newflags & ~NAME_MASK & ~SHIFTED_STAGE_MASK));
 	}
 
+	/**
+	 * @return true if this entry may differ from the entry of the shared
+	 *         index it was read from.
+	 */
+	boolean isUpdateInBase() {
+		return (inCoreFlags & UPDATE_IN_BASE) != 0;
+	}
+
+	/** Mark this entry as stored in the shared index just written. */
+	void clearUpdateInBase() {
+		inCoreFlags &= ~UPDATE_IN_BASE;
+	}
+
+	/**
+	 * Compare the stored fields of two entries with the same path.
+	 *
+	 * @param other
+	 *            entry to compare against.
+	 * @return true if both entries would be written identically.
+	 */
+	boolean isSameInfo(DirCacheEntry other) {
+		final int len = isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
+		if (len != (other.isExtended() ? INFO_LEN_EXTENDED : INFO_LEN))
+			return false;
+		for (int i = 0; i < len; i++) {
+			if (info[infoOffset + i] != other.info[other.infoOffset + i])
+				return false;
+		}
+		return true;
+	}
+
 	/**
 	 * @return true if the entry contains extended flags.
 	 */
@@ -752,6 +1082,29 @@ private int getExtendedFlags() {
 			return 0;
 	}
 
+	private void setExtendedFlags(int flags) {
+		int base = NB.decodeUInt16(info, infoOffset + P_FLAGS) & ~(EXTENDED << 8);
+		if (flags != 0) {
+			ensureExtendedInfo();
+			base |= EXTENDED << 8;
+			NB.encodeInt16(info, infoOffset + P_FLAGS2, flags >>> 16);
+		}
+		NB.encodeInt16(info, infoOffset + P_FLAGS, base);
+	}
+
+	/**
+	 * Make room for the extended flags, entries without them may have been
+	 * read into a buffer shared with the next entry.
+	 */
+	private void ensureExtendedInfo() {
+		if (info.length - infoOffset >= INFO_LEN_EXTENDED && isExtended())
+			return;
+		final byte[] n = new byte[INFO_LEN_EXTENDED];
+		System.arraycopy(info, infoOffset, n, 0, INFO_LEN);
+		info = n;
+		infoOffset = 0;
+	}
+
 	private static void checkPath(byte[] path) {
 		try {
 			SystemReader.getInstance().checkPath(path);
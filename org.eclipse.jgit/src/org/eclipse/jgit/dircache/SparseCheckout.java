@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.dircache;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.errors.LockFailedException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FileUtils;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * Cone mode patterns of a sparse checkout.
+ * <p>
+ * A sparse checkout populates only part of the working tree. In cone mode the
+ * patterns stored in {@code $GIT_DIR/info/sparse-checkout} select directories:
+ * files at the top level of the repository are always present, the listed
+ * directories are present with all their content, and their parent
+ * directories only contain their immediate files.
+ * <p>
+ * Index entries outside of the cone are marked
+ * {@link DirCacheEntry#isSkipWorkTree() skip-worktree} and their files are
+ * not written to the working tree.
+ *
+ * @since 4.7
+ */
+public class SparseCheckout {
+	/** Directories included with all of their content. */
+	private final Set<String> recursive;
+
+	/** Directories of which only the immediate files are included. */
+	private final Set<String> parents;
+
+	/**
+	 * Create the patterns of a sparse checkout.
+	 *
+	 * @param directories
+	 *            directories to include with all of their content, with
+	 *            {@code /} as separator.
+	 */
+	public SparseCheckout(Collection<String> directories) {
+		this(normalize(directories), new HashSet<String>());
+	}
+
+	private SparseCheckout(Set<String> recursive, Set<String> parents) {
+		this.recursive = recursive;
+		this.parents = parents;
+		for (String dir : recursive)
+			addParents(dir);
+		for (String dir : new ArrayList<>(parents))
+			addParents(dir);
+	}
+
+	/**
+	 * Read the sparse checkout of a repository.
+	 *
+	 * @param repo
+	 *            the repository.
+	 * @return the patterns; null if the repository does not use a cone mode
+	 *         sparse checkout, or has no patterns file.
+	 * @throws IOException
+	 *             the patterns file cannot be read or is not in cone mode.
+	 */
+	public static SparseCheckout read(Repository repo) throws IOException {
+		if (repo.isBare())
+			return null;
+		Config cfg = repo.getConfig();
+		if (!cfg.getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+				ConfigConstants.CONFIG_KEY_SPARSE_CHECKOUT, false)
+				|| !cfg.getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+						ConfigConstants.CONFIG_KEY_SPARSE_CHECKOUT_CONE,
+						false))
+			return null;
+		File file = getFile(repo);
+		try {
+			return parse(RawParseUtils.decode(IO.readFully(file)));
+		} catch (FileNotFoundException e) {
+			// Like C Git, a sparse checkout without patterns is disabled.
+			return null;
+		}
+	}
+
+	/**
+	 * Parse cone mode patterns.
+	 *
+	 * @param patterns
+	 *            content of a sparse-checkout file.
+	 * @return the patterns.
+	 * @throws IOException
+	 *             a pattern is not valid in cone mode.
+	 */
+	static SparseCheckout parse(String patterns) throws IOException {
+		Set<String> recursive = new HashSet<>();
+		Set<String> parents = new HashSet<>();
+		for (String line : patterns.split("\n")) { //$NON-NLS-1$
+			if (line.endsWith("\r")) //$NON-NLS-1$
+				line = line.substring(0, line.length() - 1);
+			if (line.isEmpty() || line.startsWith("#") //$NON-NLS-1$
+					|| line.equals("/*") || line.equals("!/*/")) //$NON-NLS-1$ //$NON-NLS-2$
+				continue;
+			if (line.startsWith("!/") && line.endsWith("/*/") //$NON-NLS-1$ //$NON-NLS-2$
+					&& line.length() > 5)
+				parents.add(unescape(line.substring(2, line.length() - 3)));
+			else if (line.startsWith("/") && line.endsWith("/") //$NON-NLS-1$ //$NON-NLS-2$
+					&& line.length() > 2)
+				recursive.add(unescape(line.substring(1, line.length() - 1)));
+			else
+				throw new IOException(MessageFormat.format(
+						JGitText.get().invalidSparseCheckoutPattern, line));
+		}
+		recursive.removeAll(parents);
+		return new SparseCheckout(recursive, parents);
+	}
+
+	/**
+	 * Write these patterns as the sparse checkout of a repository.
+	 * <p>
+	 * The configuration enabling the sparse checkout is left to the caller.
+	 *
+	 * @param repo
+	 *            the repository.
+	 * @throws IOException
+	 *             the patterns file cannot be written.
+	 */
+	public void write(Repository repo) throws IOException {
+		StringBuilder b = new StringBuilder();
+		b.append("/*\n!/*/\n"); //$NON-NLS-1$
+		Set<String> all = new TreeSet<>(recursive);
+		all.addAll(parents);
+		for (String dir : all) {
+			String name = escape(dir);
+			b.append('/').append(name).append("/\n"); //$NON-NLS-1$
+			if (parents.contains(dir))
+				b.append("!/").append(name).append("/*/\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		File file = getFile(repo);
+		FileUtils.mkdirs(file.getParentFile(), true);
+		LockFile lock = new LockFile(file);
+		if (!lock.lock())
+			throw new LockFailedException(file);
+		try {
+			lock.write(Constants.encode(b.toString()));
+			if (!lock.commit())
+				throw new LockFailedException(file);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return directories included with all of their content.
+	 */
+	public Set<String> getDirectories() {
+		return Collections.unmodifiableSet(new TreeSet<>(recursive));
+	}
+
+	/**
+	 * Check whether a file belongs to the sparse checkout.
+	 *
+	 * @param path
+	 *            path of the file, with {@code /} as separator.
+	 * @return true if the file is present in the working tree.
+	 */
+	public boolean includes(String path) {
+		int slash = path.lastIndexOf('/');
+		if (slash < 0)
+			return true;
+		String dir = path.substring(0, slash);
+		return parents.contains(dir) || isRecursive(dir);
+	}
+
+	/**
+	 * Check whether a directory may contain files of the sparse checkout.
+	 *
+	 * @param dir
+	 *            path of the directory, with {@code /} as separator and
+	 *            without trailing {@code /}.
+	 * @return false if no file below the directory is present in the working
+	 *         tree.
+	 */
+	public boolean includesDirectory(String dir) {
+		return dir.isEmpty() || parents.contains(dir) || isRecursive(dir);
+	}
+
+	private boolean isRecursive(String dir) {
+		for (;;) {
+			if (recursive.contains(dir))
+				return true;
+			int slash = dir.lastIndexOf('/');
+			if (slash < 0)
+				return false;
+			dir = dir.substring(0, slash);
+		}
+	}
+
+	private void addParents(String dir) {
+		for (int slash = dir.lastIndexOf('/'); slash > 0; slash = dir
+				.lastIndexOf('/', slash - 1))
+			parents.add(dir.substring(0, slash));
+	}
+
+	private static File getFile(Repository repo) {
+		return new File(repo.getDirectory(), Constants.INFO_SPARSE_CHECKOUT);
+	}
+
+	private static Set<String> normalize(Collection<String> directories) {
+		Set<String> r = new HashSet<>();
+		for (String dir : directories) {
+			int b = 0;
+			int e = dir.length();
+			while (b < e && dir.charAt(b) == '/')
+				b++;
+			while (b < e && dir.charAt(e - 1) == '/')
+				e--;
+			if (b < e)
+				r.add(dir.substring(b, e));
+		}
+		return r;
+	}
+
+	private static String escape(String dir) {
+		StringBuilder b = new StringBuilder(dir.length());
+		for (int i = 0; i < dir.length(); i++) {
+			char c = dir.charAt(i);
+			if (c == '\\' || c == '*' || c == '?' || c == '[')
+				b.append('\\');
+			b.append(c);
+		}
+		return b.toString();
+	}
+
+	private static String unescape(String pattern) {
+		StringBuilder b = new StringBuilder(pattern.length());
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '\\' && i + 1 < pattern.length())
+				c = pattern.charAt(++i);
+			b.append(c);
+		}
+		return b.toString();
+	}
+}
@@ -0,0 +1,706 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.dircache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.CoreConfig;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
+
+/**
+ * The untracked cache extension ({@code UNTR}) of a {@link DirCache}.
+ * <p>
+ * For every directory of the working tree the cache records the stat data of
+ * the directory as it was when its untracked files were last listed, the
+ * SHA-1 of the directory's {@code .gitignore}, and the names of the untracked
+ * files and directories found in it. While the modification time of a
+ * directory and its ignore rules are unchanged, the listing is still valid
+ * and ignore rules do not need to be evaluated for files that are not in the
+ * index.
+ * <p>
+ * The binary format is the one written by C Git, so a cache populated by
+ * {@code git update-index --untracked-cache} or {@code git status} is reused
+ * and carried along when JGit writes the index. JGit records the untracked
+ * files of every directory it lists, like {@code git status -uall}, and only
+ * updates caches recorded that way.
+ *
+ * @since 4.7
+ */
+public class UntrackedCache {
+	/** Size of the on-disk stat data of one file or directory. */
+	private static final int STAT_SIZE = 36;
+
+	/** Stat data of info/exclude and core.excludesfile, then dir_flags. */
+	private static final int HEADER_SIZE = 2 * STAT_SIZE + 4;
+
+	private final byte[] ident;
+
+	private final byte[] header;
+
+	private final ObjectId infoExcludeId;
+
+	private final ObjectId excludesFileId;
+
+	private final String excludePerDir;
+
+	private Directory root;
+
+	private boolean updated;
+
+	private UntrackedCache(byte[] ident, byte[] header, ObjectId infoExcludeId,
+			ObjectId excludesFileId, String excludePerDir, Directory root) {
+		this.ident = ident;
+		this.header = header;
+		this.infoExcludeId = infoExcludeId;
+		this.excludesFileId = excludesFileId;
+		this.excludePerDir = excludePerDir;
+		this.root = root;
+	}
+
+	/**
+	 * Create an empty cache for the working tree of a repository.
+	 *
+	 * @param repo
+	 *            the repository.
+	 * @return the new cache.
+	 * @throws IOException
+	 *             the ignore files of the repository cannot be read.
+	 */
+	public static UntrackedCache create(Repository repo) throws IOException {
+		String ident = "Location " + repo.getWorkTree().getAbsolutePath() //$NON-NLS-1$
+				+ ", system " + System.getProperty("os.name") + '\0'; //$NON-NLS-1$ //$NON-NLS-2$
+		UntrackedCache cache = new UntrackedCache(Constants.encode(ident),
+				new byte[HEADER_SIZE], idOfInfoExclude(repo),
+				idOfExcludesFile(repo), Constants.DOT_GIT_IGNORE, null);
+		cache.updated = true;
+		return cache;
+	}
+
+	/**
+	 * Check whether this cache applies to a repository.
+	 *
+	 * @param repo
+	 *            the repository.
+	 * @return true if the cache was created for the working tree of the
+	 *         repository and the ignore files that apply to all directories
+	 *         are unchanged since.
+	 * @throws IOException
+	 *             the ignore files of the repository cannot be read.
+	 */
+	public boolean isValidFor(Repository repo) throws IOException {
+		String location = "Location " //$NON-NLS-1$
+				+ repo.getWorkTree().getAbsolutePath() + ","; //$NON-NLS-1$
+		return getIdent().startsWith(location)
+				&& Constants.DOT_GIT_IGNORE.equals(excludePerDir)
+				&& infoExcludeId.equals(idOfInfoExclude(repo))
+				&& excludesFileId.equals(idOfExcludesFile(repo));
+	}
+
+	/**
+	 * @return true if every untracked file is listed in the directory it is
+	 *         in, as JGit and {@code git status -uall} record them. By default
+	 *         C Git lists an untracked directory instead of its content.
+	 */
+	public boolean isComplete() {
+		return NB.decodeInt32(header, 2 * STAT_SIZE) == 0;
+	}
+
+	/**
+	 * @return true if directories were added or listed again since the cache
+	 *         was read or created.
+	 */
+	public boolean isUpdated() {
+		return updated;
+	}
+
+	/**
+	 * @return the environment the cache was created in, usually
+	 *         {@code "Location <work tree>, system <os>"}.
+	 */
+	public String getIdent() {
+		int end = ident.length;
+		while (0 < end && ident[end - 1] == 0)
+			end--;
+		return RawParseUtils.decode(ident, 0, end);
+	}
+
+	/**
+	 * @return SHA-1 of {@code $GIT_DIR/info/exclude} when the cache was
+	 *         created, {@link ObjectId#zeroId()} if the file did not exist.
+	 */
+	public ObjectId getInfoExcludeId() {
+		return infoExcludeId;
+	}
+
+	/**
+	 * @return SHA-1 of the file named by {@code core.excludesfile} when the
+	 *         cache was created, {@link ObjectId#zeroId()} if there was none.
+	 */
+	public ObjectId getExcludesFileId() {
+		return excludesFileId;
+	}
+
+	/** @return name of the per-directory ignore file, {@code .gitignore}. */
+	public String getExcludePerDir() {
+		return excludePerDir;
+	}
+
+	/** @return the top level directory, null if the cache is empty. */
+	public Directory getRoot() {
+		return root;
+	}
+
+	/** @return the top level directory, added if the cache is empty. */
+	public Directory addRoot() {
+		if (root == null) {
+			root = new Directory("", new ArrayList<String>(), //$NON-NLS-1$
+					new ArrayList<Directory>());
+			root.cache = this;
+			updated = true;
+		}
+		return root;
+	}
+
+	/**
+	 * Invalidate all directories leading to a path.
+	 * <p>
+	 * Must be called whenever a path is added to or removed from the index,
+	 * as that turns an untracked file into a tracked one or back.
+	 *
+	 * @param path
+	 *            path of the file, relative to the top of the working tree.
+	 */
+	public void invalidate(String path) {
+		Directory d = root;
+		int s = 0;
+		while (d != null) {
+			d.invalidate();
+			int e = path.indexOf('/', s);
+			if (e < 0)
+				return;
+			d = d.getDirectory(path.substring(s, e));
+			s = e + 1;
+		}
+	}
+
+	/** Cached listing of a single directory. */
+	public static class Directory {
+		final String name;
+
+		final List<String> untracked;
+
+		final List<Directory> dirs;
+
+		UntrackedCache cache;
+
+		/** {@link #untracked} for lookups, null until first needed. */
+		private Set<String> untrackedNames;
+
+		boolean valid;
+
+		boolean checkOnly;
+
+		byte[] stat;
+
+		ObjectId excludeId;
+
+		Directory(String name, List<String> untracked, List<Directory> dirs) {
+			this.name = name;
+			this.untracked = untracked;
+			this.dirs = dirs;
+		}
+
+		/** @return name of this directory, empty for the top level. */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return true if the listing matched the directory when it was
+		 *         stored; the caller must still compare the stat data.
+		 */
+		public boolean isValid() {
+			return valid;
+		}
+
+		/**
+		 * @return true if only the existence of untracked files was recorded,
+		 *         so the list of untracked names may be incomplete.
+		 */
+		public boolean isCheckOnly() {
+			return checkOnly;
+		}
+
+		/**
+		 * @return modification time of the directory in milliseconds when it
+		 *         was listed, 0 if this directory is not valid.
+		 */
+		public long getLastModified() {
+			if (stat == null)
+				return 0;
+			long sec = decodeUInt32(stat, 8);
+			long nsec = decodeUInt32(stat, 12);
+			return sec * 1000 + nsec / 1000000;
+		}
+
+		/**
+		 * @return SHA-1 of the directory's {@code .gitignore}, null if there
+		 *         was none.
+		 */
+		public ObjectId getExcludeId() {
+			return excludeId;
+		}
+
+		/**
+		 * @return names of the untracked files in this directory, untracked
+		 *         directories end with {@code '/'}.
+		 */
+		public List<String> getUntracked() {
+			return Collections.unmodifiableList(untracked);
+		}
+
+		/** @return the subdirectories in the cache. */
+		public List<Directory> getDirectories() {
+			return Collections.unmodifiableList(dirs);
+		}
+
+		/**
+		 * @param entryName
+		 *            name of a file in this directory.
+		 * @return true if the file was listed as untracked.
+		 */
+		public boolean isUntracked(String entryName) {
+			if (untrackedNames == null)
+				untrackedNames = new HashSet<>(untracked);
+			return untrackedNames.contains(entryName);
+		}
+
+		/**
+		 * @param dirName
+		 *            name of a subdirectory, without trailing {@code '/'}.
+		 * @return the cached subdirectory, null if it is not in the cache.
+		 */
+		public Directory getDirectory(String dirName) {
+			for (Directory d : dirs) {
+				if (d.name.equals(dirName))
+					return d;
+			}
+			return null;
+		}
+
+		/**
+		 * Get a subdirectory, adding it if it is not in the cache.
+		 *
+		 * @param dirName
+		 *            name of the subdirectory, without trailing {@code '/'}.
+		 * @return the cached subdirectory; not valid if it was added.
+		 */
+		public Directory addDirectory(String dirName) {
+			// Sorted like C Git, which searches them by binary search.
+			byte[] n = Constants.encode(dirName);
+			int i = 0;
+			for (; i < dirs.size(); i++) {
+				Directory d = dirs.get(i);
+				if (d.name.equals(dirName))
+					return d;
+				if (compare(Constants.encode(d.name), n) > 0)
+					break;
+			}
+			Directory d = new Directory(dirName, new ArrayList<String>(),
+					new ArrayList<Directory>());
+			d.cache = cache;
+			dirs.add(i, d);
+			cache.updated = true;
+			return d;
+		}
+
+		/**
+		 * Start to record a new listing of this directory.
+		 * <p>
+		 * The untracked files found must then be added by
+		 * {@link #addUntracked(String)}. If the {@code .gitignore} of this
+		 * directory changed, all subdirectories are invalidated as their
+		 * files may be ignored differently now.
+		 *
+		 * @param lastModified
+		 *            modification time of the directory in milliseconds, read
+		 *            before it was listed.
+		 * @param ignoreId
+		 *            SHA-1 of the directory's {@code .gitignore}, null if
+		 *            there is none.
+		 * @param subdirectories
+		 *            names of the subdirectories found, other subdirectories
+		 *            are removed from the cache.
+		 * @param racy
+		 *            true if the directory may still change without changing
+		 *            its modification time; the listing is then recorded as
+		 *            not valid.
+		 */
+		public void startListing(long lastModified, ObjectId ignoreId,
+				Collection<String> subdirectories, boolean racy) {
+			boolean rulesChanged = excludeId == null ? ignoreId != null
+					: !excludeId.equals(ignoreId);
+			for (Iterator<Directory> i = dirs.iterator(); i.hasNext();) {
+				Directory d = i.next();
+				if (!subdirectories.contains(d.name))
+					i.remove();
+				else if (rulesChanged)
+					d.invalidateAll();
+			}
+			untracked.clear();
+			untrackedNames = null;
+			checkOnly = false;
+			excludeId = ignoreId;
+			valid = !racy;
+			stat = racy ? null : encodeStat(lastModified);
+			cache.updated = true;
+		}
+
+		/**
+		 * Record an untracked file of this directory.
+		 *
+		 * @param entryName
+		 *            name of the file, nested repositories end with
+		 *            {@code '/'}.
+		 */
+		public void addUntracked(String entryName) {
+			int n = untracked.size();
+			if (n == 0 || !untracked.get(n - 1).equals(entryName))
+				untracked.add(entryName);
+		}
+
+		void invalidate() {
+			valid = false;
+			stat = null;
+			untracked.clear();
+			untrackedNames = null;
+		}
+
+		private void invalidateAll() {
+			invalidate();
+			for (Directory d : dirs)
+				d.invalidateAll();
+		}
+	}
+
+	/**
+	 * Parse the content of an {@code UNTR} extension.
+	 *
+	 * @param raw
+	 *            extension data, without the extension header.
+	 * @return the parsed cache.
+	 * @throws CorruptObjectException
+	 *             the data cannot be parsed.
+	 */
+	static UntrackedCache parse(byte[] raw) throws CorruptObjectException {
+		try {
+			Parser p = new Parser(raw);
+			int identLen = (int) p.varint();
+			byte[] ident = p.bytes(identLen);
+			byte[] header = p.bytes(HEADER_SIZE);
+			ObjectId infoExcludeId = p.objectId();
+			ObjectId excludesFileId = p.objectId();
+			String excludePerDir = p.string();
+
+			int cnt = (int) p.varint();
+			if (cnt == 0)
+				return new UntrackedCache(ident, header, infoExcludeId,
+						excludesFileId, excludePerDir, null);
+
+			List<Directory> all = new ArrayList<>(cnt);
+			Directory root = p.directory(all);
+			if (all.size() != cnt)
+				throw new CorruptObjectException(
+						JGitText.get().DIRCCorruptUntrackedCache);
+
+			EWAHCompressedBitmap valid = p.bitmap();
+			EWAHCompressedBitmap checkOnly = p.bitmap();
+			EWAHCompressedBitmap excludeValid = p.bitmap();
+			for (IntIterator i = checkOnly.intIterator(); i.hasNext();)
+				all.get(i.next()).checkOnly = true;
+			for (IntIterator i = valid.intIterator(); i.hasNext();) {
+				Directory d = all.get(i.next());
+				d.valid = true;
+				d.stat = p.bytes(STAT_SIZE);
+			}
+			for (IntIterator i = excludeValid.intIterator(); i.hasNext();)
+				all.get(i.next()).excludeId = p.objectId();
+			UntrackedCache cache = new UntrackedCache(ident, header,
+					infoExcludeId, excludesFileId, excludePerDir, root);
+			for (Directory d : all)
+				d.cache = cache;
+			return cache;
+		} catch (IndexOutOfBoundsException | IOException e) {
+			CorruptObjectException err = new CorruptObjectException(
+					JGitText.get().DIRCCorruptUntrackedCache);
+			err.initCause(e);
+			throw err;
+		}
+	}
+
+	/**
+	 * Write the content of the {@code UNTR} extension.
+	 *
+	 * @param os
+	 *            stream to write to, without the extension header.
+	 * @throws IOException
+	 */
+	void write(OutputStream os) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		writeVarint(buf, ident.length);
+		buf.write(ident);
+		buf.write(header);
+		infoExcludeId.copyRawTo(buf);
+		excludesFileId.copyRawTo(buf);
+		buf.write(Constants.encode(excludePerDir));
+		buf.write(0);
+		if (root == null) {
+			writeVarint(buf, 0);
+			buf.writeTo(os);
+			return;
+		}
+
+		List<Directory> all = new ArrayList<>();
+		ByteArrayOutputStream dirs = new ByteArrayOutputStream();
+		writeDirectory(dirs, root, all);
+		writeVarint(buf, all.size());
+		dirs.writeTo(buf);
+
+		EWAHCompressedBitmap valid = new EWAHCompressedBitmap();
+		EWAHCompressedBitmap checkOnly = new EWAHCompressedBitmap();
+		EWAHCompressedBitmap excludeValid = new EWAHCompressedBitmap();
+		for (int i = 0; i < all.size(); i++) {
+			Directory d = all.get(i);
+			if (d.valid)
+				valid.set(i);
+			if (d.checkOnly)
+				checkOnly.set(i);
+			if (d.excludeId != null)
+				excludeValid.set(i);
+		}
+		DataOutputStream out = new DataOutputStream(buf);
+		valid.serialize(out);
+		checkOnly.serialize(out);
+		excludeValid.serialize(out);
+		out.flush();
+		for (Directory d : all) {
+			if (d.valid)
+				buf.write(d.stat);
+		}
+		for (Directory d : all) {
+			if (d.excludeId != null)
+				d.excludeId.copyRawTo(buf);
+		}
+		buf.write(0);
+		buf.writeTo(os);
+	}
+
+	private static void writeDirectory(ByteArrayOutputStream buf, Directory d,
+			List<Directory> all) throws IOException {
+		all.add(d);
+		writeVarint(buf, d.untracked.size());
+		writeVarint(buf, d.dirs.size());
+		buf.write(Constants.encode(d.name));
+		buf.write(0);
+		for (String n : d.untracked) {
+			buf.write(Constants.encode(n));
+			buf.write(0);
+		}
+		for (Directory c : d.dirs)
+			writeDirectory(buf, c, all);
+	}
+
+	private static ObjectId idOfInfoExclude(Repository repo)
+			throws IOException {
+		return idOfFile(repo.getFS().resolve(repo.getDirectory(),
+				Constants.INFO_EXCLUDE));
+	}
+
+	private static ObjectId idOfExcludesFile(Repository repo)
+			throws IOException {
+		FS fs = repo.getFS();
+		String path = repo.getConfig().get(CoreConfig.KEY).getExcludesFile();
+		if (path == null)
+			return ObjectId.zeroId();
+		if (path.startsWith("~/")) //$NON-NLS-1$
+			return idOfFile(fs.resolve(fs.userHome(), path.substring(2)));
+		return idOfFile(fs.resolve(null, path));
+	}
+
+	private static ObjectId idOfFile(File f) throws IOException {
+		if (!FS.DETECTED.exists(f))
+			return ObjectId.zeroId();
+		return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB,
+				IO.readFully(f));
+	}
+
+	private static byte[] encodeStat(long lastModified) {
+		byte[] stat = new byte[STAT_SIZE];
+		NB.encodeInt32(stat, 8, (int) (lastModified / 1000));
+		NB.encodeInt32(stat, 12, (int) (lastModified % 1000) * 1000000);
+		return stat;
+	}
+
+	private static int compare(byte[] a, byte[] b) {
+		for (int i = 0; i < a.length && i < b.length; i++) {
+			int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+			if (cmp != 0)
+				return cmp;
+		}
+		return a.length - b.length;
+	}
+
+	/** Encode a variable length integer the way C Git's varint.c does. */
+	private static void writeVarint(OutputStream os, long value)
+			throws IOException {
+		byte[] b = new byte[10];
+		int pos = b.length - 1;
+		b[pos] = (byte) (value & 127);
+		while ((value >>>= 7) != 0)
+			b[--pos] = (byte) (128 | (--value & 127));
+		os.write(b, pos, b.length - pos);
+	}
+
+	private static long decodeUInt32(byte[] b, int off) {
+		return ((b[off] & 0xffL) << 24) | ((b[off + 1] & 0xffL) << 16)
+				| ((b[off + 2] & 0xffL) << 8) | (b[off + 3] & 0xffL);
+	}
+
+	private static class Parser {
+		final byte[] raw;
+
+		int ptr;
+
+		Parser(byte[] raw) {
+			this.raw = raw;
+		}
+
+		long varint() {
+			int c = raw[ptr++] & 0xff;
+			long val = c & 127;
+			while ((c & 128) != 0) {
+				val += 1;
+				c = raw[ptr++] & 0xff;
+				val = (val << 7) + (c & 127);
+			}
+			return val;
+		}
+
+		byte[] bytes(int len) {
+			if (len < 0 || raw.length - ptr < len)
+				throw new ArrayIndexOutOfBoundsException(ptr + len);
+			byte[] r = Arrays.copyOfRange(raw, ptr, ptr + len);
+			ptr += len;
+			return r;
+		}
+
+		ObjectId objectId() {
+			if (raw.length - ptr < Constants.OBJECT_ID_LENGTH)
+				throw new ArrayIndexOutOfBoundsException(ptr);
+			ObjectId id = ObjectId.fromRaw(raw, ptr);
+			ptr += Constants.OBJECT_ID_LENGTH;
+			return id;
+		}
+
+		String string() {
+			int end = ptr;
+			while (raw[end] != 0)
+				end++;
+			String s = RawParseUtils.decode(raw, ptr, end);
+			ptr = end + 1;
+			return s;
+		}
+
+		Directory directory(List<Directory> all) {
+			int untrackedCnt = (int) varint();
+			int dirCnt = (int) varint();
+			String name = string();
+			List<String> untracked = new ArrayList<>(untrackedCnt);
+			for (int i = 0; i < untrackedCnt; i++)
+				untracked.add(string());
+			List<Directory> dirs = new ArrayList<>(dirCnt);
+			Directory d = new Directory(name, untracked, dirs);
+			all.add(d);
+			for (int i = 0; i < dirCnt; i++)
+				dirs.add(directory(all));
+			return d;
+		}
+
+		EWAHCompressedBitmap bitmap() throws IOException {
+			ByteArrayInputStream in = new ByteArrayInputStream(raw, ptr,
+					raw.length - ptr);
+			EWAHCompressedBitmap b = new EWAHCompressedBitmap();
+			b.deserialize(new DataInputStream(in));
+			ptr = raw.length - in.available();
+			return b;
+		}
+	}
+}
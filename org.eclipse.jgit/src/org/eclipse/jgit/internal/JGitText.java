@@ -148,6 +148,7 @@ public static JGitText get() {
 	/***/ public String cannotPullOnARepoWithState;
 	/***/ public String cannotRead;
 	/***/ public String cannotReadBlob;
+	/***/ public String cannotReadChangedPathFilters;
 	/***/ public String cannotReadCommit;
 	/***/ public String cannotReadFile;
 	/***/ public String cannotReadHEAD;
@@ -188,6 +189,7 @@ public static JGitText get() {
 	/***/ public String connectionFailed;
 	/***/ public String connectionTimeOut;
 	/***/ public String contextMustBeNonNegative;
+	/***/ public String corruptChangedPathFilters;
 	/***/ public String corruptionDetectedReReadingAt;
 	/***/ public String corruptObjectBadDate;
 	/***/ public String corruptObjectBadEmail;
@@ -281,9 +283,14 @@ public static JGitText get() {
 	/***/ public String dirCacheFileIsNotLocked;
 	/***/ public String dirCacheIsNotLocked;
 	/***/ public String DIRCChecksumMismatch;
+	/***/ public String DIRCCorruptSplitIndex;
+	/***/ public String DIRCCorruptUntrackedCache;
 	/***/ public String DIRCExtensionIsTooLargeAt;
 	/***/ public String DIRCExtensionNotSupportedByThisVersion;
 	/***/ public String DIRCHasTooManyEntries;
+	/***/ public String DIRCInvalidPathPrefix;
+	/***/ public String DIRCSharedIndexNotFound;
+	/***/ public String DIRCSparseIndexWithoutRepository;
 	/***/ public String DIRCUnrecognizedExtendedFlags;
 	/***/ public String dirtyFilesExist;
 	/***/ public String doesNotHandleMode;
@@ -423,6 +430,7 @@ public static JGitText get() {
 	/***/ public String invalidRefName;
 	/***/ public String invalidRemote;
 	/***/ public String invalidShallowObject;
+	/***/ public String invalidSparseCheckoutPattern;
 	/***/ public String invalidStageForPath;
 	/***/ public String invalidTagOption;
 	/***/ public String invalidTimeout;
@@ -735,6 +743,7 @@ public static JGitText get() {
 	/***/ public String unsupportedMark;
 	/***/ public String unsupportedOperationNotAddAtEnd;
 	/***/ public String unsupportedPackIndexVersion;
+	/***/ public String unsupportedPackMtimesVersion;
 	/***/ public String unsupportedPackVersion;
 	/***/ public String unsupportedRepositoryDescription;
 	/***/ public String updatingHeadFailed;
@@ -753,6 +762,7 @@ public static JGitText get() {
 	/***/ public String windowSizeMustBePowerOf2;
 	/***/ public String writerAlreadyInitialized;
 	/***/ public String writeTimedOut;
+	/***/ public String writingChangedPathFilters;
 	/***/ public String writingNotPermitted;
 	/***/ public String writingNotSupported;
 	/***/ public String writingObjects;
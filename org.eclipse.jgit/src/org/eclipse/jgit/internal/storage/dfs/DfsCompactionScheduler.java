@@ -0,0 +1,459 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.internal.storage.dfs;
+
+import static org.eclipse.jgit.internal.storage.pack.PackExt.PACK;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ProgressMonitor;
+
+/**
+ * Keeps the number of packs in DFS repositories bounded between garbage
+ * collections.
+ * <p>
+ * Packs written by inserters, received from the network, or created by a
+ * previous compaction are organized into size tiers. Tier 0 holds packs
+ * smaller than {@link #getTierBaseSize()}, and each following tier holds
+ * packs up to {@link #getTierFactor()} times larger than the previous one.
+ * Once a tier accumulates {@link #getMaxPacksPerTier()} packs, all of them
+ * are combined by {@link DfsPackCompactor} into one pack recorded in the next
+ * tier, similar to a log-structured merge tree. Each object is therefore
+ * rewritten about once per tier, rather than once per new pack.
+ * <p>
+ * Packs created by {@link DfsGarbageCollector} are never compacted, they are
+ * replaced by the next garbage collection.
+ * <p>
+ * Compactions for different repositories run concurrently on the supplied
+ * executor. At most one compaction runs per repository at a time, and the
+ * total size of the packs being compacted at once is limited by
+ * {@link #getIoBudget()}.
+ */
+public class DfsCompactionScheduler {
+	/**
+	 * Default size below which packs belong to tier 0: {@value}
+	 *
+	 * @see #setTierBaseSize(long)
+	 */
+	public static final long DEFAULT_TIER_BASE_SIZE = 1 << 20;
+
+	/**
+	 * Default growth factor of pack size between tiers: {@value}
+	 *
+	 * @see #setTierFactor(int)
+	 */
+	public static final int DEFAULT_TIER_FACTOR = 8;
+
+	/**
+	 * Default number of packs a tier may hold before it is compacted: {@value}
+	 *
+	 * @see #setMaxPacksPerTier(int)
+	 */
+	public static final int DEFAULT_MAX_PACKS_PER_TIER = 8;
+
+	/**
+	 * Default total size of packs compacted concurrently: {@value}
+	 *
+	 * @see #setIoBudget(long)
+	 */
+	public static final long DEFAULT_IO_BUDGET = 1L << 30;
+
+	/** A compaction selected by the scheduler. */
+	public static class Compaction {
+		private final DfsRepository repo;
+
+		private final int tier;
+
+		private final List<DfsPackFile> packs;
+
+		private final long bytes;
+
+		private List<DfsPackDescription> newPacks = Collections.emptyList();
+
+		Compaction(DfsRepository repo, int tier, List<DfsPackFile> packs) {
+			this.repo = repo;
+			this.tier = tier;
+			this.packs = packs;
+			long sz = 0;
+			for (DfsPackFile p : packs)
+				sz += p.getPackDescription().getFileSize(PACK);
+			this.bytes = sz;
+		}
+
+		/** @return repository being compacted. */
+		public DfsRepository getRepository() {
+			return repo;
+		}
+
+		/** @return tier whose packs are combined. */
+		public int getTier() {
+			return tier;
+		}
+
+		/** @return packs that are combined by this compaction. */
+		public List<DfsPackDescription> getSourcePacks() {
+			List<DfsPackDescription> r = new ArrayList<>(packs.size());
+			for (DfsPackFile p : packs)
+				r.add(p.getPackDescription());
+			return r;
+		}
+
+		/** @return total size in bytes of {@link #getSourcePacks()}. */
+		public long getSourceBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return packs created by this compaction. Empty until the
+		 *         compaction has completed.
+		 */
+		public List<DfsPackDescription> getNewPacks() {
+			return newPacks;
+		}
+
+		@Override
+		public String toString() {
+			return "Compaction[" + repo.getDescription().getRepositoryName() //$NON-NLS-1$
+					+ ", tier=" + tier //$NON-NLS-1$
+					+ ", packs=" + packs.size() //$NON-NLS-1$
+					+ ", bytes=" + bytes + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	private final ExecutorService executor;
+
+	private final ConcurrentMap<DfsRepositoryDescription, Boolean> active;
+
+	private long tierBaseSize = DEFAULT_TIER_BASE_SIZE;
+
+	private int tierFactor = DEFAULT_TIER_FACTOR;
+
+	private int maxPacksPerTier = DEFAULT_MAX_PACKS_PER_TIER;
+
+	private long ioBudget = DEFAULT_IO_BUDGET;
+
+	private long bytesInFlight;
+
+	/**
+	 * Initialize a scheduler.
+	 *
+	 * @param executor
+	 *            executor to run compactions on. Its thread count bounds the
+	 *            number of repositories compacted at once. May be null if only
+	 *            {@link #compact(DfsRepository, ProgressMonitor)} is used.
+	 */
+	public DfsCompactionScheduler(ExecutorService executor) {
+		this.executor = executor;
+		this.active = new ConcurrentHashMap<>();
+	}
+
+	/** @return size below which packs belong to tier 0. */
+	public long getTierBaseSize() {
+		return tierBaseSize;
+	}
+
+	/**
+	 * @param size
+	 *            size in bytes below which packs belong to tier 0.
+	 * @return {@code this}
+	 */
+	public DfsCompactionScheduler setTierBaseSize(long size) {
+		tierBaseSize = Math.max(1, size);
+		return this;
+	}
+
+	/** @return growth factor of pack size between two tiers. */
+	public int getTierFactor() {
+		return tierFactor;
+	}
+
+	/**
+	 * @param factor
+	 *            growth factor of pack size between two tiers. Must be at
+	 *            least 2.
+	 * @return {@code this}
+	 */
+	public DfsCompactionScheduler setTierFactor(int factor) {
+		tierFactor = Math.max(2, factor);
+		return this;
+	}
+
+	/** @return number of packs a tier may hold before it is compacted. */
+	public int getMaxPacksPerTier() {
+		return maxPacksPerTier;
+	}
+
+	/**
+	 * @param count
+	 *            number of packs a tier may hold before it is compacted. Must
+	 *            be at least 2.
+	 * @return {@code this}
+	 */
+	public DfsCompactionScheduler setMaxPacksPerTier(int count) {
+		maxPacksPerTier = Math.max(2, count);
+		return this;
+	}
+
+	/** @return total size of source packs that may be compacted at once. */
+	public long getIoBudget() {
+		return ioBudget;
+	}
+
+	/**
+	 * Limit the total size of the packs compacted concurrently.
+	 * <p>
+	 * A compaction waits to start until the sum of its source packs and the
+	 * source packs of all running compactions fits in the budget. A single
+	 * compaction larger than the budget runs once nothing else is running.
+	 *
+	 * @param bytes
+	 *            total size in bytes.
+	 * @return {@code this}
+	 */
+	public synchronized DfsCompactionScheduler setIoBudget(long bytes) {
+		ioBudget = Math.max(1, bytes);
+		notifyAll();
+		return this;
+	}
+
+	/**
+	 * Compute the tier of a pack.
+	 *
+	 * @param desc
+	 *            description of the pack.
+	 * @return tier of the pack, the larger of the tier implied by its size
+	 *         and the tier recorded when it was written by a compaction.
+	 */
+	public int getTier(DfsPackDescription desc) {
+		long size = desc.getFileSize(PACK);
+		int tier = 0;
+		for (long limit = tierBaseSize; limit <= size; tier++) {
+			if (Long.MAX_VALUE / tierFactor < limit)
+				break;
+			limit *= tierFactor;
+		}
+		return Math.max(tier, desc.getCompactionTier());
+	}
+
+	/**
+	 * Select the next compaction for a repository.
+	 * <p>
+	 * The lowest tier holding at least {@link #getMaxPacksPerTier()}
+	 * compactable packs is selected.
+	 *
+	 * @param repo
+	 *            repository to examine.
+	 * @return the compaction to perform; null if no tier needs compaction.
+	 * @throws IOException
+	 *             the list of packs cannot be read.
+	 */
+	public Compaction plan(DfsRepository repo) throws IOException {
+		List<List<DfsPackFile>> tiers = new ArrayList<>();
+		for (DfsPackFile pack : repo.getObjectDatabase().getPacks()) {
+			DfsPackDescription d = pack.getPackDescription();
+			if (!isCompactable(d.getPackSource()))
+				continue;
+			int t = getTier(d);
+			while (tiers.size() <= t)
+				tiers.add(new ArrayList<DfsPackFile>());
+			tiers.get(t).add(pack);
+		}
+		for (int t = 0; t < tiers.size(); t++) {
+			List<DfsPackFile> packs = tiers.get(t);
+			if (maxPacksPerTier <= packs.size())
+				return new Compaction(repo, t, packs);
+		}
+		return null;
+	}
+
+	private static boolean isCompactable(PackSource source) {
+		if (source == null)
+			return false;
+		switch (source) {
+		case INSERT:
+		case RECEIVE:
+		case COMPACT:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Schedule compaction of a repository on the executor.
+	 * <p>
+	 * The returned task compacts tiers until none needs compaction. If a
+	 * compaction of the repository is already scheduled or running, nothing
+	 * new is scheduled and null is returned; the running task will notice new
+	 * packs on its next planning round.
+	 *
+	 * @param repo
+	 *            repository to compact.
+	 * @return the scheduled task, producing the compactions performed; null
+	 *         if the repository is already being compacted.
+	 */
+	public Future<List<Compaction>> schedule(final DfsRepository repo) {
+		final DfsRepositoryDescription key = repo.getDescription();
+		if (active.putIfAbsent(key, Boolean.TRUE) != null)
+			return null;
+		try {
+			return executor.submit(new Callable<List<Compaction>>() {
+				@Override
+				public List<Compaction> call() throws IOException {
+					try {
+						return compactAll(repo, NullProgressMonitor.INSTANCE);
+					} finally {
+						active.remove(key);
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			active.remove(key);
+			throw e;
+		}
+	}
+
+	/**
+	 * Compact tiers of a repository until none needs compaction.
+	 * <p>
+	 * Runs on the calling thread, but still waits for the I/O budget.
+	 *
+	 * @param repo
+	 *            repository to compact.
+	 * @param pm
+	 *            progress monitor, may be null.
+	 * @return compactions performed, in order.
+	 * @throws IOException
+	 *             a compaction failed, or the thread was interrupted while
+	 *             waiting for the I/O budget.
+	 */
+	public List<Compaction> compactAll(DfsRepository repo, ProgressMonitor pm)
+			throws IOException {
+		List<Compaction> done = new ArrayList<>();
+		for (;;) {
+			Compaction c = compact(repo, pm);
+			if (c == null)
+				return done;
+			done.add(c);
+		}
+	}
+
+	/**
+	 * Perform the next compaction selected by {@link #plan(DfsRepository)}.
+	 *
+	 * @param repo
+	 *            repository to compact.
+	 * @param pm
+	 *            progress monitor, may be null.
+	 * @return the compaction performed; null if no tier needed compaction.
+	 * @throws IOException
+	 *             the compaction failed, or the thread was interrupted while
+	 *             waiting for the I/O budget.
+	 */
+	public Compaction compact(DfsRepository repo, ProgressMonitor pm)
+			throws IOException {
+		DfsObjDatabase odb = repo.getObjectDatabase();
+		Compaction c = plan(repo);
+		while (c != null) {
+			long reserved = c.bytes;
+			acquire(reserved);
+			try {
+				// While waiting for the budget another task may have
+				// compacted or removed the planned packs. Plan again from
+				// the current pack list.
+				odb.clearCache();
+				c = plan(repo);
+				if (c != null && c.bytes <= reserved) {
+					run(c, pm);
+					odb.clearCache();
+					return c;
+				}
+			} finally {
+				release(reserved);
+			}
+			// The tier grew while waiting, reserve its larger size.
+		}
+		return null;
+	}
+
+	private static void run(Compaction c, ProgressMonitor pm)
+			throws IOException {
+		DfsPackCompactor compactor = new DfsPackCompactor(c.repo);
+		for (DfsPackFile pack : c.packs)
+			compactor.add(pack);
+		compactor.setCompactionTier(c.tier + 1);
+		compactor.compact(pm);
+		c.newPacks = compactor.getNewPacks();
+	}
+
+	private synchronized void acquire(long bytes) throws IOException {
+		while (0 < bytesInFlight && ioBudget < bytesInFlight + bytes) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				InterruptedIOException err = new InterruptedIOException();
+				err.initCause(e);
+				throw err;
+			}
+		}
+		bytesInFlight += bytes;
+	}
+
+	private synchronized void release(long bytes) {
+		bytesInFlight -= bytes;
+		notifyAll();
+	}
+}
@@ -100,6 +100,8 @@ public class DfsPackCompactor {
 
 	private int autoAddSize;
 
+	private int compactionTier;
+
 	private RevWalk rw;
 	private RevFlag added;
 	private RevFlag isBase;
@@ -187,6 +189,19 @@ public DfsPackCompactor exclude(DfsPackFile pack) throws IOException {
 		return exclude(idx);
 	}
 
+	/**
+	 * Set the tier recorded in the description of the new pack.
+	 *
+	 * @param tier
+	 *            tier of the new pack, see
+	 *            {@link DfsPackDescription#getCompactionTier()}.
+	 * @return {@code this}
+	 */
+	DfsPackCompactor setCompactionTier(int tier) {
+		compactionTier = tier;
+		return this;
+	}
+
 	/**
 	 * Compact the pack files together.
 	 *
@@ -234,6 +249,7 @@ public void compact(ProgressMonitor pm) throws IOException {
 					pw = null;
 
 					pack.setPackStats(stats);
+					pack.setCompactionTier(compactionTier);
 					objdb.commitPack(Collections.singletonList(pack), toPrune());
 					newPacks.add(pack);
 					newStats.add(stats);
@@ -81,6 +81,8 @@ public class DfsPackDescription implements Comparable<DfsPackDescription> {
 
 	private int indexVersion;
 
+	private int compactionTier;
+
 	/**
 	 * Initialize a description by pack name and repository.
 	 * <p>
@@ -262,6 +264,29 @@ public DfsPackDescription setIndexVersion(int version) {
 		return this;
 	}
 
+	/**
+	 * @return tier assigned to the pack by {@link DfsCompactionScheduler} when
+	 *         the pack was created by a compaction; 0 otherwise.
+	 * @since 4.7
+	 */
+	public int getCompactionTier() {
+		return compactionTier;
+	}
+
+	/**
+	 * @param tier
+	 *            tier assigned to the pack by a compaction. Implementations
+	 *            storing descriptions should persist this value, so that
+	 *            packs that shrank while compacting are not selected for
+	 *            compaction again in their old tier.
+	 * @return {@code this}
+	 * @since 4.7
+	 */
+	public DfsPackDescription setCompactionTier(int tier) {
+		compactionTier = Math.max(0, tier);
+		return this;
+	}
+
 	@Override
 	public int hashCode() {
 		return packName.hashCode();
@@ -0,0 +1,521 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.internal.storage.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.LockFailedException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ChangedPathIndex;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * Changed path Bloom filters of commits, stored in
+ * {@code objects/info/changed-paths}.
+ * <p>
+ * The filters are built like the ones of Git's commit-graph: each commit has a
+ * filter of the paths (and their leading directories) that differ from its
+ * first parent, using 7 murmur3 hashes and 10 bits per path. A commit that
+ * changed more than {@value #MAX_CHANGED_PATHS} paths gets a filter that
+ * matches every path.
+ * <p>
+ * The file starts with a header of the signature {@code CPBF}, the version,
+ * the number of hashes, the number of bits per path and the number of commits,
+ * each a 4 byte network byte order integer. The sorted commit ids follow, then
+ * a table with the 4 byte end offset of each commit's filter, the filters
+ * themselves and a SHA-1 checksum of everything before it.
+ */
+final class ChangedPathFilters implements ChangedPathIndex {
+	private static final byte[] SIGNATURE = { 'C', 'P', 'B', 'F' };
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER_LENGTH = 20;
+
+	/** Number of hash functions applied to each path. */
+	static final int NUM_HASHES = 7;
+
+	/** Bits of filter allocated for each path. */
+	static final int BITS_PER_ENTRY = 10;
+
+	/** Commits changing more paths get a filter matching everything. */
+	static final int MAX_CHANGED_PATHS = 512;
+
+	private static final int SEED0 = 0x293ae76f;
+
+	private static final int SEED1 = 0x7e646e2c;
+
+	private static final byte[] EMPTY_FILTER = { 0 };
+
+	private static final byte[] TOO_LARGE_FILTER = { (byte) 0xff };
+
+	/**
+	 * Read the filters from a file.
+	 *
+	 * @param file
+	 *            the file to read.
+	 * @return the filters.
+	 * @throws java.io.FileNotFoundException
+	 *             the file does not exist.
+	 * @throws IOException
+	 *             the file cannot be read or is corrupt.
+	 */
+	static ChangedPathFilters read(File file) throws IOException {
+		byte[] buf = IO.readFully(file);
+		int cnt = buf.length < HEADER_LENGTH ? -1 : NB.decodeInt32(buf, 16);
+		if (cnt < 0 || !Arrays.equals(SIGNATURE, Arrays.copyOf(buf, 4))
+				|| NB.decodeInt32(buf, 4) != VERSION
+				|| NB.decodeInt32(buf, 8) != NUM_HASHES
+				|| NB.decodeInt32(buf, 12) != BITS_PER_ENTRY
+				|| (long) HEADER_LENGTH + cnt * (long) (Constants.OBJECT_ID_LENGTH + 4)
+						+ Constants.OBJECT_ID_LENGTH > buf.length)
+			throw new IOException(MessageFormat.format(
+					JGitText.get().corruptChangedPathFilters, file));
+		ChangedPathFilters f = new ChangedPathFilters(buf, cnt);
+		int dataLength = cnt == 0 ? 0 : f.end(cnt - 1);
+		if (dataLength < 0 || f.dataOffset + (long) dataLength
+				+ Constants.OBJECT_ID_LENGTH != buf.length)
+			throw new IOException(MessageFormat.format(
+					JGitText.get().corruptChangedPathFilters, file));
+		return f;
+	}
+
+	/**
+	 * Compute and write the filters of all commits reachable from the refs.
+	 * <p>
+	 * Filters of commits already present in {@code old} are copied instead of
+	 * being computed again.
+	 *
+	 * @param db
+	 *            the object directory to write the filters of.
+	 * @param refs
+	 *            the refs to start the walk from.
+	 * @param old
+	 *            the filters written before, or null.
+	 * @param pm
+	 *            progress monitor receiving one update per commit.
+	 * @throws IOException
+	 *             objects cannot be read or the file cannot be written.
+	 */
+	static void write(ObjectDirectory db, Collection<Ref> refs,
+			ChangedPathFilters old, ProgressMonitor pm) throws IOException {
+		List<Filter> filters = new ArrayList<>();
+		try (RevWalk rw = new RevWalk(db.newReader());
+				TreeWalk tw = new TreeWalk(rw.getObjectReader())) {
+			rw.setRetainBody(false);
+			tw.setRecursive(true);
+			tw.setFilter(TreeFilter.ANY_DIFF);
+			for (Ref ref : refs) {
+				ObjectId id = ref.getPeeledObjectId();
+				if (id == null)
+					id = ref.getObjectId();
+				if (id == null)
+					continue;
+				RevObject o;
+				try {
+					o = rw.peel(rw.parseAny(id));
+				} catch (MissingObjectException e) {
+					continue;
+				}
+				if (o instanceof RevCommit)
+					rw.markStart((RevCommit) o);
+			}
+			RevCommit c;
+			while ((c = rw.next()) != null) {
+				byte[] bits = old != null ? old.getFilter(c) : null;
+				if (bits == null)
+					bits = compute(rw, tw, c);
+				filters.add(new Filter(c, bits));
+				pm.update(1);
+			}
+		}
+		Collections.sort(filters);
+		write(db.getChangedPathsFile(), filters);
+	}
+
+	/**
+	 * Write filters to a file.
+	 *
+	 * @param file
+	 *            the destination.
+	 * @param filters
+	 *            the filters, sorted by commit id.
+	 * @throws IOException
+	 *             the file cannot be written.
+	 */
+	static void write(File file, List<Filter> filters) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] tmp = new byte[4];
+		out.write(SIGNATURE);
+		writeInt32(out, tmp, VERSION);
+		writeInt32(out, tmp, NUM_HASHES);
+		writeInt32(out, tmp, BITS_PER_ENTRY);
+		writeInt32(out, tmp, filters.size());
+		byte[] idBuf = new byte[Constants.OBJECT_ID_LENGTH];
+		for (Filter f : filters) {
+			f.copyRawTo(idBuf, 0);
+			out.write(idBuf);
+		}
+		int end = 0;
+		for (Filter f : filters) {
+			end += f.bits.length;
+			writeInt32(out, tmp, end);
+		}
+		for (Filter f : filters)
+			out.write(f.bits);
+		MessageDigest md = Constants.newMessageDigest();
+		byte[] content = out.toByteArray();
+		md.update(content);
+
+		LockFile lock = new LockFile(file);
+		if (!lock.lock())
+			throw new LockFailedException(file);
+		try {
+			byte[] all = Arrays.copyOf(content,
+					content.length + Constants.OBJECT_ID_LENGTH);
+			System.arraycopy(md.digest(), 0, all, content.length,
+					Constants.OBJECT_ID_LENGTH);
+			lock.write(all);
+			if (!lock.commit())
+				throw new LockFailedException(file);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static void writeInt32(ByteArrayOutputStream out, byte[] tmp,
+			int v) {
+		NB.encodeInt32(tmp, 0, v);
+		out.write(tmp, 0, 4);
+	}
+
+	/**
+	 * Compute the filter of a commit.
+	 *
+	 * @param rw
+	 *            walk the commit was parsed by.
+	 * @param tw
+	 *            a recursive walk using {@link TreeFilter#ANY_DIFF}.
+	 * @param c
+	 *            the commit.
+	 * @return the filter of the paths changed by the commit.
+	 * @throws IOException
+	 *             trees cannot be read.
+	 */
+	static byte[] compute(RevWalk rw, TreeWalk tw, RevCommit c)
+			throws IOException {
+		if (c.getParentCount() == 0)
+			tw.reset(c.getTree());
+		else {
+			RevCommit p = c.getParent(0);
+			rw.parseHeaders(p);
+			tw.reset(p.getTree(), c.getTree());
+		}
+		Set<Key> keys = new HashSet<>();
+		while (tw.next()) {
+			byte[] path = tw.getRawPath();
+			keys.add(new Key(path, path.length));
+			for (int i = 0; i < path.length; i++) {
+				if (path[i] == '/')
+					keys.add(new Key(path, i));
+			}
+			if (keys.size() > MAX_CHANGED_PATHS)
+				return TOO_LARGE_FILTER;
+		}
+		return newFilter(keys);
+	}
+
+	/**
+	 * Create a filter containing the given paths.
+	 *
+	 * @param paths
+	 *            the paths to add, which must already include their leading
+	 *            directories.
+	 * @return the filter.
+	 */
+	static byte[] newFilter(Collection<byte[]> paths) {
+		Set<Key> keys = new HashSet<>();
+		for (byte[] p : paths)
+			keys.add(new Key(p, p.length));
+		if (keys.size() > MAX_CHANGED_PATHS)
+			return TOO_LARGE_FILTER;
+		return newFilter(keys);
+	}
+
+	private static byte[] newFilter(Set<Key> keys) {
+		if (keys.isEmpty())
+			return EMPTY_FILTER;
+		// Size in 64 bit words, as Git does.
+		int words = (keys.size() * BITS_PER_ENTRY + 63) / 64;
+		byte[] bits = new byte[words * 8];
+		for (Key k : keys)
+			add(bits, k.path, k.length);
+		return bits;
+	}
+
+	private static void add(byte[] filter, byte[] key, int len) {
+		long nbits = filter.length * 8L;
+		int h0 = murmur3(SEED0, key, len);
+		int h1 = murmur3(SEED1, key, len);
+		for (int i = 0; i < NUM_HASHES; i++) {
+			long bit = ((h0 + i * h1) & 0xffffffffL) % nbits;
+			filter[(int) (bit >>> 3)] |= 1 << (bit & 7);
+		}
+	}
+
+	private static boolean contains(byte[] buf, int off, int len, byte[] key,
+			int keyLen) {
+		long nbits = len * 8L;
+		int h0 = murmur3(SEED0, key, keyLen);
+		int h1 = murmur3(SEED1, key, keyLen);
+		for (int i = 0; i < NUM_HASHES; i++) {
+			long bit = ((h0 + i * h1) & 0xffffffffL) % nbits;
+			if ((buf[off + (int) (bit >>> 3)] & (1 << (bit & 7))) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 32 bit murmur3 hash of the first {@code len} bytes of {@code data}.
+	 *
+	 * @param seed
+	 *            the seed.
+	 * @param data
+	 *            the data to hash.
+	 * @param len
+	 *            number of bytes to hash.
+	 * @return the hash.
+	 */
+	static int murmur3(int seed, byte[] data, int len) {
+		final int c1 = 0xcc9e2d51;
+		final int c2 = 0x1b873593;
+		int h = seed;
+		int blocks = len & ~3;
+		for (int i = 0; i < blocks; i += 4) {
+			int k = (data[i] & 0xff) | (data[i + 1] & 0xff) << 8
+					| (data[i + 2] & 0xff) << 16 | (data[i + 3] & 0xff) << 24;
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+			h = Integer.rotateLeft(h, 13);
+			h = h * 5 + 0xe6546b64;
+		}
+		int tail = len & 3;
+		if (tail != 0) {
+			int k = 0;
+			if (tail == 3)
+				k ^= (data[blocks + 2] & 0xff) << 16;
+			if (tail >= 2)
+				k ^= (data[blocks + 1] & 0xff) << 8;
+			k ^= data[blocks] & 0xff;
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+		}
+		h ^= len;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private final byte[] buf;
+
+	private final int count;
+
+	private final int endsOffset;
+
+	private final int dataOffset;
+
+	private ChangedPathFilters(byte[] buf, int count) {
+		this.buf = buf;
+		this.count = count;
+		endsOffset = HEADER_LENGTH + count * Constants.OBJECT_ID_LENGTH;
+		dataOffset = endsOffset + count * 4;
+	}
+
+	/** @return number of commits with a filter. */
+	int size() {
+		return count;
+	}
+
+	@Override
+	public boolean mayHaveChanged(AnyObjectId commit,
+			Collection<byte[]> paths) {
+		int pos = find(commit);
+		if (pos < 0)
+			return true;
+		int start = pos == 0 ? 0 : end(pos - 1);
+		int len = end(pos) - start;
+		if (len <= 0)
+			return true;
+		for (byte[] path : paths) {
+			if (mayContain(dataOffset + start, len, path))
+				return true;
+		}
+		return false;
+	}
+
+	private boolean mayContain(int off, int len, byte[] path) {
+		// Leading directories are in the filter too, and cheaply rule out
+		// most false positives of the full path.
+		for (int i = 0; i < path.length; i++) {
+			if (path[i] == '/' && !contains(buf, off, len, path, i))
+				return false;
+		}
+		return contains(buf, off, len, path, path.length);
+	}
+
+	/**
+	 * @param commit
+	 *            the commit.
+	 * @return the filter of the commit, or null if it is not indexed.
+	 */
+	byte[] getFilter(AnyObjectId commit) {
+		int pos = find(commit);
+		if (pos < 0)
+			return null;
+		int start = pos == 0 ? 0 : end(pos - 1);
+		return Arrays.copyOfRange(buf, dataOffset + start,
+				dataOffset + end(pos));
+	}
+
+	private int end(int pos) {
+		return NB.decodeInt32(buf, endsOffset + pos * 4);
+	}
+
+	private int find(AnyObjectId id) {
+		int lo = 0;
+		int hi = count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = id.compareTo(buf,
+					HEADER_LENGTH + mid * Constants.OBJECT_ID_LENGTH);
+			if (cmp < 0)
+				hi = mid;
+			else if (cmp == 0)
+				return mid;
+			else
+				lo = mid + 1;
+		}
+		return -1;
+	}
+
+	/** The filter of a single commit, as written to the file. */
+	static final class Filter extends ObjectId {
+		private static final long serialVersionUID = 1L;
+
+		final byte[] bits;
+
+		Filter(AnyObjectId commit, byte[] bits) {
+			super(commit);
+			this.bits = bits;
+		}
+	}
+
+	private static final class Key {
+		final byte[] path;
+
+		final int length;
+
+		private final int hash;
+
+		Key(byte[] path, int length) {
+			this.path = path;
+			this.length = length;
+			int h = 1;
+			for (int i = 0; i < length; i++)
+				h = 31 * h + path[i];
+			hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key o = (Key) obj;
+			if (length != o.length || hash != o.hash)
+				return false;
+			for (int i = 0; i < length; i++) {
+				if (path[i] != o.path[i])
+					return false;
+			}
+			return true;
+		}
+	}
+}
@@ -295,6 +295,10 @@ public void create(boolean bare) throws IOException {
 					JGitText.get().repositoryAlreadyExists, getDirectory()));
 		}
 		FileUtils.mkdirs(getDirectory(), true);
+		// The repository directory is the one place JGit may write probe
+		// files to, measure the resolution FileSnapshot uses for its racy
+		// checks while the repository is set up.
+		FS.probeFsTimestampResolution(getDirectory().toPath());
 		HideDotFiles hideDotFiles = getConfig().getEnum(
 				ConfigConstants.CONFIG_CORE_SECTION, null,
 				ConfigConstants.CONFIG_KEY_HIDEDOTFILES,
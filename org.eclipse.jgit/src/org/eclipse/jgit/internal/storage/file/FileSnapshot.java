@@ -45,10 +45,13 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jgit.util.FS;
 
@@ -65,8 +68,12 @@
  * <p>
  * To work around the "racy git" problem (where a file may be modified multiple
  * times within the granularity of the filesystem modification clock) this class
- * may return true from isModified(File) if the last modification time of the
- * file is less than 3 seconds ago.
+ * may return true from isModified(File) if the file was read less than the
+ * timestamp resolution of its file store after its last modification. The
+ * resolution is the one {@link FS#getFsTimestampResolution(Path)} measured
+ * for the file store, usually in a repository directory; for file stores
+ * never measured {@link FS#FALLBACK_TIMESTAMP_RESOLUTION} is assumed. Files
+ * read more than 2.5 seconds after their last modification are never racy.
  */
 public class FileSnapshot {
 	/**
@@ -76,7 +83,8 @@ public class FileSnapshot {
 	 * file, but only after {@link #isModified(File)} gets invoked. The returned
 	 * snapshot contains only invalid status information.
 	 */
-	public static final FileSnapshot DIRTY = new FileSnapshot(-1, -1);
+	public static final FileSnapshot DIRTY = new FileSnapshot(-1,
+			Instant.ofEpochMilli(-1), null);
 
 	/**
 	 * A FileSnapshot that is clean if the file does not exist.
@@ -85,7 +93,8 @@ public class FileSnapshot {
 	 * file to be clean. {@link #isModified(File)} will return false if the file
 	 * path does not exist.
 	 */
-	public static final FileSnapshot MISSING_FILE = new FileSnapshot(0, 0) {
+	public static final FileSnapshot MISSING_FILE = new FileSnapshot(0,
+			Instant.EPOCH, null) {
 		@Override
 		public boolean isModified(File path) {
 			return FS.DETECTED.exists(path);
@@ -104,13 +113,7 @@ public boolean isModified(File path) {
 	 */
 	public static FileSnapshot save(File path) {
 		long read = System.currentTimeMillis();
-		long modified;
-		try {
-			modified = FS.DETECTED.lastModified(path);
-		} catch (IOException e) {
-			modified = path.lastModified();
-		}
-		return new FileSnapshot(read, modified);
+		return new FileSnapshot(read, lastModifiedInstant(path), path);
 	}
 
 	/**
@@ -126,11 +129,24 @@ public static FileSnapshot save(File path) {
 	 */
 	public static FileSnapshot save(long modified) {
 		final long read = System.currentTimeMillis();
-		return new FileSnapshot(read, modified);
+		return new FileSnapshot(read, Instant.ofEpochMilli(modified), null);
 	}
 
+	/** Files read longer than this after their modification are not racy. */
+	private static final long MAX_RACY_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(2500);
+
 	/** Last observed modification time of the path. */
-	private final long lastModified;
+	private final Instant lastModified;
+
+	/**
+	 * Whether {@link #lastModified} is as precise as the file system; false
+	 * if it was given in milliseconds.
+	 */
+	private final boolean fullPrecision;
+
+	/** Directory of the file, to find its file store; null if unknown. */
+	private final File dir;
 
 	/** Last wall-clock time the path was read. */
 	private volatile long lastRead;
@@ -138,9 +154,12 @@ public static FileSnapshot save(long modified) {
 	/** True once {@link #lastRead} is far later than {@link #lastModified}. */
 	private boolean cannotBeRacilyClean;
 
-	private FileSnapshot(long read, long modified) {
+	private FileSnapshot(long read, Instant modified, File path) {
 		this.lastRead = read;
 		this.lastModified = modified;
+		this.fullPrecision = path != null;
+		this.dir = path != null ? path.getAbsoluteFile().getParentFile()
+				: null;
 		this.cannotBeRacilyClean = notRacyClean(read);
 	}
 
@@ -148,6 +167,15 @@ private FileSnapshot(long read, long modified) {
 	 * @return time of last snapshot update
 	 */
 	public long lastModified() {
+		return lastModified.toEpochMilli();
+	}
+
+	/**
+	 * @return time of last snapshot update, at the precision recorded by the
+	 *         file system
+	 * @since 4.7
+	 */
+	public Instant lastModifiedInstant() {
 		return lastModified;
 	}
 
@@ -159,13 +187,7 @@ public long lastModified() {
 	 * @return true if the path needs to be read again.
 	 */
 	public boolean isModified(File path) {
-		long currLastModified;
-		try {
-			currLastModified = FS.DETECTED.lastModified(path);
-		} catch (IOException e) {
-			currLastModified = path.lastModified();
-		}
-		return isModified(currLastModified);
+		return isModified(lastModifiedInstant(path));
 	}
 
 	/**
@@ -205,7 +227,8 @@ public void setClean(FileSnapshot other) {
 	 * @return true if the two snapshots share the same information.
 	 */
 	public boolean equals(FileSnapshot other) {
-		return lastModified == other.lastModified;
+		return sameTime(lastModified, other.lastModified,
+				fullPrecision && other.fullPrecision);
 	}
 
 	@Override
@@ -220,7 +243,7 @@ public int hashCode() {
 		// This is pretty pointless, but override hashCode to ensure that
 		// x.hashCode() == y.hashCode() when x.equals(y) is true.
 		//
-		return (int) lastModified;
+		return (int) lastModified.toEpochMilli();
 	}
 
 	@Override
@@ -231,22 +254,53 @@ public String toString() {
 			return "MISSING_FILE"; //$NON-NLS-1$
 		DateFormat f = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", //$NON-NLS-1$
 				Locale.US);
-		return "FileSnapshot[modified: " + f.format(new Date(lastModified)) //$NON-NLS-1$
+		return "FileSnapshot[modified: " //$NON-NLS-1$
+				+ f.format(new Date(lastModified.toEpochMilli()))
 				+ ", read: " + f.format(new Date(lastRead)) + "]"; //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
+	private static Instant lastModifiedInstant(File path) {
+		try {
+			return FS.DETECTED.lastModifiedInstant(path);
+		} catch (IOException e) {
+			return Instant.ofEpochMilli(path.lastModified());
+		}
+	}
+
+	private static boolean sameTime(Instant a, Instant b,
+			boolean fullPrecision) {
+		if (fullPrecision)
+			return a.equals(b);
+		return a.toEpochMilli() == b.toEpochMilli();
+	}
+
 	private boolean notRacyClean(final long read) {
-		// The last modified time granularity of FAT filesystems is 2 seconds.
-		// Using 2.5 seconds here provides a reasonably high assurance that
-		// a modification was not missed.
+		// The last modified time granularity of FAT filesystems is 2 seconds,
+		// the coarsest one in use. After 2.5 seconds there is a reasonably
+		// high assurance that a modification was not missed on any of them.
+		//
+		long delta = TimeUnit.MILLISECONDS.toNanos(read)
+				- TimeUnit.SECONDS.toNanos(lastModified.getEpochSecond())
+				- lastModified.getNano();
+		if (delta > MAX_RACY_NANOS)
+			return true;
+		if (dir == null)
+			return false;
+
+		// A modification after the read gets a timestamp later than the
+		// read time minus the resolution of the file store. If that is
+		// after the recorded timestamp the modification changes it. The
+		// resolution is only measured in repository directories, never in
+		// the directory of an arbitrary file.
 		//
-		return read - lastModified > 2500;
+		return delta > FS.getKnownFsTimestampResolution(dir.toPath())
+				.toNanos();
 	}
 
-	private boolean isModified(final long currLastModified) {
+	private boolean isModified(final Instant currLastModified) {
 		// Any difference indicates the path was modified.
 		//
-		if (lastModified != currLastModified)
+		if (!sameTime(lastModified, currLastModified, fullPrecision))
 			return true;
 
 		// We have already determined the last read was far enough
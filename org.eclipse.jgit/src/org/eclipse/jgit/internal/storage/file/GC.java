@@ -45,6 +45,7 @@
 
 import static org.eclipse.jgit.internal.storage.pack.PackExt.BITMAP_INDEX;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.INDEX;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.MTIMES;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -90,6 +91,7 @@
 import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectIdSet;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Ref.Storage;
@@ -144,6 +146,10 @@ public class GC {
 
 	private PackConfig pconfig = null;
 
+	private Boolean cruftPacks;
+
+	private Boolean writeChangedPaths;
+
 	/**
 	 * the refs which existed during the last call to {@link #repack()}. This is
 	 * needed during {@link #prune(Set)} where we can optimize by looking at the
@@ -199,10 +205,12 @@ public Collection<PackFile> gc() throws IOException, ParseException {
 		if (automatic && !needGc()) {
 			return Collections.emptyList();
 		}
-		pm.start(6 /* tasks */);
+		pm.start(7 /* tasks */);
 		packRefs();
 		// TODO: implement reflog_expire(pm, repo);
 		Collection<PackFile> newPacks = repack();
+		if (isWriteChangedPaths())
+			writeChangedPaths();
 		prune(Collections.<ObjectId> emptySet());
 		// TODO: implement rerere_gc(pm);
 		return newPacks;
@@ -685,6 +693,11 @@ else if (RefTreeNames.isRefTree(refdb, ref.getName()))
 			if (txn != null)
 				ret.add(txn);
 		}
+		if (isCruftPacks()) {
+			PackFile cruft = writeCruftPack(toBeDeleted, ret);
+			if (cruft != null)
+				ret.add(cruft);
+		}
 		try {
 			deleteOldPacks(toBeDeleted, ret);
 		} catch (ParseException e) {
@@ -700,6 +713,24 @@ else if (RefTreeNames.isRefTree(refdb, ref.getName()))
 		return ret;
 	}
 
+	/**
+	 * Write the changed path filters of all commits reachable from the refs,
+	 * reusing the filters already written for older commits.
+	 *
+	 * @throws IOException
+	 */
+	private void writeChangedPaths() throws IOException {
+		ObjectDirectory db = repo.getObjectDatabase();
+		pm.beginTask(JGitText.get().writingChangedPathFilters,
+				ProgressMonitor.UNKNOWN);
+		try {
+			ChangedPathFilters.write(db, getAllRefs(),
+					db.getChangedPathFilters(), pm);
+		} finally {
+			pm.endTask();
+		}
+	}
+
 	private static boolean isHead(Ref ref) {
 		return ref.getName().startsWith(Constants.R_HEADS);
 	}
@@ -822,6 +853,135 @@ private Set<ObjectId> listNonHEADIndexObjects()
 	private PackFile writePack(@NonNull Set<? extends ObjectId> want,
 			@NonNull Set<? extends ObjectId> have, Set<ObjectId> tagTargets,
 			List<ObjectIdSet> excludeObjects) throws IOException {
+		try (PackWriter pw = newPackWriter()) {
+			// prepare the PackWriter
+			if (tagTargets != null)
+				pw.setTagTargets(tagTargets);
+			if (excludeObjects != null)
+				for (ObjectIdSet idx : excludeObjects)
+					pw.excludeObjects(idx);
+			pw.preparePack(pm, want, have);
+			return writePack(pw, null);
+		}
+	}
+
+	/**
+	 * Write the unreachable objects which have not expired yet into a cruft
+	 * pack, instead of leaving them as loose objects or in old packs.
+	 * <p>
+	 * Candidates are all objects of the old, not kept packs and all loose
+	 * objects which are not contained in any of the new packs. The time an
+	 * object was last written is taken from the {@code .mtimes} file of an
+	 * old cruft pack, or else from the modification time of the pack file or
+	 * loose object. Objects older than the prune expiry are dropped, so
+	 * rewriting the cruft pack expires them without touching loose files.
+	 *
+	 * @param oldPacks
+	 *            packs which existed before the repack
+	 * @param newPacks
+	 *            packs holding the reachable objects
+	 * @return the new cruft pack, or null if there are no unreachable objects
+	 *         left.
+	 * @throws IOException
+	 */
+	private PackFile writeCruftPack(Collection<PackFile> oldPacks,
+			Collection<PackFile> newPacks) throws IOException {
+		long expireDate;
+		try {
+			expireDate = getExpireDate();
+		} catch (ParseException e) {
+			throw new IOException(e);
+		}
+
+		Map<ObjectId, Long> mtimes = new HashMap<>();
+		for (PackFile oldPack : oldPacks) {
+			if (oldPack.shouldBeKept())
+				continue;
+			PackMtimes packMtimes = null;
+			File mtimesFile = nameFor(oldPack.getPackName(),
+					"." + MTIMES.getExtension()); //$NON-NLS-1$
+			if (mtimesFile.exists())
+				packMtimes = PackMtimes.open(mtimesFile, oldPack.getIndex());
+			long packTime = repo.getFS().lastModified(oldPack.getPackFile());
+			int nth = 0;
+			for (PackIndex.MutableEntry e : oldPack) {
+				long time = packMtimes != null ? packMtimes.getMtime(nth)
+						: packTime;
+				nth++;
+				if (time >= expireDate)
+					addCruft(mtimes, e.toObjectId(), time, newPacks);
+			}
+		}
+
+		File objects = repo.getObjectsDirectory();
+		String[] fanout = objects.list();
+		if (fanout != null) {
+			for (String d : fanout) {
+				if (d.length() != 2)
+					continue;
+				File[] entries = new File(objects, d).listFiles();
+				if (entries == null)
+					continue;
+				for (File f : entries) {
+					String fName = f.getName();
+					if (fName.length() != Constants.OBJECT_ID_STRING_LENGTH - 2)
+						continue;
+					long time = repo.getFS().lastModified(f);
+					if (time < expireDate)
+						continue;
+					try {
+						addCruft(mtimes, ObjectId.fromString(d + fName), time,
+								newPacks);
+					} catch (IllegalArgumentException notAnObject) {
+						// ignoring the file that does not represent loose
+						// object
+						continue;
+					}
+				}
+			}
+		}
+		if (mtimes.isEmpty())
+			return null;
+
+		try (ObjectReader reader = repo.newObjectReader();
+				RevWalk rw = new RevWalk(reader);
+				PackWriter pw = newPackWriter()) {
+			List<RevObject> cruft = new ArrayList<>(mtimes.size());
+			for (ObjectId id : mtimes.keySet())
+				cruft.add(rw.lookupAny(id, reader.open(id).getType()));
+			pw.preparePack(cruft.iterator());
+			return writePack(pw, mtimes);
+		}
+	}
+
+	private static void addCruft(Map<ObjectId, Long> mtimes, ObjectId id,
+			long time, Collection<PackFile> newPacks) throws IOException {
+		Long prior = mtimes.get(id);
+		if (prior != null) {
+			if (prior.longValue() < time)
+				mtimes.put(id, Long.valueOf(time));
+			return;
+		}
+		for (PackFile p : newPacks)
+			if (p.hasObject(id))
+				return;
+		mtimes.put(id, Long.valueOf(time));
+	}
+
+	private PackWriter newPackWriter() {
+		PackWriter pw = new PackWriter(
+				(pconfig == null) ? new PackConfig(repo) : pconfig,
+				repo.newObjectReader());
+		pw.setDeltaBaseAsOffset(true);
+		pw.setReuseDeltaCommits(false);
+		return pw;
+	}
+
+	private PackFile writePack(PackWriter pw, Map<ObjectId, Long> mtimes)
+			throws IOException {
+		if (pw.getObjectCount() == 0)
+			return null;
+
 		File tmpPack = null;
 		Map<PackExt, File> tmpExts = new TreeMap<PackExt, File>(
 				new Comparator<PackExt>() {
@@ -839,21 +999,7 @@ public int compare(PackExt o1, PackExt o2) {
 					}
 
 				});
-		try (PackWriter pw = new PackWriter(
-				(pconfig == null) ? new PackConfig(repo) : pconfig,
-				repo.newObjectReader())) {
-			// prepare the PackWriter
-			pw.setDeltaBaseAsOffset(true);
-			pw.setReuseDeltaCommits(false);
-			if (tagTargets != null)
-				pw.setTagTargets(tagTargets);
-			if (excludeObjects != null)
-				for (ObjectIdSet idx : excludeObjects)
-					pw.excludeObjects(idx);
-			pw.preparePack(pm, want, have);
-			if (pw.getObjectCount() == 0)
-				return null;
-
+		try {
 			// create temporary files
 			String id = pw.computeName().getName();
 			File packdir = new File(repo.getObjectsDirectory(), "pack"); //$NON-NLS-1$
@@ -891,6 +1037,12 @@ public int compare(PackExt o1, PackExt o2) {
 				fos.close();
 			}
 
+			if (mtimes != null) {
+				File tmpMtimes = new File(packdir, tmpBase + ".mtimes_tmp"); //$NON-NLS-1$
+				tmpExts.put(MTIMES, tmpMtimes);
+				writeMtimes(tmpIdx, tmpMtimes, mtimes);
+			}
+
 			if (pw.prepareBitmapIndex(pm)) {
 				File tmpBitmapIdx = new File(packdir, tmpBase + ".bitmap_tmp"); //$NON-NLS-1$
 				tmpExts.put(BITMAP_INDEX, tmpBitmapIdx);
@@ -964,6 +1116,26 @@ public int compare(PackExt o1, PackExt o2) {
 		}
 	}
 
+	private static void writeMtimes(File idxFile, File mtimesFile,
+			Map<ObjectId, Long> mtimes) throws IOException {
+		PackIndex idx = PackIndex.open(idxFile);
+		long[] times = new long[(int) idx.getObjectCount()];
+		int nth = 0;
+		for (PackIndex.MutableEntry e : idx)
+			times[nth++] = mtimes.get(e.toObjectId()).longValue();
+
+		FileOutputStream fos = new FileOutputStream(mtimesFile);
+		FileChannel channel = fos.getChannel();
+		OutputStream stream = Channels.newOutputStream(channel);
+		try {
+			PackMtimes.write(stream, idx, times);
+		} finally {
+			channel.force(true);
+			stream.close();
+			fos.close();
+		}
+	}
+
 	private File nameFor(String name, String ext) {
 		File packdir = new File(repo.getObjectsDirectory(), "pack"); //$NON-NLS-1$
 		return new File(packdir, "pack-" + name + ext); //$NON-NLS-1$
@@ -1128,6 +1300,52 @@ public void setPackConfig(PackConfig pconfig) {
 		this.pconfig = pconfig;
 	}
 
+	/**
+	 * Set whether repack() writes unreachable objects into a cruft pack.
+	 * <p>
+	 * Unreachable objects which have not expired yet are collected from the
+	 * old packs and the loose objects into a single pack, with the time each
+	 * object was last written recorded in a {@code .mtimes} file next to it.
+	 * Expired objects are dropped when the cruft pack is rewritten by the next
+	 * repack. If not set, the value of {@code gc.cruftPacks} is used.
+	 *
+	 * @param cruftPacks
+	 *            true to pack unreachable objects into a cruft pack
+	 * @since 4.7
+	 */
+	public void setCruftPacks(boolean cruftPacks) {
+		this.cruftPacks = Boolean.valueOf(cruftPacks);
+	}
+
+	private boolean isCruftPacks() {
+		if (cruftPacks != null)
+			return cruftPacks.booleanValue();
+		return repo.getConfig().getBoolean(ConfigConstants.CONFIG_GC_SECTION,
+				ConfigConstants.CONFIG_KEY_CRUFTPACKS, false);
+	}
+
+	/**
+	 * Set whether gc() writes the changed path filters of commits.
+	 * <p>
+	 * The filters let path limited history walks skip commits that did not
+	 * touch the paths without comparing their trees. If not set, the value of
+	 * {@code gc.writeChangedPaths} is used.
+	 *
+	 * @param writeChangedPaths
+	 *            true to write the changed path filters
+	 * @since 4.7
+	 */
+	public void setWriteChangedPaths(boolean writeChangedPaths) {
+		this.writeChangedPaths = Boolean.valueOf(writeChangedPaths);
+	}
+
+	private boolean isWriteChangedPaths() {
+		if (writeChangedPaths != null)
+			return writeChangedPaths.booleanValue();
+		return repo.getConfig().getBoolean(ConfigConstants.CONFIG_GC_SECTION,
+				ConfigConstants.CONFIG_KEY_WRITE_CHANGED_PATHS, false);
+	}
+
 	/**
 	 * During gc() or prune() each unreferenced, loose object which has been
 	 * created or modified after or at <code>expire</code> will not be pruned.
@@ -143,6 +143,12 @@ public class ObjectDirectory extends FileObjectDatabase {
 
 	private Set<ObjectId> shallowCommitsIds;
 
+	private final File changedPathsFile;
+
+	private FileSnapshot changedPathsSnapshot = FileSnapshot.DIRTY;
+
+	private ChangedPathFilters changedPaths;
+
 	/**
 	 * Initialize a reference to an on-disk object directory.
 	 *
@@ -169,6 +175,7 @@ public ObjectDirectory(final Config cfg, final File dir,
 		packDirectory = new File(objects, "pack"); //$NON-NLS-1$
 		preservedDirectory = new File(packDirectory, "preserved"); //$NON-NLS-1$
 		alternatesFile = new File(infoDirectory, "alternates"); //$NON-NLS-1$
+		changedPathsFile = new File(infoDirectory, "changed-paths"); //$NON-NLS-1$
 		packList = new AtomicReference<PackList>(NO_PACKS);
 		unpackedObjectCache = new UnpackedObjectCache();
 		this.fs = fs;
@@ -718,6 +725,34 @@ Set<ObjectId> getShallowCommits() throws IOException {
 		return shallowCommitsIds;
 	}
 
+	/**
+	 * @return the location of the file holding the changed path filters of
+	 *         commits.
+	 */
+	File getChangedPathsFile() {
+		return changedPathsFile;
+	}
+
+	@Override
+	synchronized ChangedPathFilters getChangedPathFilters() {
+		if (changedPathsSnapshot.isModified(changedPathsFile)) {
+			FileSnapshot snapshot = FileSnapshot.save(changedPathsFile);
+			try {
+				changedPaths = ChangedPathFilters.read(changedPathsFile);
+			} catch (FileNotFoundException e) {
+				changedPaths = null;
+			} catch (IOException e) {
+				// The filters are only an optimization, walk without them.
+				LOG.warn(MessageFormat.format(
+						JGitText.get().cannotReadChangedPathFilters,
+						changedPathsFile), e);
+				changedPaths = null;
+			}
+			changedPathsSnapshot = snapshot;
+		}
+		return changedPaths;
+	}
+
 	private void insertPack(final PackFile pf) {
 		PackList o, n;
 		do {
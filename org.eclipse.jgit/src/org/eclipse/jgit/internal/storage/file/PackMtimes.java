@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.internal.storage.file;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * Modification times of the objects stored in a cruft pack.
+ * <p>
+ * A cruft pack holds the unreachable objects of a repository which have not
+ * expired yet. Because the pack is rewritten by every garbage collection the
+ * pack file's own modification time says nothing about the age of its
+ * objects, so the time each object was last written is kept in a
+ * {@code .mtimes} file next to the pack.
+ * <p>
+ * The file starts with the 4 byte signature {@code MTME}, a 4 byte version
+ * and a 4 byte hash function id, followed by one 4 byte time in seconds for
+ * each object in the order of the pack index, the checksum of the pack file
+ * and the checksum of all preceding content.
+ */
+public class PackMtimes {
+	private static final byte[] MAGIC = { 'M', 'T', 'M', 'E' };
+
+	private static final int VERSION = 1;
+
+	private static final int HASH_SHA1 = 1;
+
+	private static final int HEADER_LENGTH = 12;
+
+	/**
+	 * Read the modification times of a cruft pack.
+	 *
+	 * @param file
+	 *            the {@code .mtimes} file to read.
+	 * @param idx
+	 *            index of the pack the file belongs to.
+	 * @return the modification times of the objects in {@code idx}.
+	 * @throws IOException
+	 *             the file cannot be read or does not match the pack.
+	 */
+	public static PackMtimes open(File file, PackIndex idx)
+			throws IOException {
+		byte[] buf = IO.readFully(file);
+		long cnt = idx.getObjectCount();
+		int hashLength = Constants.OBJECT_ID_LENGTH;
+		if (buf.length != HEADER_LENGTH + 4 * cnt + 2 * hashLength)
+			throw new IOException(MessageFormat.format(
+					JGitText.get().packChecksumMismatch, file.getPath()));
+
+		byte[] magic = Arrays.copyOf(buf, MAGIC.length);
+		if (!Arrays.equals(MAGIC, magic))
+			throw new IOException(MessageFormat.format(
+					JGitText.get().expectedGot, Arrays.toString(MAGIC),
+					Arrays.toString(magic)));
+		int version = NB.decodeInt32(buf, 4);
+		if (version != VERSION || NB.decodeInt32(buf, 8) != HASH_SHA1)
+			throw new IOException(MessageFormat.format(
+					JGitText.get().unsupportedPackMtimesVersion,
+					Integer.valueOf(version)));
+
+		int trailer = buf.length - 2 * hashLength;
+		MessageDigest md = Constants.newMessageDigest();
+		md.update(buf, 0, buf.length - hashLength);
+		byte[] packChecksum = Arrays.copyOfRange(buf, trailer,
+				trailer + hashLength);
+		byte[] checksum = Arrays.copyOfRange(buf, trailer + hashLength,
+				buf.length);
+		if (!Arrays.equals(md.digest(), checksum)
+				|| !Arrays.equals(idx.packChecksum, packChecksum))
+			throw new IOException(MessageFormat.format(
+					JGitText.get().packChecksumMismatch, file.getPath()));
+
+		int[] times = new int[(int) cnt];
+		for (int i = 0; i < times.length; i++)
+			times[i] = NB.decodeInt32(buf, HEADER_LENGTH + 4 * i);
+		return new PackMtimes(times);
+	}
+
+	/**
+	 * Write the modification times of a cruft pack.
+	 * <p>
+	 * After writing the stream is flushed but remains open. Callers are
+	 * always responsible for closing the output stream.
+	 *
+	 * @param dst
+	 *            the stream to write the {@code .mtimes} file to.
+	 * @param idx
+	 *            index of the pack the times belong to.
+	 * @param mtimes
+	 *            modification time in milliseconds of each object, in the
+	 *            order of {@code idx}.
+	 * @throws IOException
+	 *             the stream cannot be written.
+	 */
+	public static void write(OutputStream dst, PackIndex idx, long[] mtimes)
+			throws IOException {
+		if (mtimes.length != idx.getObjectCount())
+			throw new IllegalArgumentException();
+
+		DigestOutputStream out = new DigestOutputStream(
+				dst instanceof BufferedOutputStream ? dst
+						: new BufferedOutputStream(dst),
+				Constants.newMessageDigest());
+		byte[] buf = new byte[HEADER_LENGTH];
+		System.arraycopy(MAGIC, 0, buf, 0, MAGIC.length);
+		NB.encodeInt32(buf, 4, VERSION);
+		NB.encodeInt32(buf, 8, HASH_SHA1);
+		out.write(buf, 0, HEADER_LENGTH);
+		for (long time : mtimes) {
+			NB.encodeInt32(buf, 0, (int) (time / 1000));
+			out.write(buf, 0, 4);
+		}
+		out.write(idx.packChecksum);
+		out.on(false);
+		out.write(out.getMessageDigest().digest());
+		out.flush();
+	}
+
+	private final int[] times;
+
+	private PackMtimes(int[] times) {
+		this.times = times;
+	}
+
+	/** @return number of objects the file has a time for. */
+	public int getObjectCount() {
+		return times.length;
+	}
+
+	/**
+	 * Get the modification time of an object.
+	 *
+	 * @param nthPosition
+	 *            position of the object in the pack index.
+	 * @return modification time of the object in milliseconds.
+	 */
+	public long getMtime(int nthPosition) {
+		return (times[nthPosition] & 0xFFFFFFFFL) * 1000;
+	}
+}
@@ -67,6 +67,7 @@
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.BitmapIndex;
 import org.eclipse.jgit.lib.BitmapIndex.BitmapBuilder;
+import org.eclipse.jgit.lib.ChangedPathIndex;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.InflaterCache;
 import org.eclipse.jgit.lib.ObjectId;
@@ -125,6 +126,11 @@ public BitmapIndex getBitmapIndex() throws IOException {
 		return null;
 	}
 
+	@Override
+	public ChangedPathIndex getChangedPathIndex() {
+		return db.getChangedPathFilters();
+	}
+
 	public Collection<CachedPack> getCachedPacksAndUpdate(
 			BitmapBuilder needBitmap) throws IOException {
 		for (PackFile pack : db.getPacks()) {
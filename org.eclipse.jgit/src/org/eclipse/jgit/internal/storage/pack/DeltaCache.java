@@ -58,7 +58,11 @@ class DeltaCache {
 	private long used;
 
 	DeltaCache(PackConfig pc) {
-		size = pc.getDeltaCacheSize();
+		this(pc, pc.getDeltaCacheSize());
+	}
+
+	DeltaCache(PackConfig pc, long size) {
+		this.size = size;
 		entryLimit = pc.getDeltaCacheLimit();
 		queue = new ReferenceQueue<byte[]>();
 	}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.eclipse.jgit.internal.storage.pack;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RecursiveAction;
+
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ThreadSafeProgressMonitor;
+import org.eclipse.jgit.storage.pack.PackConfig;
+
+/**
+ * Delta search over a range of the sorted object list, run on a
+ * {@link java.util.concurrent.ForkJoinPool}.
+ * <p>
+ * The range is recursively split in half by weight, always on a boundary
+ * between two path hash clusters, until the remaining work is small enough to
+ * be searched by a single {@link DeltaWindow}. Idle pool threads steal the
+ * unprocessed halves, so a thread that finishes early picks up work from the
+ * busiest thread instead of waiting for it.
+ * <p>
+ * Each pool thread owns an {@link ObjectReader} and a {@link DeltaCache} with
+ * its share of the configured cache size, avoiding lock contention on a
+ * single shared cache.
+ */
+final class DeltaForkJoinTask extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	/** Ranges lighter than this are always searched by one window. */
+	static final long MIN_SPLIT_WEIGHT = 8 << 20;
+
+	/** State shared by all tasks of one delta search. */
+	static final class Search {
+		final PackConfig config;
+		final ObjectReader templateReader;
+		final ThreadSafeProgressMonitor pm;
+		final ObjectToPack[] list;
+		final long bytesPerUnit;
+		final long cacheSizePerThread;
+
+		/** {@code weights[i]} is the total weight of {@code list[0..i)}. */
+		final long[] weights;
+
+		/** Work below this weight is searched without further splitting. */
+		final long grain;
+
+		private final ConcurrentMap<Thread, Worker> workers;
+
+		Search(PackConfig config, ObjectReader reader,
+				ThreadSafeProgressMonitor pm, ObjectToPack[] list, int cnt,
+				int threads) {
+			this(config, reader, pm, list, cnt, threads, MIN_SPLIT_WEIGHT);
+		}
+
+		/**
+		 * @param threads
+		 *            parallelism of the pool the search runs on.
+		 * @param minSplitWeight
+		 *            ranges lighter than this are searched by one window.
+		 */
+		Search(PackConfig config, ObjectReader reader,
+				ThreadSafeProgressMonitor pm, ObjectToPack[] list, int cnt,
+				int threads, long minSplitWeight) {
+			this.config = config;
+			this.templateReader = reader;
+			this.pm = pm;
+			this.list = list;
+			this.workers = new ConcurrentHashMap<>(threads);
+
+			weights = new long[cnt + 1];
+			for (int i = 0; i < cnt; i++)
+				weights[i + 1] = weights[i]
+						+ DeltaTask.getAdjustedWeight(list[i]);
+
+			long total = weights[cnt];
+			long bpu = 1;
+			while (DeltaTask.MAX_METER <= (total / bpu))
+				bpu <<= 10;
+			bytesPerUnit = bpu;
+
+			// Aim for several tasks per thread so stealing has something
+			// to balance, but avoid tiny windows that lose compression.
+			grain = Math.max(minSplitWeight, total / (threads * 8L));
+
+			long cacheSize = config.getDeltaCacheSize();
+			cacheSizePerThread = 0 < cacheSize
+					? Math.max(1, cacheSize / threads)
+					: cacheSize;
+		}
+
+		int cost() {
+			long total = weights[weights.length - 1];
+			int d = (int) (total / bytesPerUnit);
+			if (total % bytesPerUnit != 0)
+				d++;
+			return d;
+		}
+
+		Worker worker() {
+			Thread self = Thread.currentThread();
+			Worker w = workers.get(self);
+			if (w == null) {
+				w = new Worker(this);
+				workers.put(self, w);
+			}
+			return w;
+		}
+
+		/** Release the readers held by all workers. */
+		void close() {
+			for (Worker w : workers.values())
+				w.reader.close();
+		}
+
+		/** @return number of ranges searched by a single window. */
+		int getRangeCount() {
+			int n = 0;
+			for (Worker w : workers.values())
+				n += w.ranges;
+			return n;
+		}
+
+		/** @return time in milliseconds each worker spent searching. */
+		long[] getBusyTimes() {
+			List<Worker> all = new ArrayList<>(workers.values());
+			long[] r = new long[all.size()];
+			for (int i = 0; i < r.length; i++)
+				r[i] = all.get(i).busyNanos / 1000000;
+			return r;
+		}
+	}
+
+	/** Resources owned by a single pool thread. */
+	static final class Worker {
+		final ObjectReader reader;
+		final DeltaCache cache;
+		long busyNanos;
+		int ranges;
+
+		Worker(Search s) {
+			reader = s.templateReader.newReader();
+			cache = new DeltaCache(s.config, s.cacheSizePerThread);
+		}
+	}
+
+	private final Search search;
+	private final int beginIndex;
+	private final int endIndex;
+
+	DeltaForkJoinTask(Search search, int beginIndex, int endIndex) {
+		this.search = search;
+		this.beginIndex = beginIndex;
+		this.endIndex = endIndex;
+	}
+
+	@Override
+	protected void compute() {
+		long[] w = search.weights;
+		if (w[endIndex] - w[beginIndex] > search.grain) {
+			int split = findSplit();
+			if (beginIndex < split && split < endIndex) {
+				invokeAll(new DeltaForkJoinTask(search, beginIndex, split),
+						new DeltaForkJoinTask(search, split, endIndex));
+				return;
+			}
+		}
+		try {
+			searchRange();
+		} catch (IOException e) {
+			completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Find the path hash boundary nearest to the weighted midpoint.
+	 *
+	 * @return index of the first object of the second half, or
+	 *         {@link #endIndex} if the range is a single path cluster.
+	 */
+	private int findSplit() {
+		ObjectToPack[] list = search.list;
+		long[] w = search.weights;
+		long half = w[beginIndex] + (w[endIndex] - w[beginIndex]) / 2;
+
+		int lo = beginIndex + 1, hi = endIndex - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (w[mid] < half)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		// Never cut a path cluster, deltas are mostly found inside one.
+		for (int n = lo; n < endIndex; n++) {
+			if (list[n - 1].getPathHash() != list[n].getPathHash())
+				return n;
+		}
+		for (int p = lo - 1; beginIndex < p; p--) {
+			if (list[p - 1].getPathHash() != list[p].getPathHash())
+				return p;
+		}
+		return endIndex;
+	}
+
+	private void searchRange() throws IOException {
+		Worker worker = search.worker();
+		long start = System.nanoTime();
+		try {
+			new DeltaWindow(search.config, worker.cache, worker.reader,
+					search.pm, search.bytesPerUnit,
+					search.list, beginIndex, endIndex).search();
+		} finally {
+			worker.busyNanos += System.nanoTime() - start;
+			worker.ranges++;
+		}
+	}
+}
@@ -73,6 +73,7 @@
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.CRC32;
@@ -288,6 +289,8 @@ public static Iterable<PackWriter> getInstances() {
 
 	private CRC32 crc32;
 
+	private ParallelDeflater parallelDeflater;
+
 	private ObjectCountCallback callback;
 
 	/**
@@ -1337,6 +1340,8 @@ private void searchForDeltas(final ProgressMonitor monitor,
 			threads = Runtime.getRuntime().availableProcessors();
 		if (threads <= 1 || cnt <= config.getDeltaSearchWindowSize())
 			singleThreadDeltaSearch(monitor, list, cnt);
+		else if (config.isDeltaSearchWorkStealing())
+			forkJoinDeltaSearch(monitor, list, cnt, threads);
 		else
 			parallelDeltaSearch(monitor, list, cnt, threads);
 	}
@@ -1443,6 +1448,63 @@ public void run() {
 		endPhase(monitor);
 	}
 
+	private void forkJoinDeltaSearch(ProgressMonitor monitor,
+			ObjectToPack[] list, int cnt, int threads) throws IOException {
+		Executor executor = config.getExecutor();
+		ForkJoinPool pool;
+		if (executor instanceof ForkJoinPool)
+			pool = (ForkJoinPool) executor;
+		else
+			pool = new ForkJoinPool(threads);
+
+		// A caller supplied pool may run more or fewer threads than
+		// configured, share the delta cache among the ones it has.
+		ThreadSafeProgressMonitor pm = new ThreadSafeProgressMonitor(monitor);
+		DeltaForkJoinTask.Search search = new DeltaForkJoinTask.Search(config,
+				reader, pm, list, cnt, pool.getParallelism());
+		beginPhase(PackingPhase.COMPRESSING, monitor, search.cost());
+
+		final DeltaForkJoinTask root = new DeltaForkJoinTask(search, 0, cnt);
+		pm.startWorker();
+		try {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						root.invoke();
+					} catch (Throwable failure) {
+						// Reported through root.get() below.
+					} finally {
+						pm.endWorker();
+					}
+				}
+			});
+			try {
+				pm.waitForCompletion();
+				root.get();
+			} catch (InterruptedException ie) {
+				root.cancel(true);
+				throw new IOException(
+						JGitText.get().packingCancelledDuringObjectsWriting);
+			} catch (ExecutionException failed) {
+				Throwable err = failed.getCause();
+				if (err instanceof Error)
+					throw (Error) err;
+				if (err instanceof RuntimeException)
+					throw (RuntimeException) err;
+				if (err instanceof IOException)
+					throw (IOException) err;
+				throw new IOException(err.getMessage(), err);
+			}
+		} finally {
+			if (pool != executor)
+				pool.shutdown();
+			search.close();
+		}
+		stats.deltaSearchThreadTimes = search.getBusyTimes();
+		endPhase(monitor);
+	}
+
 	private static void runTasks(ExecutorService pool,
 			ThreadSafeProgressMonitor pm,
 			DeltaTask.Block tb, List<Throwable> errors) throws IOException {
@@ -1468,6 +1530,32 @@ private static void runTasks(ExecutorService pool,
 	}
 
 	private void writeObjects(PackOutputStream out) throws IOException {
+		int threads = config.getDeflateThreads();
+		if (threads <= 1) {
+			writeObjectLists(out);
+			return;
+		}
+
+		// Compress new objects on other threads while this thread keeps
+		// sole ownership of the output stream.
+		Executor executor = config.getExecutor();
+		ExecutorService pool;
+		if (executor instanceof ExecutorService)
+			pool = (ExecutorService) executor;
+		else
+			pool = Executors.newFixedThreadPool(threads);
+		try (ParallelDeflater pd = new ParallelDeflater(reader, pool,
+				threads, config.getCompressionLevel())) {
+			parallelDeflater = pd;
+			writeObjectLists(out);
+		} finally {
+			parallelDeflater = null;
+			if (pool != executor)
+				pool.shutdown();
+		}
+	}
+
+	private void writeObjectLists(PackOutputStream out) throws IOException {
 		writeObjects(out, objectsLists[OBJ_COMMIT]);
 		writeObjects(out, objectsLists[OBJ_TAG]);
 		writeObjects(out, objectsLists[OBJ_TREE]);
@@ -1481,6 +1569,8 @@ private void writeObjects(PackOutputStream out, List<ObjectToPack> list)
 
 		typeStats = stats.objectTypes[list.get(0).getType()];
 		long beginOffset = out.length();
+		if (parallelDeflater != null)
+			parallelDeflater.start(list);
 
 		if (reuseSupport != null) {
 			reuseSupport.writeObjects(out, list);
@@ -1565,6 +1655,17 @@ private void writeBase(PackOutputStream out, ObjectToPack base)
 
 	private void writeWholeObjectDeflate(PackOutputStream out,
 			final ObjectToPack otp) throws IOException {
+		if (parallelDeflater != null) {
+			ParallelDeflater.Deflated d = parallelDeflater.take(otp);
+			if (d != null) {
+				crc32.reset();
+				otp.setOffset(out.length());
+				out.writeHeader(otp, d.inflatedSize);
+				out.write(d.data);
+				return;
+			}
+		}
+
 		final Deflater deflater = deflater();
 		final ObjectLoader ldr = reader.open(otp, otp.getType());
 
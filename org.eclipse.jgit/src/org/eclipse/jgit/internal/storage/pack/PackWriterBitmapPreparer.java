@@ -111,6 +111,7 @@ public int compare(BitmapBuilderEntry a, BitmapBuilderEntry b) {
 	private final int distantCommitSpan;
 	private final int excessiveBranchCount;
 	private final long inactiveBranchTimestamp;
+	private final boolean inactiveBranchTipsOnly;
 
 	PackWriterBitmapPreparer(ObjectReader reader,
 			PackBitmapIndexBuilder writeBitmaps, ProgressMonitor pm,
@@ -133,6 +134,7 @@ public int compare(BitmapBuilderEntry a, BitmapBuilderEntry b) {
 		long ageInSeconds = config.getBitmapInactiveBranchAgeInDays()
 				* DAY_IN_SECONDS;
 		this.inactiveBranchTimestamp = (now / 1000) - ageInSeconds;
+		this.inactiveBranchTipsOnly = config.isBitmapInactiveBranchTipsOnly();
 	}
 
 	/**
@@ -400,13 +402,31 @@ private CommitSelectionHelper setupTipCommitBitmaps(RevWalk rw,
 		List<BitmapBuilderEntry> tipCommitBitmaps = new ArrayList<BitmapBuilderEntry>(
 				want.size());
 		Set<RevCommit> peeledWant = new HashSet<RevCommit>(want.size());
+		boolean pruneInactive = inactiveBranchTipsOnly
+				&& want.size() > excessiveBranchCount;
+		List<RevCommit> tips = new ArrayList<RevCommit>(want.size());
 		for (AnyObjectId objectId : want) {
 			RevObject ro = rw.peel(rw.parseAny(objectId));
-			if (!(ro instanceof RevCommit) || reuse.contains(ro)) {
+			if (!(ro instanceof RevCommit)) {
 				continue;
 			}
 
 			RevCommit rc = (RevCommit) ro;
+			if (!pruneInactive || isRecentCommit(rc)) {
+				tips.add(rc);
+			} else if (!reuse.contains(rc)
+					&& !reuseTipBitmap(rc, reuse, reuseCommits)) {
+				// Inactive tip without a previous bitmap. Select only the
+				// tip itself, its history is not walked.
+				peeledWant.add(rc);
+			}
+		}
+
+		for (RevCommit rc : tips) {
+			if (reuse.contains(rc)) {
+				continue;
+			}
+
 			peeledWant.add(rc);
 			rw.markStart(rc);
 
@@ -462,6 +482,31 @@ private CommitSelectionHelper setupTipCommitBitmaps(RevWalk rw,
 				orderedTipCommitBitmaps, reuse, reuseCommits);
 	}
 
+	/**
+	 * Carry over the bitmap of an inactive branch tip from the previous
+	 * bitmap index, so its history need not be walked again.
+	 *
+	 * @param tip
+	 *            tip commit of an inactive branch
+	 * @param reuse
+	 *            commits already covered by reused bitmaps
+	 * @param reuseCommits
+	 *            list of reused bitmap commits
+	 * @return true if a previous bitmap for {@code tip} was reused
+	 */
+	private boolean reuseTipBitmap(RevCommit tip, BitmapBuilder reuse,
+			List<BitmapCommit> reuseCommits) {
+		EWAHCompressedBitmap bitmap = bitmapRemapper.getBitmap(tip);
+		if (bitmap == null) {
+			return false;
+		}
+		reuseCommits.add(new BitmapCommit(tip, false, FLAG_REUSE));
+		reuse.or(new CompressedBitmap(
+				bitmapRemapper.ofObjectType(bitmap, Constants.OBJ_COMMIT),
+				commitBitmapIndex));
+		return true;
+	}
+
 	/*-
 	 * Returns the desired distance to the next bitmap based on the distance
 	 * from the tip commit. Only differentiates recent from distant spans,
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.internal.storage.pack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+
+/**
+ * Deflates whole objects ahead of the pack writer on a thread pool.
+ * <p>
+ * Objects that are not reused from an existing pack must be read and
+ * compressed before they can be written. This class walks the list of objects
+ * being written a bounded distance ahead of the writer, and compresses
+ * eligible objects on pool threads, each with its own {@link ObjectReader}
+ * and {@link Deflater}. The writer thread remains the only thread touching
+ * the {@link PackOutputStream}, and calls {@link #take(ObjectToPack)} to
+ * obtain the compressed form of the object it is about to write.
+ * <p>
+ * Objects larger than {@link #MAX_BUFFERED_SIZE} are never buffered; the
+ * writer streams them through its own deflater as before.
+ */
+final class ParallelDeflater implements AutoCloseable {
+	/** Largest inflated object size that is compressed into a buffer. */
+	static final int MAX_BUFFERED_SIZE = 1 << 20;
+
+	/** Result of compressing one object. */
+	static final class Deflated {
+		final long inflatedSize;
+		final byte[] data;
+
+		Deflated(long inflatedSize, byte[] data) {
+			this.inflatedSize = inflatedSize;
+			this.data = data;
+		}
+	}
+
+	/** Resources owned by a single pool thread. */
+	private static final class Worker {
+		final ObjectReader reader;
+		final Deflater deflater;
+
+		Worker(ObjectReader reader, int level) {
+			this.reader = reader;
+			this.deflater = new Deflater(level);
+		}
+	}
+
+	private final ObjectReader templateReader;
+	private final ExecutorService pool;
+	private final int level;
+	private final int maxPending;
+	private final ConcurrentMap<Thread, Worker> workers;
+	private final Map<ObjectToPack, Future<Deflated>> pending;
+
+	private List<ObjectToPack> list;
+	private int next;
+
+	/**
+	 * Create a deflater pipeline.
+	 *
+	 * @param reader
+	 *            reader to clone for each pool thread.
+	 * @param pool
+	 *            executor to run compression jobs on. The caller retains
+	 *            ownership and must shut it down if necessary.
+	 * @param threads
+	 *            number of threads of {@code pool} available for compression.
+	 * @param level
+	 *            compression level for the {@link Deflater}.
+	 */
+	ParallelDeflater(ObjectReader reader, ExecutorService pool, int threads,
+			int level) {
+		this.templateReader = reader;
+		this.pool = pool;
+		this.level = level;
+		this.maxPending = Math.max(2, threads * 2);
+		this.workers = new ConcurrentHashMap<>(threads);
+		this.pending = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Begin compressing objects from the next list the writer will output.
+	 *
+	 * @param objects
+	 *            objects in the order the writer will output them.
+	 */
+	void start(List<ObjectToPack> objects) {
+		cancelPending();
+		list = objects;
+		next = 0;
+		fill();
+	}
+
+	/**
+	 * Obtain the compressed form of an object.
+	 *
+	 * @param otp
+	 *            the object the writer is about to output in whole form.
+	 * @return the compressed object; null if the object was not compressed
+	 *         ahead of time and the caller must deflate it itself.
+	 * @throws IOException
+	 *             the object could not be read or compressed, or the writer
+	 *             was interrupted while waiting.
+	 */
+	Deflated take(ObjectToPack otp) throws IOException {
+		Future<Deflated> f = pending.remove(otp);
+		fill();
+		if (f == null)
+			return null;
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			throw new IOException(
+					JGitText.get().packingCancelledDuringObjectsWriting);
+		} catch (ExecutionException failed) {
+			Throwable err = failed.getCause();
+			if (err instanceof Error)
+				throw (Error) err;
+			if (err instanceof RuntimeException)
+				throw (RuntimeException) err;
+			if (err instanceof IOException)
+				throw (IOException) err;
+			throw new IOException(err.getMessage(), err);
+		}
+	}
+
+	private void fill() {
+		if (list == null)
+			return;
+		while (pending.size() < maxPending && next < list.size()) {
+			ObjectToPack otp = list.get(next++);
+			if (isEligible(otp))
+				pending.put(otp, pool.submit(new Job(otp)));
+		}
+	}
+
+	private static boolean isEligible(ObjectToPack otp) {
+		return !otp.isWritten()
+				&& !otp.isEdge()
+				&& !otp.isReuseAsIs()
+				&& !otp.isDeltaRepresentation();
+	}
+
+	private void cancelPending() {
+		for (Future<Deflated> f : pending.values()) {
+			if (f.cancel(false))
+				continue;
+
+			// Already running; wait so its reader is idle before close.
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// Nobody wants this object anymore, ignore the failure.
+			}
+		}
+		pending.clear();
+	}
+
+	/** Cancel outstanding work and release per-thread resources. */
+	@Override
+	public void close() {
+		cancelPending();
+		list = null;
+		for (Worker w : workers.values()) {
+			w.reader.close();
+			w.deflater.end();
+		}
+		workers.clear();
+	}
+
+	private Worker worker() {
+		Thread self = Thread.currentThread();
+		Worker w = workers.get(self);
+		if (w == null) {
+			w = new Worker(templateReader.newReader(), level);
+			workers.put(self, w);
+		}
+		return w;
+	}
+
+	private final class Job implements Callable<Deflated> {
+		private final ObjectToPack otp;
+
+		Job(ObjectToPack otp) {
+			this.otp = otp;
+		}
+
+		@Override
+		public Deflated call() throws IOException {
+			Worker w = worker();
+			ObjectLoader ldr = w.reader.open(otp, otp.getType());
+			long sz = ldr.getSize();
+			if (ldr.isLarge() || MAX_BUFFERED_SIZE < sz)
+				return null;
+
+			byte[] raw = ldr.getCachedBytes(MAX_BUFFERED_SIZE);
+			ByteArrayOutputStream buf = new ByteArrayOutputStream(
+					Math.max(64, raw.length / 2));
+			w.deflater.reset();
+			try (DeflaterOutputStream dst = new DeflaterOutputStream(buf,
+					w.deflater)) {
+				dst.write(raw);
+				dst.finish();
+			}
+			return new Deflated(sz, buf.toByteArray());
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.lib;
+
+import java.util.Collection;
+
+/**
+ * Per-commit Bloom filters of the paths a commit changed.
+ * <p>
+ * Each indexed commit carries a filter of the paths that differ between the
+ * commit and its first parent (or the empty tree for a root commit), including
+ * every leading directory of those paths. A filter may report a path that was
+ * not changed, but never misses one that was, so a path limited history walk
+ * can skip any commit for which {@link #mayHaveChanged(AnyObjectId, Collection)}
+ * returns false without comparing its trees.
+ *
+ * @since 4.7
+ */
+public interface ChangedPathIndex {
+	/**
+	 * Check whether a commit may have changed any of the given paths.
+	 *
+	 * @param commit
+	 *            the commit to test.
+	 * @param paths
+	 *            raw paths, without leading or trailing slash, relative to the
+	 *            root of the repository. A path matches if it or any path
+	 *            below it changed.
+	 * @return false if the commit is indexed and definitely did not change
+	 *         any of the paths compared to its first parent; true otherwise.
+	 */
+	boolean mayHaveChanged(AnyObjectId commit, Collection<byte[]> paths);
+}
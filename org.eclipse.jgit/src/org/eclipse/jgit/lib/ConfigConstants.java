@@ -113,6 +113,24 @@ public class ConfigConstants {
 	 */
 	public static final String CONFIG_FILTER_SECTION = "filter";
 
+	/**
+	 * The "splitIndex" section
+	 * @since 4.7
+	 */
+	public static final String CONFIG_SPLIT_INDEX_SECTION = "splitIndex";
+
+	/**
+	 * The "index" section
+	 * @since 4.7
+	 */
+	public static final String CONFIG_INDEX_SECTION = "index";
+
+	/**
+	 * The "checkout" section
+	 * @since 4.7
+	 */
+	public static final String CONFIG_CHECKOUT_SECTION = "checkout";
+
 	/** The "algorithm" key */
 	public static final String CONFIG_KEY_ALGORITHM = "algorithm";
 
@@ -137,6 +155,18 @@ public class ConfigConstants {
 	 */
 	public static final String CONFIG_KEY_AUTOPACKLIMIT = "autopacklimit";
 
+	/**
+	 * The "cruftpacks" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_CRUFTPACKS = "cruftpacks";
+
+	/**
+	 * The "writeChangedPaths" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_WRITE_CHANGED_PATHS = "writeChangedPaths";
+
 	/**
 	 * The "eol" key
 	 *
@@ -150,6 +180,84 @@ public class ConfigConstants {
 	/** The "excludesfile" key */
 	public static final String CONFIG_KEY_EXCLUDESFILE = "excludesfile";
 
+	/**
+	 * The "untrackedCache" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_UNTRACKED_CACHE = "untrackedCache";
+
+	/**
+	 * The "statCache" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_STAT_CACHE = "statCache";
+
+	/**
+	 * The "splitIndex" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_SPLIT_INDEX = "splitIndex";
+
+	/**
+	 * The "maxPercentChange" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_MAX_PERCENT_CHANGE = "maxPercentChange";
+
+	/**
+	 * The "version" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_VERSION = "version";
+
+	/**
+	 * The "threads" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_THREADS = "threads";
+
+	/**
+	 * The "recordOffsetTable" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_RECORD_OFFSET_TABLE = "recordOffsetTable";
+
+	/**
+	 * The "recordEndOfIndexEntries" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_RECORD_END_OF_INDEX_ENTRIES = "recordEndOfIndexEntries";
+
+	/**
+	 * The "workers" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_WORKERS = "workers";
+
+	/**
+	 * The "thresholdForParallelism" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_THRESHOLD_FOR_PARALLELISM = "thresholdForParallelism";
+
+	/**
+	 * The "sparseCheckout" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_SPARSE_CHECKOUT = "sparseCheckout";
+
+	/**
+	 * The "sparseCheckoutCone" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_SPARSE_CHECKOUT_CONE = "sparseCheckoutCone";
+
+	/**
+	 * The "sparse" key
+	 * @since 4.7
+	 */
+	public static final String CONFIG_KEY_SPARSE = "sparse";
+
 	/**
 	 * The "attributesfile" key
 	 *
@@ -279,6 +279,13 @@ public final class Constants {
 	 */
 	public static final String INFO_ATTRIBUTES = "info/attributes";
 
+	/**
+	 * Sparse checkout patterns file
+	 *
+	 * @since 4.7
+	 */
+	public static final String INFO_SPARSE_CHECKOUT = "info/sparse-checkout";
+
 	/**
 	 * The system property that contains the system user name
 	 *
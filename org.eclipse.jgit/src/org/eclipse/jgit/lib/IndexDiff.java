@@ -48,18 +48,25 @@
 package org.eclipse.jgit.lib;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.dircache.UntrackedCache;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
@@ -71,6 +78,7 @@
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.StatCache;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
 import org.eclipse.jgit.treewalk.WorkingTreeIterator;
@@ -78,6 +86,8 @@
 import org.eclipse.jgit.treewalk.filter.IndexDiffFilter;
 import org.eclipse.jgit.treewalk.filter.SkipWorkTreeFilter;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.FileChangeMonitor;
+import org.eclipse.jgit.util.StringUtils;
 
 /**
  * Compares the index, a tree, and the working directory Ignored files are not
@@ -239,6 +249,61 @@ public TreeFilter clone() {
 		}
 	}
 
+	/**
+	 * Excludes the top level directories from a walk, remembering them so
+	 * each can be walked on its own.
+	 */
+	private static final class TopLevelTreeFilter extends TreeFilter {
+		private final List<String> trees = new ArrayList<String>();
+
+		@Override
+		public boolean shouldBeRecursive() {
+			return false;
+		}
+
+		@Override
+		public boolean include(TreeWalk walker) {
+			if (walker.getDepth() == 0 && walker.isSubtree()) {
+				trees.add(walker.getPathString());
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public TreeFilter clone() {
+			TopLevelTreeFilter copy = new TopLevelTreeFilter();
+			copy.trees.addAll(trees);
+			return copy;
+		}
+	}
+
+	/** Includes only the content of one top level directory in a walk. */
+	private static final class SubtreeFilter extends TreeFilter {
+		private final String name;
+
+		private SubtreeFilter(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public boolean shouldBeRecursive() {
+			return false;
+		}
+
+		@Override
+		public boolean include(TreeWalk walker) {
+			if (walker.getDepth() == 0)
+				return walker.isSubtree() && name.equals(walker.getPathString());
+			return true;
+		}
+
+		@Override
+		public TreeFilter clone() {
+			return this;
+		}
+	}
+
 	private final static int TREE = 0;
 
 	private final static int INDEX = 1;
@@ -269,11 +334,15 @@ public TreeFilter clone() {
 
 	private Set<String> ignored;
 
+	private Set<String> untrackedFolders;
+
 	private Set<String> assumeUnchanged;
 
 	private DirCache dirCache;
 
-	private IndexDiffFilter indexDiffFilter;
+	private FileChangeMonitor fileChangeMonitor;
+
+	private boolean listIgnored = true;
 
 	private Map<String, IndexDiff> submoduleIndexDiffs = new HashMap<String, IndexDiff>();
 
@@ -281,6 +350,8 @@ public TreeFilter clone() {
 
 	private Map<FileMode, Set<String>> fileModes = new HashMap<FileMode, Set<String>>();
 
+	private ExecutorService executor;
+
 	/**
 	 * Construct an IndexDiff
 	 *
@@ -320,6 +391,18 @@ public IndexDiff(Repository repository, ObjectId objectId,
 		this.initialWorkingTreeIterator = workingTreeIterator;
 	}
 
+	/** Create an IndexDiff collecting the differences of one subtree. */
+	private IndexDiff(IndexDiff parent) {
+		this.repository = parent.repository;
+		this.tree = parent.tree;
+		// Partitions are walked concurrently, TreeFilters are not thread-safe.
+		this.filter = parent.filter != null ? parent.filter.clone() : null;
+		this.ignoreSubmoduleMode = parent.ignoreSubmoduleMode;
+		this.dirCache = parent.dirCache;
+		this.fileChangeMonitor = parent.fileChangeMonitor;
+		this.initialWorkingTreeIterator = null;
+	}
+
 	/**
 	 * @param mode
 	 *            defines how modifications in submodules are treated
@@ -341,12 +424,15 @@ public interface WorkingTreeIteratorFactory {
 		public WorkingTreeIterator getWorkingTreeIterator(Repository repo);
 	}
 
-	private WorkingTreeIteratorFactory wTreeIt = new WorkingTreeIteratorFactory() {
+	private static final WorkingTreeIteratorFactory DEFAULT_WORKING_TREE_IT_FACTORY = new WorkingTreeIteratorFactory() {
+		@Override
 		public WorkingTreeIterator getWorkingTreeIterator(Repository repo) {
 			return new FileTreeIterator(repo);
 		}
 	};
 
+	private WorkingTreeIteratorFactory wTreeIt = DEFAULT_WORKING_TREE_IT_FACTORY;
+
 	/**
 	 * Allows higher layers to set the factory for WorkingTreeIterators.
 	 *
@@ -367,6 +453,64 @@ public void setFilter(TreeFilter filter) {
 		this.filter = filter;
 	}
 
+	/**
+	 * Set the executor used to scan the working tree in parallel.
+	 * <p>
+	 * If set, the entries at the top level of the repository are compared on
+	 * the calling thread and every top level directory is then compared by a
+	 * separate task submitted to {@code executor}, each with its own
+	 * {@link WorkingTreeIterator} obtained from the
+	 * {@link WorkingTreeIteratorFactory}. The results are merged into the
+	 * same sets a sequential diff reports. If null, the default, the whole
+	 * comparison runs on the calling thread.
+	 * <p>
+	 * The comparison also runs on the calling thread unless the iterator
+	 * passed to the constructor is a plain {@link FileTreeIterator} and no
+	 * other factory was set, as the directories would otherwise not be
+	 * examined by an iterator like the one passed to the constructor.
+	 *
+	 * @param executor
+	 *            executor to scan top level directories on, or null
+	 * @since 4.7
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Set the monitor reporting changes to the working tree.
+	 * <p>
+	 * If set, index entries that were clean when the index was last updated
+	 * and whose paths the monitor did not report as changed are considered
+	 * unmodified without examining the working tree file. If entries were
+	 * found clean or the monitor reported changes, the new token and the
+	 * clean entries are written back to the index when it can be locked. The
+	 * index is not written if nothing changed.
+	 *
+	 * @param monitor
+	 *            monitor of the working tree, or null to examine every file
+	 * @since 4.7
+	 */
+	public void setFileChangeMonitor(FileChangeMonitor monitor) {
+		this.fileChangeMonitor = monitor;
+	}
+
+	/**
+	 * Set whether ignored files and folders that are not in the index are
+	 * looked for.
+	 * <p>
+	 * Without them, directories that did not change since the untracked cache
+	 * of the index recorded them are not listed again.
+	 *
+	 * @param list
+	 *            false to leave {@link #getIgnoredNotInIndex()} empty. The
+	 *            default is true.
+	 * @since 4.7
+	 */
+	public void setListIgnored(boolean list) {
+		this.listIgnored = list;
+	}
+
 	/**
 	 * Run the diff operation. Until this is called, all lists will be empty.
 	 * Use {@link #diff(ProgressMonitor, int, int, String)} if a progress
@@ -404,7 +548,177 @@ public boolean diff(final ProgressMonitor monitor, int estWorkTreeSize,
 			int estIndexSize, final String title)
 			throws IOException {
 		dirCache = repository.readDirCache();
+		addUntrackedCache();
+		if (fileChangeMonitor != null)
+			dirCache.applyFileMonitor(fileChangeMonitor);
+		boolean result = diffDirCache(monitor, estWorkTreeSize, estIndexSize,
+				title);
+
+		UntrackedCache cache = dirCache.getUntrackedCache();
+		boolean untrackedUpdated = cache != null && cache.isUpdated();
+		// A cancelled walk did not record all untracked files it listed.
+		if (untrackedUpdated && monitor != null && monitor.isCancelled())
+			return result;
+		if (untrackedUpdated || (fileChangeMonitor != null
+				&& dirCache.isFileMonitorUpdated()))
+			writeIndex();
+		return result;
+	}
+
+	/**
+	 * Add an untracked cache to the index if {@code core.untrackedCache} is
+	 * true, replacing one that does not apply to the repository anymore.
+	 *
+	 * @throws IOException
+	 */
+	private void addUntrackedCache() throws IOException {
+		String v = repository.getConfig().getString(
+				ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_UNTRACKED_CACHE);
+		if (!Boolean.TRUE.equals(StringUtils.toBooleanOrNull(v)))
+			return;
+		UntrackedCache cache = dirCache.getUntrackedCache();
+		if (cache == null || !cache.isValidFor(repository))
+			dirCache.setUntrackedCache(UntrackedCache.create(repository));
+	}
+
+	/**
+	 * Store the entries found clean, the new token of the monitor and the
+	 * directories recorded into the untracked cache.
+	 * <p>
+	 * The index is only written if it can be locked and was not modified
+	 * since it was read; otherwise the next diff computes the state again.
+	 *
+	 * @throws IOException
+	 */
+	private void writeIndex() throws IOException {
+		if (!dirCache.lock())
+			return;
+		try {
+			if (dirCache.isOutdated())
+				return;
+			dirCache.write();
+			dirCache.commit();
+		} finally {
+			dirCache.unlock();
+		}
+	}
+
+	private boolean diffDirCache(ProgressMonitor monitor, int estWorkTreeSize,
+			int estIndexSize, String title) throws IOException {
+		int total = 0;
+		if (monitor != null) {
+			// Get the maximum size of the work tree and index
+			// and add some (quite arbitrary)
+			if (estIndexSize == 0)
+				estIndexSize = dirCache.getEntryCount();
+			total = Math.max(estIndexSize * 10 / 9,
+					estWorkTreeSize * 10 / 9);
+			monitor.beginTask(title, total);
+		}
 
+		fileModes.clear();
+		if (executor != null && canPartition()) {
+			diffParallel(monitor, total);
+		} else {
+			IndexDiffFilter indexDiffFilter = diffTree(monitor, total, null,
+					initialWorkingTreeIterator);
+			ignored = indexDiffFilter.getIgnoredPaths();
+			untrackedFolders = new HashSet<String>(
+					indexDiffFilter.getUntrackedFolders());
+		}
+		if (!listIgnored)
+			ignored = new HashSet<String>();
+
+		if (ignoreSubmoduleMode != IgnoreSubmoduleMode.ALL) {
+			IgnoreSubmoduleMode localIgnoreSubmoduleMode = ignoreSubmoduleMode;
+			SubmoduleWalk smw = SubmoduleWalk.forIndex(repository);
+			while (smw.next()) {
+				try {
+					if (localIgnoreSubmoduleMode == null)
+						localIgnoreSubmoduleMode = smw.getModulesIgnore();
+					if (IgnoreSubmoduleMode.ALL
+							.equals(localIgnoreSubmoduleMode))
+						continue;
+				} catch (ConfigInvalidException e) {
+					IOException e1 = new IOException(MessageFormat.format(
+							JGitText.get().invalidIgnoreParamSubmodule,
+							smw.getPath()));
+					e1.initCause(e);
+					throw e1;
+				}
+				Repository subRepo = smw.getRepository();
+				if (subRepo != null) {
+					try {
+						ObjectId subHead = subRepo.resolve("HEAD"); //$NON-NLS-1$
+						if (subHead != null
+								&& !subHead.equals(smw.getObjectId()))
+							modified.add(smw.getPath());
+						else if (ignoreSubmoduleMode != IgnoreSubmoduleMode.DIRTY) {
+							IndexDiff smid = submoduleIndexDiffs.get(smw
+									.getPath());
+							if (smid == null) {
+								smid = new IndexDiff(subRepo,
+										smw.getObjectId(),
+										wTreeIt.getWorkingTreeIterator(subRepo));
+								submoduleIndexDiffs.put(smw.getPath(), smid);
+							}
+							if (smid.diff()) {
+								if (ignoreSubmoduleMode == IgnoreSubmoduleMode.UNTRACKED
+										&& smid.getAdded().isEmpty()
+										&& smid.getChanged().isEmpty()
+										&& smid.getConflicting().isEmpty()
+										&& smid.getMissing().isEmpty()
+										&& smid.getModified().isEmpty()
+										&& smid.getRemoved().isEmpty()) {
+									continue;
+								}
+								modified.add(smw.getPath());
+							}
+						}
+					} finally {
+						subRepo.close();
+					}
+				}
+			}
+
+		}
+
+		StatCache statCache = initialWorkingTreeIterator.getStatCache();
+		if (statCache != null)
+			statCache.write();
+
+		// consume the remaining work
+		if (monitor != null)
+			monitor.endTask();
+
+		if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()
+				&& missing.isEmpty() && modified.isEmpty()
+				&& untracked.isEmpty())
+			return false;
+		else
+			return true;
+	}
+
+	/**
+	 * Walk the tree, the index and the working tree, collecting the
+	 * differences into this instance.
+	 *
+	 * @param monitor
+	 *            for reporting progress, may be null
+	 * @param total
+	 *            estimated number of entries to walk
+	 * @param partition
+	 *            filter restricting the walk to a part of the working tree,
+	 *            may be null
+	 * @param workingTree
+	 *            iterator for the working tree
+	 * @return the filter that recorded ignored and untracked paths
+	 * @throws IOException
+	 */
+	private IndexDiffFilter diffTree(ProgressMonitor monitor, int total,
+			TreeFilter partition, WorkingTreeIterator workingTree)
+			throws IOException {
 		try (TreeWalk treeWalk = new TreeWalk(repository)) {
 			treeWalk.setOperationType(OperationType.CHECKIN_OP);
 			treeWalk.setRecursive(true);
@@ -414,28 +728,30 @@ public boolean diff(final ProgressMonitor monitor, int estWorkTreeSize,
 			else
 				treeWalk.addTree(new EmptyTreeIterator());
 			treeWalk.addTree(new DirCacheIterator(dirCache));
-			treeWalk.addTree(initialWorkingTreeIterator);
-			initialWorkingTreeIterator.setDirCacheIterator(treeWalk, 1);
-			Collection<TreeFilter> filters = new ArrayList<TreeFilter>(4);
-
-			if (monitor != null) {
-				// Get the maximum size of the work tree and index
-				// and add some (quite arbitrary)
-				if (estIndexSize == 0)
-					estIndexSize = dirCache.getEntryCount();
-				int total = Math.max(estIndexSize * 10 / 9,
-						estWorkTreeSize * 10 / 9);
-				monitor.beginTask(title, total);
-				filters.add(new ProgressReportingFilter(monitor, total));
+			treeWalk.addTree(workingTree);
+			workingTree.setDirCacheIterator(treeWalk, 1);
+			if (isUntrackedCacheEnabled()) {
+				// Only a walk over the whole working tree can record it.
+				if (filter == null && partition == null)
+					workingTree.setUntrackedCache(dirCache, listIgnored);
+				else
+					workingTree.setUntrackedCache(
+							dirCache.getUntrackedCache());
 			}
+			Collection<TreeFilter> filters = new ArrayList<TreeFilter>(5);
 
+			if (monitor != null)
+				filters.add(new ProgressReportingFilter(monitor, total));
 			if (filter != null)
 				filters.add(filter);
 			filters.add(new SkipWorkTreeFilter(INDEX));
-			indexDiffFilter = new IndexDiffFilter(INDEX, WORKDIR);
+			if (partition != null)
+				filters.add(partition);
+			IndexDiffFilter indexDiffFilter = new IndexDiffFilter(INDEX,
+					WORKDIR);
+			indexDiffFilter.setMarkFileMonitorValid(fileChangeMonitor != null);
 			filters.add(indexDiffFilter);
 			treeWalk.setFilter(AndTreeFilter.create(filters));
-			fileModes.clear();
 			while (treeWalk.next()) {
 				AbstractTreeIterator treeIterator = treeWalk.getTree(TREE,
 						AbstractTreeIterator.class);
@@ -492,7 +808,8 @@ public boolean diff(final ProgressMonitor monitor, int estWorkTreeSize,
 					}
 				}
 
-				if (dirCacheIterator != null) {
+				if (dirCacheIterator != null
+						&& !isSkipWorkTree(dirCacheIterator)) {
 					if (workingTreeIterator == null) {
 						// in index, not in workdir => missing
 						if (!isEntryGitLink(dirCacheIterator)
@@ -508,6 +825,9 @@ public boolean diff(final ProgressMonitor monitor, int estWorkTreeSize,
 									|| (ignoreSubmoduleMode != IgnoreSubmoduleMode.ALL
 											&& ignoreSubmoduleMode != IgnoreSubmoduleMode.DIRTY))
 								modified.add(treeWalk.getPathString());
+						} else if (fileChangeMonitor != null) {
+							dirCacheIterator.getDirCacheEntry()
+									.setFileMonitorValid(true);
 						}
 					}
 				}
@@ -523,73 +843,122 @@ public boolean diff(final ProgressMonitor monitor, int estWorkTreeSize,
 					}
 				}
 			}
+			return indexDiffFilter;
 		}
+	}
 
-		if (ignoreSubmoduleMode != IgnoreSubmoduleMode.ALL) {
-			IgnoreSubmoduleMode localIgnoreSubmoduleMode = ignoreSubmoduleMode;
-			SubmoduleWalk smw = SubmoduleWalk.forIndex(repository);
-			while (smw.next()) {
-				try {
-					if (localIgnoreSubmoduleMode == null)
-						localIgnoreSubmoduleMode = smw.getModulesIgnore();
-					if (IgnoreSubmoduleMode.ALL
-							.equals(localIgnoreSubmoduleMode))
-						continue;
-				} catch (ConfigInvalidException e) {
-					IOException e1 = new IOException(MessageFormat.format(
-							JGitText.get().invalidIgnoreParamSubmodule,
-							smw.getPath()));
-					e1.initCause(e);
-					throw e1;
-				}
-				Repository subRepo = smw.getRepository();
-				if (subRepo != null) {
-					try {
-						ObjectId subHead = subRepo.resolve("HEAD"); //$NON-NLS-1$
-						if (subHead != null
-								&& !subHead.equals(smw.getObjectId()))
-							modified.add(smw.getPath());
-						else if (ignoreSubmoduleMode != IgnoreSubmoduleMode.DIRTY) {
-							IndexDiff smid = submoduleIndexDiffs.get(smw
-									.getPath());
-							if (smid == null) {
-								smid = new IndexDiff(subRepo,
-										smw.getObjectId(),
-										wTreeIt.getWorkingTreeIterator(subRepo));
-								submoduleIndexDiffs.put(smw.getPath(), smid);
-							}
-							if (smid.diff()) {
-								if (ignoreSubmoduleMode == IgnoreSubmoduleMode.UNTRACKED
-										&& smid.getAdded().isEmpty()
-										&& smid.getChanged().isEmpty()
-										&& smid.getConflicting().isEmpty()
-										&& smid.getMissing().isEmpty()
-										&& smid.getModified().isEmpty()
-										&& smid.getRemoved().isEmpty()) {
-									continue;
-								}
-								modified.add(smw.getPath());
-							}
+	/**
+	 * Compare the top level entries on the calling thread and each top level
+	 * directory on the executor, then merge the results.
+	 *
+	 * @param monitor
+	 *            for reporting progress, may be null
+	 * @param total
+	 *            estimated number of entries to walk
+	 * @throws IOException
+	 */
+	private void diffParallel(ProgressMonitor monitor, final int total)
+			throws IOException {
+		TopLevelTreeFilter topLevel = new TopLevelTreeFilter();
+		IndexDiffFilter indexDiffFilter = diffTree(monitor, total, topLevel,
+				initialWorkingTreeIterator);
+		ignored = new HashSet<String>(indexDiffFilter.getIgnoredPaths());
+		untrackedFolders = new HashSet<String>(
+				indexDiffFilter.getUntrackedFolders());
+		if (topLevel.trees.isEmpty())
+			return;
+
+		final ThreadSafeProgressMonitor pm = monitor != null
+				? new ThreadSafeProgressMonitor(monitor) : null;
+		List<Future<IndexDiff>> parts = new ArrayList<Future<IndexDiff>>(
+				topLevel.trees.size());
+		try {
+			for (final String name : topLevel.trees) {
+				if (pm != null)
+					pm.startWorker();
+				parts.add(executor.submit(new Callable<IndexDiff>() {
+					@Override
+					public IndexDiff call() throws IOException {
+						try {
+							return diffSubtree(name, pm, total);
+						} finally {
+							if (pm != null)
+								pm.endWorker();
 						}
-					} finally {
-						subRepo.close();
 					}
-				}
+				}));
 			}
-
+			if (pm != null)
+				pm.waitForCompletion();
+			for (Future<IndexDiff> part : parts)
+				merge(part.get());
+		} catch (InterruptedException e) {
+			for (Future<IndexDiff> part : parts)
+				part.cancel(true);
+			throw new InterruptedIOException();
+		} catch (ExecutionException failed) {
+			for (Future<IndexDiff> part : parts)
+				part.cancel(true);
+			Throwable err = failed.getCause();
+			if (err instanceof Error)
+				throw (Error) err;
+			if (err instanceof RuntimeException)
+				throw (RuntimeException) err;
+			if (err instanceof IOException)
+				throw (IOException) err;
+			throw new IOException(err.getMessage(), err);
 		}
+	}
 
-		// consume the remaining work
-		if (monitor != null)
-			monitor.endTask();
+	/**
+	 * @return true if the iterators created for the partitions examine the
+	 *         working tree like the iterator passed to the constructor.
+	 */
+	private boolean canPartition() {
+		return wTreeIt == DEFAULT_WORKING_TREE_IT_FACTORY
+				&& initialWorkingTreeIterator.getClass() == FileTreeIterator.class;
+	}
 
-		ignored = indexDiffFilter.getIgnoredPaths();
-		if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()
-				&& missing.isEmpty() && modified.isEmpty()
-				&& untracked.isEmpty())
-			return false;
-		else
-			return true;
+	private boolean isUntrackedCacheEnabled() {
+		// Like C Git, use an existing cache unless explicitly disabled.
+		String v = repository.getConfig().getString(
+				ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_UNTRACKED_CACHE);
+		return !"false".equalsIgnoreCase(v); //$NON-NLS-1$
+	}
+
+	private IndexDiff diffSubtree(String name, ProgressMonitor monitor,
+			int total) throws IOException {
+		IndexDiff part = new IndexDiff(this);
+		WorkingTreeIterator workingTree = wTreeIt
+				.getWorkingTreeIterator(repository);
+		// All parts record into one cache, written once at the end.
+		workingTree.setStatCache(initialWorkingTreeIterator.getStatCache());
+		IndexDiffFilter indexDiffFilter = part.diffTree(monitor, total,
+				new SubtreeFilter(name), workingTree);
+		part.ignored = indexDiffFilter.getIgnoredPaths();
+		part.untrackedFolders = new HashSet<String>(
+				indexDiffFilter.getUntrackedFolders());
+		return part;
+	}
+
+	private void merge(IndexDiff part) {
+		added.addAll(part.added);
+		changed.addAll(part.changed);
+		removed.addAll(part.removed);
+		missing.addAll(part.missing);
+		modified.addAll(part.modified);
+		untracked.addAll(part.untracked);
+		conflicts.putAll(part.conflicts);
+		ignored.addAll(part.ignored);
+		untrackedFolders.addAll(part.untrackedFolders);
+		for (Map.Entry<FileMode, Set<String>> e : part.fileModes.entrySet()) {
+			Set<String> values = fileModes.get(e.getKey());
+			if (values == null)
+				fileModes.put(e.getKey(), e.getValue());
+			else
+				values.addAll(e.getValue());
+		}
 	}
 
 	private boolean isEntryGitLink(AbstractTreeIterator ti) {
@@ -597,6 +966,11 @@ private boolean isEntryGitLink(AbstractTreeIterator ti) {
 				.getBits()));
 	}
 
+	private static boolean isSkipWorkTree(DirCacheIterator ti) {
+		DirCacheEntry e = ti.getDirCacheEntry();
+		return e != null && e.isSkipWorkTree();
+	}
+
 	private void addConflict(String path, int stage) {
 		StageState existingStageStates = conflicts.get(path);
 		byte stageMask = 0;
@@ -673,7 +1047,8 @@ public Map<String, StageState> getConflictingStageStates() {
 	 * folder of an ignored folder hierarchy is reported. If a/b/c is listed in
 	 * the .gitignore then you should not expect a/b/c/d/e/f to be reported
 	 * here. Only a/b/c will be reported. Furthermore only ignored files /
-	 * folders are returned that are NOT in the index.
+	 * folders are returned that are NOT in the index. Empty if
+	 * {@link #setListIgnored(boolean)} was set to false.
 	 *
 	 * @return list of files / folders that are ignored
 	 */
@@ -699,8 +1074,8 @@ public Set<String> getAssumeUnchanged() {
 	 * @return list of folders containing only untracked files/folders
 	 */
 	public Set<String> getUntrackedFolders() {
-		return ((indexDiffFilter == null) ? Collections.<String> emptySet()
-				: new HashSet<String>(indexDiffFilter.getUntrackedFolders()));
+		return ((untrackedFolders == null) ? Collections.<String> emptySet()
+				: new HashSet<String>(untrackedFolders));
 	}
 
 	/**
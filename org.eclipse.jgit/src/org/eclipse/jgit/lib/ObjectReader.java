@@ -54,6 +54,7 @@
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.internal.storage.pack.ObjectReuseAsIs;
+import org.eclipse.jgit.treewalk.TreeTableCache;
 
 /**
  * Reads an {@link ObjectDatabase} for a single thread.
@@ -72,6 +73,8 @@ public abstract class ObjectReader implements AutoCloseable {
 	 */
 	protected int streamFileThreshold;
 
+	private TreeTableCache treeTableCache;
+
 	/**
 	 * Construct a new reader from the same data.
 	 * <p>
@@ -429,6 +432,18 @@ public BitmapIndex getBitmapIndex() throws IOException {
 		return null;
 	}
 
+	/**
+	 * An index that can be used to speed up path limited RevWalks.
+	 *
+	 * @return the index or null if one does not exist.
+	 * @throws IOException
+	 *             when the index fails to load
+	 * @since 4.7
+	 */
+	public ChangedPathIndex getChangedPathIndex() throws IOException {
+		return null;
+	}
+
 	/**
 	 * @return the {@link ObjectInserter} from which this reader was created
 	 *         using {@code inserter.newReader()}, or null if this reader was not
@@ -474,6 +489,32 @@ public int getStreamFileThreshold() {
 		return streamFileThreshold;
 	}
 
+	/**
+	 * Sets the cache of indexed trees used to look up paths read through this
+	 * reader.
+	 * <p>
+	 * The cache is not inherited by readers created by {@link #newReader()}.
+	 *
+	 * @param cache
+	 *            the cache, possibly shared with other readers; null to parse
+	 *            trees on every lookup.
+	 * @since 4.7
+	 */
+	public void setTreeTableCache(@Nullable TreeTableCache cache) {
+		treeTableCache = cache;
+	}
+
+	/**
+	 * Returns the cache of indexed trees used to look up paths.
+	 *
+	 * @return the cache, or null if none was set.
+	 * @since 4.7
+	 */
+	@Nullable
+	public TreeTableCache getTreeTableCache() {
+		return treeTableCache;
+	}
+
 	/**
 	 * Wraps a delegate ObjectReader.
 	 *
@@ -566,12 +607,28 @@ public BitmapIndex getBitmapIndex() throws IOException {
 			return delegate().getBitmapIndex();
 		}
 
+		@Override
+		public ChangedPathIndex getChangedPathIndex() throws IOException {
+			return delegate().getChangedPathIndex();
+		}
+
 		@Override
 		@Nullable
 		public ObjectInserter getCreatedFromInserter() {
 			return delegate().getCreatedFromInserter();
 		}
 
+		@Override
+		public void setTreeTableCache(@Nullable TreeTableCache cache) {
+			delegate().setTreeTableCache(cache);
+		}
+
+		@Override
+		@Nullable
+		public TreeTableCache getTreeTableCache() {
+			return delegate().getTreeTableCache();
+		}
+
 		@Override
 		public void close() {
 			delegate().close();
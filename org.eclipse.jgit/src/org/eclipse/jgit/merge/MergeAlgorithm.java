@@ -50,9 +50,11 @@
 import org.eclipse.jgit.diff.DiffAlgorithm;
 import org.eclipse.jgit.diff.Edit;
 import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.EditListCache;
 import org.eclipse.jgit.diff.HistogramDiff;
 import org.eclipse.jgit.diff.Sequence;
 import org.eclipse.jgit.diff.SequenceComparator;
+import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.merge.MergeChunk.ConflictState;
 
 /**
@@ -62,6 +64,8 @@
 public final class MergeAlgorithm {
 	private final DiffAlgorithm diffAlg;
 
+	private EditListCache editListCache;
+
 	/**
 	 * Creates a new MergeAlgorithm which uses {@link HistogramDiff} as diff
 	 * algorithm
@@ -80,6 +84,19 @@ public MergeAlgorithm(DiffAlgorithm diff) {
 		this.diffAlg = diff;
 	}
 
+	/**
+	 * Set the cache of edits between blobs.
+	 * <p>
+	 * The cache is only used by merges given the ids of the merged blobs.
+	 *
+	 * @param cache
+	 *            the cache, or null to always diff.
+	 * @since 4.7
+	 */
+	public void setEditListCache(EditListCache cache) {
+		this.editListCache = cache;
+	}
+
 	// An special edit which acts as a sentinel value by marking the end the
 	// list of edits
 	private final static Edit END_EDIT = new Edit(Integer.MAX_VALUE,
@@ -98,6 +115,38 @@ public MergeAlgorithm(DiffAlgorithm diff) {
 	 */
 	public <S extends Sequence> MergeResult<S> merge(
 			SequenceComparator<S> cmp, S base, S ours, S theirs) {
+		return merge(cmp, base, ours, theirs, null, null, null);
+	}
+
+	/**
+	 * Does the three way merge between a common base and two blobs.
+	 * <p>
+	 * The ids of the blobs are used to look up and store the edits from the
+	 * base to each side in the cache set by
+	 * {@link #setEditListCache(EditListCache)}.
+	 *
+	 * @param <S>
+	 *            type of sequence.
+	 * @param cmp
+	 *            comparison method for this execution.
+	 * @param base
+	 *            the common base sequence
+	 * @param ours
+	 *            the first sequence to be merged
+	 * @param theirs
+	 *            the second sequence to be merged
+	 * @param baseId
+	 *            blob of the common base, or null if not known.
+	 * @param oursId
+	 *            blob of the first sequence, or null if not known.
+	 * @param theirsId
+	 *            blob of the second sequence, or null if not known.
+	 * @return the resulting content
+	 * @since 4.7
+	 */
+	public <S extends Sequence> MergeResult<S> merge(
+			SequenceComparator<S> cmp, S base, S ours, S theirs,
+			AnyObjectId baseId, AnyObjectId oursId, AnyObjectId theirsId) {
 		List<S> sequences = new ArrayList<S>(3);
 		sequences.add(base);
 		sequences.add(ours);
@@ -106,7 +155,7 @@ public <S extends Sequence> MergeResult<S> merge(
 
 		if (ours.size() == 0) {
 			if (theirs.size() != 0) {
-				EditList theirsEdits = diffAlg.diff(cmp, base, theirs);
+				EditList theirsEdits = diff(cmp, base, theirs, baseId, theirsId);
 				if (!theirsEdits.isEmpty()) {
 					// we deleted, they modified -> Let their complete content
 					// conflict with empty text
@@ -121,7 +170,7 @@ public <S extends Sequence> MergeResult<S> merge(
 				result.add(1, 0, 0, ConflictState.NO_CONFLICT);
 			return result;
 		} else if (theirs.size() == 0) {
-			EditList oursEdits = diffAlg.diff(cmp, base, ours);
+			EditList oursEdits = diff(cmp, base, ours, baseId, oursId);
 			if (!oursEdits.isEmpty()) {
 				// we modified, they deleted -> Let our complete content
 				// conflict with empty text
@@ -134,9 +183,9 @@ public <S extends Sequence> MergeResult<S> merge(
 			return result;
 		}
 
-		EditList oursEdits = diffAlg.diff(cmp, base, ours);
+		EditList oursEdits = diff(cmp, base, ours, baseId, oursId);
 		Iterator<Edit> baseToOurs = oursEdits.iterator();
-		EditList theirsEdits = diffAlg.diff(cmp, base, theirs);
+		EditList theirsEdits = diff(cmp, base, theirs, baseId, theirsId);
 		Iterator<Edit> baseToTheirs = theirsEdits.iterator();
 		int current = 0; // points to the next line (first line is 0) of base
 		                 // which was not handled yet
@@ -304,6 +353,20 @@ public <S extends Sequence> MergeResult<S> merge(
 		return result;
 	}
 
+	private <S extends Sequence> EditList diff(SequenceComparator<S> cmp,
+			S a, S b, AnyObjectId aId, AnyObjectId bId) {
+		if (editListCache == null || aId == null || bId == null)
+			return diffAlg.diff(cmp, a, b);
+
+		EditListCache.Key key = new EditListCache.Key(aId, bId, diffAlg, cmp);
+		EditList edits = editListCache.get(key);
+		if (edits == null) {
+			edits = diffAlg.diff(cmp, a, b);
+			editListCache.put(key, edits);
+		}
+		return edits;
+	}
+
 	/**
 	 * Helper method which returns the next Edit for an Iterator over Edits.
 	 * When there are no more edits left this method will return the constant
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.revwalk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.Bitmap;
+import org.eclipse.jgit.lib.BitmapIndex.BitmapBuilder;
+import org.eclipse.jgit.lib.BitmapObject;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+
+/**
+ * Answers reachability queries between commits using pack bitmaps.
+ * <p>
+ * The set of objects reachable from each tip asked about is computed once,
+ * from the bitmap of the nearest commits that have one, and kept for later
+ * queries. This makes it cheap to ask which of many refs contain a commit, or
+ * to ask the same for many commits.
+ * <p>
+ * The index reflects the bitmaps of the pack it was created from. It is meant
+ * for a batch of queries and should be recreated when the repository is
+ * repacked. This class is not thread-safe.
+ *
+ * @since 4.7
+ */
+public class BitmapReachabilityIndex implements AutoCloseable {
+	/** Default number of tips whose reachable objects are kept. */
+	public static final int DEFAULT_CACHE_SIZE = 256;
+
+	private final RevWalk walk;
+
+	private final BitmapIndex bitmapIndex;
+
+	private final LinkedHashMap<ObjectId, BitmapBuilder> reachable;
+
+	private int maxTips = DEFAULT_CACHE_SIZE;
+
+	/**
+	 * Create an index if the repository has pack bitmaps.
+	 *
+	 * @param reader
+	 *            reader to access the repository with. A new reader is created
+	 *            from it, so the caller may close it independently.
+	 * @return the index; null if the repository has no pack bitmaps.
+	 * @throws IOException
+	 *             the bitmaps cannot be read.
+	 */
+	public static BitmapReachabilityIndex create(ObjectReader reader)
+			throws IOException {
+		ObjectReader r = reader.newReader();
+		BitmapIndex bitmapIndex = r.getBitmapIndex();
+		if (bitmapIndex == null) {
+			r.close();
+			return null;
+		}
+		return new BitmapReachabilityIndex(new RevWalk(r), bitmapIndex);
+	}
+
+	private BitmapReachabilityIndex(RevWalk walk, BitmapIndex bitmapIndex) {
+		this.walk = walk;
+		this.walk.setRetainBody(false);
+		this.bitmapIndex = bitmapIndex;
+		this.reachable = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Set the number of tips whose reachable objects are kept.
+	 *
+	 * @param count
+	 *            number of tips. The least recently used tips are dropped
+	 *            when this is exceeded.
+	 */
+	public void setCacheSize(int count) {
+		maxTips = count;
+		trim();
+	}
+
+	/**
+	 * Determine if a commit is reachable from a tip.
+	 *
+	 * @param commit
+	 *            the commit to look for.
+	 * @param tip
+	 *            the commit to start from.
+	 * @return true if {@code commit} is {@code tip} or one of its ancestors.
+	 * @throws MissingObjectException
+	 *             {@code tip} or one of its ancestors does not exist.
+	 * @throws IncorrectObjectTypeException
+	 *             {@code tip} is not a commit.
+	 * @throws IOException
+	 *             the repository cannot be read.
+	 */
+	public boolean isReachable(AnyObjectId commit, AnyObjectId tip)
+			throws MissingObjectException, IncorrectObjectTypeException,
+			IOException {
+		return getReachable(tip).contains(commit);
+	}
+
+	/**
+	 * Find the refs that contain a commit.
+	 * <p>
+	 * Refs that do not peel to a commit are skipped.
+	 *
+	 * @param commit
+	 *            the commit to look for.
+	 * @param refs
+	 *            the refs to test.
+	 * @return the refs whose commit is {@code commit} or one of its
+	 *         descendants, in the order of {@code refs}.
+	 * @throws IOException
+	 *             the repository cannot be read.
+	 */
+	public List<Ref> findRefsContaining(AnyObjectId commit,
+			Collection<Ref> refs) throws IOException {
+		List<Ref> result = new ArrayList<>();
+		for (Ref ref : refs) {
+			RevCommit tip = peelToCommit(ref);
+			if (tip != null && getReachable(tip).contains(commit))
+				result.add(ref);
+		}
+		return result;
+	}
+
+	/**
+	 * Count the commits reachable from one commit but not from another.
+	 *
+	 * @param start
+	 *            the commit to count from.
+	 * @param end
+	 *            the commit whose ancestors are not counted.
+	 * @return the number of commits that are {@code start} or one of its
+	 *         ancestors, and are neither {@code end} nor one of its
+	 *         ancestors.
+	 * @throws IOException
+	 *             the repository cannot be read.
+	 */
+	public int count(AnyObjectId start, AnyObjectId end) throws IOException {
+		BitmapBuilder b = bitmapIndex.newBitmapBuilder();
+		b.or(getReachable(start)).andNot(getReachable(end));
+		int n = 0;
+		for (BitmapObject obj : b) {
+			if (obj.getType() == Constants.OBJ_COMMIT)
+				n++;
+		}
+		return n;
+	}
+
+	@Override
+	public void close() {
+		walk.close();
+		reachable.clear();
+	}
+
+	private RevCommit peelToCommit(Ref ref) throws IOException {
+		ObjectId id = ref.getObjectId();
+		if (id == null)
+			return null;
+		RevObject obj = walk.peel(walk.parseAny(id));
+		return obj instanceof RevCommit ? (RevCommit) obj : null;
+	}
+
+	private BitmapBuilder getReachable(AnyObjectId tip) throws IOException {
+		BitmapBuilder b = reachable.get(tip);
+		if (b != null)
+			return b;
+
+		b = bitmapIndex.newBitmapBuilder();
+		Bitmap bitmap = bitmapIndex.getBitmap(tip);
+		if (bitmap != null) {
+			b.or(bitmap);
+		} else {
+			// Walk back to the commits covered by bitmaps.
+			walk.reset();
+			walk.setRevFilter(new AddToBitmapFilter(b));
+			walk.markStart(walk.parseCommit(tip));
+			while (walk.next() != null) {
+				// The filter adds the commits to the bitmap.
+			}
+			walk.reset();
+		}
+		reachable.put(tip.copy(), b);
+		trim();
+		return b;
+	}
+
+	private void trim() {
+		Iterator<BitmapBuilder> itr = reachable.values().iterator();
+		while (maxTips < reachable.size()) {
+			itr.next();
+			itr.remove();
+		}
+	}
+
+	/**
+	 * Adds walked commits to a bitmap, stopping at commits whose reachable
+	 * objects are already known.
+	 */
+	private class AddToBitmapFilter extends RevFilter {
+		private final BitmapBuilder bitmap;
+
+		AddToBitmapFilter(BitmapBuilder bitmap) {
+			this.bitmap = bitmap;
+		}
+
+		@Override
+		public boolean include(RevWalk w, RevCommit c) {
+			Bitmap known;
+			if (bitmap.contains(c)) {
+				// Already included.
+			} else if ((known = reachable.get(c)) != null
+					|| (known = bitmapIndex.getBitmap(c)) != null) {
+				bitmap.or(known);
+			} else {
+				bitmap.addObject(c, Constants.OBJ_COMMIT);
+				return true;
+			}
+
+			for (RevCommit p : c.getParents())
+				p.add(RevFlag.SEEN);
+			return false;
+		}
+
+		@Override
+		public RevFilter clone() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean requiresCommitBody() {
+			return false;
+		}
+	}
+}
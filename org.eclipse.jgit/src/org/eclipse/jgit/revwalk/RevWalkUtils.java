@@ -134,7 +134,8 @@ public static List<RevCommit> find(final RevWalk walk,
 	 * Note that this method calls {@link RevWalk#reset()} at the beginning.
 	 * <p>
 	 * In order to improve performance this method assumes clock skew among
-	 * committers is never larger than 24 hours.
+	 * committers is never larger than 24 hours. If the repository has pack
+	 * bitmaps they are used instead of walking the history of each branch.
 	 *
 	 * @param commit
 	 *            the commit we are looking at
@@ -159,20 +160,28 @@ public static List<Ref> findBranchesReachableFrom(RevCommit commit,
 
 		final int SKEW = 24*3600; // one day clock skew
 
-		for (Ref ref : refs) {
-			RevObject maybehead = revWalk.parseAny(ref.getObjectId());
-			if (!(maybehead instanceof RevCommit))
-				continue;
-			RevCommit headCommit = (RevCommit) maybehead;
+		BitmapReachabilityIndex bitmaps = BitmapReachabilityIndex
+				.create(revWalk.getObjectReader());
+		try {
+			for (Ref ref : refs) {
+				RevObject maybehead = revWalk.parseAny(ref.getObjectId());
+				if (!(maybehead instanceof RevCommit))
+					continue;
+				RevCommit headCommit = (RevCommit) maybehead;
 
-			// if commit is in the ref branch, then the tip of ref should be
-			// newer than the commit we are looking for. Allow for a large
-			// clock skew.
-			if (headCommit.getCommitTime() + SKEW < commit.getCommitTime())
-				continue;
+				// if commit is in the ref branch, then the tip of ref should
+				// be newer than the commit we are looking for. Allow for a
+				// large clock skew.
+				if (headCommit.getCommitTime() + SKEW < commit.getCommitTime())
+					continue;
 
-			if (revWalk.isMergedInto(commit, headCommit))
-				result.add(ref);
+				if (bitmaps != null ? bitmaps.isReachable(commit, headCommit)
+						: revWalk.isMergedInto(commit, headCommit))
+					result.add(ref);
+			}
+		} finally {
+			if (bitmaps != null)
+				bitmaps.close();
 		}
 		return result;
 	}
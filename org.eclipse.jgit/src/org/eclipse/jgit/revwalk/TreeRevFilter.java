@@ -45,6 +45,8 @@
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 import org.eclipse.jgit.diff.DiffConfig;
 import org.eclipse.jgit.diff.DiffEntry;
@@ -54,8 +56,11 @@
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.StopWalkException;
+import org.eclipse.jgit.lib.ChangedPathIndex;
+import org.eclipse.jgit.lib.MutableObjectId;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeEntryCache;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
@@ -63,7 +68,13 @@
  * Filter applying a {@link TreeFilter} against changed paths in each commit.
  * <p>
  * Each commit is differenced concurrently against all of its parents to look
- * for tree entries that are interesting to the {@link TreeFilter}.
+ * for tree entries that are interesting to the {@link TreeFilter}. If the
+ * repository has a {@link ChangedPathIndex} and the filter reports the paths it
+ * is limited to, commits with a single parent that did not change any of those
+ * paths are skipped without reading their trees. Otherwise those paths are
+ * first looked up in the trees of such a commit and its parent through a
+ * {@link TreeEntryCache}, which only parses the subtrees not seen in earlier
+ * commits; the trees are only compared if one of the paths differs.
  *
  * @since 3.5
  */
@@ -75,6 +86,20 @@ public class TreeRevFilter extends RevFilter {
 	private final int rewriteFlag;
 	private final TreeWalk pathFilter;
 
+	private ChangedPathIndex changedPathIndex;
+
+	private boolean changedPathIndexLoaded;
+
+	private TreeFilter changedPathsFilter;
+
+	private Set<byte[]> changedPaths;
+
+	private final TreeEntryCache treeEntries = new TreeEntryCache();
+
+	private final MutableObjectId parentId = new MutableObjectId();
+
+	private final MutableObjectId childId = new MutableObjectId();
+
 	/**
 	 * Create a {@link RevFilter} from a {@link TreeFilter}.
 	 *
@@ -135,6 +160,14 @@ public boolean include(final RevWalk walker, final RevCommit c)
 		final RevCommit[] pList = c.parents;
 		final int nParents = pList.length;
 		final TreeWalk tw = pathFilter;
+		if (nParents == 1 && !mayHaveChanged(walker, c)) {
+			// The index proves none of our paths differ from the parent,
+			// so our tree is effectively the same as our parent tree.
+			//
+			c.flags |= rewriteFlag;
+			return false;
+		}
+
 		final ObjectId[] trees = new ObjectId[nParents + 1];
 		for (int i = 0; i < nParents; i++) {
 			final RevCommit p = c.parents[i];
@@ -143,6 +176,14 @@ public boolean include(final RevWalk walker, final RevCommit c)
 			trees[i] = p.getTree();
 		}
 		trees[nParents] = c.getTree();
+
+		if (nParents == 1 && !pathsDiffer(walker, trees[0], trees[1])) {
+			// None of our paths differ from the parent, the entries are
+			// the same objects.
+			//
+			c.flags |= rewriteFlag;
+			return false;
+		}
 		tw.reset(trees);
 
 		if (nParents == 1) {
@@ -260,6 +301,46 @@ public boolean include(final RevWalk walker, final RevCommit c)
 		return false;
 	}
 
+	private boolean mayHaveChanged(RevWalk walker, RevCommit c)
+			throws IOException {
+		if (!changedPathIndexLoaded) {
+			changedPathIndex = walker.reader.getChangedPathIndex();
+			changedPathIndexLoaded = true;
+		}
+		if (changedPathIndex == null)
+			return true;
+
+		Set<byte[]> paths = getChangedPaths();
+		return paths == null || changedPathIndex.mayHaveChanged(c, paths);
+	}
+
+	private boolean pathsDiffer(RevWalk walker, ObjectId parentTree,
+			ObjectId tree) throws IOException {
+		Set<byte[]> paths = getChangedPaths();
+		if (paths == null)
+			return true;
+		for (byte[] path : paths) {
+			int pMode = treeEntries.findEntry(walker.reader, parentTree, path,
+					parentId);
+			int mode = treeEntries.findEntry(walker.reader, tree, path,
+					childId);
+			if (pMode != mode || (mode != 0 && !parentId.equals(childId)))
+				return true;
+		}
+		return false;
+	}
+
+	private Set<byte[]> getChangedPaths() {
+		// A FollowFilter is replaced after each rename.
+		TreeFilter f = pathFilter.getFilter();
+		if (f != changedPathsFilter) {
+			Optional<Set<byte[]>> paths = f.getChangedPathsBestEffort();
+			changedPaths = paths.isPresent() ? paths.get() : null;
+			changedPathsFilter = f;
+		}
+		return changedPaths;
+	}
+
 	@Override
 	public boolean requiresCommitBody() {
 		return false;
@@ -212,6 +212,25 @@ public class PackConfig {
 	 */
 	public static final int DEFAULT_BITMAP_INACTIVE_BRANCH_AGE_IN_DAYS = 90;
 
+	/**
+	 * Default setting for whether inactive branches only get a bitmap at
+	 * their tip commit. Only affects bitmap processing if bitmaps are enabled
+	 * and the "excessive branch count" has been exceeded: {@value}
+	 *
+	 * @see #setBitmapInactiveBranchTipsOnly(boolean)
+	 * @since 4.7
+	 */
+	public static final boolean DEFAULT_BITMAP_INACTIVE_BRANCH_TIPS_ONLY = false;
+
+	/**
+	 * Default setting for whether threaded delta search balances work between
+	 * threads by work stealing on a fork/join pool: {@value}
+	 *
+	 * @see #setDeltaSearchWorkStealing(boolean)
+	 * @since 4.7
+	 */
+	public static final boolean DEFAULT_DELTA_SEARCH_WORK_STEALING = false;
+
 	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
 
 	private boolean reuseDeltas = DEFAULT_REUSE_DELTAS;
@@ -242,6 +261,10 @@ public class PackConfig {
 
 	private Executor executor;
 
+	private boolean deltaSearchWorkStealing = DEFAULT_DELTA_SEARCH_WORK_STEALING;
+
+	private int deflateThreads;
+
 	private int indexVersion = DEFAULT_INDEX_VERSION;
 
 	private boolean buildBitmaps = DEFAULT_BUILD_BITMAPS;
@@ -258,6 +281,8 @@ public class PackConfig {
 
 	private int bitmapInactiveBranchAgeInDays = DEFAULT_BITMAP_INACTIVE_BRANCH_AGE_IN_DAYS;
 
+	private boolean bitmapInactiveBranchTipsOnly = DEFAULT_BITMAP_INACTIVE_BRANCH_TIPS_ONLY;
+
 	private boolean cutDeltaChains;
 
 	/** Create a default configuration. */
@@ -311,6 +336,8 @@ public PackConfig(PackConfig cfg) {
 		this.bigFileThreshold = cfg.bigFileThreshold;
 		this.threads = cfg.threads;
 		this.executor = cfg.executor;
+		this.deltaSearchWorkStealing = cfg.deltaSearchWorkStealing;
+		this.deflateThreads = cfg.deflateThreads;
 		this.indexVersion = cfg.indexVersion;
 		this.buildBitmaps = cfg.buildBitmaps;
 		this.bitmapContiguousCommitCount = cfg.bitmapContiguousCommitCount;
@@ -319,6 +346,7 @@ public PackConfig(PackConfig cfg) {
 		this.bitmapDistantCommitSpan = cfg.bitmapDistantCommitSpan;
 		this.bitmapExcessiveBranchCount = cfg.bitmapExcessiveBranchCount;
 		this.bitmapInactiveBranchAgeInDays = cfg.bitmapInactiveBranchAgeInDays;
+		this.bitmapInactiveBranchTipsOnly = cfg.bitmapInactiveBranchTipsOnly;
 		this.cutDeltaChains = cfg.cutDeltaChains;
 	}
 
@@ -779,6 +807,80 @@ public void setExecutor(Executor executor) {
 		this.executor = executor;
 	}
 
+	/**
+	 * Check whether threaded delta search uses work stealing.
+	 *
+	 * Default setting: {@value #DEFAULT_DELTA_SEARCH_WORK_STEALING}
+	 *
+	 * @return true if threaded delta search runs on a fork/join pool that
+	 *         balances work between threads by stealing.
+	 * @since 4.7
+	 */
+	public boolean isDeltaSearchWorkStealing() {
+		return deltaSearchWorkStealing;
+	}
+
+	/**
+	 * Set whether threaded delta search uses work stealing.
+	 *
+	 * When enabled the objects to search are recursively split on path
+	 * boundaries into small tasks scheduled on a
+	 * {@link java.util.concurrent.ForkJoinPool}, and idle threads steal
+	 * pending tasks from busy ones. Each thread gets its own share of
+	 * {@link #getDeltaCacheSize()}. This keeps all threads busy when object
+	 * sizes are very uneven, at the cost of a slightly smaller delta cache per
+	 * thread.
+	 *
+	 * If {@link #getExecutor()} is a {@code ForkJoinPool} it is used,
+	 * otherwise a temporary pool of {@link #getThreads()} threads is created.
+	 *
+	 * Default setting: {@value #DEFAULT_DELTA_SEARCH_WORK_STEALING}
+	 *
+	 * @param workStealing
+	 *            true to use work stealing during threaded delta search.
+	 * @since 4.7
+	 */
+	public void setDeltaSearchWorkStealing(boolean workStealing) {
+		deltaSearchWorkStealing = workStealing;
+	}
+
+	/**
+	 * Get the number of threads used to compress objects while writing.
+	 *
+	 * Default setting: 0 (objects are compressed by the writing thread)
+	 *
+	 * @return number of threads compressing objects ahead of the writer. 0 or
+	 *         1 compresses objects on the thread writing the pack.
+	 * @since 4.7
+	 */
+	public int getDeflateThreads() {
+		return deflateThreads;
+	}
+
+	/**
+	 * Set the number of threads used to compress objects while writing.
+	 *
+	 * Objects that cannot be copied from an existing pack must be compressed
+	 * before they are written. When more than one thread is configured, the
+	 * writer reads and compresses upcoming whole objects on a thread pool
+	 * into bounded buffers, and writes them to the output stream in order.
+	 * This speeds up writing packs with little reusable data, such as the
+	 * first repack of a large import.
+	 *
+	 * If {@link #getExecutor()} is an {@code ExecutorService} it is used,
+	 * otherwise a temporary pool is created for the duration of the write.
+	 *
+	 * Default setting: 0 (objects are compressed by the writing thread)
+	 *
+	 * @param threads
+	 *            number of threads to compress objects on. If &lt;= 1 objects
+	 *            are compressed by the thread writing the pack.
+	 * @since 4.7
+	 */
+	public void setDeflateThreads(int threads) {
+		deflateThreads = threads;
+	}
+
 	/**
 	 * Get the pack index file format version this instance creates.
 	 *
@@ -991,6 +1093,39 @@ public void setBitmapInactiveBranchAgeInDays(int ageInDays) {
 		bitmapInactiveBranchAgeInDays = ageInDays;
 	}
 
+	/**
+	 * True if inactive branches only get a bitmap at their tip commit.
+	 *
+	 * Default setting: {@value #DEFAULT_BITMAP_INACTIVE_BRANCH_TIPS_ONLY}
+	 *
+	 * @return true if the history of inactive branches is not walked to
+	 *         select bitmap commits.
+	 * @since 4.7
+	 */
+	public boolean isBitmapInactiveBranchTipsOnly() {
+		return bitmapInactiveBranchTipsOnly;
+	}
+
+	/**
+	 * Set whether inactive branches only get a bitmap at their tip commit.
+	 * <p>
+	 * When the count of branches exceeds the "excessive branch count", the
+	 * history of branches whose tip is older than the inactive branch age is
+	 * not walked during commit selection. If the previous bitmap index already
+	 * has a bitmap for such a tip it is carried over unchanged, otherwise a
+	 * single bitmap is built for the tip. Repositories with many stale refs
+	 * then spend bitmap preparation time on recently updated branches only.
+	 *
+	 * Default setting: {@value #DEFAULT_BITMAP_INACTIVE_BRANCH_TIPS_ONLY}
+	 *
+	 * @param tipsOnly
+	 *            true to only select the tip commit of inactive branches.
+	 * @since 4.7
+	 */
+	public void setBitmapInactiveBranchTipsOnly(boolean tipsOnly) {
+		bitmapInactiveBranchTipsOnly = tipsOnly;
+	}
+
 	/**
 	 * Update properties by setting fields from the configuration.
 	 *
@@ -1016,6 +1151,10 @@ public void fromConfig(final Config rc) {
 		setBigFileThreshold(rc.getInt(
 				"core", "bigfilethreshold", getBigFileThreshold())); //$NON-NLS-1$ //$NON-NLS-2$
 		setThreads(rc.getInt("pack", "threads", getThreads())); //$NON-NLS-1$ //$NON-NLS-2$
+		setDeltaSearchWorkStealing(rc.getBoolean("pack", "workstealing", //$NON-NLS-1$ //$NON-NLS-2$
+				isDeltaSearchWorkStealing()));
+		setDeflateThreads(rc.getInt("pack", "deflatethreads", //$NON-NLS-1$ //$NON-NLS-2$
+				getDeflateThreads()));
 
 		// These variables aren't standardized
 		//
@@ -1042,6 +1181,9 @@ public void fromConfig(final Config rc) {
 		setBitmapInactiveBranchAgeInDays(
 				rc.getInt("pack", "bitmapinactivebranchageindays", //$NON-NLS-1$ //$NON-NLS-2$
 						getBitmapInactiveBranchAgeInDays()));
+		setBitmapInactiveBranchTipsOnly(
+				rc.getBoolean("pack", "bitmapinactivebranchtipsonly", //$NON-NLS-1$ //$NON-NLS-2$
+						isBitmapInactiveBranchTipsOnly()));
 	}
 
 	public String toString() {
@@ -1056,6 +1198,9 @@ public String toString() {
 		b.append(", indexVersion=").append(getIndexVersion()); //$NON-NLS-1$
 		b.append(", bigFileThreshold=").append(getBigFileThreshold()); //$NON-NLS-1$
 		b.append(", threads=").append(getThreads()); //$NON-NLS-1$
+		b.append(", deltaSearchWorkStealing=") //$NON-NLS-1$
+				.append(isDeltaSearchWorkStealing());
+		b.append(", deflateThreads=").append(getDeflateThreads()); //$NON-NLS-1$
 		b.append(", reuseDeltas=").append(isReuseDeltas()); //$NON-NLS-1$
 		b.append(", reuseObjects=").append(isReuseObjects()); //$NON-NLS-1$
 		b.append(", deltaCompress=").append(isDeltaCompress()); //$NON-NLS-1$
@@ -1072,6 +1217,8 @@ public String toString() {
 				.append(getBitmapExcessiveBranchCount());
 		b.append(", bitmapInactiveBranchAge=") //$NON-NLS-1$
 				.append(getBitmapInactiveBranchAgeInDays());
+		b.append(", bitmapInactiveBranchTipsOnly=") //$NON-NLS-1$
+				.append(isBitmapInactiveBranchTipsOnly());
 		return b.toString();
 	}
 }
@@ -236,6 +236,14 @@ public static class Accumulator {
 		/** Time in ms spent writing the pack. */
 		public long timeWriting;
 
+		/**
+		 * Time in ms each thread spent searching for deltas, if the search
+		 * used work stealing; otherwise null.
+		 *
+		 * @since 4.7
+		 */
+		public long[] deltaSearchThreadTimes;
+
 		/**
 		 * Statistics about each object type in the pack (commits, tags, trees
 		 * and blobs.)
@@ -451,6 +459,36 @@ public long getTimeWriting() {
 		return statistics.timeWriting;
 	}
 
+	/**
+	 * @return time in milliseconds each thread spent searching for deltas, or
+	 *         null if the search did not run on a work stealing pool. Comparing
+	 *         these to {@link #getTimeCompressing()} shows how well the
+	 *         threads were utilized.
+	 * @since 4.7
+	 */
+	public long[] getDeltaSearchThreadTimes() {
+		return statistics.deltaSearchThreadTimes;
+	}
+
+	/**
+	 * @return fraction of the available thread time, between 0 and 1, spent
+	 *         searching for deltas; or 0 if the search did not run on a work
+	 *         stealing pool.
+	 * @since 4.7
+	 */
+	public double getDeltaSearchThreadUtilization() {
+		long[] times = statistics.deltaSearchThreadTimes;
+		if (times == null || times.length == 0
+				|| statistics.timeCompressing <= 0)
+			return 0;
+		long busy = 0;
+		for (long t : times)
+			busy += t;
+		double u = busy
+				/ ((double) times.length * statistics.timeCompressing);
+		return Math.min(1, u);
+	}
+
 	/** @return total time spent processing this pack. */
 	public long getTimeTotal() {
 		return statistics.timeCounting + statistics.timeSearchingForReuse
@@ -51,7 +51,16 @@
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
@@ -64,6 +73,11 @@
  * <p>
  * This iterator uses the standard <code>java.io</code> package to read the
  * specified working directory as part of a {@link TreeWalk}.
+ * <p>
+ * Each directory is listed once with a {@link DirectoryStream}, and the
+ * attributes of every entry are read with a single call while listing. All
+ * later checks of an entry, e.g. by {@link #isModified(DirCacheEntry, boolean,
+ * ObjectReader)}, reuse these attributes.
  */
 public class FileTreeIterator extends WorkingTreeIterator {
 	/**
@@ -87,6 +101,9 @@ public class FileTreeIterator extends WorkingTreeIterator {
 	 */
 	protected final FileModeStrategy fileModeStrategy;
 
+	/** Counts shared by this iterator and its subtree iterators. */
+	private final ReadCounts counts;
+
 	/**
 	 * Create a new iterator to traverse the work tree and its children.
 	 *
@@ -157,6 +174,7 @@ public FileTreeIterator(final File root, FS fs, WorkingTreeOptions options,
 		directory = root;
 		this.fs = fs;
 		this.fileModeStrategy = fileModeStrategy;
+		this.counts = new ReadCounts();
 		init(entries());
 	}
 
@@ -224,6 +242,9 @@ protected FileTreeIterator(final WorkingTreeIterator p, final File root,
 		directory = root;
 		this.fs = fs;
 		this.fileModeStrategy = fileModeStrategy;
+		this.counts = p instanceof FileTreeIterator
+				? ((FileTreeIterator) p).counts
+				: new ReadCounts();
 		init(entries());
 	}
 
@@ -234,13 +255,74 @@ public AbstractTreeIterator createSubtreeIterator(final ObjectReader reader)
 	}
 
 	private Entry[] entries() {
-		final File[] all = directory.listFiles();
-		if (all == null)
+		final String[] names = getCachedEntryNames();
+		if (names != null)
+			return entries(names);
+		final List<Entry> r = new ArrayList<>();
+		counts.directories.incrementAndGet();
+		try (DirectoryStream<Path> all = Files
+				.newDirectoryStream(directory.toPath())) {
+			for (Path p : all)
+				r.add(newEntry(p.toFile(), p));
+		} catch (IOException | DirectoryIteratorException e) {
+			// Like File.listFiles(), treat an unreadable directory as empty.
 			return EOF;
-		final Entry[] r = new Entry[all.length];
-		for (int i = 0; i < r.length; i++)
-			r[i] = new FileEntry(all[i], fs, fileModeStrategy);
-		return r;
+		}
+		return r.toArray(new Entry[r.size()]);
+	}
+
+	private Entry[] entries(String[] names) {
+		final List<Entry> r = new ArrayList<>(names.length);
+		for (String name : names) {
+			FileEntry e = newEntry(new File(directory, name), null);
+			FS.Attributes a = e.getAttributes();
+			if (a.isDirectory() || a.isRegularFile() || a.isSymbolicLink())
+				r.add(e);
+		}
+		return r.toArray(new Entry[r.size()]);
+	}
+
+	private FileEntry newEntry(File f, Path p) {
+		File normalized = fs.normalize(f);
+		FS.Attributes a;
+		if (p != null && normalized.equals(f))
+			a = fs.getAttributes(p);
+		else
+			a = fs.getAttributes(normalized);
+		counts.attributes.incrementAndGet();
+		return new FileEntry(normalized, a, fs, fileModeStrategy);
+	}
+
+	/**
+	 * Get the number of directories listed by this iterator and the subtree
+	 * iterators created from it.
+	 *
+	 * @return number of directory reads.
+	 * @since 4.7
+	 */
+	public long getDirectoryReadCount() {
+		return counts.directories.get();
+	}
+
+	/**
+	 * Get the number of file attribute reads done by this iterator and the
+	 * subtree iterators created from it.
+	 * <p>
+	 * Each read is one call to {@link FS#getAttributes(File)}. Every entry
+	 * found while listing a directory takes exactly one read, checks of the
+	 * entry later on reuse its attributes.
+	 *
+	 * @return number of attribute reads.
+	 * @since 4.7
+	 */
+	public long getAttributeReadCount() {
+		return counts.attributes.get();
+	}
+
+	private static final class ReadCounts {
+		final AtomicLong directories = new AtomicLong();
+
+		final AtomicLong attributes = new AtomicLong();
 	}
 
 	/**
@@ -366,6 +448,13 @@ public FileEntry(File f, FS fs, FileModeStrategy fileModeStrategy) {
 			mode = fileModeStrategy.getMode(f, attributes);
 		}
 
+		FileEntry(File f, FS.Attributes attributes, FS fs,
+				FileModeStrategy fileModeStrategy) {
+			this.fs = fs;
+			this.attributes = attributes;
+			mode = fileModeStrategy.getMode(f, attributes);
+		}
+
 		@Override
 		public FileMode getMode() {
 			return mode;
@@ -386,9 +475,14 @@ public long getLastModified() {
 			return attributes.getLastModifiedTime();
 		}
 
+		@Override
+		public Instant getLastModifiedInstant() {
+			return attributes.getLastModifiedInstant();
+		}
+
 		@Override
 		public InputStream openInputStream() throws IOException {
-			if (fs.isSymLink(getFile()))
+			if (attributes.isSymbolicLink())
 				return new ByteArrayInputStream(fs.readSymLink(getFile())
 						.getBytes(
 						Constants.CHARACTER_ENCODING));
@@ -404,6 +498,10 @@ public InputStream openInputStream() throws IOException {
 		public File getFile() {
 			return attributes.getFile();
 		}
+
+		FS.Attributes getAttributes() {
+			return attributes;
+		}
 	}
 
 	/**
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.treewalk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * Persistent cache of the content ids of working tree files.
+ * <p>
+ * Computing the id of a file requires reading it, and running it through the
+ * clean filter and the line ending conversion. A {@link WorkingTreeIterator}
+ * has to do that whenever the index cannot tell a file is clean, e.g. when an
+ * entry is racily clean or its timestamp changed without a content change.
+ * The cache remembers the id computed for a file together with its size,
+ * modification time in nanoseconds, file key (the inode on POSIX systems) and
+ * the filters applied, so an unchanged file is hashed only once.
+ * <p>
+ * Like the index, the cache must not trust a file modified too recently, as
+ * it may still be modified within the same timestamp. Such files are not
+ * recorded.
+ * <p>
+ * The cache is stored in {@code $GIT_DIR/stat-cache} and is enabled by
+ * {@code core.statCache}. Entries not used for {@link #MAX_UNUSED_WRITES}
+ * writes of the cache are dropped.
+ *
+ * @since 4.7
+ */
+public class StatCache {
+	/** Number of writes an entry is kept without being used. */
+	public static final int MAX_UNUSED_WRITES = 16;
+
+	private static final String FILE_NAME = "stat-cache"; //$NON-NLS-1$
+
+	private static final byte[] SIGNATURE = { 'S', 'T', 'A', 'T' };
+
+	private static final int VERSION = 1;
+
+	/** Files modified within this time before being hashed are racy. */
+	private static final long RACY_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(2500);
+
+	/** File attributes a cached id depends on. */
+	static final class Stat {
+		final String fileKey;
+
+		final long size;
+
+		final long lastModifiedNanos;
+
+		Stat(String fileKey, long size, long lastModifiedNanos) {
+			this.fileKey = fileKey;
+			this.size = size;
+			this.lastModifiedNanos = lastModifiedNanos;
+		}
+
+		boolean isRacy() {
+			long now = TimeUnit.MILLISECONDS
+					.toNanos(System.currentTimeMillis());
+			return now - lastModifiedNanos <= RACY_NANOS;
+		}
+	}
+
+	private static final class Entry {
+		final Stat stat;
+
+		final String filterKey;
+
+		final ObjectId id;
+
+		volatile int generation;
+
+		Entry(Stat stat, String filterKey, ObjectId id, int generation) {
+			this.stat = stat;
+			this.filterKey = filterKey;
+			this.id = id;
+			this.generation = generation;
+		}
+
+		boolean matches(Stat s, String filter) {
+			return stat.size == s.size
+					&& stat.lastModifiedNanos == s.lastModifiedNanos
+					&& stat.fileKey.equals(s.fileKey)
+					&& filterKey.equals(filter);
+		}
+	}
+
+	/**
+	 * Read the stat cache of a repository.
+	 *
+	 * @param repo
+	 *            the repository.
+	 * @return the cache; empty if the repository has none or it cannot be
+	 *         used.
+	 * @throws IOException
+	 *             the cache file exists but cannot be read.
+	 */
+	public static StatCache read(Repository repo) throws IOException {
+		StatCache cache = new StatCache(new File(repo.getDirectory(),
+				FILE_NAME));
+		try {
+			cache.parse(IO.readFully(cache.file));
+		} catch (FileNotFoundException e) {
+			// No cache yet.
+		}
+		return cache;
+	}
+
+	/**
+	 * Get the cached attributes of a file.
+	 *
+	 * @param a
+	 *            attributes read from the file system.
+	 * @return the attributes; null if the file is not a regular file.
+	 */
+	static Stat stat(FS.Attributes a) {
+		if (!a.isRegularFile())
+			return null;
+		Object key = a.getFileKey();
+		Instant modified = a.getLastModifiedInstant();
+		return new Stat(key != null ? key.toString() : "", a.getLength(), //$NON-NLS-1$
+				TimeUnit.SECONDS.toNanos(modified.getEpochSecond())
+						+ modified.getNano());
+	}
+
+	private final File file;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private int generation;
+
+	private volatile boolean dirty;
+
+	private StatCache(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Look up the id of a file.
+	 *
+	 * @param path
+	 *            path of the file in the working tree.
+	 * @param stat
+	 *            attributes of the file.
+	 * @param filterKey
+	 *            description of the filters applied to the file content.
+	 * @return the id of the file content; null if the file is not known in
+	 *         this state.
+	 */
+	ObjectId get(String path, Stat stat, String filterKey) {
+		Entry e = entries.get(path);
+		if (e == null || !e.matches(stat, filterKey))
+			return null;
+		if (generation - e.generation > MAX_UNUSED_WRITES / 2) {
+			// Refresh rarely, a lookup should not require a write.
+			e.generation = generation;
+			dirty = true;
+		}
+		return e.id;
+	}
+
+	/**
+	 * Record the id of a file.
+	 *
+	 * @param path
+	 *            path of the file in the working tree.
+	 * @param stat
+	 *            attributes of the file obtained before reading it.
+	 * @param filterKey
+	 *            description of the filters applied to the file content.
+	 * @param id
+	 *            the id of the file content.
+	 */
+	void put(String path, Stat stat, String filterKey, AnyObjectId id) {
+		if (stat.isRacy())
+			return;
+		Entry e = entries.get(path);
+		if (e != null && e.matches(stat, filterKey) && id.equals(e.id))
+			return;
+		entries.put(path, new Entry(stat, filterKey, id.copy(), generation));
+		dirty = true;
+	}
+
+	/**
+	 * @return number of files in the cache.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Write the cache back to the repository if it changed.
+	 * <p>
+	 * The cache is only an optimization, if another process is writing it at
+	 * the same time the changes are silently dropped.
+	 *
+	 * @throws IOException
+	 *             the cache cannot be written.
+	 */
+	public void write() throws IOException {
+		if (!dirty)
+			return;
+		LockFile lock = new LockFile(file);
+		if (!lock.lock())
+			return;
+		try {
+			lock.write(format());
+			if (lock.commit()) {
+				generation++;
+				dirty = false;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private byte[] format() throws IOException {
+		int next = generation + 1;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] tmp = new byte[Constants.OBJECT_ID_LENGTH];
+		out.write(SIGNATURE);
+		NB.encodeInt32(tmp, 0, VERSION);
+		NB.encodeInt32(tmp, 4, next);
+		out.write(tmp, 0, 8);
+		for (Map.Entry<String, Entry> me : entries.entrySet()) {
+			Entry e = me.getValue();
+			if (next - e.generation > MAX_UNUSED_WRITES)
+				continue;
+			writeString(out, me.getKey());
+			writeString(out, e.stat.fileKey);
+			writeString(out, e.filterKey);
+			NB.encodeInt64(tmp, 0, e.stat.size);
+			NB.encodeInt64(tmp, 8, e.stat.lastModifiedNanos);
+			NB.encodeInt32(tmp, 16, e.generation);
+			out.write(tmp, 0, 20);
+			e.id.copyRawTo(tmp, 0);
+			out.write(tmp, 0, Constants.OBJECT_ID_LENGTH);
+		}
+		MessageDigest md = Constants.newMessageDigest();
+		md.update(out.toByteArray());
+		out.write(md.digest());
+		return out.toByteArray();
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String s)
+			throws IOException {
+		out.write(Constants.encode(s));
+		out.write(0);
+	}
+
+	private void parse(byte[] buf) {
+		int end = buf.length - Constants.OBJECT_ID_LENGTH;
+		if (end < 12 || !Arrays.equals(SIGNATURE, Arrays.copyOf(buf, 4))
+				|| NB.decodeInt32(buf, 4) != VERSION)
+			return;
+		MessageDigest md = Constants.newMessageDigest();
+		md.update(buf, 0, end);
+		if (!Arrays.equals(md.digest(),
+				Arrays.copyOfRange(buf, end, buf.length)))
+			return; // A damaged cache is simply rebuilt.
+
+		int gen = NB.decodeInt32(buf, 8);
+		int p = 12;
+		while (p < end) {
+			int[] ptr = { p };
+			String path = readString(buf, ptr, end);
+			String fileKey = readString(buf, ptr, end);
+			String filterKey = readString(buf, ptr, end);
+			p = ptr[0];
+			if (filterKey == null
+					|| end - p < 20 + Constants.OBJECT_ID_LENGTH) {
+				entries.clear();
+				return;
+			}
+			Stat stat = new Stat(fileKey, NB.decodeInt64(buf, p),
+					NB.decodeInt64(buf, p + 8));
+			int used = NB.decodeInt32(buf, p + 16);
+			ObjectId id = ObjectId.fromRaw(buf, p + 20);
+			p += 20 + Constants.OBJECT_ID_LENGTH;
+			entries.put(path, new Entry(stat, filterKey, id, used));
+		}
+		generation = gen;
+	}
+
+	private static String readString(byte[] buf, int[] ptr, int end) {
+		int p = ptr[0];
+		if (p < 0)
+			return null;
+		int nul = p;
+		while (nul < end && buf[nul] != 0)
+			nul++;
+		if (nul == end) {
+			ptr[0] = -1;
+			return null;
+		}
+		ptr[0] = nul + 1;
+		return RawParseUtils.decode(buf, p, nul);
+	}
+}
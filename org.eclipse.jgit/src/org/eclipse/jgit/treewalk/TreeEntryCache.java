@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.treewalk;
+
+import static org.eclipse.jgit.lib.FileMode.TYPE_MASK;
+import static org.eclipse.jgit.lib.FileMode.TYPE_TREE;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.MutableObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+
+/**
+ * Remembers the entries found by looking up names in trees.
+ * <p>
+ * A path is resolved one component at a time, starting at the root tree. Each
+ * step is cached by the id of the tree it searched and the name it looked
+ * for, so looking up a path in a series of related trees only parses the
+ * trees that differ from those already searched. Names that are not found
+ * are cached too.
+ * <p>
+ * Trees that are not cached are searched through the
+ * {@link ObjectReader#getTreeTableCache() reader's tree table cache}, if it
+ * has one.
+ * <p>
+ * The cache holds a bounded number of steps, dropping the least recently used
+ * ones first. This class is thread-safe.
+ *
+ * @since 4.7
+ */
+public class TreeEntryCache {
+	/** Default number of entries kept by {@link #TreeEntryCache()}. */
+	public static final int DEFAULT_SIZE = 1024;
+
+	private final int maxEntries;
+
+	private final LinkedHashMap<Key, Entry> entries;
+
+	/** Create a cache holding {@link #DEFAULT_SIZE} entries. */
+	public TreeEntryCache() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param maxEntries
+	 *            number of entries to keep. The least recently used entries
+	 *            are dropped when this is exceeded.
+	 */
+	public TreeEntryCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Find a path in a tree.
+	 *
+	 * @param reader
+	 *            reader to load trees that are not cached.
+	 * @param tree
+	 *            the root tree to search.
+	 * @param path
+	 *            the raw path, with components separated by '/'.
+	 * @param id
+	 *            receives the id of the entry, if it is found.
+	 * @return the raw mode of the entry, or {@link FileMode#TYPE_MISSING} if
+	 *         the path does not exist in the tree.
+	 * @throws IOException
+	 *             a tree cannot be read.
+	 */
+	public int findEntry(ObjectReader reader, AnyObjectId tree, byte[] path,
+			MutableObjectId id) throws IOException {
+		AnyObjectId cur = tree;
+		int ptr = 0;
+		for (;;) {
+			int end = nextSlash(path, ptr);
+			Entry e = lookup(reader, cur,
+					Arrays.copyOfRange(path, ptr, end));
+			if (e.mode == FileMode.TYPE_MISSING)
+				return FileMode.TYPE_MISSING;
+			if (end == path.length) {
+				id.fromObjectId(e.id);
+				return e.mode;
+			}
+			if ((e.mode & TYPE_MASK) != TYPE_TREE)
+				return FileMode.TYPE_MISSING;
+			cur = e.id;
+			ptr = end + 1;
+		}
+	}
+
+	/** @return number of entries in the cache. */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private Entry lookup(ObjectReader reader, AnyObjectId tree, byte[] name)
+			throws IOException {
+		Key key = new Key(tree.copy(), name);
+		Entry e;
+		synchronized (this) {
+			e = entries.get(key);
+		}
+		if (e == null) {
+			e = search(reader, tree, name);
+			put(key, e);
+		}
+		return e;
+	}
+
+	private synchronized void put(Key key, Entry e) {
+		entries.put(key, e);
+		Iterator<Entry> itr = entries.values().iterator();
+		while (maxEntries < entries.size()) {
+			itr.next();
+			itr.remove();
+		}
+	}
+
+	private static Entry search(ObjectReader reader, AnyObjectId tree,
+			byte[] name) throws IOException {
+		TreeTableCache tables = reader.getTreeTableCache();
+		if (tables != null) {
+			MutableObjectId id = new MutableObjectId();
+			int mode = tables.findEntry(reader, tree, name, 0, name.length,
+					id);
+			return mode != FileMode.TYPE_MISSING ? new Entry(id.copy(), mode)
+					: Entry.MISSING;
+		}
+
+		CanonicalTreeParser p = new CanonicalTreeParser();
+		p.reset(reader, tree);
+		for (; !p.eof(); p.next(1)) {
+			int mode = p.getEntryRawMode();
+			if (p.pathCompare(name, 0, name.length, mode) == 0)
+				return new Entry(p.getEntryObjectId(), mode);
+			if (0 < p.pathCompare(name, 0, name.length, TYPE_TREE))
+				break; // Past both "name" and "name/".
+		}
+		return Entry.MISSING;
+	}
+
+	private static int nextSlash(byte[] path, int ptr) {
+		while (ptr < path.length && path[ptr] != '/')
+			ptr++;
+		return ptr;
+	}
+
+	private static final class Key {
+		final ObjectId tree;
+
+		final byte[] name;
+
+		Key(ObjectId tree, byte[] name) {
+			this.tree = tree;
+			this.name = name;
+		}
+
+		@Override
+		public int hashCode() {
+			return tree.hashCode() * 31 + Arrays.hashCode(name);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof Key) {
+				Key k = (Key) o;
+				return tree.equals(k.tree) && Arrays.equals(name, k.name);
+			}
+			return false;
+		}
+	}
+
+	private static final class Entry {
+		static final Entry MISSING = new Entry(ObjectId.zeroId(),
+				FileMode.TYPE_MISSING);
+
+		final ObjectId id;
+
+		final int mode;
+
+		Entry(ObjectId id, int mode) {
+			this.id = id;
+			this.mode = mode;
+		}
+	}
+}
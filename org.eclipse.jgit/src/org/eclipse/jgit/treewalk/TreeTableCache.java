@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.treewalk;
+
+import static org.eclipse.jgit.lib.FileMode.TYPE_MASK;
+import static org.eclipse.jgit.lib.FileMode.TYPE_TREE;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.MutableObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.util.Paths;
+
+/**
+ * Keeps the entries of recently used trees, indexed for lookup by name.
+ * <p>
+ * A tree is read and indexed once, then each name is found by a binary search
+ * of its sorted entries instead of parsing the tree again. This is most useful
+ * for the large directories near the root of a repository, which are searched
+ * by every lookup of a path below them.
+ * <p>
+ * A cache can be attached to an {@link ObjectReader} with
+ * {@link ObjectReader#setTreeTableCache(TreeTableCache)}, making
+ * {@link TreeWalk#forPath(ObjectReader, String, AnyObjectId...)} and
+ * {@link TreeEntryCache} use it. The same cache may be shared by the readers
+ * of many threads.
+ * <p>
+ * The size of the cache is bounded by the memory used by its trees, dropping
+ * the least recently used trees first. This class is thread-safe.
+ *
+ * @since 4.7
+ */
+public class TreeTableCache {
+	/** Default number of bytes used by {@link #TreeTableCache()}. */
+	public static final long DEFAULT_SIZE = 16 << 20;
+
+	private final long maxBytes;
+
+	private final LinkedHashMap<ObjectId, Table> tables;
+
+	private long bytes;
+
+	private long hits;
+
+	private long misses;
+
+	/** Create a cache using up to {@link #DEFAULT_SIZE} bytes. */
+	public TreeTableCache() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param maxBytes
+	 *            approximate number of bytes the cached trees may use. The
+	 *            least recently used trees are dropped when this is exceeded.
+	 */
+	public TreeTableCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		this.tables = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Find a path in a tree.
+	 *
+	 * @param reader
+	 *            reader to load trees that are not cached.
+	 * @param tree
+	 *            the root tree to search.
+	 * @param path
+	 *            the raw path, with components separated by '/'.
+	 * @param id
+	 *            receives the id of the entry, if it is found.
+	 * @return the raw mode of the entry, or {@link FileMode#TYPE_MISSING} if
+	 *         the path does not exist in the tree.
+	 * @throws IOException
+	 *             a tree cannot be read.
+	 */
+	public int findPath(ObjectReader reader, AnyObjectId tree, byte[] path,
+			MutableObjectId id) throws IOException {
+		AnyObjectId cur = tree;
+		int ptr = 0;
+		for (;;) {
+			int end = ptr;
+			while (end < path.length && path[end] != '/')
+				end++;
+			int mode = findEntry(reader, cur, path, ptr, end, id);
+			if (mode == FileMode.TYPE_MISSING || end == path.length)
+				return mode;
+			if ((mode & TYPE_MASK) != TYPE_TREE)
+				return FileMode.TYPE_MISSING;
+			cur = id;
+			ptr = end + 1;
+		}
+	}
+
+	/**
+	 * Find an entry of a tree.
+	 *
+	 * @param reader
+	 *            reader to load the tree if it is not cached.
+	 * @param tree
+	 *            the tree to search.
+	 * @param name
+	 *            buffer holding the name of the entry.
+	 * @param ptr
+	 *            first position of the name in {@code name}.
+	 * @param end
+	 *            one past the last position of the name in {@code name}.
+	 * @param id
+	 *            receives the id of the entry, if it is found. May be the
+	 *            same object as {@code tree}.
+	 * @return the raw mode of the entry, or {@link FileMode#TYPE_MISSING} if
+	 *         the tree has no entry of this name.
+	 * @throws IOException
+	 *             the tree cannot be read.
+	 */
+	public int findEntry(ObjectReader reader, AnyObjectId tree, byte[] name,
+			int ptr, int end, MutableObjectId id) throws IOException {
+		Table t = getTable(reader, tree);
+		int i = t.find(name, ptr, end, FileMode.TYPE_FILE);
+		if (i < 0)
+			i = t.find(name, ptr, end, TYPE_TREE);
+		if (i < 0)
+			return FileMode.TYPE_MISSING;
+		id.fromRaw(t.raw, t.nameEnd[i] + 1);
+		return t.mode[i];
+	}
+
+	/** @return number of trees in the cache. */
+	public synchronized int size() {
+		return tables.size();
+	}
+
+	/** @return approximate number of bytes used by the cached trees. */
+	public synchronized long getByteCount() {
+		return bytes;
+	}
+
+	/** @return number of lookups that found their tree in the cache. */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/** @return number of lookups that had to read and index their tree. */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return fraction of lookups that found their tree in the cache, between
+	 *         0 and 1; 0 if there were no lookups yet.
+	 */
+	public synchronized double getHitRatio() {
+		long total = hits + misses;
+		return total != 0 ? (double) hits / total : 0;
+	}
+
+	private Table getTable(ObjectReader reader, AnyObjectId tree)
+			throws IOException {
+		synchronized (this) {
+			Table t = tables.get(tree);
+			if (t != null) {
+				hits++;
+				return t;
+			}
+			misses++;
+		}
+
+		// Index outside of the lock; concurrent misses may both do this.
+		byte[] raw = reader.open(tree, Constants.OBJ_TREE).getCachedBytes();
+		Table t = Table.parse(tree, raw);
+		put(tree.copy(), t);
+		return t;
+	}
+
+	private synchronized void put(ObjectId id, Table t) {
+		if (maxBytes < t.weight())
+			return;
+
+		Table old = tables.put(id, t);
+		if (old != null)
+			bytes -= old.weight();
+		bytes += t.weight();
+
+		Iterator<Table> itr = tables.values().iterator();
+		while (maxBytes < bytes) {
+			bytes -= itr.next().weight();
+			itr.remove();
+		}
+	}
+
+	/** Entries of one tree, in the tree's own order. */
+	private static final class Table {
+		private static final int OBJECT_OVERHEAD = 64;
+
+		final byte[] raw;
+
+		final int[] nameStart;
+
+		final int[] nameEnd;
+
+		final int[] mode;
+
+		final int cnt;
+
+		private Table(byte[] raw, int[] nameStart, int[] nameEnd, int[] mode,
+				int cnt) {
+			this.raw = raw;
+			this.nameStart = nameStart;
+			this.nameEnd = nameEnd;
+			this.mode = mode;
+			this.cnt = cnt;
+		}
+
+		static Table parse(AnyObjectId id, byte[] raw)
+				throws CorruptObjectException {
+			int n = 0;
+			int[] start = new int[Math.max(4, raw.length / 32)];
+			int[] end = new int[start.length];
+			int[] mode = new int[start.length];
+
+			int ptr = 0;
+			while (ptr < raw.length) {
+				int m = 0;
+				byte c;
+				while (ptr < raw.length && (c = raw[ptr++]) != ' ')
+					m = (m << 3) + (c - '0');
+				int s = ptr;
+				while (ptr < raw.length && raw[ptr] != 0)
+					ptr++;
+				if (raw.length < ptr + 1 + Constants.OBJECT_ID_LENGTH)
+					throw new CorruptObjectException(id,
+							JGitText.get().corruptObjectInvalidTree);
+
+				if (n == start.length) {
+					start = Arrays.copyOf(start, n * 2);
+					end = Arrays.copyOf(end, n * 2);
+					mode = Arrays.copyOf(mode, n * 2);
+				}
+				start[n] = s;
+				end[n] = ptr;
+				mode[n] = m;
+				n++;
+				ptr += 1 + Constants.OBJECT_ID_LENGTH;
+			}
+			return new Table(raw, start, end, mode, n);
+		}
+
+		int find(byte[] name, int ptr, int end, int nameMode) {
+			int lo = 0;
+			int hi = cnt;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				int cmp = Paths.compare(raw, nameStart[mid], nameEnd[mid],
+						mode[mid], name, ptr, end, nameMode);
+				if (cmp < 0)
+					lo = mid + 1;
+				else if (cmp > 0)
+					hi = mid;
+				else
+					return mid;
+			}
+			return -1;
+		}
+
+		long weight() {
+			return OBJECT_OVERHEAD + raw.length + 12L * nameStart.length;
+		}
+	}
+}
@@ -45,6 +45,7 @@
 package org.eclipse.jgit.treewalk;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -144,6 +145,9 @@ public void setOperationType(OperationType operationType) {
 	 * The returned tree walk is already positioned on the requested path, so
 	 * the caller should not need to invoke {@link #next()} unless they are
 	 * looking for a possible directory/file name conflict.
+	 * <p>
+	 * If the reader has a {@link TreeTableCache}, the directory holding the
+	 * path is found through the cache, and the walk starts in that directory.
 	 *
 	 * @param reader
 	 *            the reader the walker will obtain tree data from.
@@ -206,9 +210,18 @@ public static TreeWalk forPath(final @Nullable Repository repo,
 		TreeWalk tw = new TreeWalk(repo, reader);
 		PathFilter f = PathFilter.create(path);
 		tw.setFilter(f);
-		tw.reset(trees);
 		tw.setRecursive(false);
 
+		TreeTableCache cache = reader.getTreeTableCache();
+		if (repo == null && cache != null) {
+			// Attributes are not needed, so the walk may start in the
+			// directory holding the path, found through the cache.
+			if (!resetToParent(tw, cache, f.getPath(), trees))
+				return null;
+		} else {
+			tw.reset(trees);
+		}
+
 		while (tw.next()) {
 			if (f.isDone(tw)) {
 				return tw;
@@ -219,6 +232,34 @@ public static TreeWalk forPath(final @Nullable Repository repo,
 		return null;
 	}
 
+	private static boolean resetToParent(TreeWalk tw, TreeTableCache cache,
+			String path, AnyObjectId... trees) throws IOException {
+		byte[] raw = Constants.encode(path);
+		int slash = raw.length - 1;
+		while (0 <= slash && raw[slash] != '/')
+			slash--;
+		if (slash < 0) {
+			tw.reset(trees);
+			return true;
+		}
+
+		byte[] dir = Arrays.copyOf(raw, slash);
+		byte[] prefix = Arrays.copyOf(raw, slash + 1);
+		MutableObjectId id = new MutableObjectId();
+		boolean found = false;
+		tw.reset();
+		for (AnyObjectId tree : trees) {
+			int mode = cache.findPath(tw.reader, tree, dir, id);
+			if ((mode & FileMode.TYPE_MASK) == FileMode.TYPE_TREE) {
+				tw.addTree(new CanonicalTreeParser(prefix, tw.reader, id));
+				found = true;
+			} else {
+				tw.addTree(new EmptyTreeIterator(null, prefix, prefix.length));
+			}
+		}
+		return found;
+	}
+
 	/**
 	 * Open a tree walk and filter to exactly one path.
 	 * <p>
@@ -58,9 +58,14 @@
 import java.nio.charset.CharsetEncoder;
 import java.security.MessageDigest;
 import java.text.MessageFormat;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.eclipse.jgit.api.errors.FilterFailedException;
 import org.eclipse.jgit.attributes.AttributesNode;
@@ -71,12 +76,15 @@
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.dircache.UntrackedCache;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.NoWorkTreeException;
 import org.eclipse.jgit.ignore.FastIgnoreRule;
 import org.eclipse.jgit.ignore.IgnoreNode;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.CoreConfig;
 import org.eclipse.jgit.lib.CoreConfig.CheckStat;
@@ -84,6 +92,7 @@
 import org.eclipse.jgit.lib.CoreConfig.SymLinks;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
@@ -147,6 +156,27 @@ public abstract class WorkingTreeIterator extends AbstractTreeIterator {
 	/** If there is a .gitignore file present, the parsed rules from it. */
 	private IgnoreNode ignoreNode;
 
+	/** The .gitignore file of this directory, null if there is none. */
+	private Entry ignoreFile;
+
+	/**
+	 * Cached listing of untracked files for this directory, null if there is
+	 * none or it is outdated.
+	 */
+	private UntrackedCache.Directory untrackedDir;
+
+	/**
+	 * Listing of this directory being recorded into the untracked cache, null
+	 * if the cache is not updated or {@link #untrackedDir} is still valid.
+	 */
+	private UntrackedCache.Directory untrackedRecord;
+
+	/** Modification time of this directory, read before it was listed. */
+	private long untrackedLastModified;
+
+	/** Whether the entries of this directory came from the untracked cache. */
+	private boolean untrackedListed;
+
 	/**
 	 * cached clean filter command. Use a Ref in order to distinguish between
 	 * the ref not cached yet and the value null
@@ -168,6 +198,12 @@ public abstract class WorkingTreeIterator extends AbstractTreeIterator {
 	/** The offset of the content id in {@link #idBuffer()} */
 	private int contentIdOffset;
 
+	/** File attributes of the current entry for the {@link StatCache}. */
+	private StatCache.Stat entryStat;
+
+	/** Index within {@link #entries} that {@link #entryStat} came from. */
+	private int entryStatFromPtr = -1;
+
 	/**
 	 * Create a new iterator with no parent.
 	 *
@@ -212,6 +248,21 @@ protected WorkingTreeIterator(final WorkingTreeIterator p) {
 		super(p);
 		state = p.state;
 		repository = p.repository;
+		UntrackedCache.Directory pd = p.untrackedDir != null ? p.untrackedDir
+				: p.untrackedRecord;
+		if (pd != null) {
+			Entry e = p.current();
+			UntrackedCache.Directory d;
+			if (state.untrackedIndex != null)
+				d = pd.addDirectory(e.getName());
+			else
+				d = pd.getDirectory(e.getName());
+			untrackedLastModified = e.getLastModified();
+			if (isUsable(d, untrackedLastModified))
+				untrackedDir = d;
+			else if (state.untrackedIndex != null)
+				untrackedRecord = d;
+		}
 	}
 
 	/**
@@ -251,6 +302,253 @@ public void setDirCacheIterator(TreeWalk walk, int treeId) {
 		state.dirCacheTree = treeId;
 	}
 
+	/**
+	 * Reuse the untracked cache of the index to decide which files are
+	 * ignored.
+	 * <p>
+	 * In directories whose modification time and ignore rules are unchanged
+	 * since the cache was stored, a file that is not in the index is ignored
+	 * exactly when the cache does not list it as untracked, so
+	 * {@link #isEntryIgnored()} does not need to evaluate ignore rules. The
+	 * cache is only consulted if {@link #setDirCacheIterator(TreeWalk, int)}
+	 * was called, and only on the root iterator of a repository.
+	 *
+	 * @param cache
+	 *            the untracked cache of the index, may be null.
+	 * @throws IOException
+	 *             the ignore files cannot be read.
+	 * @since 4.7
+	 */
+	public void setUntrackedCache(UntrackedCache cache) throws IOException {
+		untrackedDir = null;
+		if (!isApplicable(cache))
+			return;
+		UntrackedCache.Directory root = cache.getRoot();
+		if (isUsable(root, repository.getFS()
+				.lastModified(repository.getWorkTree()))
+				&& isIgnoreFileUnchanged(root, idOfIgnoreFile()))
+			untrackedDir = root;
+	}
+
+	/**
+	 * Reuse and update the untracked cache of the index.
+	 * <p>
+	 * Like {@link #setUntrackedCache(UntrackedCache)} the cache decides which
+	 * files are ignored in unchanged directories. Every other directory is
+	 * recorded into the cache: its modification time, its {@code .gitignore}
+	 * and the files {@link #isEntryIgnored()} found not to be ignored. The walk
+	 * must therefore not skip any entry of the working tree and must call
+	 * {@link #isEntryIgnored()} for every entry not in the index, as
+	 * {@link org.eclipse.jgit.treewalk.filter.IndexDiffFilter} does.
+	 * <p>
+	 * If ignored entries are not needed, unchanged directories are not even
+	 * listed: their entries are the entries of the index and the untracked
+	 * files and directories of the cache, see {@link #getCachedEntryNames()}.
+	 * <p>
+	 * Only caches listing every untracked file are updated, see
+	 * {@link UntrackedCache#isComplete()}; others are used like
+	 * {@link #setUntrackedCache(UntrackedCache)} does.
+	 *
+	 * @param index
+	 *            the index holding the cache, also walked by the
+	 *            {@link DirCacheIterator} passed to
+	 *            {@link #setDirCacheIterator(TreeWalk, int)}.
+	 * @param listIgnored
+	 *            false if unchanged directories need not be listed, the
+	 *            ignored entries in them are then not returned.
+	 * @throws IOException
+	 *             the ignore files cannot be read.
+	 * @since 4.7
+	 */
+	public void setUntrackedCache(DirCache index, boolean listIgnored)
+			throws IOException {
+		UntrackedCache cache = index.getUntrackedCache();
+		state.untrackedIndex = null;
+		untrackedRecord = null;
+		if (state.walk == null || !isApplicable(cache)
+				|| !cache.isComplete()) {
+			setUntrackedCache(cache);
+			return;
+		}
+		FS fs = repository.getFS();
+		File workTree = repository.getWorkTree();
+		state.untrackedIndex = index;
+		state.reuseListings = !listIgnored && fs.isCaseSensitive();
+		state.racyMillis = FS.getKnownFsTimestampResolution(workTree.toPath())
+				.toMillis();
+		untrackedLastModified = fs.lastModified(workTree);
+		UntrackedCache.Directory root = cache.addRoot();
+		if (isUsable(root, untrackedLastModified))
+			untrackedDir = root;
+		else
+			untrackedRecord = root;
+		initUntracked();
+	}
+
+	private boolean isApplicable(UntrackedCache cache) throws IOException {
+		return cache != null && repository != null && parent == null
+				&& pathOffset == 0 && !repository.isBare()
+				&& cache.isValidFor(repository);
+	}
+
+	private static boolean isUsable(UntrackedCache.Directory d,
+			long lastModified) {
+		return d != null && d.isValid() && !d.isCheckOnly()
+				&& d.getLastModified() == lastModified;
+	}
+
+	private static boolean isIgnoreFileUnchanged(UntrackedCache.Directory d,
+			ObjectId ignoreId) {
+		ObjectId cached = d.getExcludeId();
+		return cached == null ? ignoreId == null : cached.equals(ignoreId);
+	}
+
+	private ObjectId idOfIgnoreFile() throws IOException {
+		if (ignoreFile == null)
+			return null;
+		try (InputStream in = ignoreFile.openInputStream()) {
+			return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB,
+					ignoreFile.getLength(), in);
+		}
+	}
+
+	private static File getExcludesFile(Repository repository) {
+		FS fs = repository.getFS();
+		String path = repository.getConfig().get(CoreConfig.KEY)
+				.getExcludesFile();
+		if (path == null)
+			return null;
+		if (path.startsWith("~/")) //$NON-NLS-1$
+			return fs.resolve(fs.userHome(), path.substring(2));
+		return fs.resolve(null, path);
+	}
+
+	/**
+	 * Check the {@code .gitignore} of this directory and start recording its
+	 * listing into the untracked cache if it is not valid anymore.
+	 */
+	private void initUntracked() {
+		if (untrackedListed)
+			return;
+		ObjectId ignoreId;
+		try {
+			ignoreId = idOfIgnoreFile();
+		} catch (IOException err) {
+			untrackedDir = null;
+			untrackedRecord = null;
+			return;
+		}
+		if (untrackedDir != null) {
+			if (isIgnoreFileUnchanged(untrackedDir, ignoreId))
+				return;
+			if (state.untrackedIndex != null)
+				untrackedRecord = untrackedDir;
+			untrackedDir = null;
+		}
+		if (untrackedRecord == null)
+			return;
+		List<String> dirs = new ArrayList<>();
+		for (int i = 0; i < entryCnt; i++) {
+			if (FileMode.TREE.equals(entries[i].getMode()))
+				dirs.add(entries[i].getName());
+		}
+		// Changes within the timestamp resolution of the listing could go
+		// unnoticed, the listing is only valid once it is old enough.
+		boolean racy = state.createdAt - untrackedLastModified
+				<= state.racyMillis;
+		untrackedRecord.startListing(untrackedLastModified, ignoreId, dirs,
+				racy);
+	}
+
+	/**
+	 * Get the entries of this directory from the untracked cache.
+	 * <p>
+	 * Only available if {@link #setUntrackedCache(DirCache, boolean)} was
+	 * told that ignored entries are not needed, and if this directory and its
+	 * {@code .gitignore} did not change since the untracked files in it were
+	 * recorded. Subclasses may then create their entries from these names
+	 * instead of listing the directory.
+	 *
+	 * @return names of the entries of the index and of the untracked files
+	 *         and directories of the cache in this directory, some may not
+	 *         exist anymore; null if the directory must be listed.
+	 * @since 4.7
+	 */
+	protected String[] getCachedEntryNames() {
+		if (untrackedDir == null || !state.reuseListings)
+			return null;
+		String dir = TreeWalk.pathOf(path, 0, pathOffset);
+		File ignore = new File(repository.getWorkTree(),
+				dir + Constants.DOT_GIT_IGNORE);
+		try {
+			ObjectId ignoreId = null;
+			if (repository.getFS().exists(ignore))
+				ignoreId = new ObjectInserter.Formatter().idFor(
+						Constants.OBJ_BLOB, IO.readFully(ignore));
+			if (!isIgnoreFileUnchanged(untrackedDir, ignoreId)) {
+				untrackedRecord = untrackedDir;
+				untrackedDir = null;
+				return null;
+			}
+		} catch (IOException err) {
+			return null;
+		}
+
+		Set<String> names = new HashSet<>();
+		names.add(Constants.DOT_GIT_IGNORE);
+		addIndexNames(state.untrackedIndex, path, pathOffset, names);
+		for (String n : untrackedDir.getUntracked()) {
+			if (n.endsWith("/")) //$NON-NLS-1$
+				n = n.substring(0, n.length() - 1);
+			names.add(n);
+		}
+		for (UntrackedCache.Directory d : untrackedDir.getDirectories())
+			names.add(d.getName());
+		untrackedListed = true;
+		return names.toArray(new String[names.size()]);
+	}
+
+	/** Add the names of the index entries in a directory. */
+	private static void addIndexNames(DirCache index, byte[] dir, int dirLen,
+			Set<String> names) {
+		int cnt = index.getEntryCount();
+		int i = index.findEntry(dir, dirLen);
+		if (i < 0)
+			i = -(i + 1);
+		while (i < cnt) {
+			byte[] p = index.getEntry(i).getRawPath();
+			if (p.length <= dirLen || !startsWith(p, dir, dirLen))
+				return;
+			int end = dirLen;
+			while (end < p.length && p[end] != '/')
+				end++;
+			names.add(RawParseUtils.decode(p, dirLen, end));
+			if (end == p.length) {
+				i++;
+				continue;
+			}
+			// Skip the subdirectory, its entries sort before "<name>0".
+			byte[] next = Arrays.copyOf(p, end + 1);
+			next[end] = '/' + 1;
+			i = index.findEntry(next, next.length);
+			if (i < 0)
+				i = -(i + 1);
+		}
+	}
+
+	private static boolean startsWith(byte[] p, byte[] prefix, int len) {
+		for (int i = 0; i < len; i++) {
+			if (p[i] != prefix[i])
+				return false;
+		}
+		return true;
+	}
+
+	private boolean isEntryTracked() {
+		return state.walk == null || state.walk.getTree(state.dirCacheTree,
+				DirCacheIterator.class) != null;
+	}
+
 	@Override
 	public boolean hasId() {
 		if (contentIdFromPtr == ptr)
@@ -360,6 +658,21 @@ protected byte[] idSubmodule(File directory, Entry e) {
 
 	private byte[] idBufferBlob(final Entry e) {
 		try {
+			final StatCache cache = (mode & FileMode.TYPE_MASK) == FileMode.TYPE_FILE
+					? getStatCache()
+					: null;
+			final StatCache.Stat stat = cache != null ? getEntryStat(e) : null;
+			String filterKey = null;
+			if (stat != null) {
+				filterKey = getStatFilterKey();
+				ObjectId id = cache.get(getEntryPathString(), stat, filterKey);
+				if (id != null) {
+					byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+					id.copyRawTo(raw, 0);
+					return raw;
+				}
+			}
+
 			final InputStream is = e.openInputStream();
 			if (is == null)
 				return zeroid;
@@ -369,7 +682,11 @@ private byte[] idBufferBlob(final Entry e) {
 				final long len = e.getLength();
 				InputStream filteredIs = possiblyFilteredInputStream(e, is, len,
 						OperationType.CHECKIN_OP);
-				return computeHash(filteredIs, canonLen);
+				byte[] raw = computeHash(filteredIs, canonLen);
+				if (stat != null)
+					cache.put(getEntryPathString(), stat, filterKey,
+							ObjectId.fromRaw(raw));
+				return raw;
 			} finally {
 				safeClose(is);
 			}
@@ -597,6 +914,17 @@ public long getEntryLastModified() {
 		return current().getLastModified();
 	}
 
+	/**
+	 * Get the last modified time of this entry, at the precision recorded by
+	 * the file system.
+	 *
+	 * @return last modified time of this file.
+	 * @since 4.7
+	 */
+	public Instant getEntryLastModifiedInstant() {
+		return current().getLastModifiedInstant();
+	}
+
 	/**
 	 * Obtain an input stream to read the file content.
 	 * <p>
@@ -630,7 +958,20 @@ && getEolStreamType() == EolStreamType.DIRECT)
 	 *             a relevant ignore rule file exists but cannot be read.
 	 */
 	public boolean isEntryIgnored() throws IOException {
-		return isEntryIgnored(pathLen);
+		if (untrackedDir == null && untrackedRecord == null)
+			return isEntryIgnored(pathLen);
+		int type = mode & FileMode.TYPE_MASK;
+		if (type == FileMode.TYPE_TREE || isEntryTracked())
+			return isEntryIgnored(pathLen);
+		String name = current().getName();
+		if (type == FileMode.TYPE_GITLINK)
+			name += '/';
+		if (untrackedDir != null)
+			return !untrackedDir.isUntracked(name);
+		boolean ignored = isEntryIgnored(pathLen);
+		if (!ignored)
+			untrackedRecord.addUntracked(name);
+		return ignored;
 	}
 
 	/**
@@ -735,6 +1076,7 @@ protected void init(final Entry[] list) {
 		// later on during sorting and iteration.
 		//
 		entries = list;
+		ignoreFile = null;
 		int i, o;
 
 		final CharsetEncoder nameEncoder = state.nameEncoder;
@@ -747,8 +1089,10 @@ protected void init(final Entry[] list) {
 				continue;
 			if (Constants.DOT_GIT.equals(name))
 				continue;
-			if (Constants.DOT_GIT_IGNORE.equals(name))
+			if (Constants.DOT_GIT_IGNORE.equals(name)) {
 				ignoreNode = new PerDirectoryIgnoreNode(e);
+				ignoreFile = e;
+			}
 			if (Constants.DOT_GIT_ATTRIBUTES.equals(name))
 				attributesNode = new PerDirectoryAttributesNode(e);
 			if (i != o)
@@ -759,7 +1103,11 @@ protected void init(final Entry[] list) {
 		entryCnt = o;
 		Arrays.sort(entries, 0, entryCnt, ENTRY_CMP);
 
+		if (untrackedDir != null || untrackedRecord != null)
+			initUntracked();
+
 		contentIdFromPtr = -1;
+		entryStatFromPtr = -1;
 		ptr = 0;
 		if (!eof())
 			parseEntry();
@@ -861,24 +1209,30 @@ public MetadataDiff compareMetadata(DirCacheEntry entry) {
 
 		// Git under windows only stores seconds so we round the timestamp
 		// Java gives us if it looks like the timestamp in index is seconds
-		// only. Otherwise we compare the timestamp at millisecond precision,
+		// only. Otherwise we compare the timestamp at nanosecond precision,
 		// unless core.checkstat is set to "minimal", in which case we only
 		// compare the whole second part.
-		long cacheLastModified = entry.getLastModified();
-		long fileLastModified = getEntryLastModified();
-		long lastModifiedMillis = fileLastModified % 1000;
-		long cacheMillis = cacheLastModified % 1000;
+		Instant cacheLastModified = entry.getLastModifiedInstant();
+		Instant fileLastModified = getEntryLastModifiedInstant();
+		int cacheNanos = cacheLastModified.getNano();
+		int fileNanos = fileLastModified.getNano();
 		if (getOptions().getCheckStat() == CheckStat.MINIMAL) {
-			fileLastModified = fileLastModified - lastModifiedMillis;
-			cacheLastModified = cacheLastModified - cacheMillis;
-		} else if (cacheMillis == 0)
-			fileLastModified = fileLastModified - lastModifiedMillis;
+			fileNanos = 0;
+			cacheNanos = 0;
+		} else if (cacheNanos == 0)
+			fileNanos = 0;
 		// Some Java version on Linux return whole seconds only even when
 		// the file systems supports more precision.
-		else if (lastModifiedMillis == 0)
-			cacheLastModified = cacheLastModified - cacheMillis;
+		else if (fileNanos == 0)
+			cacheNanos = 0;
+		// Indexes written by older versions of JGit hold milliseconds only.
+		else if (cacheNanos % 1000000 == 0 || fileNanos % 1000000 == 0) {
+			fileNanos -= fileNanos % 1000000;
+			cacheNanos -= cacheNanos % 1000000;
+		}
 
-		if (fileLastModified != cacheLastModified)
+		if (fileLastModified.getEpochSecond() != cacheLastModified
+				.getEpochSecond() || fileNanos != cacheNanos)
 			return MetadataDiff.DIFFER_BY_TIMESTAMP;
 		else if (!entry.isSmudged())
 			// The file is clean when you look at timestamps.
@@ -910,6 +1264,8 @@ public boolean isModified(DirCacheEntry entry, boolean forceContentCheck,
 			ObjectReader reader) throws IOException {
 		if (entry == null)
 			return !FileMode.MISSING.equals(getEntryFileMode());
+		if (entry.isFileMonitorValid())
+			return false;
 		MetadataDiff diff = compareMetadata(entry);
 		switch (diff) {
 		case DIFFER_BY_TIMESTAMP:
@@ -939,6 +1295,107 @@ public boolean isModified(DirCacheEntry entry, boolean forceContentCheck,
 		}
 	}
 
+	/**
+	 * Get the stat cache used to avoid reading unchanged files.
+	 * <p>
+	 * Unless set by {@link #setStatCache(StatCache)}, the cache of the
+	 * repository is loaded on first use if {@code core.statCache} is enabled.
+	 *
+	 * @return the cache shared by all iterators of this working tree; null if
+	 *         none is used.
+	 * @since 4.7
+	 */
+	public StatCache getStatCache() {
+		if (!state.statCacheLoaded) {
+			state.statCacheLoaded = true;
+			if (repository != null && !repository.isBare()
+					&& repository.getConfig().getBoolean(
+							ConfigConstants.CONFIG_CORE_SECTION,
+							ConfigConstants.CONFIG_KEY_STAT_CACHE, false)) {
+				try {
+					state.statCache = StatCache.read(repository);
+				} catch (IOException e) {
+					// Without the cache files are read as before.
+				}
+			}
+		}
+		return state.statCache;
+	}
+
+	/**
+	 * Set the stat cache used to avoid reading unchanged files.
+	 *
+	 * @param cache
+	 *            the cache; null to always read files.
+	 * @since 4.7
+	 */
+	public void setStatCache(StatCache cache) {
+		state.statCache = cache;
+		state.statCacheLoaded = true;
+	}
+
+	/**
+	 * Get the content id of the current entry from the stat cache.
+	 * <p>
+	 * Unlike {@link #getEntryObjectId()} this never reads the file.
+	 *
+	 * @return the id of the cleaned content if the {@link #getStatCache()
+	 *         stat cache} knows the file in its current state; null
+	 *         otherwise.
+	 * @throws IOException
+	 *             the filters of the entry cannot be determined.
+	 * @since 4.7
+	 */
+	public ObjectId getCachedEntryObjectId() throws IOException {
+		StatCache cache = getStatCache();
+		if (cache == null || (mode & FileMode.TYPE_MASK) != FileMode.TYPE_FILE)
+			return null;
+		StatCache.Stat stat = getEntryStat(current());
+		if (stat == null)
+			return null;
+		return cache.get(getEntryPathString(), stat, getStatFilterKey());
+	}
+
+	/**
+	 * Record the content id of the current entry in the stat cache.
+	 * <p>
+	 * The file attributes recorded are the ones obtained when the entry was
+	 * first looked up in the cache, before its content was read. A file
+	 * modified while it is read is therefore not trusted later on.
+	 *
+	 * @param id
+	 *            id of the content of the current entry, cleaned for
+	 *            check-in.
+	 * @throws IOException
+	 *             the filters of the entry cannot be determined.
+	 * @since 4.7
+	 */
+	public void setCachedEntryObjectId(AnyObjectId id) throws IOException {
+		StatCache cache = getStatCache();
+		if (cache == null || (mode & FileMode.TYPE_MASK) != FileMode.TYPE_FILE)
+			return;
+		StatCache.Stat stat = getEntryStat(current());
+		if (stat != null)
+			cache.put(getEntryPathString(), stat, getStatFilterKey(), id);
+	}
+
+	private StatCache.Stat getEntryStat(Entry e) {
+		if (entryStatFromPtr != ptr) {
+			entryStat = e instanceof FileTreeIterator.FileEntry
+					? StatCache.stat(
+							((FileTreeIterator.FileEntry) e).getAttributes())
+					: null;
+			entryStatFromPtr = ptr;
+		}
+		return entryStat;
+	}
+
+	/** @return the filters applied to the content of the current entry. */
+	private String getStatFilterKey() throws IOException {
+		return getEolStreamType(OperationType.CHECKIN_OP) + ":" //$NON-NLS-1$
+				+ getCleanFilterCommand();
+	}
+
 	/**
 	 * Get the file mode to use for the current entry when it is to be updated
 	 * in the index.
@@ -1197,6 +1654,22 @@ public String toString() {
 		 */
 		public abstract long getLastModified();
 
+		/**
+		 * Get the last modified time of this entry, at the precision recorded
+		 * by the file system.
+		 * <p>
+		 * <b>Note: Efficient implementation required.</b>
+		 * <p>
+		 * The default implementation has the precision of
+		 * {@link #getLastModified()}.
+		 *
+		 * @return time of the last change.
+		 * @since 4.7
+		 */
+		public Instant getLastModifiedInstant() {
+			return Instant.ofEpochMilli(getLastModified());
+		}
+
 		/**
 		 * Get the name of this entry within its directory.
 		 * <p>
@@ -1268,16 +1741,9 @@ IgnoreNode load() throws IOException {
 			}
 
 			FS fs = repository.getFS();
-			String path = repository.getConfig().get(CoreConfig.KEY)
-					.getExcludesFile();
-			if (path != null) {
-				File excludesfile;
-				if (path.startsWith("~/")) //$NON-NLS-1$
-					excludesfile = fs.resolve(fs.userHome(), path.substring(2));
-				else
-					excludesfile = fs.resolve(null, path);
+			File excludesfile = getExcludesFile(repository);
+			if (excludesfile != null)
 				loadRulesFromFile(r, excludesfile);
-			}
 
 			File exclude = fs.resolve(repository.getDirectory(),
 					Constants.INFO_EXCLUDE);
@@ -1340,9 +1806,28 @@ private static final class IteratorState {
 		/** Position of the matching {@link DirCacheIterator}. */
 		int dirCacheTree;
 
+		/** Cache of content ids, shared by all iterators. */
+		StatCache statCache;
+
+		/** Whether {@link #statCache} was initialized. */
+		boolean statCacheLoaded;
+
+		/** Index whose untracked cache is updated, null if it is not. */
+		DirCache untrackedIndex;
+
+		/** Whether unchanged directories are taken from the cache. */
+		boolean reuseListings;
+
+		/** Directories changed this recently before a listing are racy. */
+		long racyMillis;
+
+		/** Time the root iterator was created, before any listing. */
+		final long createdAt;
+
 		IteratorState(WorkingTreeOptions options) {
 			this.options = options;
 			this.nameEncoder = Constants.CHARSET.newEncoder();
+			this.createdAt = System.currentTimeMillis();
 		}
 
 		void initializeDigestAndReadBuffer() {
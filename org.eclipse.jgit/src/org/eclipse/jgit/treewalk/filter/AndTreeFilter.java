@@ -46,6 +46,8 @@
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
 
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
@@ -114,6 +116,30 @@ public static TreeFilter create(final Collection<TreeFilter> list) {
 		return new List(subfilters);
 	}
 
+	private static Optional<Set<byte[]>> changedPaths(TreeFilter... filters) {
+		boolean anyDiff = false;
+		Optional<Set<byte[]>> paths = Optional.empty();
+		for (TreeFilter f : filters) {
+			Optional<Set<byte[]>> changed = f.getChangedPathsBestEffort();
+			if (changed.isPresent())
+				return changed;
+			if (f == ANY_DIFF)
+				anyDiff = true;
+			else if (!paths.isPresent())
+				paths = f.getPathsBestEffort();
+		}
+		return anyDiff ? paths : Optional.<Set<byte[]>> empty();
+	}
+
+	private static Optional<Set<byte[]>> paths(TreeFilter... filters) {
+		for (TreeFilter f : filters) {
+			Optional<Set<byte[]>> paths = f.getPathsBestEffort();
+			if (paths.isPresent())
+				return paths;
+		}
+		return Optional.empty();
+	}
+
 	private static class Binary extends AndTreeFilter {
 		private final TreeFilter a;
 
@@ -136,6 +162,16 @@ public boolean shouldBeRecursive() {
 			return a.shouldBeRecursive() || b.shouldBeRecursive();
 		}
 
+		@Override
+		public Optional<Set<byte[]>> getChangedPathsBestEffort() {
+			return changedPaths(a, b);
+		}
+
+		@Override
+		Optional<Set<byte[]>> getPathsBestEffort() {
+			return paths(a, b);
+		}
+
 		@Override
 		public TreeFilter clone() {
 			return new Binary(a.clone(), b.clone());
@@ -174,6 +210,16 @@ public boolean shouldBeRecursive() {
 			return false;
 		}
 
+		@Override
+		public Optional<Set<byte[]>> getChangedPathsBestEffort() {
+			return changedPaths(subfilters);
+		}
+
+		@Override
+		Optional<Set<byte[]>> getPathsBestEffort() {
+			return paths(subfilters);
+		}
+
 		@Override
 		public TreeFilter clone() {
 			final TreeFilter[] s = new TreeFilter[subfilters.length];
@@ -92,6 +92,8 @@ public class IndexDiffFilter extends TreeFilter {
 
 	private final LinkedList<String> untrackedFolders = new LinkedList<String>();
 
+	private boolean markFileMonitorValid;
+
 	/**
 	 * Creates a new instance of this filter. Do not use an instance of this
 	 * filter in multiple treewalks.
@@ -128,6 +130,22 @@ public IndexDiffFilter(int dirCacheIndex, int workingTreeIndex,
 		this.honorIgnores = honorIgnores;
 	}
 
+	/**
+	 * Mark index entries found to match the working tree as
+	 * {@link DirCacheEntry#isFileMonitorValid() valid}.
+	 * <p>
+	 * Should only be enabled if the index was updated with
+	 * {@link org.eclipse.jgit.dircache.DirCache#applyFileMonitor(org.eclipse.jgit.util.FileChangeMonitor)},
+	 * otherwise later changes to the files would go unnoticed.
+	 *
+	 * @param mark
+	 *            true to mark clean entries.
+	 * @since 4.7
+	 */
+	public void setMarkFileMonitorValid(boolean mark) {
+		markFileMonitorValid = mark;
+	}
+
 	@Override
 	public boolean include(TreeWalk tw) throws MissingObjectException,
 			IncorrectObjectTypeException, IOException {
@@ -224,8 +242,13 @@ public boolean include(TreeWalk tw) throws MissingObjectException,
 		// Only one chance left to detect a diff: between index and working
 		// tree. Make use of the WorkingTreeIterator#isModified() method to
 		// avoid computing SHA1 on filesystem content if not really needed.
-		return wi.isModified(di == null ? null : di.getDirCacheEntry(), true,
-				tw.getObjectReader());
+		DirCacheEntry ent = di == null ? null : di.getDirCacheEntry();
+		if (wi.isModified(ent, true, tw.getObjectReader()))
+			return true;
+		if (markFileMonitorValid && ent != null
+				&& ent.getStage() == DirCacheEntry.STAGE_0)
+			ent.setFileMonitorValid(true);
+		return false;
 	}
 
 	/**
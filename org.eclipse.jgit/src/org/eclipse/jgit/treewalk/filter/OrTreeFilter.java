@@ -46,6 +46,9 @@
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
 
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
@@ -112,6 +115,28 @@ public static TreeFilter create(final Collection<TreeFilter> list) {
 		return new List(subfilters);
 	}
 
+	private static Optional<Set<byte[]>> changedPaths(TreeFilter... filters) {
+		Set<byte[]> all = new HashSet<>();
+		for (TreeFilter f : filters) {
+			Optional<Set<byte[]>> changed = f.getChangedPathsBestEffort();
+			if (!changed.isPresent())
+				return Optional.empty();
+			all.addAll(changed.get());
+		}
+		return Optional.of(all);
+	}
+
+	private static Optional<Set<byte[]>> paths(TreeFilter... filters) {
+		Set<byte[]> all = new HashSet<>();
+		for (TreeFilter f : filters) {
+			Optional<Set<byte[]>> paths = f.getPathsBestEffort();
+			if (!paths.isPresent())
+				return Optional.empty();
+			all.addAll(paths.get());
+		}
+		return Optional.of(all);
+	}
+
 	private static class Binary extends OrTreeFilter {
 		private final TreeFilter a;
 
@@ -134,6 +159,16 @@ public boolean shouldBeRecursive() {
 			return a.shouldBeRecursive() || b.shouldBeRecursive();
 		}
 
+		@Override
+		public Optional<Set<byte[]>> getChangedPathsBestEffort() {
+			return changedPaths(a, b);
+		}
+
+		@Override
+		Optional<Set<byte[]>> getPathsBestEffort() {
+			return paths(a, b);
+		}
+
 		@Override
 		public TreeFilter clone() {
 			return new Binary(a.clone(), b.clone());
@@ -172,6 +207,16 @@ public boolean shouldBeRecursive() {
 			return false;
 		}
 
+		@Override
+		public Optional<Set<byte[]>> getChangedPathsBestEffort() {
+			return changedPaths(subfilters);
+		}
+
+		@Override
+		Optional<Set<byte[]>> getPathsBestEffort() {
+			return paths(subfilters);
+		}
+
 		@Override
 		public TreeFilter clone() {
 			final TreeFilter[] s = new TreeFilter[subfilters.length];
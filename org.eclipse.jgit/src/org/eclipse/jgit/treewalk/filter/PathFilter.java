@@ -44,6 +44,10 @@
 
 package org.eclipse.jgit.treewalk.filter;
 
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.treewalk.TreeWalk;
@@ -108,6 +112,11 @@ public boolean shouldBeRecursive() {
 		return false;
 	}
 
+	@Override
+	Optional<Set<byte[]>> getPathsBestEffort() {
+		return Optional.of(Collections.singleton(pathRaw));
+	}
+
 	@Override
 	public PathFilter clone() {
 		return this;
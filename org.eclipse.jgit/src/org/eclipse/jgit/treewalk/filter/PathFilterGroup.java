@@ -44,7 +44,12 @@
 
 package org.eclipse.jgit.treewalk.filter;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
 
 import org.eclipse.jgit.errors.StopWalkException;
 import org.eclipse.jgit.internal.JGitText;
@@ -168,6 +173,11 @@ public boolean shouldBeRecursive() {
 			return path.shouldBeRecursive();
 		}
 
+		@Override
+		Optional<Set<byte[]>> getPathsBestEffort() {
+			return Optional.of(Collections.singleton(raw));
+		}
+
 		@Override
 		public TreeFilter clone() {
 			return this;
@@ -262,6 +272,12 @@ public boolean shouldBeRecursive() {
 			return !prefixes.isEmpty();
 		}
 
+		@Override
+		Optional<Set<byte[]>> getPathsBestEffort() {
+			Set<byte[]> s = new HashSet<>(Arrays.asList(fullpaths.toArray()));
+			return Optional.of(s);
+		}
+
 		@Override
 		public TreeFilter clone() {
 			return this;
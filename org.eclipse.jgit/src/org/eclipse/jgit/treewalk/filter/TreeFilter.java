@@ -44,6 +44,8 @@
 package org.eclipse.jgit.treewalk.filter;
 
 import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
 
 import org.eclipse.jgit.dircache.DirCacheIterator;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
@@ -212,6 +214,34 @@ public abstract boolean include(TreeWalk walker)
 	 */
 	public abstract boolean shouldBeRecursive();
 
+	/**
+	 * Get the paths below which a change must exist for this filter to include
+	 * an entry.
+	 * <p>
+	 * If present, a walk over the trees of a commit and its parent using this
+	 * filter only finds entries if one of the returned paths, or a path below
+	 * one of them, differs between the two trees. This allows a history walk
+	 * to skip commits that are known not to change any of these paths. The
+	 * result is only a hint; returning an empty value is always correct.
+	 *
+	 * @return the raw paths, compared by content; or empty if this filter
+	 *         also includes other entries.
+	 * @since 4.7
+	 */
+	public Optional<Set<byte[]>> getChangedPathsBestEffort() {
+		return Optional.empty();
+	}
+
+	/**
+	 * Get the paths this filter limits the walk to.
+	 *
+	 * @return the raw paths, or empty if this filter may include entries that
+	 *         are neither one of these paths nor below one of them.
+	 */
+	Optional<Set<byte[]>> getPathsBestEffort() {
+		return Optional.empty();
+	}
+
 	/**
 	 * Clone this tree filter, including its parameters.
 	 * <p>
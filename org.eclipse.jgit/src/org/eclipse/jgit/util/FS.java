@@ -52,16 +52,26 @@
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.charset.Charset;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.text.MessageFormat;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -78,6 +88,43 @@
 
 /** Abstraction to support various file system operations not in Java. */
 public abstract class FS {
+	/**
+	 * Timestamp resolution assumed for file stores that cannot be probed, the
+	 * one of FAT file systems.
+	 *
+	 * @since 4.7
+	 */
+	public static final Duration FALLBACK_TIMESTAMP_RESOLUTION = Duration
+			.ofMillis(2000);
+
+	/** Longest time {@link #getFsTimestampResolution(Path)} waits. */
+	private static final Duration MAX_TIMESTAMP_RESOLUTION = Duration
+			.ofMillis(3000);
+
+	private static final Map<FileStore, Duration> timestampResolutions = new ConcurrentHashMap<>();
+
+	/** File stores of the directories whose resolution was looked up. */
+	private static final Map<Path, FileStore> fileStores = new ConcurrentHashMap<>();
+
+	/** File stores a background probe was started for. */
+	private static final Set<FileStore> probedFileStores = ConcurrentHashMap
+			.newKeySet();
+
+	/** Runs the probes started by {@link #probeFsTimestampResolution(Path)}. */
+	private static class ProbeExecutor {
+		static final ExecutorService INSTANCE = new ThreadPoolExecutor(0, 1,
+				1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thr = new Thread(r,
+								"JGit-TimestampResolution"); //$NON-NLS-1$
+						thr.setDaemon(true);
+						return thr;
+					}
+				});
+	}
+
 	/**
 	 * This class creates FS instances. It will be overridden by a Java7 variant
 	 * if such can be detected in {@link #detect(Boolean)}.
@@ -312,6 +359,139 @@ public void setLastModified(File f, long time) throws IOException {
 		FileUtils.setLastModified(f, time);
 	}
 
+	/**
+	 * Get the last modified time of a file system object at the precision
+	 * recorded by the file system. If the OS/JRE support symbolic links, the
+	 * modification time of the link is returned, rather than that of the link
+	 * target.
+	 *
+	 * @param f
+	 * @return last modified time of f
+	 * @throws IOException
+	 * @since 4.7
+	 */
+	public Instant lastModifiedInstant(File f) throws IOException {
+		return FileUtils.lastModifiedInstant(f);
+	}
+
+	/**
+	 * Set the last modified time of a file system object. If the OS/JRE
+	 * support symbolic links, the link is modified, not the target,
+	 *
+	 * @param f
+	 * @param time
+	 * @throws IOException
+	 * @since 4.7
+	 */
+	public void setLastModified(File f, Instant time) throws IOException {
+		FileUtils.setLastModified(f, time);
+	}
+
+	/**
+	 * Get the granularity of the modification times recorded for files in a
+	 * directory.
+	 * <p>
+	 * The resolution is measured once per file store by rewriting a probe
+	 * file in the directory, and remembered for the lifetime of the JVM. If
+	 * the probe cannot be written the fallback is remembered instead, so the
+	 * file store is not probed again. Measuring blocks for up to 3 seconds on
+	 * file stores with a coarse resolution, callers that must not wait should
+	 * use {@link #probeFsTimestampResolution(Path)}.
+	 *
+	 * @param dir
+	 *            a writable directory on the file store of interest, such as
+	 *            the directory of a repository.
+	 * @return the resolution; {@link #FALLBACK_TIMESTAMP_RESOLUTION} if it
+	 *         cannot be measured.
+	 * @since 4.7
+	 */
+	public static Duration getFsTimestampResolution(Path dir) {
+		FileStore store = getFileStore(dir);
+		if (store == null)
+			return FALLBACK_TIMESTAMP_RESOLUTION;
+		Duration resolution = timestampResolutions.get(store);
+		if (resolution == null) {
+			resolution = FileUtils.measureTimestampResolution(dir,
+					MAX_TIMESTAMP_RESOLUTION);
+			if (resolution == null)
+				resolution = FALLBACK_TIMESTAMP_RESOLUTION;
+			timestampResolutions.put(store, resolution);
+		}
+		return resolution;
+	}
+
+	/**
+	 * Measure the granularity of the modification times of a file store in
+	 * the background.
+	 * <p>
+	 * Does nothing if the resolution of the file store of {@code dir} is
+	 * already known or being measured. Until the probe has finished
+	 * {@link #getKnownFsTimestampResolution(Path)} returns
+	 * {@link #FALLBACK_TIMESTAMP_RESOLUTION} for the file store.
+	 *
+	 * @param dir
+	 *            a writable directory on the file store of interest, such as
+	 *            the directory of a repository which is about to be written.
+	 * @since 4.7
+	 */
+	public static void probeFsTimestampResolution(final Path dir) {
+		FileStore store = getFileStore(dir);
+		if (store == null || timestampResolutions.containsKey(store)
+				|| !probedFileStores.add(store))
+			return;
+		ProbeExecutor.INSTANCE.execute(new Runnable() {
+			@Override
+			public void run() {
+				getFsTimestampResolution(dir);
+			}
+		});
+	}
+
+	/**
+	 * Get the granularity of the modification times recorded for a file, as
+	 * far as it is already known.
+	 * <p>
+	 * Unlike {@link #getFsTimestampResolution(Path)} this never writes to the
+	 * file store. It returns the resolution measured earlier for the file
+	 * store of the path. The file store of each directory is only looked up
+	 * once.
+	 *
+	 * @param path
+	 *            a file or directory.
+	 * @return the resolution measured for the file store of {@code path};
+	 *         {@link #FALLBACK_TIMESTAMP_RESOLUTION} if it was not measured.
+	 * @since 4.7
+	 */
+	public static Duration getKnownFsTimestampResolution(Path path) {
+		if (timestampResolutions.isEmpty())
+			return FALLBACK_TIMESTAMP_RESOLUTION;
+		FileStore store = getFileStore(path);
+		Duration resolution = store != null ? timestampResolutions.get(store)
+				: null;
+		return resolution != null ? resolution : FALLBACK_TIMESTAMP_RESOLUTION;
+	}
+
+	/**
+	 * Look up the file store of a path. Finding it scans the mount table on
+	 * some platforms, the result is remembered per path.
+	 *
+	 * @param path
+	 * @return the file store; null if it cannot be determined.
+	 */
+	@Nullable
+	private static FileStore getFileStore(Path path) {
+		FileStore store = fileStores.get(path);
+		if (store == null) {
+			try {
+				store = Files.getFileStore(path);
+			} catch (IOException e) {
+				return null;
+			}
+			fileStores.put(path, store);
+		}
+		return store;
+	}
+
 	/**
 	 * Get the length of a file or link, If the OS/JRE supports symbolic links
 	 * it's the length of the link, else the length of the target.
@@ -1203,7 +1383,26 @@ public long getCreationTime() {
 		 *         last modified
 		 */
 		public long getLastModifiedTime() {
-			return lastModifiedTime;
+			return lastModifiedInstant.toEpochMilli();
+		}
+
+		/**
+		 * @return the time when this object was last modified, at the
+		 *         precision recorded by the file system
+		 * @since 4.7
+		 */
+		public Instant getLastModifiedInstant() {
+			return lastModifiedInstant;
+		}
+
+		/**
+		 * @return an object uniquely identifying the file on its file store,
+		 *         e.g. the device and inode on POSIX systems; null if not
+		 *         available
+		 * @since 4.7
+		 */
+		public Object getFileKey() {
+			return fileKey;
 		}
 
 		private final boolean isDirectory;
@@ -1214,7 +1413,9 @@ public long getLastModifiedTime() {
 
 		private final long creationTime;
 
-		private final long lastModifiedTime;
+		private final Instant lastModifiedInstant;
+
+		private final Object fileKey;
 
 		private final boolean isExecutable;
 
@@ -1232,7 +1433,7 @@ public long getLastModifiedTime() {
 		Attributes(FS fs, File file, boolean exists, boolean isDirectory,
 				boolean isExecutable, boolean isSymbolicLink,
 				boolean isRegularFile, long creationTime,
-				long lastModifiedTime, long length) {
+				Instant lastModifiedInstant, Object fileKey, long length) {
 			this.fs = fs;
 			this.file = file;
 			this.exists = exists;
@@ -1241,7 +1442,8 @@ public long getLastModifiedTime() {
 			this.isSymbolicLink = isSymbolicLink;
 			this.isRegularFile = isRegularFile;
 			this.creationTime = creationTime;
-			this.lastModifiedTime = lastModifiedTime;
+			this.lastModifiedInstant = lastModifiedInstant;
+			this.fileKey = fileKey;
 			this.length = length;
 		}
 
@@ -1253,7 +1455,8 @@ public long getLastModifiedTime() {
 		 * @param path
 		 */
 		public Attributes(File path, FS fs) {
-			this(fs, path, false, false, false, false, false, 0L, 0L, 0L);
+			this(fs, path, false, false, false, false, false, 0L,
+					Instant.EPOCH, null, 0L);
 		}
 
 		/**
@@ -1296,10 +1499,27 @@ public Attributes getAttributes(File path) {
 		boolean exists = isDirectory || isFile;
 		boolean canExecute = exists && !isDirectory && canExecute(path);
 		boolean isSymlink = false;
-		long lastModified = exists ? path.lastModified() : 0L;
+		Instant lastModified = Instant
+				.ofEpochMilli(exists ? path.lastModified() : 0L);
 		long createTime = 0L;
 		return new Attributes(this, path, exists, isDirectory, canExecute,
-				isSymlink, isFile, createTime, lastModified, -1);
+				isSymlink, isFile, createTime, lastModified, null, -1);
+	}
+
+	/**
+	 * Get the attributes of a path, e.g. one returned by a
+	 * {@link java.nio.file.DirectoryStream}.
+	 * <p>
+	 * Implementations read all attributes with a single call where the file
+	 * system supports it. On some platforms attributes already obtained while
+	 * listing the directory are reused.
+	 *
+	 * @param path
+	 * @return the file attributes we care for
+	 * @since 4.7
+	 */
+	public Attributes getAttributes(Path path) {
+		return getAttributes(path.toFile());
 	}
 
 	/**
@@ -270,6 +270,14 @@ public Attributes getAttributes(File path) {
 		return FileUtils.getFileAttributesPosix(this, path);
 	}
 
+	/**
+	 * @since 4.7
+	 */
+	@Override
+	public Attributes getAttributes(Path path) {
+		return FileUtils.getFileAttributesPosix(this, path);
+	}
+
 	/**
 	 * @since 3.3
 	 */
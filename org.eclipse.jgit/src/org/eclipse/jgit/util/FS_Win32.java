@@ -47,6 +47,7 @@
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -203,4 +204,12 @@ private void detectSymlinkSupport() {
 	public Attributes getAttributes(File path) {
 		return FileUtils.getFileAttributesBasic(this, path);
 	}
+
+	/**
+	 * @since 4.7
+	 */
+	@Override
+	public Attributes getAttributes(Path path) {
+		return FileUtils.getFileAttributesBasic(this, path);
+	}
 }
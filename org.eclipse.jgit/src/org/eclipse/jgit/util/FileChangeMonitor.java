@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.util;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Reports which paths of a working tree changed since a point in time.
+ * <p>
+ * Points in time are identified by opaque tokens issued by the monitor. A
+ * {@link org.eclipse.jgit.dircache.DirCache} stores the token of the last
+ * query, so commands reading the index only need to examine the paths
+ * reported as changed since then instead of every tracked file.
+ * <p>
+ * Implementations must be thread-safe.
+ *
+ * @since 4.7
+ */
+public interface FileChangeMonitor extends AutoCloseable {
+	/**
+	 * Get the paths changed since a token was issued.
+	 *
+	 * @param token
+	 *            token returned by an earlier query, null if there is none.
+	 * @return the changes and the token identifying the current state.
+	 * @throws IOException
+	 *             the monitor cannot be queried.
+	 */
+	Changes getChanges(String token) throws IOException;
+
+	/** Stop monitoring the working tree. */
+	@Override
+	void close();
+
+	/** Result of {@link FileChangeMonitor#getChanges(String)}. */
+	public static final class Changes {
+		private final String token;
+
+		private final Set<String> paths;
+
+		/**
+		 * @param token
+		 *            token identifying the state the changes lead up to.
+		 * @param paths
+		 *            paths relative to the top of the working tree that
+		 *            changed, using {@code '/'} as separator. A changed
+		 *            directory implies changes to everything below it. Null if
+		 *            the changes are not known and every path has to be
+		 *            examined.
+		 */
+		public Changes(String token, Set<String> paths) {
+			this.token = token;
+			this.paths = paths;
+		}
+
+		/** @return token to pass to the next query. */
+		public String getToken() {
+			return token;
+		}
+
+		/**
+		 * @return true if the changed paths are known; false if every path
+		 *         has to be examined.
+		 */
+		public boolean isComplete() {
+			return paths != null;
+		}
+
+		/**
+		 * @return the changed paths; empty if the changes are not known.
+		 */
+		public Set<String> getPaths() {
+			if (paths == null)
+				return Collections.emptySet();
+			return Collections.unmodifiableSet(paths);
+		}
+
+		/**
+		 * @param path
+		 *            path relative to the top of the working tree.
+		 * @return true if the path or one of its parent directories changed,
+		 *         or if the changes are not known.
+		 */
+		public boolean isChanged(String path) {
+			if (paths == null || paths.contains(path))
+				return true;
+			for (int s = path.lastIndexOf('/'); 0 < s; s = path
+					.lastIndexOf('/', s - 1)) {
+				if (paths.contains(path.substring(0, s)))
+					return true;
+			}
+			return false;
+		}
+	}
+}
@@ -54,17 +54,18 @@
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
-import java.nio.file.attribute.PosixFileAttributeView;
 import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
 import java.text.MessageFormat;
 import java.text.Normalizer;
 import java.text.Normalizer.Form;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import org.eclipse.jgit.internal.JGitText;
@@ -573,6 +574,79 @@ static void setLastModified(File file, long time) throws IOException {
 		Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(time));
 	}
 
+	/**
+	 * @param file
+	 * @return lastModified attribute for given file, not following symbolic
+	 *         links, at the precision of the file system
+	 * @throws IOException
+	 */
+	static Instant lastModifiedInstant(File file) throws IOException {
+		return Files.getLastModifiedTime(file.toPath(),
+				LinkOption.NOFOLLOW_LINKS).toInstant();
+	}
+
+	/**
+	 * @param file
+	 * @param time
+	 * @throws IOException
+	 */
+	static void setLastModified(File file, Instant time) throws IOException {
+		Files.setLastModifiedTime(file.toPath(), FileTime.from(time));
+	}
+
+	/**
+	 * Measure the granularity of the modification times a file store records
+	 * for writes.
+	 * <p>
+	 * A probe file is rewritten until its modification time changes. The
+	 * difference between the two times is the smallest change the file store
+	 * records, which is often coarser than the precision of the stored
+	 * timestamps (e.g. the kernel clock tick on Linux).
+	 *
+	 * @param dir
+	 *            writable directory on the file store to probe.
+	 * @param timeout
+	 *            longest time to wait for a change, returned if the
+	 *            modification time did not change until then.
+	 * @return the resolution; null if no probe file could be written.
+	 */
+	static Duration measureTimestampResolution(Path dir, Duration timeout) {
+		Path probe = null;
+		try {
+			probe = Files.createTempFile(dir, ".probe-", null); //$NON-NLS-1$
+			byte[] data = { 0 };
+			Files.write(probe, data);
+			FileTime first = Files.getLastModifiedTime(probe);
+			long start = System.nanoTime();
+			for (;;) {
+				Files.write(probe, data);
+				FileTime next = Files.getLastModifiedTime(probe);
+				if (!next.equals(first))
+					return Duration.between(first.toInstant(),
+							next.toInstant()).abs();
+				long elapsed = System.nanoTime() - start;
+				if (elapsed > timeout.toNanos())
+					return timeout;
+				if (elapsed > TimeUnit.MILLISECONDS.toNanos(10))
+					// Coarse file store, stop hammering the disk.
+					Thread.sleep(1);
+			}
+		} catch (IOException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return timeout;
+		} finally {
+			if (probe != null) {
+				try {
+					Files.deleteIfExists(probe);
+				} catch (IOException e) {
+					// Ignore, the probe is a hidden temporary file.
+				}
+			}
+		}
+	}
+
 	/**
 	 * @param file
 	 * @return {@code true} if the given file exists, not following symbolic
@@ -652,14 +726,21 @@ public static boolean canExecute(File file) {
 	 * @return non null attributes object
 	 */
 	static Attributes getFileAttributesBasic(FS fs, File file) {
+		return getFileAttributesBasic(fs, file.toPath());
+	}
+
+	/**
+	 * @param fs
+	 * @param path
+	 * @return non null attributes object
+	 */
+	static Attributes getFileAttributesBasic(FS fs, Path path) {
+		File file = path.toFile();
 		try {
-			Path nioPath = file.toPath();
-			BasicFileAttributes readAttributes = nioPath
-					.getFileSystem()
-					.provider()
-					.getFileAttributeView(nioPath,
-							BasicFileAttributeView.class,
-							LinkOption.NOFOLLOW_LINKS).readAttributes();
+			// Files.readAttributes() reuses attributes a DirectoryStream
+			// obtained while listing the directory, where available.
+			BasicFileAttributes readAttributes = Files.readAttributes(path,
+					BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
 			Attributes attributes = new Attributes(fs, file,
 					true,
 					readAttributes.isDirectory(),
@@ -667,7 +748,8 @@ static Attributes getFileAttributesBasic(FS fs, File file) {
 					readAttributes.isSymbolicLink(),
 					readAttributes.isRegularFile(), //
 					readAttributes.creationTime().toMillis(), //
-					readAttributes.lastModifiedTime().toMillis(),
+					readAttributes.lastModifiedTime().toInstant(),
+					readAttributes.fileKey(),
 					readAttributes.isSymbolicLink() ? Constants
 							.encode(readSymLink(file)).length
 							: readAttributes.size());
@@ -684,14 +766,20 @@ static Attributes getFileAttributesBasic(FS fs, File file) {
 	 * @since 4.1
 	 */
 	public static Attributes getFileAttributesPosix(FS fs, File file) {
+		return getFileAttributesPosix(fs, file.toPath());
+	}
+
+	/**
+	 * @param fs
+	 * @param path
+	 * @return file system attributes for the given path
+	 * @since 4.7
+	 */
+	public static Attributes getFileAttributesPosix(FS fs, Path path) {
+		File file = path.toFile();
 		try {
-			Path nioPath = file.toPath();
-			PosixFileAttributes readAttributes = nioPath
-					.getFileSystem()
-					.provider()
-					.getFileAttributeView(nioPath,
-							PosixFileAttributeView.class,
-							LinkOption.NOFOLLOW_LINKS).readAttributes();
+			PosixFileAttributes readAttributes = Files.readAttributes(path,
+					PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
 			Attributes attributes = new Attributes(
 					fs,
 					file,
@@ -702,7 +790,8 @@ public static Attributes getFileAttributesPosix(FS fs, File file) {
 					readAttributes.isSymbolicLink(),
 					readAttributes.isRegularFile(), //
 					readAttributes.creationTime().toMillis(), //
-					readAttributes.lastModifiedTime().toMillis(),
+					readAttributes.lastModifiedTime().toInstant(),
+					readAttributes.fileKey(),
 					readAttributes.size());
 			return attributes;
 		} catch (IOException e) {
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2017, Google Inc.
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * This program and the accompanying materials are made available
+ * under the terms of the Eclipse Distribution License v1.0 which
+ * accompanies this distribution, is reproduced below, and is
+ * available at http://www.eclipse.org/org/documents/edl-v10.php
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or
+ * without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above
+ *   copyright notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ * - Neither the name of the Eclipse Foundation, Inc. nor the
+ *   names of its contributors may be used to endorse or promote
+ *   products derived from this software without specific prior
+ *   written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.eclipse.jgit.util;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.lib.Constants;
+
+/**
+ * A {@link FileChangeMonitor} based on {@link WatchService}.
+ * <p>
+ * Every directory of the working tree is registered with the watch service
+ * and the monitor keeps a journal of the paths reported since it was created.
+ * Tokens are only meaningful to the monitor instance that issued them, a
+ * token from an earlier instance reports every path as changed.
+ * <p>
+ * The journal holds at most {@link #getJournalLimit()} paths. When it grows
+ * beyond that, the paths changed longest ago are dropped and tokens issued
+ * before those changes report every path as changed.
+ * <p>
+ * Before answering a query the monitor creates a cookie file in the
+ * repository directory and waits for its event, so every change made before
+ * the query is included. Watch services that poll, instead of receiving
+ * events from the operating system, may miss this deadline; the query then
+ * reports every path as changed.
+ *
+ * @since 4.7
+ */
+public class WatchServiceFileChangeMonitor implements FileChangeMonitor {
+	/**
+	 * Default number of paths kept in the journal: {@value}
+	 *
+	 * @see #setJournalLimit(int)
+	 */
+	public static final int DEFAULT_JOURNAL_LIMIT = 100000;
+
+	/** Longest time to wait for the event of a cookie file. */
+	private static final long SYNC_TIMEOUT_MILLIS = 2000;
+
+	private final Path workTree;
+
+	private final Path cookieDir;
+
+	private final WatchService watcher;
+
+	private final String instance;
+
+	private final Map<WatchKey, Path> dirs = new HashMap<>();
+
+	/** Generation of the last change of each path. */
+	private final Map<String, Long> journal = new HashMap<>();
+
+	/** Paths of {@link #journal} by the generation of their last change. */
+	private final TreeMap<Long, Set<String>> byGeneration = new TreeMap<>();
+
+	private int journalLimit = DEFAULT_JOURNAL_LIMIT;
+
+	/** Generation stamped on changes seen now, issued as the next token. */
+	private long generation = 1;
+
+	/** Oldest generation whose token still gets complete answers. */
+	private long oldestValid = 1;
+
+	private int cookieCnt;
+
+	/**
+	 * Start monitoring a working tree.
+	 *
+	 * @param workTree
+	 *            top level directory of the working tree.
+	 * @param gitDir
+	 *            repository directory, cookie files are created in a
+	 *            subdirectory of it.
+	 * @throws IOException
+	 *             the working tree cannot be registered.
+	 */
+	public WatchServiceFileChangeMonitor(File workTree, File gitDir)
+			throws IOException {
+		this.workTree = workTree.toPath().toAbsolutePath();
+		this.cookieDir = new File(gitDir, "jgit-fsmonitor").toPath() //$NON-NLS-1$
+				.toAbsolutePath();
+		Files.createDirectories(cookieDir);
+		watcher = this.workTree.getFileSystem().newWatchService();
+		instance = UUID.randomUUID().toString();
+		register(cookieDir);
+		registerAll(this.workTree, false);
+	}
+
+	/** @return number of paths kept in the journal. */
+	public synchronized int getJournalLimit() {
+		return journalLimit;
+	}
+
+	/**
+	 * Limit the number of paths kept in the journal.
+	 *
+	 * @param limit
+	 *            number of paths, at least 1.
+	 */
+	public synchronized void setJournalLimit(int limit) {
+		journalLimit = Math.max(1, limit);
+		trimJournal();
+	}
+
+	@Override
+	public synchronized Changes getChanges(String token) throws IOException {
+		boolean complete = sync();
+		trimJournal();
+		long since = parseToken(token);
+		Set<String> paths = null;
+		if (complete && oldestValid <= since) {
+			paths = new HashSet<>();
+			for (Set<String> changed : byGeneration
+					.tailMap(Long.valueOf(since), false).values())
+				paths.addAll(changed);
+		}
+		String next = instance + ':' + generation;
+		generation++;
+		return new Changes(next, paths);
+	}
+
+	@Override
+	public synchronized void close() {
+		try {
+			watcher.close();
+		} catch (IOException e) {
+			// Nothing more can be reported by this monitor.
+		}
+		try {
+			FileUtils.delete(cookieDir.toFile(),
+					FileUtils.RECURSIVE | FileUtils.IGNORE_ERRORS);
+		} catch (IOException e) {
+			// Left over cookies are harmless.
+		}
+	}
+
+	private long parseToken(String token) {
+		if (token == null || !token.startsWith(instance)
+				|| token.length() <= instance.length() + 1
+				|| token.charAt(instance.length()) != ':')
+			return -1;
+		try {
+			return Long.parseLong(token.substring(instance.length() + 1));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Process all events that happened before now.
+	 *
+	 * @return false if the events could not be collected in time.
+	 * @throws IOException
+	 */
+	private boolean sync() throws IOException {
+		Path cookie = cookieDir.resolve("cookie-" + (++cookieCnt)); //$NON-NLS-1$
+		Files.write(cookie, new byte[0]);
+		try {
+			long deadline = System.currentTimeMillis() + SYNC_TIMEOUT_MILLIS;
+			for (;;) {
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0)
+					return false;
+				WatchKey key = watcher.poll(wait, TimeUnit.MILLISECONDS);
+				if (key == null)
+					return false;
+				if (process(key, cookie)) {
+					while ((key = watcher.poll()) != null)
+						process(key, cookie);
+					return true;
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		} finally {
+			Files.deleteIfExists(cookie);
+		}
+	}
+
+	private boolean process(WatchKey key, Path cookie) throws IOException {
+		Path dir = dirs.get(key);
+		boolean sawCookie = false;
+		for (WatchEvent<?> ev : key.pollEvents()) {
+			if (ev.kind() == OVERFLOW) {
+				// Changes were lost, no earlier token can be answered.
+				journal.clear();
+				byGeneration.clear();
+				oldestValid = generation;
+				continue;
+			}
+			if (dir == null)
+				continue;
+			Path child = dir.resolve((Path) ev.context());
+			if (dir.equals(cookieDir)) {
+				sawCookie |= child.equals(cookie);
+				continue;
+			}
+			if (child.getFileName().toString().equals(Constants.DOT_GIT))
+				continue;
+			record(relative(child));
+			if (ev.kind() == ENTRY_CREATE
+					&& Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS))
+				registerAll(child, true);
+		}
+		if (!key.reset())
+			dirs.remove(key);
+		return sawCookie;
+	}
+
+	private void record(String path) {
+		Long gen = Long.valueOf(generation);
+		Long old = journal.put(path, gen);
+		if (gen.equals(old))
+			return;
+		if (old != null) {
+			Set<String> s = byGeneration.get(old);
+			s.remove(path);
+			if (s.isEmpty())
+				byGeneration.remove(old);
+		}
+		Set<String> s = byGeneration.get(gen);
+		if (s == null) {
+			s = new HashSet<>();
+			byGeneration.put(gen, s);
+		}
+		s.add(path);
+	}
+
+	/** Drop the oldest changes until the journal fits its limit. */
+	private void trimJournal() {
+		while (journalLimit < journal.size()) {
+			Map.Entry<Long, Set<String>> oldest = byGeneration
+					.pollFirstEntry();
+			for (String path : oldest.getValue())
+				journal.remove(path);
+			// Tokens issued before these changes can no longer be answered.
+			oldestValid = Math.max(oldestValid, oldest.getKey().longValue());
+		}
+	}
+
+	private void register(Path dir) throws IOException {
+		dirs.put(dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE,
+				ENTRY_MODIFY), dir);
+	}
+
+	/**
+	 * Register a directory and all directories below it.
+	 *
+	 * @param start
+	 *            directory to register.
+	 * @param created
+	 *            true if the directory was created while monitoring, its
+	 *            content is then recorded as changed.
+	 * @throws IOException
+	 */
+	private void registerAll(final Path start, final boolean created)
+			throws IOException {
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir,
+					BasicFileAttributes attrs) throws IOException {
+				if (!dir.equals(start) && dir.getFileName().toString()
+						.equals(Constants.DOT_GIT))
+					return FileVisitResult.SKIP_SUBTREE;
+				register(dir);
+				if (created)
+					record(relative(dir));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file,
+					BasicFileAttributes attrs) {
+				if (created && !file.getFileName().toString()
+						.equals(Constants.DOT_GIT))
+					record(relative(file));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				// Deleted while walking, its event is still pending.
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private String relative(Path p) {
+		String r = workTree.relativize(p).toString();
+		if (File.separatorChar != '/')
+			r = r.replace(File.separatorChar, '/');
+		return r;
+	}
+}